@@ -0,0 +1,23 @@
+plugins {
+  java
+  id("me.champeau.jmh") version "0.6.6"
+}
+
+dependencies {
+  jmh(project(":document-store"))
+  jmh("org.mongodb:mongodb-driver-sync:4.1.2")
+  jmh("com.fasterxml.jackson.core:jackson-databind:2.13.2.2")
+}
+
+jmh {
+  jmhVersion.set("1.35")
+  // Report the allocation rate per operation alongside the timings
+  profilers.add("gc")
+  resultFormat.set("JSON")
+  fork.set(1)
+  warmupIterations.set(3)
+  iterations.set(5)
+  if (project.hasProperty("jmhIncludes")) {
+    includes.add(project.property("jmhIncludes").toString())
+  }
+}
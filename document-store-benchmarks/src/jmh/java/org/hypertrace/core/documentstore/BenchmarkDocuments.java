@@ -0,0 +1,66 @@
+package org.hypertrace.core.documentstore;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Builds realistic, entity-like documents for the benchmarks. The documents are nested a few levels
+ * deep, carry attribute maps keyed by dotted names (which Mongo needs to encode) and arrays of
+ * sub-documents, similar to the entities stored by the Hypertrace entity service.
+ */
+public final class BenchmarkDocuments {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private BenchmarkDocuments() {}
+
+  /**
+   * @param attributeCount The number of attributes in the document. Each attribute takes about 150
+   *     bytes when serialized, so 16 attributes yield ~3KB and 128 attributes yield ~20KB.
+   */
+  public static ObjectNode entity(final int attributeCount) {
+    final ObjectNode entity = MAPPER.createObjectNode();
+    entity.put("tenantId", "__default");
+    entity.put("entityId", "2a1b7f34-0b3e-3d4f-9f11-6c9f4f2f5d1a");
+    entity.put("entityType", "API");
+    entity.put("entityName", "POST /api/v1/checkout/{cartId}/payment");
+
+    final ObjectNode identifyingAttributes = entity.putObject("identifyingAttributes");
+    identifyingAttributes.putObject("SERVICE_ID").putObject("value").put("string", "checkout");
+    identifyingAttributes
+        .putObject("API_NAME")
+        .putObject("value")
+        .put("string", "POST /api/v1/checkout/{cartId}/payment");
+
+    final ObjectNode attributes = entity.putObject("attributes");
+    for (int i = 0; i < attributeCount; i++) {
+      final ObjectNode value =
+          attributes.putObject("http.request.attribute_" + i).putObject("value");
+      switch (i % 3) {
+        case 0:
+          value.put("string", "value-of-attribute-" + i + "-with-a-realistically-long-payload");
+          break;
+        case 1:
+          value.put("long", 1_650_000_000_000L + i);
+          break;
+        default:
+          final ArrayNode values = value.putObject("valueList").putArray("values");
+          values.addObject().put("string", "first-" + i);
+          values.addObject().put("string", "second-" + i);
+          break;
+      }
+    }
+
+    final ArrayNode labels = entity.putArray("labels");
+    for (int i = 0; i < Math.max(1, attributeCount / 8); i++) {
+      labels.addObject().put("key", "label." + i).put("color", "#" + Integer.toHexString(i));
+    }
+
+    entity.put("createdTime", 1_650_000_000_000L);
+    return entity;
+  }
+
+  public static String entityJson(final int attributeCount) {
+    return entity(attributeCount).toString();
+  }
+}
@@ -0,0 +1,126 @@
+package org.hypertrace.core.documentstore;
+
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.AVG;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT_COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.MAX;
+import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.MULTIPLY;
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.AND;
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.OR;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GTE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.IN;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LTE;
+import static org.hypertrace.core.documentstore.expression.operators.SortOrder.ASC;
+import static org.hypertrace.core.documentstore.expression.operators.SortOrder.DESC;
+
+import java.util.List;
+import org.hypertrace.core.documentstore.Filter.Op;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.FunctionExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
+import org.hypertrace.core.documentstore.query.Pagination;
+import org.hypertrace.core.documentstore.query.Query;
+
+/** The query shapes shared by the parser and pipeline benchmarks */
+public final class BenchmarkQueries {
+  private BenchmarkQueries() {}
+
+  /** A selective lookup, the most common shape on the hot path */
+  public static Query simpleFilter() {
+    return Query.builder()
+        .addSelection(IdentifierExpression.of("item"))
+        .addSelection(IdentifierExpression.of("price"))
+        .setFilter(
+            LogicalExpression.builder()
+                .operator(AND)
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("item"), EQ, ConstantExpression.of("Soap")))
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("price"), LTE, ConstantExpression.of(10)))
+                .build())
+        .setPagination(Pagination.builder().offset(0).limit(100).build())
+        .build();
+  }
+
+  /** An aggregation with nested filters, grouping, a having clause, sorting and pagination */
+  public static Query complexAggregation() {
+    return Query.builder()
+        .addSelection(IdentifierExpression.of("item"))
+        .addSelection(
+            AggregateExpression.of(DISTINCT_COUNT, IdentifierExpression.of("props.seller.name")),
+            "seller_count")
+        .addSelection(AggregateExpression.of(AVG, IdentifierExpression.of("price")), "avg_price")
+        .addSelection(AggregateExpression.of(MAX, IdentifierExpression.of("quantity")), "max_qty")
+        .addSelection(
+            AggregateExpression.of(
+                COUNT,
+                FunctionExpression.builder()
+                    .operand(IdentifierExpression.of("price"))
+                    .operator(MULTIPLY)
+                    .operand(IdentifierExpression.of("quantity"))
+                    .build()),
+            "total")
+        .setFilter(
+            LogicalExpression.builder()
+                .operator(OR)
+                .operand(
+                    LogicalExpression.builder()
+                        .operator(AND)
+                        .operand(
+                            RelationalExpression.of(
+                                IdentifierExpression.of("price"), GTE, ConstantExpression.of(5)))
+                        .operand(
+                            RelationalExpression.of(
+                                IdentifierExpression.of("props.brand"),
+                                IN,
+                                ConstantExpression.ofStrings(
+                                    List.of("Dettol", "Lifebuoy", "Dove", "Pears", "Lux"))))
+                        .build())
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("props.seller.address.city"),
+                        EQ,
+                        ConstantExpression.of("Kolkata")))
+                .build())
+        .addAggregation(IdentifierExpression.of("item"))
+        .setAggregationFilter(
+            RelationalExpression.of(
+                IdentifierExpression.of("seller_count"), GT, ConstantExpression.of(1)))
+        .addSort(IdentifierExpression.of("seller_count"), DESC)
+        .addSort(IdentifierExpression.of("item"), ASC)
+        .setPagination(Pagination.builder().offset(20).limit(10).build())
+        .build();
+  }
+
+  /** A query unwinding nested arrays before filtering */
+  public static Query unnest() {
+    return Query.builder()
+        .addSelection(IdentifierExpression.of("item"))
+        .addSelection(IdentifierExpression.of("sales.city"))
+        .addSelection(IdentifierExpression.of("sales.medium.type"))
+        .addFromClause(UnnestExpression.of(IdentifierExpression.of("sales"), true))
+        .addFromClause(UnnestExpression.of(IdentifierExpression.of("sales.medium"), true))
+        .setFilter(
+            RelationalExpression.of(
+                IdentifierExpression.of("sales.medium.volume"), GT, ConstantExpression.of(10)))
+        .build();
+  }
+
+  /** The legacy filter equivalent of {@link #complexAggregation()}'s filter */
+  public static Filter legacyFilter() {
+    final Filter brandFilter =
+        new Filter(Op.IN, "props.brand", List.of("Dettol", "Lifebuoy", "Dove", "Pears", "Lux"));
+    final Filter priceFilter = new Filter(Op.GTE, "price", 5);
+    final Filter cityFilter = new Filter(Op.EQ, "props.seller.address.city", "Kolkata");
+    final Filter nameFilter = new Filter(Op.LIKE, "item", ".*soap.*");
+    return priceFilter.and(brandFilter).or(cityFilter, nameFilter);
+  }
+}
@@ -0,0 +1,47 @@
+package org.hypertrace.core.documentstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JSONDocumentBenchmark {
+  @Param({"16", "128"})
+  public int attributeCount;
+
+  private String json;
+  private JsonNode node;
+  private JSONDocument document;
+
+  @Setup
+  public void setup() throws IOException {
+    json = BenchmarkDocuments.entityJson(attributeCount);
+    node = BenchmarkDocuments.entity(attributeCount);
+    document = new JSONDocument(json);
+  }
+
+  @Benchmark
+  public JSONDocument fromString() throws IOException {
+    return new JSONDocument(json);
+  }
+
+  @Benchmark
+  public JSONDocument fromJsonNode() {
+    return new JSONDocument(node);
+  }
+
+  @Benchmark
+  public String toJson() {
+    return document.toJson();
+  }
+}
@@ -0,0 +1,49 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.mongodb.BasicDBObject;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.documentstore.BenchmarkDocuments;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MongoCollectionBenchmark {
+  @Param({"16", "128"})
+  public int attributeCount;
+
+  private MongoCollection collection;
+  private Document document;
+  private BasicDBObject dbObject;
+
+  @Setup
+  public void setup() throws IOException {
+    // Neither the encoding nor the decoding touches the underlying collection
+    collection = new MongoCollection(null);
+    document = new JSONDocument(BenchmarkDocuments.entityJson(attributeCount));
+    dbObject = collection.getSanitizedObject(document);
+    dbObject.put("_id", "2a1b7f34-0b3e-3d4f-9f11-6c9f4f2f5d1a");
+  }
+
+  @Benchmark
+  public BasicDBObject getSanitizedObject() throws JsonProcessingException {
+    return collection.getSanitizedObject(document);
+  }
+
+  @Benchmark
+  public Document dbObjectToDocument() {
+    // dbObjectToDocument() removes the _id field, so hand it a (shallow) copy
+    return collection.dbObjectToDocument(new BasicDBObject(dbObject));
+  }
+}
@@ -0,0 +1,63 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import com.mongodb.BasicDBObject;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.documentstore.BenchmarkQueries;
+import org.hypertrace.core.documentstore.mongo.query.transformer.MongoQueryTransformer;
+import org.hypertrace.core.documentstore.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MongoQueryExecutorBenchmark {
+  @Param({"simpleFilter", "complexAggregation", "unnest"})
+  public String shape;
+
+  private MongoQueryExecutor executor;
+  private Query query;
+  private Query transformedQuery;
+
+  @Setup
+  public void setup() {
+    // Building the pipeline does not touch the collection
+    executor = new MongoQueryExecutor(null);
+    switch (shape) {
+      case "simpleFilter":
+        query = BenchmarkQueries.simpleFilter();
+        break;
+      case "complexAggregation":
+        query = BenchmarkQueries.complexAggregation();
+        break;
+      case "unnest":
+        query = BenchmarkQueries.unnest();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown query shape: " + shape);
+    }
+    transformedQuery = MongoQueryTransformer.transform(query);
+  }
+
+  @Benchmark
+  public Query transform() {
+    return MongoQueryTransformer.transform(query);
+  }
+
+  @Benchmark
+  public List<BasicDBObject> buildPipeline() {
+    return executor.getAggregatePipeline(transformedQuery);
+  }
+
+  @Benchmark
+  public List<BasicDBObject> transformAndBuildPipeline() {
+    return executor.getAggregatePipeline(MongoQueryTransformer.transform(query));
+  }
+}
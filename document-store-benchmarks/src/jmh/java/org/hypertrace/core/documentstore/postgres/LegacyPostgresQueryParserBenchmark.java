@@ -0,0 +1,29 @@
+package org.hypertrace.core.documentstore.postgres;
+
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.documentstore.BenchmarkQueries;
+import org.hypertrace.core.documentstore.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LegacyPostgresQueryParserBenchmark {
+  private Filter filter;
+
+  @Setup
+  public void setup() {
+    filter = BenchmarkQueries.legacyFilter();
+  }
+
+  @Benchmark
+  public String parseFilter() {
+    return PostgresQueryParser.parseFilter(filter, Params.newBuilder());
+  }
+}
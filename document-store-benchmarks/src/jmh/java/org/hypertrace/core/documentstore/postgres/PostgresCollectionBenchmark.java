@@ -0,0 +1,42 @@
+package org.hypertrace.core.documentstore.postgres;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.documentstore.BenchmarkDocuments;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PostgresCollectionBenchmark {
+  @Param({"16", "128"})
+  public int attributeCount;
+
+  private PostgresCollection collection;
+  private Key key;
+  private Document document;
+
+  @Setup
+  public void setup() throws IOException {
+    // prepareDocument() does not touch the connection
+    collection = new PostgresCollection(null, "benchmarkCollection");
+    key = new SingleValueKey("__default", "2a1b7f34-0b3e-3d4f-9f11-6c9f4f2f5d1a");
+    document = new JSONDocument(BenchmarkDocuments.entityJson(attributeCount));
+  }
+
+  @Benchmark
+  public String prepareDocument() throws IOException {
+    return collection.prepareDocument(key, document);
+  }
+}
@@ -0,0 +1,47 @@
+package org.hypertrace.core.documentstore.postgres.query.v1;
+
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.documentstore.BenchmarkQueries;
+import org.hypertrace.core.documentstore.query.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PostgresQueryParserBenchmark {
+  private static final String COLLECTION = "benchmarkCollection";
+
+  @Param({"simpleFilter", "complexAggregation", "unnest"})
+  public String shape;
+
+  private Query query;
+
+  @Setup
+  public void setup() {
+    switch (shape) {
+      case "simpleFilter":
+        query = BenchmarkQueries.simpleFilter();
+        break;
+      case "complexAggregation":
+        query = BenchmarkQueries.complexAggregation();
+        break;
+      case "unnest":
+        query = BenchmarkQueries.unnest();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown query shape: " + shape);
+    }
+  }
+
+  @Benchmark
+  public String parse() {
+    return new PostgresQueryParser(COLLECTION, query).parse();
+  }
+}
@@ -35,6 +35,10 @@ tasks.test {
 
 tasks.integrationTest {
   useJUnitPlatform()
+  // Forward the workload harness settings, e.g. -Dworkload.enabled=true -Dworkload.concurrency=32
+  System.getProperties().stringPropertyNames()
+    .filter { it.startsWith("workload.") }
+    .forEach { systemProperty(it, System.getProperty(it)) }
 }
 
 tasks.jacocoIntegrationTestReport {
@@ -37,11 +37,12 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.typesafe.config.Config;
-import com.typesafe.config.ConfigFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -55,6 +56,7 @@ import org.apache.commons.lang3.RandomUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.bson.codecs.configuration.CodecConfigurationException;
 import org.hypertrace.core.documentstore.Filter.Op;
+import org.hypertrace.core.documentstore.WriteOptions.Durability;
 import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
 import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
 import org.hypertrace.core.documentstore.expression.impl.FunctionExpression;
@@ -62,8 +64,6 @@ import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
 import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
 import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
 import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
-import org.hypertrace.core.documentstore.mongo.MongoDatastore;
-import org.hypertrace.core.documentstore.postgres.PostgresDatastore;
 import org.hypertrace.core.documentstore.query.Pagination;
 import org.hypertrace.core.documentstore.query.Selection;
 import org.hypertrace.core.documentstore.query.SelectionSpec;
@@ -71,6 +71,7 @@ import org.hypertrace.core.documentstore.query.Sort;
 import org.hypertrace.core.documentstore.query.SortingSpec;
 import org.hypertrace.core.documentstore.utils.CreateUpdateTestThread;
 import org.hypertrace.core.documentstore.utils.CreateUpdateTestThread.Operation;
+import org.hypertrace.core.documentstore.utils.DatastoreContainers;
 import org.hypertrace.core.documentstore.utils.Utils;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -80,9 +81,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.testcontainers.containers.GenericContainer;
-import org.testcontainers.containers.wait.strategy.Wait;
 import org.testcontainers.shaded.com.google.common.collect.Maps;
-import org.testcontainers.utility.DockerImageName;
 
 public class DocStoreTest {
 
@@ -112,40 +111,12 @@ public class DocStoreTest {
   @BeforeAll
   public static void init() {
     datastoreMap = Maps.newHashMap();
-    mongo =
-        new GenericContainer<>(DockerImageName.parse("mongo:4.4.0"))
-            .withExposedPorts(27017)
-            .waitingFor(Wait.forListeningPort());
-    mongo.start();
-
-    DatastoreProvider.register("MONGO", MongoDatastore.class);
-
-    Map<String, String> mongoConfig = new HashMap<>();
-    mongoConfig.putIfAbsent("host", "localhost");
-    mongoConfig.putIfAbsent("port", mongo.getMappedPort(27017).toString());
-    Config config = ConfigFactory.parseMap(mongoConfig);
-
-    Datastore mongoDatastore = DatastoreProvider.getDatastore("Mongo", config);
+    mongo = DatastoreContainers.startMongo();
+    Datastore mongoDatastore = DatastoreContainers.getMongoDatastore(mongo);
     System.out.println(mongoDatastore.listCollections());
 
-    postgres =
-        new GenericContainer<>(DockerImageName.parse("postgres:13.1"))
-            .withEnv("POSTGRES_PASSWORD", "postgres")
-            .withEnv("POSTGRES_USER", "postgres")
-            .withExposedPorts(5432)
-            .waitingFor(Wait.forListeningPort());
-    postgres.start();
-
-    String postgresConnectionUrl =
-        String.format("jdbc:postgresql://localhost:%s/", postgres.getMappedPort(5432));
-    DatastoreProvider.register("POSTGRES", PostgresDatastore.class);
-
-    Map<String, String> postgresConfig = new HashMap<>();
-    postgresConfig.putIfAbsent("url", postgresConnectionUrl);
-    postgresConfig.putIfAbsent("user", "postgres");
-    postgresConfig.putIfAbsent("password", "postgres");
-    Datastore postgresDatastore =
-        DatastoreProvider.getDatastore("Postgres", ConfigFactory.parseMap(postgresConfig));
+    postgres = DatastoreContainers.startPostgres();
+    Datastore postgresDatastore = DatastoreContainers.getPostgresDatastore(postgres);
     System.out.println(postgresDatastore.listCollections());
 
     datastoreMap.put(MONGO_STORE, mongoDatastore);
@@ -210,9 +181,314 @@ public class DocStoreTest {
     Object newCreatedTime = getCreatedTime(persistedDocument, dataStoreName);
     assertEquals(createdTime, newCreatedTime);
     Object newLastUpdatedTime = getLastUpdatedTime(persistedDocument, dataStoreName);
-    if (isMongo(dataStoreName)) {
-      // todo: for postgres lastUpdated time is same as previous
-      Assertions.assertNotEquals(lastUpdatedTime, newLastUpdatedTime);
+    Assertions.assertNotEquals(lastUpdatedTime, newLastUpdatedTime);
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testGetAll(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    // More keys than a single query looks up
+    List<Key> keys = new ArrayList<>();
+    Map<Key, Document> documents = new HashMap<>();
+    for (int i = 0; i < Collection.MAX_KEYS_PER_READ + 10; i++) {
+      Key key = new SingleValueKey("default", "key" + i);
+      keys.add(key);
+      documents.put(key, Utils.createDocument("n", "" + i));
+    }
+    collection.bulkUpsert(documents);
+    Collections.reverse(keys);
+    keys.add(1, new SingleValueKey("default", "missing"));
+
+    Map<Key, Document> found = collection.getAll(keys);
+    assertEquals(Collection.MAX_KEYS_PER_READ + 10, found.size());
+    keys.remove(1);
+    assertEquals(keys, new ArrayList<>(found.keySet()));
+    JsonNode node = OBJECT_MAPPER.readTree(found.get(keys.get(0)).toJson());
+    assertEquals("" + (Collection.MAX_KEYS_PER_READ + 9), node.get("n").asText());
+
+    assertTrue(collection.get(keys.get(0)).isPresent());
+    assertFalse(collection.get(new SingleValueKey("default", "missing")).isPresent());
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testParallelScan(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    Map<Key, Document> documents = new HashMap<>();
+    for (int i = 0; i < 100; i++) {
+      documents.put(new SingleValueKey("default", "key" + i), Utils.createDocument("n", "" + i));
+    }
+    collection.bulkUpsert(documents);
+
+    List<CloseableIterator<Document>> partitions =
+        collection.parallelScan(
+            org.hypertrace.core.documentstore.query.Query.builder()
+                .addSelection(IdentifierExpression.of("n"))
+                .build(),
+            4);
+    assertEquals(4, partitions.size());
+    List<String> values = new ArrayList<>();
+    for (CloseableIterator<Document> partition : partitions) {
+      try (partition) {
+        int count = 0;
+        while (partition.hasNext()) {
+          values.add(OBJECT_MAPPER.readTree(partition.next().toJson()).get("n").asText());
+          count++;
+        }
+        assertTrue(count > 0);
+      }
+    }
+    assertEquals(100, values.size());
+    assertEquals(100, Set.copyOf(values).size());
+
+    // The documents matching the filter, key10 to key19, are split among all the partitions
+    List<CloseableIterator<Document>> filtered =
+        collection.parallelScan(
+            org.hypertrace.core.documentstore.query.Query.builder()
+                .setFilter(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("n"),
+                        IN,
+                        ConstantExpression.ofStrings(
+                            List.of("10", "11", "12", "13", "14", "15", "16", "17", "18", "19"))))
+                .build(),
+            4);
+    int filteredCount = 0;
+    for (CloseableIterator<Document> partition : filtered) {
+      try (partition) {
+        int count = 0;
+        while (partition.hasNext()) {
+          partition.next();
+          count++;
+        }
+        assertTrue(count > 0);
+        filteredCount += count;
+      }
+    }
+    assertEquals(10, filteredCount);
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testExportAndImport(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    Map<Key, Document> documents = new HashMap<>();
+    for (int i = 0; i < 2500; i++) {
+      documents.put(new SingleValueKey("default", "key" + i), Utils.createDocument("n", "" + i));
+    }
+    // The values needing escapes are copied as is
+    documents.put(
+        new SingleValueKey("default", "escaped"),
+        Utils.createDocument("n", "line\nbreak, \"quote\", back\\slash \u00e9"));
+    collection.bulkUpsert(documents);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<Long> exportProgress = new ArrayList<>();
+    assertEquals(2501, collection.exportTo(output, exportProgress::add));
+    assertEquals(2501L, exportProgress.get(exportProgress.size() - 1));
+
+    collection.deleteAll();
+    collection.upsert(new SingleValueKey("default", "key0"), Utils.createDocument("n", "kept"));
+    List<Long> importProgress = new ArrayList<>();
+    assertEquals(
+        2500,
+        collection.importFrom(new ByteArrayInputStream(output.toByteArray()), importProgress::add));
+    assertEquals(2501L, importProgress.get(importProgress.size() - 1));
+    assertEquals(2501, collection.count());
+
+    Map<Key, Document> imported =
+        collection.getAll(
+            List.of(
+                new SingleValueKey("default", "key0"), new SingleValueKey("default", "escaped")));
+    assertEquals(
+        "kept",
+        OBJECT_MAPPER
+            .readTree(imported.get(new SingleValueKey("default", "key0")).toJson())
+            .get("n")
+            .asText());
+    assertEquals(
+        "line\nbreak, \"quote\", back\\slash \u00e9",
+        OBJECT_MAPPER
+            .readTree(imported.get(new SingleValueKey("default", "escaped")).toJson())
+            .get("n")
+            .asText());
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testMaterializedView(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    collection.upsert(
+        new SingleValueKey("default", "1"), Utils.createDocument("item", "soap", "qty", "2"));
+    collection.upsert(
+        new SingleValueKey("default", "2"), Utils.createDocument("item", "soap", "qty", "3"));
+    collection.upsert(
+        new SingleValueKey("default", "3"), Utils.createDocument("item", "comb", "qty", "1"));
+
+    String viewName = "item_totals";
+    org.hypertrace.core.documentstore.query.Query totals =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("item"), NEQ, ConstantExpression.of("mirror")))
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(COUNT, IdentifierExpression.of("qty")), "count")
+            .addAggregation(IdentifierExpression.of("item"))
+            .build();
+    try {
+      assertTrue(datastore.createMaterializedView(viewName, COLLECTION_NAME, totals));
+      assertEquals(Map.of("soap", 2, "comb", 1), readCounts(datastore.getCollection(viewName)));
+
+      collection.delete(new SingleValueKey("default", "3"));
+      collection.upsert(
+          new SingleValueKey("default", "4"), Utils.createDocument("item", "brush", "qty", "4"));
+      assertEquals(Map.of("soap", 2, "comb", 1), readCounts(datastore.getCollection(viewName)));
+
+      assertTrue(datastore.refreshMaterializedView(viewName));
+      assertEquals(Map.of("soap", 2, "brush", 1), readCounts(datastore.getCollection(viewName)));
+    } finally {
+      datastore.deleteCollection(viewName);
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testWriteOptions(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection relaxed =
+        datastore.getCollection(COLLECTION_NAME, WriteOptions.of(Durability.ACKNOWLEDGED));
+    Collection majority =
+        datastore.getCollection(COLLECTION_NAME, WriteOptions.of(Durability.MAJORITY));
+    assertTrue(
+        relaxed.upsert(new SingleValueKey("default", "1"), Utils.createDocument("item", "soap")));
+    assertTrue(
+        majority.upsert(new SingleValueKey("default", "2"), Utils.createDocument("item", "comb")));
+
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    assertEquals(2, collection.count());
+    assertTrue(relaxed.delete(new SingleValueKey("default", "2")));
+    assertEquals(1, collection.count());
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testExecuteBatch(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    collection.upsert(
+        new SingleValueKey("default", "1"), Utils.createDocument("item", "soap", "qty", "2"));
+    collection.upsert(
+        new SingleValueKey("default", "2"), Utils.createDocument("item", "soap", "qty", "3"));
+    collection.upsert(
+        new SingleValueKey("default", "3"), Utils.createDocument("item", "comb", "qty", "1"));
+
+    RelationalExpression notMirror =
+        RelationalExpression.of(
+            IdentifierExpression.of("item"), NEQ, ConstantExpression.of("mirror"));
+    // The first, second and fourth queries share their filter
+    org.hypertrace.core.documentstore.query.Query totals =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(notMirror)
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(COUNT, IdentifierExpression.of("qty")), "count")
+            .addAggregation(IdentifierExpression.of("item"))
+            .build();
+    org.hypertrace.core.documentstore.query.Query items =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(notMirror)
+            .addSelection(IdentifierExpression.of("item"))
+            .build();
+    org.hypertrace.core.documentstore.query.Query combs =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("item"), EQ, ConstantExpression.of("comb")))
+            .addSelection(IdentifierExpression.of("item"))
+            .build();
+
+    org.hypertrace.core.documentstore.query.Query firstItems =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(notMirror)
+            .addSelection(IdentifierExpression.of("item"))
+            .addSort(IdentifierExpression.of("item"), ASC)
+            .setPagination(Pagination.builder().limit(2).offset(0).build())
+            .build();
+
+    List<CloseableIterator<Document>> results =
+        collection.executeBatch(List.of(totals, items, combs, firstItems));
+    assertEquals(4, results.size());
+    assertEquals(Map.of("soap", 2, "comb", 1), readCounts(results.get(0)));
+    assertEquals(List.of("comb", "soap", "soap"), readItems(results.get(1)));
+    assertEquals(List.of("comb"), readItems(results.get(2)));
+    assertEquals(List.of("comb", "soap"), readItems(results.get(3)));
+  }
+
+  private static List<String> readItems(CloseableIterator<Document> iterator) throws IOException {
+    List<String> items = new ArrayList<>();
+    try (iterator) {
+      while (iterator.hasNext()) {
+        items.add(OBJECT_MAPPER.readTree(iterator.next().toJson()).get("item").asText());
+      }
+    }
+    Collections.sort(items);
+    return items;
+  }
+
+  private static Map<String, Integer> readCounts(Collection view) throws IOException {
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(IdentifierExpression.of("count"))
+            .build();
+    return readCounts(view.find(query));
+  }
+
+  private static Map<String, Integer> readCounts(CloseableIterator<Document> iterator)
+      throws IOException {
+    Map<String, Integer> counts = new HashMap<>();
+    try (iterator) {
+      while (iterator.hasNext()) {
+        JsonNode node = OBJECT_MAPPER.readTree(iterator.next().toJson());
+        counts.put(node.get("item").asText(), node.get("count").asInt());
+      }
+    }
+    return counts;
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testChangesSince(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    Map<Key, Document> documents = new HashMap<>();
+    for (int i = 0; i < 5; i++) {
+      documents.put(new SingleValueKey("default", "key" + i), Utils.createDocument("n", "" + i));
+    }
+    collection.bulkUpsert(documents);
+
+    List<ChangedDocument> changes = new ArrayList<>();
+    try (CloseableIterator<ChangedDocument> iterator =
+        collection.changesSince(Watermark.EARLIEST, 2)) {
+      iterator.forEachRemaining(changes::add);
+    }
+    assertEquals(5, changes.size());
+    assertEquals(
+        5, changes.stream().map(change -> change.getWatermark().getKey()).distinct().count());
+
+    Watermark last = changes.get(4).getWatermark();
+    Thread.sleep(5);
+    collection.updateSubDoc(
+        new SingleValueKey("default", "key0"), "n", new JSONDocument("\"updated\""));
+    try (CloseableIterator<ChangedDocument> iterator = collection.changesSince(last, 2)) {
+      ChangedDocument change = iterator.next();
+      assertEquals("default:key0", change.getWatermark().getKey());
+      assertTrue(change.getWatermark().getTimestamp().isAfter(last.getTimestamp()));
+      assertFalse(iterator.hasNext());
     }
   }
 
@@ -45,6 +45,8 @@ import org.hypertrace.core.documentstore.JSONDocument;
 import org.hypertrace.core.documentstore.Key;
 import org.hypertrace.core.documentstore.Query;
 import org.hypertrace.core.documentstore.SingleValueKey;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
 import org.hypertrace.core.documentstore.utils.Utils;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -125,6 +127,21 @@ public class MongoDocStoreTest {
     assertTrue(datastore.deleteCollection(COLLECTION_NAME));
   }
 
+  @Test
+  public void testPercentileIsRejectedByTheServerVersion() {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .addSelection(
+                AggregateExpression.percentile(IdentifierExpression.of("size"), 0.95), "p95")
+            .build();
+
+    // The test server runs MongoDB 4.4, without $percentile
+    UnsupportedOperationException exception =
+        assertThrows(UnsupportedOperationException.class, () -> collection.aggregate(query));
+    assertTrue(exception.getMessage().contains("4.4.0"));
+  }
+
   @Test
   public void testUpsertAndReturn() throws IOException {
     Collection collection = datastore.getCollection(COLLECTION_NAME);
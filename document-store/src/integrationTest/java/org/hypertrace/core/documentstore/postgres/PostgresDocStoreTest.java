@@ -1,16 +1,27 @@
 package org.hypertrace.core.documentstore.postgres;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.APPROX_DISTINCT_COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
+import org.hypertrace.core.documentstore.CloseableIterator;
 import org.hypertrace.core.documentstore.Collection;
 import org.hypertrace.core.documentstore.Datastore;
 import org.hypertrace.core.documentstore.DatastoreProvider;
@@ -19,6 +30,14 @@ import org.hypertrace.core.documentstore.Filter;
 import org.hypertrace.core.documentstore.Key;
 import org.hypertrace.core.documentstore.Query;
 import org.hypertrace.core.documentstore.SingleValueKey;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.WriteOptions;
+import org.hypertrace.core.documentstore.WriteOptions.Durability;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
 import org.hypertrace.core.documentstore.utils.Utils;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
@@ -154,6 +173,192 @@ public class PostgresDocStoreTest {
     }
   }
 
+  @Test
+  public void testWatch() throws IOException {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    Key key = new SingleValueKey("default", "testKey");
+    WatchOptions options =
+        WatchOptions.builder().fullDocument(true).maxAwaitTime(Duration.ofMillis(100)).build();
+
+    String resumeToken;
+    try (CloseableIterator<ChangeEvent> changes = collection.watch(null, options)) {
+      collection.upsert(key, Utils.createDocument("foo1", "bar1"));
+      collection.delete(key);
+
+      ChangeEvent event = changes.next();
+      Assertions.assertEquals(ChangeEvent.Type.INSERT, event.getType());
+      Assertions.assertEquals(key.toString(), event.getKey());
+      Assertions.assertTrue(event.getDocument().isPresent());
+      resumeToken = event.getResumeToken();
+
+      event = changes.next();
+      Assertions.assertEquals(ChangeEvent.Type.DELETE, event.getType());
+      Assertions.assertTrue(event.getDocument().isEmpty());
+    }
+
+    try (CloseableIterator<ChangeEvent> changes =
+        collection.watch(null, options.toBuilder().resumeAfter(resumeToken).build())) {
+      Assertions.assertEquals(ChangeEvent.Type.DELETE, changes.next().getType());
+    }
+  }
+
+  @Test
+  public void testTransaction() throws Exception {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    long count =
+        datastore.inTransaction(
+            WriteOptions.of(Durability.ACKNOWLEDGED),
+            transaction -> {
+              Collection items = transaction.getCollection(COLLECTION_NAME);
+              items.upsert(new SingleValueKey("default", "1"), Utils.createDocument("qty", "1"));
+              items.upsert(new SingleValueKey("default", "2"), Utils.createDocument("qty", "2"));
+              // Not committed yet
+              Assertions.assertEquals(0, collection.count());
+              return items.count();
+            });
+    Assertions.assertEquals(2, count);
+    Assertions.assertEquals(2, collection.count());
+
+    Assertions.assertThrows(
+        IllegalStateException.class,
+        () ->
+            datastore.inTransaction(
+                transaction -> {
+                  Collection items = transaction.getCollection(COLLECTION_NAME);
+                  items.delete(new SingleValueKey("default", "1"));
+                  throw new IllegalStateException("rolled back");
+                }));
+    Assertions.assertEquals(2, collection.count());
+  }
+
+  @Test
+  public void testChangesOfRunningTransactionsAreHeldBack() throws Exception {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    collection.upsert(new SingleValueKey("default", "1"), Utils.createDocument("qty", "1"));
+    // Creates the index of the changes before the transaction locks the table
+    Assertions.assertEquals(List.of("default:1"), readChangedIds(collection));
+
+    List<String> ids =
+        datastore.inTransaction(
+            transaction -> {
+              // Timestamped with the start of the transaction, before the next committed write
+              transaction
+                  .getCollection(COLLECTION_NAME)
+                  .upsert(new SingleValueKey("default", "2"), Utils.createDocument("qty", "2"));
+              collection.upsert(
+                  new SingleValueKey("default", "3"), Utils.createDocument("qty", "3"));
+              return readChangedIds(collection);
+            });
+    Assertions.assertEquals(List.of("default:1"), ids);
+    Assertions.assertEquals(
+        List.of("default:1", "default:2", "default:3"), readChangedIds(collection));
+  }
+
+  @Test
+  public void testParallelScanIsBoundedByTheCursorConnections() throws IOException {
+    Map<String, Object> config = new HashMap<>();
+    config.put("url", connectionUrl);
+    config.put("user", "postgres");
+    config.put("password", "postgres");
+    config.put(PostgresDatastore.CURSOR_CONNECTIONS_CONFIG, 2);
+    Datastore boundedDatastore =
+        DatastoreProvider.getDatastore("Postgres", ConfigFactory.parseMap(config));
+    Collection collection = boundedDatastore.getCollection(COLLECTION_NAME);
+    for (int i = 0; i < 10; i++) {
+      collection.upsert(
+          new SingleValueKey("default", "key" + i), Utils.createDocument("n", "" + i));
+    }
+
+    List<CloseableIterator<Document>> partitions =
+        collection.parallelScan(org.hypertrace.core.documentstore.query.Query.builder().build(), 8);
+    Assertions.assertEquals(2, partitions.size());
+    // All the partitions stream at once
+    partitions.forEach(partition -> Assertions.assertTrue(partition.hasNext()));
+    int count = 0;
+    for (CloseableIterator<Document> partition : partitions) {
+      try (partition) {
+        while (partition.hasNext()) {
+          partition.next();
+          count++;
+        }
+      }
+    }
+    Assertions.assertEquals(10, count);
+  }
+
+  @Test
+  public void testChangesAreNotHeldBackByOtherDatabases() throws Exception {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    try (Connection other =
+        DriverManager.getConnection(connectionUrl + "template1", "postgres", "postgres")) {
+      // Leaves a transaction open on another database of the cluster
+      other.setAutoCommit(false);
+      try (Statement statement = other.createStatement()) {
+        statement.execute("SELECT 1");
+      }
+
+      collection.upsert(new SingleValueKey("default", "1"), Utils.createDocument("qty", "1"));
+      Assertions.assertEquals(List.of("default:1"), readChangedIds(collection));
+      other.rollback();
+    }
+  }
+
+  private static List<String> readChangedIds(Collection collection) throws IOException {
+    List<String> ids = new ArrayList<>();
+    try (CloseableIterator<ChangedDocument> changes =
+        collection.changesSince(Watermark.EARLIEST, 10)) {
+      changes.forEachRemaining(change -> ids.add(change.getWatermark().getKey()));
+    }
+    return ids;
+  }
+
+  @Test
+  public void testApproxDistinctCountOfFewValues() throws IOException {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    for (int i = 0; i < 10; i++) {
+      collection.upsert(
+          new SingleValueKey("default", "key" + i), Utils.createDocument("item", "item" + i % 3));
+    }
+
+    // Counted by their bits in the bitmap rather than scaled up from the sampled hashes
+    try (CloseableIterator<Document> results =
+        collection.aggregate(
+            org.hypertrace.core.documentstore.query.Query.builder()
+                .addSelection(
+                    AggregateExpression.of(APPROX_DISTINCT_COUNT, IdentifierExpression.of("item")),
+                    "items")
+                .build())) {
+      Assertions.assertEquals(
+          3, new ObjectMapper().readTree(results.next().toJson()).get("items").asInt());
+    }
+  }
+
+  @Test
+  public void testEstimatedCount() throws Exception {
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+    // Not analyzed yet, estimated by the planner
+    Assertions.assertTrue(collection.estimatedCount() >= 0);
+
+    for (int i = 0; i < 3; i++) {
+      collection.upsert(
+          new SingleValueKey("default", "key" + i), Utils.createDocument("item", "item" + i));
+    }
+    try (Statement statement =
+        ((PostgresDatastore) datastore).getPostgresClient().createStatement()) {
+      statement.execute("ANALYZE " + COLLECTION_NAME);
+    }
+    Assertions.assertEquals(3, collection.estimatedCount());
+
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("item"), EQ, ConstantExpression.of("item1")))
+            .build();
+    long estimate = collection.estimatedCount(query);
+    Assertions.assertTrue(estimate >= 1 && estimate <= 3);
+  }
+
   @Test
   public void testDrop() {
     Collection collection = datastore.getCollection(COLLECTION_NAME);
@@ -0,0 +1,59 @@
+package org.hypertrace.core.documentstore.utils;
+
+import com.typesafe.config.ConfigFactory;
+import java.util.HashMap;
+import java.util.Map;
+import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.DatastoreProvider;
+import org.hypertrace.core.documentstore.mongo.MongoDatastore;
+import org.hypertrace.core.documentstore.postgres.PostgresDatastore;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.utility.DockerImageName;
+
+/** Starts the Mongo and Postgres containers of the integration tests, and their datastores */
+public class DatastoreContainers {
+  private static final int MONGO_PORT = 27017;
+  private static final int POSTGRES_PORT = 5432;
+
+  public static GenericContainer<?> startMongo() {
+    GenericContainer<?> mongo =
+        new GenericContainer<>(DockerImageName.parse("mongo:4.4.0"))
+            .withExposedPorts(MONGO_PORT)
+            .waitingFor(Wait.forListeningPort());
+    mongo.start();
+    return mongo;
+  }
+
+  public static Datastore getMongoDatastore(GenericContainer<?> mongo) {
+    DatastoreProvider.register("MONGO", MongoDatastore.class);
+
+    Map<String, String> mongoConfig = new HashMap<>();
+    mongoConfig.put("host", "localhost");
+    mongoConfig.put("port", mongo.getMappedPort(MONGO_PORT).toString());
+    return DatastoreProvider.getDatastore("Mongo", ConfigFactory.parseMap(mongoConfig));
+  }
+
+  public static GenericContainer<?> startPostgres() {
+    GenericContainer<?> postgres =
+        new GenericContainer<>(DockerImageName.parse("postgres:13.1"))
+            .withEnv("POSTGRES_PASSWORD", "postgres")
+            .withEnv("POSTGRES_USER", "postgres")
+            .withExposedPorts(POSTGRES_PORT)
+            .waitingFor(Wait.forListeningPort());
+    postgres.start();
+    return postgres;
+  }
+
+  public static Datastore getPostgresDatastore(GenericContainer<?> postgres) {
+    DatastoreProvider.register("POSTGRES", PostgresDatastore.class);
+
+    Map<String, String> postgresConfig = new HashMap<>();
+    postgresConfig.put(
+        "url",
+        String.format("jdbc:postgresql://localhost:%s/", postgres.getMappedPort(POSTGRES_PORT)));
+    postgresConfig.put("user", "postgres");
+    postgresConfig.put("password", "postgres");
+    return DatastoreProvider.getDatastore("Postgres", ConfigFactory.parseMap(postgresConfig));
+  }
+}
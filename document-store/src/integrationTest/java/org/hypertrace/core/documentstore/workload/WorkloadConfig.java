@@ -0,0 +1,120 @@
+package org.hypertrace.core.documentstore.workload;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The knobs of a workload run. The defaults describe a small, read-mostly workload which finishes
+ * in well under a minute per backend. Every setting can be overridden with a system property of the
+ * form <code>workload.&lt;name&gt;</code>, e.g. <code>-Dworkload.concurrency=32</code> or <code>
+ * -Dworkload.mix=POINT_UPSERT:50,FILTERED_FIND:50</code>.
+ */
+public final class WorkloadConfig {
+  private final int recordCount;
+  private final int attributeCount;
+  private final double skew;
+  private final int concurrency;
+  private final Duration duration;
+  private final int bulkSize;
+  private final long seed;
+  private final Map<WorkloadOperation, Integer> mix;
+
+  private WorkloadConfig(
+      final int recordCount,
+      final int attributeCount,
+      final double skew,
+      final int concurrency,
+      final Duration duration,
+      final int bulkSize,
+      final long seed,
+      final Map<WorkloadOperation, Integer> mix) {
+    if (skew < 0 || skew >= 1) {
+      throw new IllegalArgumentException("skew must be in [0, 1), found: " + skew);
+    }
+    if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+      throw new IllegalArgumentException("At least one operation must have a positive weight");
+    }
+
+    this.recordCount = recordCount;
+    this.attributeCount = attributeCount;
+    this.skew = skew;
+    this.concurrency = concurrency;
+    this.duration = duration;
+    this.bulkSize = bulkSize;
+    this.seed = seed;
+    this.mix = Collections.unmodifiableMap(new EnumMap<>(mix));
+  }
+
+  public static WorkloadConfig fromSystemProperties() {
+    return new WorkloadConfig(
+        Integer.getInteger("workload.recordCount", 10_000),
+        Integer.getInteger("workload.attributeCount", 16),
+        Double.parseDouble(System.getProperty("workload.skew", "0.99")),
+        Integer.getInteger("workload.concurrency", 8),
+        Duration.ofSeconds(Long.getLong("workload.durationSeconds", 20)),
+        Integer.getInteger("workload.bulkSize", 50),
+        Long.getLong("workload.seed", 42),
+        parseMix(
+            System.getProperty(
+                "workload.mix",
+                "POINT_UPSERT:30,BULK_UPSERT:5,FILTERED_FIND:40,AGGREGATE_WITH_UNNEST:15,BULK_ARRAY_UPDATE:10")));
+  }
+
+  static Map<WorkloadOperation, Integer> parseMix(final String mix) {
+    final Map<WorkloadOperation, Integer> weights = new EnumMap<>(WorkloadOperation.class);
+    for (final String entry : mix.split(",")) {
+      final String[] parts = entry.trim().split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid operation weight: " + entry);
+      }
+      weights.put(WorkloadOperation.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+    return weights;
+  }
+
+  /** The number of documents loaded before the run and addressed by the operations */
+  public int getRecordCount() {
+    return recordCount;
+  }
+
+  /** The number of attributes per document. Each attribute adds ~100 bytes to the document. */
+  public int getAttributeCount() {
+    return attributeCount;
+  }
+
+  /** The zipfian constant of the key distribution. 0 means uniform; YCSB uses 0.99. */
+  public double getSkew() {
+    return skew;
+  }
+
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  public Duration getDuration() {
+    return duration;
+  }
+
+  /** The number of documents per bulk upsert or bulk array update */
+  public int getBulkSize() {
+    return bulkSize;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /** The relative weight of each operation */
+  public Map<WorkloadOperation, Integer> getMix() {
+    return mix;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "records=%d, attributes=%d, skew=%.2f, concurrency=%d, duration=%s, bulkSize=%d, mix=%s",
+        recordCount, attributeCount, skew, concurrency, duration, bulkSize, mix);
+  }
+}
@@ -0,0 +1,72 @@
+package org.hypertrace.core.documentstore.workload;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Random;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.SingleValueKey;
+
+/** Generates the synthetic nested documents operated upon by the workload */
+final class WorkloadDocuments {
+  static final String TENANT_ID = "workload";
+  static final String LABELS_PATH = "labels";
+
+  static final String[] ITEMS = {"Soap", "Shampoo", "Comb", "Mirror", "Towel", "Brush", "Razor"};
+  static final String[] BRANDS = {"Dettol", "Lifebuoy", "Dove", "Pears", "Lux", "Sunsilk"};
+  static final String[] CITIES = {"Mumbai", "Kolkata", "Delhi", "Chennai", "Pune", "Bengaluru"};
+  static final String[] MEDIUMS = {"retail", "distributor", "online"};
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private WorkloadDocuments() {}
+
+  static Key key(final int index) {
+    return new SingleValueKey(TENANT_ID, "record-" + index);
+  }
+
+  static Document document(final int index, final int attributeCount, final Random random) {
+    final ObjectNode document = MAPPER.createObjectNode();
+    document.put("item", ITEMS[index % ITEMS.length]);
+    document.put("price", 1 + random.nextInt(100));
+    document.put("quantity", 1 + random.nextInt(20));
+
+    final ObjectNode props = document.putObject("props");
+    props.put("brand", BRANDS[random.nextInt(BRANDS.length)]);
+    final ObjectNode seller = props.putObject("seller");
+    seller.put("name", "seller-" + random.nextInt(100));
+    seller.putObject("address").put("city", CITIES[random.nextInt(CITIES.length)]);
+
+    final ArrayNode sales = document.putArray("sales");
+    for (int i = 0; i < 3; i++) {
+      final ObjectNode sale = sales.addObject();
+      sale.put("city", CITIES[random.nextInt(CITIES.length)]);
+      final ArrayNode mediums = sale.putArray("medium");
+      for (final String medium : MEDIUMS) {
+        mediums.addObject().put("type", medium).put("volume", random.nextInt(1_000));
+      }
+    }
+
+    document.putArray(LABELS_PATH).add(label(random.nextInt(10)));
+
+    final ObjectNode attributes = document.putObject("attributes");
+    for (int i = 0; i < attributeCount; i++) {
+      attributes
+          .putObject("attribute_" + i)
+          .putObject("value")
+          .put("string", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+    }
+
+    return new JSONDocument(document);
+  }
+
+  static Document labelDocument(final int label) {
+    return new JSONDocument(label(label));
+  }
+
+  private static ObjectNode label(final int label) {
+    return MAPPER.createObjectNode().put("value", "label-" + label);
+  }
+}
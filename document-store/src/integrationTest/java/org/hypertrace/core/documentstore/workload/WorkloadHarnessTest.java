@@ -0,0 +1,76 @@
+package org.hypertrace.core.documentstore.workload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.utils.DatastoreContainers;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testcontainers.containers.GenericContainer;
+
+/**
+ * Runs the mixed workload against Mongo and Postgres, and logs the throughput and latency
+ * percentiles of each. It takes a while, so it only runs with <code>-Dworkload.enabled=true</code>.
+ * See {@link WorkloadConfig} for the other knobs.
+ */
+@EnabledIfSystemProperty(named = "workload.enabled", matches = "true")
+public class WorkloadHarnessTest {
+  private static final String MONGO_STORE = "Mongo";
+  private static final String POSTGRES_STORE = "Postgres";
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkloadHarnessTest.class);
+  private static final String COLLECTION_NAME = "workload";
+
+  private static Map<String, Datastore> datastoreMap;
+
+  private static GenericContainer<?> mongo;
+  private static GenericContainer<?> postgres;
+
+  @BeforeAll
+  public static void init() {
+    datastoreMap = new HashMap<>();
+    mongo = DatastoreContainers.startMongo();
+    datastoreMap.put(MONGO_STORE, DatastoreContainers.getMongoDatastore(mongo));
+
+    postgres = DatastoreContainers.startPostgres();
+    datastoreMap.put(POSTGRES_STORE, DatastoreContainers.getPostgresDatastore(postgres));
+  }
+
+  @AfterAll
+  public static void shutdown() {
+    mongo.stop();
+    postgres.stop();
+  }
+
+  private static Stream<Arguments> databaseContextProvider() {
+    return Stream.of(Arguments.of(MONGO_STORE), Arguments.of(POSTGRES_STORE));
+  }
+
+  @ParameterizedTest
+  @MethodSource("databaseContextProvider")
+  public void testMixedWorkload(String dataStoreName) throws Exception {
+    Datastore datastore = datastoreMap.get(dataStoreName);
+    datastore.deleteCollection(COLLECTION_NAME);
+    datastore.createCollection(COLLECTION_NAME, null);
+    Collection collection = datastore.getCollection(COLLECTION_NAME);
+
+    WorkloadRunner runner =
+        new WorkloadRunner(dataStoreName, collection, WorkloadConfig.fromSystemProperties());
+    runner.load();
+    WorkloadReport report = runner.run();
+    LOGGER.info("{}", report);
+
+    assertTrue(report.getOperationCount() > 0);
+    assertEquals(0, report.getErrorCount());
+  }
+}
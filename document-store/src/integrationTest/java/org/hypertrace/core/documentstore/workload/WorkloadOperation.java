@@ -0,0 +1,9 @@
+package org.hypertrace.core.documentstore.workload;
+
+public enum WorkloadOperation {
+  POINT_UPSERT,
+  BULK_UPSERT,
+  FILTERED_FIND,
+  AGGREGATE_WITH_UNNEST,
+  BULK_ARRAY_UPDATE
+}
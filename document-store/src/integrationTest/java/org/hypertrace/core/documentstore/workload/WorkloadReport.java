@@ -0,0 +1,104 @@
+package org.hypertrace.core.documentstore.workload;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.hypertrace.core.documentstore.metrics.LogLinearHistogram;
+
+/** The throughput and latency percentiles per operation of a workload run against a backend */
+public final class WorkloadReport {
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String backend;
+  private final WorkloadConfig config;
+  private final long elapsedNanos;
+  private final Map<WorkloadOperation, OperationStats> stats;
+
+  WorkloadReport(
+      final String backend,
+      final WorkloadConfig config,
+      final long elapsedNanos,
+      final Map<WorkloadOperation, OperationStats> stats) {
+    this.backend = backend;
+    this.config = config;
+    this.elapsedNanos = elapsedNanos;
+    this.stats = stats;
+  }
+
+  public String getBackend() {
+    return backend;
+  }
+
+  public long getOperationCount() {
+    return stats.values().stream().mapToLong(s -> s.latencyNanos.getCount()).sum();
+  }
+
+  public long getErrorCount() {
+    return stats.values().stream().mapToLong(s -> s.errors.sum()).sum();
+  }
+
+  /** @return The successful operations per second, across all the operations */
+  public double getThroughput() {
+    return getOperationCount() / (elapsedNanos / 1e9);
+  }
+
+  public LogLinearHistogram getLatencyNanos(final WorkloadOperation operation) {
+    return stats.get(operation).latencyNanos;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder =
+        new StringBuilder()
+            .append(String.format("Workload report for %s (%s)%n", backend, config))
+            .append(
+                String.format(
+                    "%-22s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                    "operation",
+                    "count",
+                    "errors",
+                    "ops/s",
+                    "mean(ms)",
+                    "p50(ms)",
+                    "p95(ms)",
+                    "p99(ms)",
+                    "max(ms)"));
+    for (final Map.Entry<WorkloadOperation, OperationStats> entry : stats.entrySet()) {
+      final LogLinearHistogram latency = entry.getValue().latencyNanos;
+      if (latency.getCount() == 0 && entry.getValue().errors.sum() == 0) {
+        continue;
+      }
+      builder.append(
+          String.format(
+              "%-22s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+              entry.getKey(),
+              latency.getCount(),
+              entry.getValue().errors.sum(),
+              latency.getCount() / (elapsedNanos / 1e9),
+              latency.getMean() / NANOS_PER_MILLI,
+              latency.getValueAtPercentile(50) / NANOS_PER_MILLI,
+              latency.getValueAtPercentile(95) / NANOS_PER_MILLI,
+              latency.getValueAtPercentile(99) / NANOS_PER_MILLI,
+              latency.getMax() / NANOS_PER_MILLI));
+    }
+    return builder
+        .append(
+            String.format(
+                "%-22s %10d %8d %10.1f%n",
+                "TOTAL", getOperationCount(), getErrorCount(), getThroughput()))
+        .toString();
+  }
+
+  static final class OperationStats {
+    private final LogLinearHistogram latencyNanos = new LogLinearHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    void recordSuccess(final long durationNanos) {
+      latencyNanos.record(durationNanos);
+    }
+
+    void recordFailure() {
+      errors.increment();
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package org.hypertrace.core.documentstore.workload;
+
+import static org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest.Operation.ADD;
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.AND;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GTE;
+import static org.hypertrace.core.documentstore.workload.WorkloadDocuments.CITIES;
+import static org.hypertrace.core.documentstore.workload.WorkloadDocuments.ITEMS;
+import static org.hypertrace.core.documentstore.workload.WorkloadDocuments.LABELS_PATH;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
+import org.hypertrace.core.documentstore.query.Pagination;
+import org.hypertrace.core.documentstore.query.Query;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs a YCSB-style mixed workload against a collection: the records are loaded first, and then
+ * {@link WorkloadConfig#getConcurrency()} workers issue operations picked according to the
+ * configured mix, on keys drawn from a zipfian distribution, until the configured duration elapses.
+ * The workers run closed-loop (i.e. each issues the next operation as soon as the previous one
+ * completes), so the throughput is bounded by the latency of the backend.
+ */
+public final class WorkloadRunner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WorkloadRunner.class);
+  private static final int LOAD_BATCH_SIZE = 500;
+  private static final int FIND_LIMIT = 20;
+  private static final int AGGREGATE_LIMIT = 100;
+
+  private final String backend;
+  private final Collection collection;
+  private final WorkloadConfig config;
+  private final int[] permutation;
+  private final int totalWeight;
+
+  public WorkloadRunner(
+      final String backend, final Collection collection, final WorkloadConfig config) {
+    this.backend = backend;
+    this.collection = collection;
+    this.config = config;
+    this.permutation =
+        ZipfianGenerator.permutation(config.getRecordCount(), new Random(config.getSeed()));
+    this.totalWeight = config.getMix().values().stream().mapToInt(Integer::intValue).sum();
+  }
+
+  /** Loads {@link WorkloadConfig#getRecordCount()} documents in bulk */
+  public void load() throws IOException {
+    final Random random = new Random(config.getSeed());
+    final Map<Key, Document> batch = new HashMap<>();
+    for (int i = 0; i < config.getRecordCount(); i++) {
+      batch.put(
+          WorkloadDocuments.key(i),
+          WorkloadDocuments.document(i, config.getAttributeCount(), random));
+      if (batch.size() == LOAD_BATCH_SIZE || i == config.getRecordCount() - 1) {
+        if (!collection.bulkUpsert(batch)) {
+          throw new IOException("Could not load the records into " + backend);
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  public WorkloadReport run() throws InterruptedException {
+    final Map<WorkloadOperation, WorkloadReport.OperationStats> stats =
+        new EnumMap<>(WorkloadOperation.class);
+    for (final WorkloadOperation operation : WorkloadOperation.values()) {
+      stats.put(operation, new WorkloadReport.OperationStats());
+    }
+
+    final ExecutorService executor = Executors.newFixedThreadPool(config.getConcurrency());
+    final long startNanos = System.nanoTime();
+    final long deadlineNanos = startNanos + config.getDuration().toNanos();
+    for (int i = 0; i < config.getConcurrency(); i++) {
+      final long workerSeed = config.getSeed() + i + 1;
+      executor.execute(() -> work(new Random(workerSeed), deadlineNanos, stats));
+    }
+
+    executor.shutdown();
+    if (!executor.awaitTermination(
+        config.getDuration().toMillis() + 60_000, TimeUnit.MILLISECONDS)) {
+      executor.shutdownNow();
+      throw new IllegalStateException("The workers did not finish in time");
+    }
+
+    return new WorkloadReport(backend, config, System.nanoTime() - startNanos, stats);
+  }
+
+  private void work(
+      final Random random,
+      final long deadlineNanos,
+      final Map<WorkloadOperation, WorkloadReport.OperationStats> stats) {
+    final ZipfianGenerator keys =
+        new ZipfianGenerator(config.getRecordCount(), config.getSkew(), permutation, random);
+
+    while (System.nanoTime() < deadlineNanos) {
+      final WorkloadOperation operation = chooseOperation(random);
+      final WorkloadReport.OperationStats operationStats = stats.get(operation);
+      final long start = System.nanoTime();
+      try {
+        execute(operation, keys, random);
+        operationStats.recordSuccess(System.nanoTime() - start);
+      } catch (final Exception e) {
+        operationStats.recordFailure();
+        LOGGER.warn("{} failed on {}", operation, backend, e);
+      }
+    }
+  }
+
+  private WorkloadOperation chooseOperation(final Random random) {
+    int pick = random.nextInt(totalWeight);
+    for (final Map.Entry<WorkloadOperation, Integer> entry : config.getMix().entrySet()) {
+      pick -= entry.getValue();
+      if (pick < 0) {
+        return entry.getKey();
+      }
+    }
+    throw new IllegalStateException("Unreachable");
+  }
+
+  private void execute(
+      final WorkloadOperation operation, final ZipfianGenerator keys, final Random random)
+      throws Exception {
+    switch (operation) {
+      case POINT_UPSERT:
+        final int index = keys.next();
+        collection.upsert(
+            WorkloadDocuments.key(index),
+            WorkloadDocuments.document(index, config.getAttributeCount(), random));
+        break;
+
+      case BULK_UPSERT:
+        final Map<Key, Document> documents = new HashMap<>();
+        for (int i = 0; i < config.getBulkSize(); i++) {
+          final int bulkIndex = keys.next();
+          documents.put(
+              WorkloadDocuments.key(bulkIndex),
+              WorkloadDocuments.document(bulkIndex, config.getAttributeCount(), random));
+        }
+        // The backends report the failures of the bulk upserts (e.g. deadlocks) with false
+        if (!collection.bulkUpsert(documents)) {
+          throw new IOException("Could not upsert the documents into " + backend);
+        }
+        break;
+
+      case FILTERED_FIND:
+        drain(collection.find(filteredFindQuery(random)));
+        break;
+
+      case AGGREGATE_WITH_UNNEST:
+        drain(collection.aggregate(unnestQuery(random)));
+        break;
+
+      case BULK_ARRAY_UPDATE:
+        final Set<Key> arrayKeys = new HashSet<>();
+        for (int i = 0; i < config.getBulkSize(); i++) {
+          arrayKeys.add(WorkloadDocuments.key(keys.next()));
+        }
+        collection.bulkOperationOnArrayValue(
+            new BulkArrayValueUpdateRequest(
+                arrayKeys,
+                LABELS_PATH,
+                ADD,
+                List.of(WorkloadDocuments.labelDocument(random.nextInt(10)))));
+        break;
+
+      default:
+        throw new UnsupportedOperationException("Unknown operation: " + operation);
+    }
+  }
+
+  private static Query filteredFindQuery(final Random random) {
+    return Query.builder()
+        .addSelection(IdentifierExpression.of("item"))
+        .addSelection(IdentifierExpression.of("price"))
+        .addSelection(IdentifierExpression.of("props.seller.name"))
+        .setFilter(
+            LogicalExpression.builder()
+                .operator(AND)
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("item"),
+                        EQ,
+                        ConstantExpression.of(ITEMS[random.nextInt(ITEMS.length)])))
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("price"),
+                        GTE,
+                        ConstantExpression.of(random.nextInt(100))))
+                .build())
+        .setPagination(Pagination.builder().offset(0).limit(FIND_LIMIT).build())
+        .build();
+  }
+
+  private static Query unnestQuery(final Random random) {
+    return Query.builder()
+        .addSelection(IdentifierExpression.of("item"))
+        .addSelection(IdentifierExpression.of("sales.city"))
+        .addSelection(IdentifierExpression.of("sales.medium.type"))
+        .addSelection(IdentifierExpression.of("sales.medium.volume"))
+        .setFilter(
+            RelationalExpression.of(
+                IdentifierExpression.of("item"),
+                EQ,
+                ConstantExpression.of(ITEMS[random.nextInt(ITEMS.length)])))
+        .addFromClause(
+            UnnestExpression.builder()
+                .identifierExpression(IdentifierExpression.of("sales"))
+                .preserveNullAndEmptyArrays(false)
+                .filterTypeExpression(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("sales.city"),
+                        EQ,
+                        ConstantExpression.of(CITIES[random.nextInt(CITIES.length)])))
+                .build())
+        .addFromClause(UnnestExpression.of(IdentifierExpression.of("sales.medium"), false))
+        .setPagination(Pagination.builder().offset(0).limit(AGGREGATE_LIMIT).build())
+        .build();
+  }
+
+  private static void drain(final CloseableIterator<Document> iterator) throws IOException {
+    try (iterator) {
+      while (iterator.hasNext()) {
+        iterator.next();
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.hypertrace.core.documentstore.workload;
+
+import java.util.Random;
+
+/**
+ * Draws item indexes in <code>[0, itemCount)</code> following a zipfian distribution, as described
+ * in "Quickly Generating Billion-Record Synthetic Databases" (Gray et al.) and used by YCSB. The
+ * popular items are scattered over the key space through a fixed permutation, so that the hot keys
+ * are not clustered together.
+ *
+ * <p>Instances are not thread-safe. Create one per worker thread.
+ */
+final class ZipfianGenerator {
+  private final int itemCount;
+  private final double theta;
+  private final double zetaN;
+  private final double alpha;
+  private final double eta;
+  private final int[] permutation;
+  private final Random random;
+
+  /**
+   * @param theta The skew. 0 yields a uniform distribution.
+   * @param permutation The mapping from the popularity rank to the item index
+   */
+  ZipfianGenerator(
+      final int itemCount, final double theta, final int[] permutation, final Random random) {
+    this.itemCount = itemCount;
+    this.theta = theta;
+    this.permutation = permutation;
+    this.random = random;
+    this.zetaN = zeta(itemCount, theta);
+    this.alpha = 1.0 / (1.0 - theta);
+    this.eta = (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+  }
+
+  static int[] permutation(final int itemCount, final Random random) {
+    final int[] permutation = new int[itemCount];
+    for (int i = 0; i < itemCount; i++) {
+      permutation[i] = i;
+    }
+    for (int i = itemCount - 1; i > 0; i--) {
+      final int j = random.nextInt(i + 1);
+      final int swap = permutation[i];
+      permutation[i] = permutation[j];
+      permutation[j] = swap;
+    }
+    return permutation;
+  }
+
+  int next() {
+    return permutation[nextRank()];
+  }
+
+  int nextRank() {
+    if (theta == 0) {
+      return random.nextInt(itemCount);
+    }
+
+    final double u = random.nextDouble();
+    final double uz = u * zetaN;
+    if (uz < 1.0) {
+      return 0;
+    }
+    if (uz < 1.0 + Math.pow(0.5, theta)) {
+      return 1;
+    }
+    return Math.min(itemCount - 1, (int) (itemCount * Math.pow(eta * u - eta + 1, alpha)));
+  }
+
+  private static double zeta(final int n, final double theta) {
+    double sum = 0;
+    for (int i = 1; i <= n; i++) {
+      sum += 1 / Math.pow(i, theta);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,417 @@
+package org.hypertrace.core.documentstore;
+
+import com.google.common.base.Preconditions;
+import com.typesafe.config.Config;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The asynchronous version of a {@link Collection}: each operation runs on an I/O thread of the
+ * datastore, and returns a future completed with its result, or exceptionally with the exception it
+ * threw. The number of I/O threads bounds the number of operations running at once, the others
+ * being queued, so that the callers can have many operations in flight without blocking threads of
+ * their own.
+ *
+ * <p>The results of the queries are read entirely before their futures are completed. The
+ * operations streaming their results ({@link Collection#parallelScan}, {@link Collection#watch} and
+ * {@link Collection#changesSince}) are only available on the blocking handle.
+ */
+public class AsyncCollection {
+  /** The config of the number of operations of a datastore running at once */
+  public static final String ASYNC_THREADS_CONFIG = "asyncThreads";
+  /**
+   * The config running each operation on a virtual thread of its own (from Java 21), rather than on
+   * a pool of platform threads
+   */
+  public static final String VIRTUAL_THREADS_CONFIG = "virtualThreads";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AsyncCollection.class);
+  private static final int DEFAULT_ASYNC_THREADS = 16;
+  private static final AtomicInteger EXECUTORS = new AtomicInteger();
+
+  private final CollectionRunner runner;
+  private final Executor executor;
+
+  /**
+   * @param collection The collection the operations run on, which must be thread-safe
+   * @param executor The executor running the operations
+   */
+  public AsyncCollection(final Collection collection, final Executor executor) {
+    this(
+        new CollectionRunner() {
+          @Override
+          public <T> T run(final Operation<T> operation) throws Exception {
+            return operation.apply(collection);
+          }
+        },
+        executor);
+  }
+
+  /**
+   * @param runner Runs each operation on a collection, e.g. one bound to a pooled connection
+   * @param executor The executor running the operations
+   */
+  public AsyncCollection(final CollectionRunner runner, final Executor executor) {
+    this.runner = runner;
+    this.executor = executor;
+  }
+
+  /**
+   * Creates the executor of the operations of a datastore, running at most {@link
+   * #ASYNC_THREADS_CONFIG} operations at once: on a pool of daemon platform threads, or with {@link
+   * #VIRTUAL_THREADS_CONFIG} on a virtual thread per operation, the operations beyond the limit
+   * waiting for a permit on their virtual threads. The platform threads are used when the runtime
+   * has no virtual threads.
+   */
+  public static ExecutorService newExecutor(final Config config, final String name) {
+    final int threads = getConcurrency(config);
+    Preconditions.checkArgument(threads > 0, "%s must be positive", ASYNC_THREADS_CONFIG);
+
+    if (config.hasPath(VIRTUAL_THREADS_CONFIG) && config.getBoolean(VIRTUAL_THREADS_CONFIG)) {
+      final Optional<ExecutorService> virtualThreads = newVirtualThreadPerTaskExecutor();
+      if (virtualThreads.isPresent()) {
+        return new BoundedExecutorService(virtualThreads.get(), threads);
+      }
+      LOGGER.warn("Virtual threads are not available, running {} on platform threads", name);
+    }
+
+    final String prefix = name + "-async-" + EXECUTORS.incrementAndGet() + "-";
+    final AtomicInteger count = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        threads,
+        runnable -> {
+          final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /** @return The number of operations running at once, as configured */
+  public static int getConcurrency(final Config config) {
+    return config.hasPath(ASYNC_THREADS_CONFIG)
+        ? config.getInt(ASYNC_THREADS_CONFIG)
+        : DEFAULT_ASYNC_THREADS;
+  }
+
+  /** See {@link Collection#upsert(Key, Document)} */
+  public CompletableFuture<Boolean> upsert(final Key key, final Document document) {
+    return run(collection -> collection.upsert(key, document));
+  }
+
+  /** See {@link Collection#upsertAndReturn(Key, Document)} */
+  public CompletableFuture<Document> upsertAndReturn(final Key key, final Document document) {
+    return run(collection -> collection.upsertAndReturn(key, document));
+  }
+
+  /** See {@link Collection#updateSubDoc(Key, String, Document)} */
+  public CompletableFuture<Boolean> updateSubDoc(
+      final Key key, final String subDocPath, final Document subDocument) {
+    return run(collection -> collection.updateSubDoc(key, subDocPath, subDocument));
+  }
+
+  /** See {@link Collection#bulkUpdateSubDocs(Map)} */
+  public CompletableFuture<BulkUpdateResult> bulkUpdateSubDocs(
+      final Map<Key, Map<String, Document>> documents) {
+    return run(collection -> collection.bulkUpdateSubDocs(documents));
+  }
+
+  /** See {@link Collection#bulkOperationOnArrayValue(BulkArrayValueUpdateRequest)} */
+  public CompletableFuture<BulkUpdateResult> bulkOperationOnArrayValue(
+      final BulkArrayValueUpdateRequest request) {
+    return run(collection -> collection.bulkOperationOnArrayValue(request));
+  }
+
+  /** See {@link Collection#search(Query)} */
+  public CompletableFuture<List<Document>> search(final Query query) {
+    return run(collection -> readAll(collection.search(query)));
+  }
+
+  /** See {@link Collection#get(Key)} */
+  public CompletableFuture<Optional<Document>> get(final Key key) {
+    return run(collection -> collection.get(key));
+  }
+
+  /** See {@link Collection#getAll(java.util.Collection)} */
+  public CompletableFuture<Map<Key, Document>> getAll(final java.util.Collection<Key> keys) {
+    return run(collection -> collection.getAll(keys));
+  }
+
+  /** See {@link Collection#find(org.hypertrace.core.documentstore.query.Query)} */
+  public CompletableFuture<List<Document>> find(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return run(collection -> readAll(collection.find(query)));
+  }
+
+  /** See {@link Collection#aggregate(org.hypertrace.core.documentstore.query.Query)} */
+  public CompletableFuture<List<Document>> aggregate(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return run(collection -> readAll(collection.aggregate(query)));
+  }
+
+  /** See {@link Collection#executeBatch(List)} */
+  public CompletableFuture<List<List<Document>>> executeBatch(
+      final List<org.hypertrace.core.documentstore.query.Query> queries) {
+    return run(
+        collection -> {
+          final List<CloseableIterator<Document>> iterators = collection.executeBatch(queries);
+          final List<List<Document>> results = new ArrayList<>();
+          try {
+            for (final CloseableIterator<Document> iterator : iterators) {
+              results.add(readAll(iterator));
+            }
+          } finally {
+            for (final CloseableIterator<Document> iterator : iterators) {
+              iterator.close();
+            }
+          }
+          return results;
+        });
+  }
+
+  /** See {@link Collection#delete(Key)} */
+  public CompletableFuture<Boolean> delete(final Key key) {
+    return run(collection -> collection.delete(key));
+  }
+
+  /** See {@link Collection#delete(Filter)} */
+  public CompletableFuture<Boolean> delete(final Filter filter) {
+    return run(collection -> collection.delete(filter));
+  }
+
+  /** See {@link Collection#delete(Set)} */
+  public CompletableFuture<BulkDeleteResult> delete(final Set<Key> keys) {
+    return run(collection -> collection.delete(keys));
+  }
+
+  /** See {@link Collection#deleteSubDoc(Key, String)} */
+  public CompletableFuture<Boolean> deleteSubDoc(final Key key, final String subDocPath) {
+    return run(collection -> collection.deleteSubDoc(key, subDocPath));
+  }
+
+  /** See {@link Collection#deleteAll()} */
+  public CompletableFuture<Boolean> deleteAll() {
+    return run(Collection::deleteAll);
+  }
+
+  /** See {@link Collection#count()} */
+  public CompletableFuture<Long> count() {
+    return run(Collection::count);
+  }
+
+  /** See {@link Collection#total(Query)} */
+  public CompletableFuture<Long> total(final Query query) {
+    return run(collection -> collection.total(query));
+  }
+
+  /** See {@link Collection#count(org.hypertrace.core.documentstore.query.Query)} */
+  public CompletableFuture<Long> count(final org.hypertrace.core.documentstore.query.Query query) {
+    return run(collection -> collection.count(query));
+  }
+
+  /** See {@link Collection#estimatedCount()} */
+  public CompletableFuture<Long> estimatedCount() {
+    return run(Collection::estimatedCount);
+  }
+
+  /** See {@link Collection#estimatedCount(org.hypertrace.core.documentstore.query.Query)} */
+  public CompletableFuture<Long> estimatedCount(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return run(collection -> collection.estimatedCount(query));
+  }
+
+  /** See {@link Collection#bulkUpsert(Map)} */
+  public CompletableFuture<Boolean> bulkUpsert(final Map<Key, Document> documents) {
+    return run(collection -> collection.bulkUpsert(documents));
+  }
+
+  /** See {@link Collection#bulkUpsertAndReturnOlderDocuments(Map)} */
+  public CompletableFuture<List<Document>> bulkUpsertAndReturnOlderDocuments(
+      final Map<Key, Document> documents) {
+    return run(collection -> readAll(collection.bulkUpsertAndReturnOlderDocuments(documents)));
+  }
+
+  /** See {@link Collection#drop()} */
+  public CompletableFuture<Void> drop() {
+    return run(
+        collection -> {
+          collection.drop();
+          return null;
+        });
+  }
+
+  /** See {@link Collection#create(Key, Document)} */
+  public CompletableFuture<CreateResult> create(final Key key, final Document document) {
+    return run(collection -> collection.create(key, document));
+  }
+
+  /** See {@link Collection#bulkUpdate(List)} */
+  public CompletableFuture<BulkUpdateResult> bulkUpdate(
+      final List<BulkUpdateRequest> bulkUpdateRequests) {
+    return run(collection -> collection.bulkUpdate(bulkUpdateRequests));
+  }
+
+  /** See {@link Collection#update(Key, Document, Filter)} */
+  public CompletableFuture<UpdateResult> update(
+      final Key key, final Document document, final Filter condition) {
+    return run(collection -> collection.update(key, document, condition));
+  }
+
+  /** See {@link Collection#getIfModified(Map)} */
+  public CompletableFuture<Map<Key, VersionedDocument>> getIfModified(
+      final Map<Key, Instant> updateTimes) {
+    return run(collection -> collection.getIfModified(updateTimes));
+  }
+
+  /** See {@link Collection#exportTo(OutputStream, LongConsumer)} */
+  public CompletableFuture<Long> exportTo(final OutputStream output, final LongConsumer progress) {
+    return run(collection -> collection.exportTo(output, progress));
+  }
+
+  /** See {@link Collection#importFrom(InputStream, LongConsumer)} */
+  public CompletableFuture<Long> importFrom(final InputStream input, final LongConsumer progress) {
+    return run(collection -> collection.importFrom(input, progress));
+  }
+
+  private <T> CompletableFuture<T> run(final Operation<T> operation) {
+    final OperationTask<T> task = new OperationTask<>(operation);
+    try {
+      executor.execute(task);
+    } catch (final RejectedExecutionException e) {
+      task.completeExceptionally(e);
+    }
+    return task;
+  }
+
+  private static List<Document> readAll(final CloseableIterator<Document> iterator)
+      throws IOException {
+    try (iterator) {
+      final List<Document> documents = new ArrayList<>();
+      while (iterator.hasNext()) {
+        documents.add(iterator.next());
+      }
+      return documents;
+    }
+  }
+
+  /** Looked up reflectively, the library being built for older runtimes */
+  private static Optional<ExecutorService> newVirtualThreadPerTaskExecutor() {
+    try {
+      return Optional.of(
+          (ExecutorService)
+              Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+    } catch (final ReflectiveOperationException e) {
+      return Optional.empty();
+    }
+  }
+
+  /** An operation on a collection */
+  @FunctionalInterface
+  public interface Operation<T> {
+    T apply(Collection collection) throws Exception;
+  }
+
+  /** Runs the operations on a collection */
+  public interface CollectionRunner {
+    <T> T run(Operation<T> operation) throws Exception;
+  }
+
+  /** Completes with the result of the operation, or is cancelled if it cannot run */
+  private class OperationTask<T> extends CompletableFuture<T> implements Runnable {
+    private final Operation<T> operation;
+
+    private OperationTask(final Operation<T> operation) {
+      this.operation = operation;
+    }
+
+    @Override
+    public void run() {
+      try {
+        complete(runner.run(operation));
+      } catch (final Throwable t) {
+        completeExceptionally(t);
+      }
+    }
+  }
+
+  /**
+   * Bounds the number of tasks running at once on an executor starting a thread per task: the tasks
+   * beyond the limit wait for a permit on their own threads, which is cheap for the virtual ones.
+   */
+  private static class BoundedExecutorService extends AbstractExecutorService {
+    private final ExecutorService delegate;
+    private final Semaphore permits;
+
+    private BoundedExecutorService(final ExecutorService delegate, final int maxRunning) {
+      this.delegate = delegate;
+      this.permits = new Semaphore(maxRunning, true);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      delegate.execute(
+          () -> {
+            try {
+              permits.acquire();
+            } catch (final InterruptedException e) {
+              // Shut down while waiting: the task does not run
+              if (command instanceof Future) {
+                ((Future<?>) command).cancel(false);
+              }
+              Thread.currentThread().interrupt();
+              return;
+            }
+            try {
+              command.run();
+            } finally {
+              permits.release();
+            }
+          });
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit)
+        throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package org.hypertrace.core.documentstore;
+
+import java.util.Optional;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** A change made to a document of a collection, as reported by {@link Collection#watch} */
+@Value
+@Builder
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ChangeEvent {
+  public enum Type {
+    INSERT,
+    UPDATE,
+    DELETE,
+  }
+
+  @NonNull Type type;
+
+  /** The string form of the {@link Key} of the document */
+  @NonNull String key;
+
+  /**
+   * The document after the change, if requested with {@link WatchOptions#isFullDocument()}. Absent
+   * for the deletions, and for the documents deleted before the change was read.
+   */
+  Document document;
+
+  /**
+   * An opaque token to resume watching right after this change (see {@link
+   * WatchOptions#getResumeAfter()})
+   */
+  @NonNull String resumeToken;
+
+  public Optional<Document> getDocument() {
+    return Optional.ofNullable(document);
+  }
+}
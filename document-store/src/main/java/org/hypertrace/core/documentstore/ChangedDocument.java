@@ -0,0 +1,20 @@
+package org.hypertrace.core.documentstore;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+/** A document changed after a {@link Watermark}, as read by {@link Collection#changesSince} */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ChangedDocument {
+  @NonNull Document document;
+
+  /** The position of this change, to read the next changes from */
+  @NonNull Watermark watermark;
+
+  public static ChangedDocument of(final Document document, final Watermark watermark) {
+    return new ChangedDocument(document, watermark);
+  }
+}
@@ -1,9 +1,16 @@
 package org.hypertrace.core.documentstore;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
 
 /** Interface spec for common operations on a collection of documents */
 public interface Collection {
@@ -63,6 +70,23 @@ public interface Collection {
    */
   CloseableIterator<Document> search(Query query);
 
+  /**
+   * Reads the document with the given key
+   *
+   * @param key Unique key of the document in the collection
+   * @return The document, or empty if there is none with the key
+   */
+  Optional<Document> get(Key key);
+
+  /**
+   * Reads the documents with the given keys, in as few round trips as possible: the keys are looked
+   * up by batches of up to {@link #MAX_KEYS_PER_READ}.
+   *
+   * @param keys The keys of the documents to read
+   * @return The documents found, by key, in the order of the given keys
+   */
+  Map<Key, Document> getAll(java.util.Collection<Key> keys);
+
   /**
    * Find the documents matching the query. Note that this method is a generic version of {@link
    * #search(Query)}
@@ -72,6 +96,20 @@ public interface Collection {
    */
   CloseableIterator<Document> find(final org.hypertrace.core.documentstore.query.Query query);
 
+  /**
+   * Splits the scan of the documents matching the query into independent partitions, covering
+   * disjoint ranges of the document keys, to be consumed concurrently (e.g. one thread each). Each
+   * partition runs its own query, streamed on its own connection where the backend allows it. The
+   * sorts apply within each partition.
+   *
+   * @param query The query definition to find, without aggregations or pagination
+   * @param partitions The maximum number of partitions, fewer being returned for small collections
+   *     or beyond the connections the backend lends to the scans
+   * @return The {@link CloseableIterator}s of the partitions, to be closed separately
+   */
+  List<CloseableIterator<Document>> parallelScan(
+      final org.hypertrace.core.documentstore.query.Query query, int partitions);
+
   /**
    * Aggregate the documents conforming to the query specification.
    *
@@ -80,6 +118,40 @@ public interface Collection {
    */
   CloseableIterator<Document> aggregate(final org.hypertrace.core.documentstore.query.Query query);
 
+  /**
+   * Publishes the documents matching the query as they are requested by the subscriber, for
+   * streaming large results with backpressure. See {@link DocumentPublisher}.
+   *
+   * @param query The query definition to find
+   * @return A publisher running the query for each subscriber
+   */
+  Flow.Publisher<Document> findPublisher(org.hypertrace.core.documentstore.query.Query query);
+
+  /**
+   * Publishes the results of the aggregation as they are requested by the subscriber. See {@link
+   * DocumentPublisher}.
+   *
+   * @param query The aggregate query specification
+   * @return A publisher running the query for each subscriber
+   */
+  Flow.Publisher<Document> aggregatePublisher(org.hypertrace.core.documentstore.query.Query query);
+
+  /**
+   * Runs several independent queries (e.g. those filling a dashboard page) in as few round trips as
+   * the backend allows, each one as with {@link
+   * #aggregate(org.hypertrace.core.documentstore.query.Query)}. Postgres sends all the statements
+   * in a single batch, while MongoDB runs the aggregations and the paginated queries sharing the
+   * same filter as a single aggregation, matching the documents once: the other queries, whose
+   * results could exceed the 16MB of the single document holding those of the aggregation, run
+   * separately. The counts can be batched as {@code COUNT} aggregations.
+   *
+   * @param queries The queries to run
+   * @return The {@link CloseableIterator}s of the results of each query, in the order of the
+   *     queries, to be closed separately
+   */
+  List<CloseableIterator<Document>> executeBatch(
+      List<org.hypertrace.core.documentstore.query.Query> queries);
+
   /**
    * Delete the document with the given key.
    *
@@ -137,6 +209,25 @@ public interface Collection {
    */
   long count(final org.hypertrace.core.documentstore.query.Query query);
 
+  /**
+   * Estimates the number of documents in the collection from the statistics of the database,
+   * without scanning it: much cheaper than {@link #count()} on large collections, but only as fresh
+   * as the statistics.
+   *
+   * @return The estimated number of documents in the collection
+   */
+  long estimatedCount();
+
+  /**
+   * Estimates the result-set size of executing the given query, see {@link
+   * #count(org.hypertrace.core.documentstore.query.Query)}, from the row estimate of the query
+   * planner where the database has one, and by counting otherwise.
+   *
+   * @param query The query definition whose result-set size is to be estimated
+   * @return The estimated number of documents conforming to the input query
+   */
+  long estimatedCount(final org.hypertrace.core.documentstore.query.Query query);
+
   /**
    * @param documents to be upserted in bulk
    * @return true if the operation succeeded
@@ -182,5 +273,83 @@ public interface Collection {
    */
   UpdateResult update(Key key, Document document, Filter condition) throws IOException;
 
+  /**
+   * Watches the changes made to the documents of the collection. The iterator blocks until the next
+   * change is available, and ends once closed (possibly from another thread). The changes are
+   * delivered at least once, in the order they were made to each document.
+   *
+   * @param filter The filter the changed documents must match, or null for all the changes. The
+   *     deletions are always reported, as the deleted documents cannot be matched.
+   * @param options The options of the watch
+   * @return The change events
+   */
+  CloseableIterator<ChangeEvent> watch(FilterTypeExpression filter, WatchOptions options);
+
+  /**
+   * Reads the documents updated after a watermark, in the order of the time of their last update
+   * and then of their keys. The documents are read in batches, each one resuming after the last
+   * document of the previous one, so the iteration is cheap at any depth. The iterator ends with
+   * the last document updated when it is reached.
+   *
+   * <p>The deletions are not reported, as the deleted documents are gone: see {@link #watch} for
+   * them. The writes are timestamped before they are committed, so a slow write may be timestamped
+   * before a document already read. On Postgres, the documents updated since the start of the
+   * oldest transaction still running on the database are held back until it ends, so that none is
+   * skipped: a long-running transaction delays the changes, whichever tables it writes. The
+   * transactions on the other databases of the cluster, and those of the sessions whose activity
+   * the user cannot see (without the pg_read_all_stats role), are not waited for. On the other
+   * stores, consumers needing every change should read again from a watermark a little older than
+   * the last one they processed, the documents being idempotent.
+   *
+   * @param watermark The position to read from, e.g. {@link Watermark#EARLIEST} or the {@link
+   *     ChangedDocument#getWatermark()} of the last document processed
+   * @param batchSize The number of documents read per round trip
+   * @return The documents updated after the watermark, along with their own watermarks
+   */
+  CloseableIterator<ChangedDocument> changesSince(Watermark watermark, int batchSize);
+
+  /**
+   * Reads the documents with the given keys whose update times differ from the given times. Meant
+   * to revalidate the copies of the documents held by the clients cheaply: the update times of all
+   * the documents are checked in a single query, and only the documents updated since are read. The
+   * times are compared for equality rather than order, so that the documents overwritten with an
+   * older update time (e.g. by a client whose clock is behind) are read too, while those
+   * overwritten at the very same update time (to the millisecond on MongoDB) are not.
+   *
+   * @param updateTimes The keys of the documents, with the time of the last update of the copies
+   *     held by the caller, or {@link Instant#EPOCH} to read the documents regardless
+   * @return The state of the documents found, by key
+   */
+  Map<Key, VersionedDocument> getIfModified(Map<Key, Instant> updateTimes);
+
+  /**
+   * Writes all the documents of the collection to the stream as newline-delimited JSON: one
+   * document per line, as stored, with its key in the {@code _id} field. The documents are streamed
+   * from the database, so the export holds a bounded number of documents in memory whatever the
+   * size of the collection. The output format is the same for all the backends.
+   *
+   * @param output The stream to write to, left open
+   * @param progress Called with the number of documents written so far, periodically and once done
+   * @return The number of documents written
+   */
+  long exportTo(OutputStream output, LongConsumer progress) throws IOException;
+
+  /**
+   * Reads newline-delimited JSON documents (as written by {@link #exportTo}) from the stream and
+   * inserts them in batches, so the import holds a single batch in memory whatever the size of the
+   * stream. The documents whose keys exist already in the collection are skipped, the import being
+   * meant to load a collection, or to resume an interrupted load. The imported documents are
+   * timestamped as new ones.
+   *
+   * @param input The stream to read from, left open
+   * @param progress Called with the number of documents read so far, after each batch
+   * @return The number of documents inserted
+   * @throws IOException if the stream cannot be read, or a line is not a JSON object with a key
+   */
+  long importFrom(InputStream input, LongConsumer progress) throws IOException;
+
   String UNSUPPORTED_QUERY_OPERATION = "Query operation is not supported";
+
+  /** The maximum number of keys looked up by a single query of {@link #getAll} */
+  int MAX_KEYS_PER_READ = 1000;
 }
@@ -16,5 +16,57 @@ public interface Datastore {
 
   Collection getCollection(String collectionName);
 
+  /**
+   * Returns a handle on a collection whose writes are made with the given options, e.g. to trade
+   * the durability of telemetry-like writes for their throughput. The handles of a collection with
+   * different options can be used side by side.
+   */
+  Collection getCollection(String collectionName, WriteOptions writeOptions);
+
+  /**
+   * Returns the asynchronous version of {@link #getCollection(String)}, whose operations run on a
+   * pool of I/O threads owned by the datastore. The pool is sized with the {@link
+   * AsyncCollection#ASYNC_THREADS_CONFIG} config, bounding the operations running at once.
+   */
+  AsyncCollection getAsyncCollection(String collectionName);
+
+  /**
+   * Runs the work in a transaction, committed once the work completes: grouping many small writes
+   * in a transaction pays a single commit for them, and makes them atomic. The transaction is
+   * rolled back if the work throws, the exception being rethrown.
+   *
+   * @return The result of the work
+   */
+  <T> T inTransaction(Transaction.Work<T> work) throws Exception;
+
+  /**
+   * Runs the work in a transaction committed with the durability of the given options, see {@link
+   * #inTransaction(Transaction.Work)}
+   */
+  <T> T inTransaction(WriteOptions writeOptions, Transaction.Work<T> work) throws Exception;
+
+  /**
+   * Registers a query as a materialized view of a collection: its results are computed once and
+   * stored, to be read with {@link #getCollection(String)} like those of any collection until the
+   * view is refreshed. Registering an existing view again keeps its contents (and, on Postgres, its
+   * definition), so that the views can be registered on startup: delete the view with {@link
+   * #deleteCollection(String)} to change its query.
+   *
+   * @param viewName The name of the view, read as a collection
+   * @param collectionName The collection queried
+   * @param query The query computing the documents of the view, usually an aggregation
+   * @return true if the view was created, or already existed
+   */
+  boolean createMaterializedView(
+      String viewName, String collectionName, org.hypertrace.core.documentstore.query.Query query);
+
+  /**
+   * Computes the documents of a materialized view again, from the current documents of its
+   * collection. The view remains readable during the refresh.
+   *
+   * @return true if the view was refreshed
+   */
+  boolean refreshMaterializedView(String viewName);
+
   boolean healthCheck();
 }
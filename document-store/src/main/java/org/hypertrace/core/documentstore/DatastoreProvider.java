@@ -4,6 +4,8 @@ import com.typesafe.config.Config;
 import java.lang.reflect.Constructor;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import org.hypertrace.core.documentstore.embedded.EmbeddedDatastore;
+import org.hypertrace.core.documentstore.memory.InMemoryDatastore;
 import org.hypertrace.core.documentstore.mongo.MongoDatastore;
 import org.hypertrace.core.documentstore.postgres.PostgresDatastore;
 
@@ -14,6 +16,8 @@ public class DatastoreProvider {
   static {
     DatastoreProvider.register("Mongo", MongoDatastore.class);
     DatastoreProvider.register("Postgres", PostgresDatastore.class);
+    DatastoreProvider.register("InMemory", InMemoryDatastore.class);
+    DatastoreProvider.register("Embedded", EmbeddedDatastore.class);
   }
 
   /**
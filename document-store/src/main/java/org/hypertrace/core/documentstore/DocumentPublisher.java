@@ -0,0 +1,179 @@
+package org.hypertrace.core.documentstore;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the results of a query, read from a {@link CloseableIterator} as the subscriber
+ * requests them. Each subscriber runs the query again, on its own cursor, opened on its first
+ * request: the number of documents first requested sets the number of documents fetched per round
+ * trip (up to {@link #MAX_BATCH_SIZE}), so that the database is read no faster than the subscriber
+ * consumes. Cancelling the subscription closes the cursor.
+ *
+ * <p>The cursors are read on the threads of an executor, and only while documents are requested, so
+ * that neither the subscribers nor the requesting threads block on the database. By default, the
+ * executor is a pool of {@link #DEFAULT_THREADS} threads shared by the publishers: the
+ * subscriptions with documents requested beyond it wait for a thread.
+ */
+public class DocumentPublisher implements Flow.Publisher<Document> {
+  /** The maximum number of documents fetched per round trip */
+  public static final int MAX_BATCH_SIZE = 1000;
+  /** The number of threads reading the cursors of the publishers using the default executor */
+  public static final int DEFAULT_THREADS = 16;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DocumentPublisher.class);
+  private static final AtomicInteger THREADS = new AtomicInteger();
+  private static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newFixedThreadPool(
+          DEFAULT_THREADS,
+          runnable -> {
+            final Thread thread =
+                new Thread(runnable, "document-publisher-" + THREADS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final IntFunction<CloseableIterator<Document>> cursorOpener;
+  private final Executor executor;
+
+  /** @param cursorOpener Runs the query, given the number of documents to fetch per round trip */
+  public DocumentPublisher(final IntFunction<CloseableIterator<Document>> cursorOpener) {
+    this(cursorOpener, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * @param cursorOpener Runs the query, given the number of documents to fetch per round trip
+   * @param executor Reads the cursors
+   */
+  public DocumentPublisher(
+      final IntFunction<CloseableIterator<Document>> cursorOpener, final Executor executor) {
+    this.cursorOpener = cursorOpener;
+    this.executor = executor;
+  }
+
+  /** @return A publisher of the same documents, read through the decorated cursors */
+  public DocumentPublisher decorate(final UnaryOperator<CloseableIterator<Document>> decorator) {
+    return new DocumentPublisher(
+        batchSize -> decorator.apply(cursorOpener.apply(batchSize)), executor);
+  }
+
+  @Override
+  public void subscribe(final Flow.Subscriber<? super Document> subscriber) {
+    Objects.requireNonNull(subscriber, "subscriber");
+    subscriber.onSubscribe(new CursorSubscription(subscriber));
+  }
+
+  /**
+   * Emits the documents on the executor, one drain at a time: the requests and cancellations made
+   * while draining are picked by the running drain rather than scheduling another.
+   */
+  private class CursorSubscription implements Flow.Subscription, Runnable {
+    private final Flow.Subscriber<? super Document> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+    private volatile boolean cancelled;
+    private volatile Throwable invalidRequest;
+
+    // Confined to the draining thread
+    private CloseableIterator<Document> cursor;
+    private boolean terminated;
+
+    private CursorSubscription(final Flow.Subscriber<? super Document> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        invalidRequest =
+            new IllegalArgumentException("The number of requested documents must be positive");
+      } else {
+        // Saturated at an unbounded demand
+        demand.accumulateAndGet(
+            n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+      }
+      scheduleDrain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      scheduleDrain();
+    }
+
+    @Override
+    public void run() {
+      int missed = 1;
+      do {
+        drain();
+        missed = pendingDrains.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void scheduleDrain() {
+      if (pendingDrains.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    private void drain() {
+      if (terminated) {
+        return;
+      }
+      if (cancelled) {
+        terminate();
+        return;
+      }
+      if (invalidRequest != null) {
+        terminate();
+        subscriber.onError(invalidRequest);
+        return;
+      }
+
+      try {
+        while (demand.get() > 0 && !cancelled) {
+          if (cursor == null) {
+            cursor = cursorOpener.apply((int) Math.min(demand.get(), MAX_BATCH_SIZE));
+          }
+          if (!cursor.hasNext()) {
+            terminate();
+            subscriber.onComplete();
+            return;
+          }
+          final Document document = cursor.next();
+          // An unbounded demand is never decremented
+          demand.accumulateAndGet(
+              1, (current, one) -> current == Long.MAX_VALUE ? current : current - one);
+          subscriber.onNext(document);
+        }
+        if (cancelled) {
+          terminate();
+        }
+      } catch (final Throwable t) {
+        terminate();
+        subscriber.onError(t);
+      }
+    }
+
+    private void terminate() {
+      terminated = true;
+      if (cursor != null) {
+        try {
+          cursor.close();
+        } catch (final IOException | RuntimeException e) {
+          LOGGER.warn("Unable to close the cursor of a subscription", e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.hypertrace.core.documentstore;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes the materialized views of a {@link Datastore} on a schedule, each at a fixed delay
+ * after its previous refresh (so that a slow refresh never overlaps the next one). The views can
+ * still be refreshed on demand with {@link Datastore#refreshMaterializedView(String)}.
+ *
+ * <p>The refreshes run on a thread owned by the refresher, which must be closed once done with.
+ */
+public class MaterializedViewRefresher implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MaterializedViewRefresher.class);
+
+  private final Datastore datastore;
+  private final ScheduledExecutorService scheduler;
+  private final Map<String, ScheduledFuture<?>> schedules = new ConcurrentHashMap<>();
+
+  public MaterializedViewRefresher(final Datastore datastore) {
+    this.datastore = datastore;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              final Thread thread = new Thread(runnable, "materialized-view-refresher");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Refreshes a view periodically, replacing its previous schedule if any
+   *
+   * @param viewName The view, registered with {@link Datastore#createMaterializedView}
+   * @param interval The delay between the end of a refresh and the start of the next one
+   */
+  public void schedule(final String viewName, final Duration interval) {
+    Preconditions.checkArgument(
+        !interval.isNegative() && !interval.isZero(), "interval must be positive");
+    final ScheduledFuture<?> previous =
+        schedules.put(
+            viewName,
+            scheduler.scheduleWithFixedDelay(
+                () -> refresh(viewName),
+                interval.toMillis(),
+                interval.toMillis(),
+                TimeUnit.MILLISECONDS));
+    if (previous != null) {
+      previous.cancel(false);
+    }
+  }
+
+  /** Stops refreshing a view */
+  public void cancel(final String viewName) {
+    final ScheduledFuture<?> schedule = schedules.remove(viewName);
+    if (schedule != null) {
+      schedule.cancel(false);
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    schedules.clear();
+  }
+
+  private void refresh(final String viewName) {
+    try {
+      if (!datastore.refreshMaterializedView(viewName)) {
+        LOGGER.warn("Materialized view {} was not refreshed", viewName);
+      }
+    } catch (RuntimeException e) {
+      // An exception would cancel the schedule
+      LOGGER.warn("Exception refreshing materialized view: {}", viewName, e);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package org.hypertrace.core.documentstore;
+
+/**
+ * A transaction of a datastore, run by {@link Datastore#inTransaction(Work)}: the writes made
+ * through its collection handles are committed at once when the work completes, and rolled back if
+ * it throws.
+ */
+public interface Transaction {
+  /**
+   * Returns a handle on a collection whose operations run in the transaction. The handle must not
+   * be used once the transaction is over, nor concurrently with the other handles of the
+   * transaction.
+   */
+  Collection getCollection(String collectionName);
+
+  /** The work of a transaction */
+  @FunctionalInterface
+  interface Work<T> {
+    T apply(Transaction transaction) throws Exception;
+  }
+}
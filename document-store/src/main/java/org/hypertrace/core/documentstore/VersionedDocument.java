@@ -0,0 +1,31 @@
+package org.hypertrace.core.documentstore;
+
+import java.time.Instant;
+import java.util.Optional;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+/** The state of a document, as read by {@link Collection#getIfModified} */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class VersionedDocument {
+  /** The document, unless it was not updated since the time given by the caller */
+  Document document;
+
+  /** The time of the last update of the document */
+  @NonNull Instant updateTime;
+
+  public static VersionedDocument of(final Document document, final Instant updateTime) {
+    return new VersionedDocument(document, updateTime);
+  }
+
+  public static VersionedDocument unmodified(final Instant updateTime) {
+    return new VersionedDocument(null, updateTime);
+  }
+
+  public Optional<Document> getDocument() {
+    return Optional.ofNullable(document);
+  }
+}
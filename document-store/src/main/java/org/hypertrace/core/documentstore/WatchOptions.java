@@ -0,0 +1,32 @@
+package org.hypertrace.core.documentstore;
+
+import java.time.Duration;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** The options of {@link Collection#watch} */
+@Value
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class WatchOptions {
+  public static final WatchOptions DEFAULT = WatchOptions.builder().build();
+
+  /** Whether the change events carry the document as it is after the change */
+  @Builder.Default boolean fullDocument = false;
+
+  /**
+   * The resume token of the last change processed, to watch the changes made after it (including
+   * the ones made while nobody was watching). Watches the changes made from now on, if null.
+   */
+  String resumeAfter;
+
+  /**
+   * How long the backend waits for new changes before checking again. This bounds the delay for
+   * noticing a {@link CloseableIterator#close()} made from another thread, and (for the backends
+   * without push notifications) the delay of the change events.
+   */
+  @NonNull @Builder.Default Duration maxAwaitTime = Duration.ofSeconds(1);
+}
@@ -0,0 +1,29 @@
+package org.hypertrace.core.documentstore;
+
+import java.time.Instant;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * A position in the changes of a collection, as read by {@link Collection#changesSince}. The
+ * documents are ordered by the time of their last update, and then by their keys, which sets apart
+ * the documents updated at the same time.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Watermark {
+  /** The position before all the changes */
+  public static final Watermark EARLIEST = new Watermark(Instant.EPOCH, "");
+
+  /** The time of the last update of the document */
+  @NonNull Instant timestamp;
+
+  /** The string form of the {@link Key} of the document */
+  @NonNull String key;
+
+  public static Watermark of(final Instant timestamp, final String key) {
+    return new Watermark(timestamp, key);
+  }
+}
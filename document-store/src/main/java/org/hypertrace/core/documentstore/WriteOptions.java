@@ -0,0 +1,53 @@
+package org.hypertrace.core.documentstore;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/** The options of the writes made through {@link Datastore#getCollection(String, WriteOptions)} */
+@Value
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class WriteOptions {
+  public static final WriteOptions DEFAULT = WriteOptions.builder().build();
+
+  /** How durable a write is once acknowledged */
+  @NonNull @Builder.Default Durability durability = Durability.DEFAULT;
+
+  public static WriteOptions of(final Durability durability) {
+    return WriteOptions.builder().durability(durability).build();
+  }
+
+  /**
+   * The durability tiers, from the fastest to the safest. A crash loses the writes acknowledged
+   * with the tiers weaker than {@link #JOURNALED} since the last flush of the journal, or of the
+   * write-ahead log, typically a few milliseconds of writes.
+   */
+  public enum Durability {
+    /** The defaults of the client and of the server */
+    DEFAULT,
+    /**
+     * The writes are not acknowledged: MongoDB writes with {@code w: 0}, the results of the writes
+     * being unknown, and Postgres commits with {@code synchronous_commit = off}
+     */
+    UNACKNOWLEDGED,
+    /**
+     * The writes are acknowledged by the primary once applied in memory: {@code w: 1} on MongoDB,
+     * and {@code synchronous_commit = off} on Postgres
+     */
+    ACKNOWLEDGED,
+    /**
+     * The writes are acknowledged by the primary once flushed to its journal: {@code w: 1, j: true}
+     * on MongoDB, and {@code synchronous_commit = local} on Postgres
+     */
+    JOURNALED,
+    /**
+     * The writes are acknowledged once journaled by a majority of the replicas: {@code w:
+     * "majority", j: true} on MongoDB, and {@code synchronous_commit = on} on Postgres, waiting for
+     * the synchronous standbys (if any)
+     */
+    MAJORITY
+  }
+}
@@ -0,0 +1,185 @@
+package org.hypertrace.core.documentstore.batch;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.Key;
+
+/**
+ * Coalesces the point reads issued concurrently against a {@link Collection}: the keys requested
+ * are collected for up to a maximum delay, or until a batch is full, and then read with a single
+ * {@link Collection#getAll} call completing the futures of all the callers. A key requested several
+ * times within a batch is read once.
+ *
+ * <p>The reads run on a bounded pool owned by the reader, which must be closed once done with: the
+ * keys still pending are read before the pool is shut down. The batches full while all the threads
+ * are reading wait for one of them, rather than opening more connections to the store.
+ */
+public class BatchingReader implements AutoCloseable {
+  public static final int DEFAULT_MAX_CONCURRENT_READS = 4;
+
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+  private final Collection collection;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService readExecutor;
+
+  private final Object lock = new Object();
+  private Map<Key, List<CompletableFuture<Optional<Document>>>> pending = new LinkedHashMap<>();
+  private ScheduledFuture<?> scheduledRead;
+  private boolean closed;
+
+  /**
+   * @param collection The collection to read the documents from
+   * @param maxBatchSize The number of distinct keys which triggers a read right away
+   * @param maxDelay The longest time a key waits for other keys to be requested
+   */
+  public BatchingReader(
+      final Collection collection, final int maxBatchSize, final Duration maxDelay) {
+    this(collection, maxBatchSize, maxDelay, DEFAULT_MAX_CONCURRENT_READS);
+  }
+
+  /**
+   * @param collection The collection to read the documents from
+   * @param maxBatchSize The number of distinct keys which triggers a read right away
+   * @param maxDelay The longest time a key waits for other keys to be requested
+   * @param maxConcurrentReads The number of batches read at once
+   */
+  public BatchingReader(
+      final Collection collection,
+      final int maxBatchSize,
+      final Duration maxDelay,
+      final int maxConcurrentReads) {
+    Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+    Preconditions.checkArgument(!maxDelay.isNegative(), "maxDelay must not be negative");
+    Preconditions.checkArgument(maxConcurrentReads > 0, "maxConcurrentReads must be positive");
+    this.collection = collection;
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = maxDelay.toNanos();
+
+    final int instance = INSTANCES.incrementAndGet();
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            daemonThreads("batching-reader-timer-" + instance));
+    this.readExecutor =
+        Executors.newFixedThreadPool(
+            maxConcurrentReads, daemonThreads("batching-reader-" + instance));
+  }
+
+  /**
+   * Requests the document with the given key, to be read along with the other keys requested
+   *
+   * @return The future of the document, or of empty if there is none with the key
+   */
+  public CompletableFuture<Optional<Document>> get(final Key key) {
+    final CompletableFuture<Optional<Document>> future = new CompletableFuture<>();
+    final Map<Key, List<CompletableFuture<Optional<Document>>>> batch;
+    synchronized (lock) {
+      Preconditions.checkState(!closed, "The reader is closed");
+      pending.computeIfAbsent(key, k -> new ArrayList<>()).add(future);
+      if (pending.size() < maxBatchSize) {
+        if (scheduledRead == null) {
+          scheduledRead = scheduler.schedule(this::flush, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+        return future;
+      }
+      batch = takePending();
+    }
+
+    submit(batch);
+    return future;
+  }
+
+  /** Reads the keys pending right away, without waiting for the batch to fill up */
+  public void flush() {
+    final Map<Key, List<CompletableFuture<Optional<Document>>>> batch;
+    synchronized (lock) {
+      batch = takePending();
+    }
+    if (!batch.isEmpty()) {
+      submit(batch);
+    }
+  }
+
+  /** Reads the keys pending, and releases the threads of the reader once they are read */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    flush();
+    scheduler.shutdownNow();
+    readExecutor.shutdown();
+  }
+
+  private Map<Key, List<CompletableFuture<Optional<Document>>>> takePending() {
+    final Map<Key, List<CompletableFuture<Optional<Document>>>> batch = pending;
+    pending = new LinkedHashMap<>();
+    if (scheduledRead != null) {
+      scheduledRead.cancel(false);
+      scheduledRead = null;
+    }
+    return batch;
+  }
+
+  private void submit(final Map<Key, List<CompletableFuture<Optional<Document>>>> batch) {
+    try {
+      readExecutor.execute(() -> read(batch));
+    } catch (RejectedExecutionException e) {
+      fail(batch, e);
+    }
+  }
+
+  private void read(final Map<Key, List<CompletableFuture<Optional<Document>>>> batch) {
+    final Map<Key, Document> documents;
+    try {
+      documents = collection.getAll(batch.keySet());
+    } catch (Throwable t) {
+      // Any failure completes the futures, which would wait forever otherwise
+      fail(batch, t);
+      return;
+    }
+
+    batch.forEach(
+        (key, futures) -> {
+          final Optional<Document> document = Optional.ofNullable(documents.get(key));
+          futures.forEach(future -> future.complete(document));
+        });
+  }
+
+  private static void fail(
+      final Map<Key, List<CompletableFuture<Optional<Document>>>> batch, final Throwable error) {
+    batch
+        .values()
+        .forEach(futures -> futures.forEach(future -> future.completeExceptionally(error)));
+  }
+
+  private static ThreadFactory daemonThreads(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
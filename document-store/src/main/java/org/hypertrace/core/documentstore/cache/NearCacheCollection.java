@@ -0,0 +1,361 @@
+package org.hypertrace.core.documentstore.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
+import org.hypertrace.core.documentstore.BulkDeleteResult;
+import org.hypertrace.core.documentstore.BulkUpdateRequest;
+import org.hypertrace.core.documentstore.BulkUpdateResult;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.CreateResult;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.Query;
+import org.hypertrace.core.documentstore.UpdateResult;
+import org.hypertrace.core.documentstore.VersionedDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+
+/**
+ * A {@link Collection} keeping the documents recently read by key (see {@link #getAll}) in a
+ * bounded LRU cache, in front of another collection.
+ *
+ * <p>The cached documents are served as is for the time to live, and then revalidated with {@link
+ * Collection#getIfModified}: the update times of all the documents to revalidate are checked in a
+ * single query, and only the documents updated since are read again. The writes made through this
+ * collection invalidate the cached copies of the documents written, while the writes made by other
+ * clients are only noticed by the revalidation.
+ */
+public class NearCacheCollection implements Collection {
+  private final Collection delegate;
+  private final Cache<Key, Entry> cache;
+  private final long timeToLiveNanos;
+  private final Ticker ticker;
+  // Incremented before and after each write, so that a read overlapping a write is not cached
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * @param delegate The collection holding the documents
+   * @param maximumSize The maximum number of documents cached
+   * @param timeToLive The time the cached documents are served without revalidation
+   */
+  public NearCacheCollection(
+      final Collection delegate, final long maximumSize, final Duration timeToLive) {
+    this(delegate, maximumSize, timeToLive, Ticker.systemTicker());
+  }
+
+  NearCacheCollection(
+      final Collection delegate,
+      final long maximumSize,
+      final Duration timeToLive,
+      final Ticker ticker) {
+    Preconditions.checkArgument(maximumSize > 0, "maximumSize must be positive");
+    Preconditions.checkArgument(!timeToLive.isNegative(), "timeToLive must not be negative");
+    this.delegate = delegate;
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    this.timeToLiveNanos = timeToLive.toNanos();
+    this.ticker = ticker;
+  }
+
+  @Override
+  public Optional<Document> get(final Key key) {
+    return Optional.ofNullable(getAll(List.of(key)).get(key));
+  }
+
+  /**
+   * Reads the documents with the given keys, from the cache when possible. The documents are shared
+   * with the other readers.
+   *
+   * @return The documents found, by key, in the order of the given keys
+   */
+  @Override
+  public Map<Key, Document> getAll(final java.util.Collection<Key> keys) {
+    final long now = ticker.read();
+    final Map<Key, Document> documents = new LinkedHashMap<>();
+    final Map<Key, Entry> staleEntries = new HashMap<>();
+    final Map<Key, Instant> updateTimes = new HashMap<>();
+    for (final Key key : keys) {
+      final Entry entry = cache.getIfPresent(key);
+      if (entry != null && now - entry.validatedAt < timeToLiveNanos) {
+        documents.put(key, entry.document);
+        continue;
+      }
+
+      // Keeps the place of the document in the results
+      documents.put(key, null);
+      if (entry == null) {
+        updateTimes.put(key, Instant.EPOCH);
+      } else {
+        staleEntries.put(key, entry);
+        updateTimes.put(key, entry.updateTime);
+      }
+    }
+
+    if (!updateTimes.isEmpty()) {
+      final long writesBefore = writes.get();
+      final Map<Key, VersionedDocument> read = delegate.getIfModified(updateTimes);
+      final boolean cacheable = writes.get() == writesBefore;
+
+      for (final Key key : updateTimes.keySet()) {
+        final VersionedDocument version = read.get(key);
+        if (version == null) {
+          documents.remove(key);
+          cache.invalidate(key);
+          continue;
+        }
+
+        final Document document =
+            version.getDocument().orElseGet(() -> staleEntries.get(key).document);
+        documents.put(key, document);
+        if (cacheable) {
+          cache.put(key, new Entry(document, version.getUpdateTime(), now));
+        }
+      }
+    }
+    return documents;
+  }
+
+  @Override
+  public boolean upsert(final Key key, final Document document) throws IOException {
+    return write(Set.of(key), () -> delegate.upsert(key, document));
+  }
+
+  @Override
+  public Document upsertAndReturn(final Key key, final Document document) throws IOException {
+    return write(Set.of(key), () -> delegate.upsertAndReturn(key, document));
+  }
+
+  @Override
+  public boolean updateSubDoc(final Key key, final String subDocPath, final Document subDocument) {
+    return write(Set.of(key), () -> delegate.updateSubDoc(key, subDocPath, subDocument));
+  }
+
+  @Override
+  public BulkUpdateResult bulkUpdateSubDocs(final Map<Key, Map<String, Document>> documents)
+      throws Exception {
+    return write(documents.keySet(), () -> delegate.bulkUpdateSubDocs(documents));
+  }
+
+  @Override
+  public BulkUpdateResult bulkOperationOnArrayValue(final BulkArrayValueUpdateRequest request)
+      throws Exception {
+    return write(request.getKeys(), () -> delegate.bulkOperationOnArrayValue(request));
+  }
+
+  @Override
+  public CloseableIterator<Document> search(final Query query) {
+    return delegate.search(query);
+  }
+
+  @Override
+  public CloseableIterator<Document> find(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return delegate.find(query);
+  }
+
+  @Override
+  public List<CloseableIterator<Document>> parallelScan(
+      final org.hypertrace.core.documentstore.query.Query query, final int partitions) {
+    return delegate.parallelScan(query, partitions);
+  }
+
+  @Override
+  public CloseableIterator<Document> aggregate(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return delegate.aggregate(query);
+  }
+
+  @Override
+  public Flow.Publisher<Document> findPublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return delegate.findPublisher(query);
+  }
+
+  @Override
+  public Flow.Publisher<Document> aggregatePublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return delegate.aggregatePublisher(query);
+  }
+
+  @Override
+  public List<CloseableIterator<Document>> executeBatch(
+      final List<org.hypertrace.core.documentstore.query.Query> queries) {
+    return delegate.executeBatch(queries);
+  }
+
+  @Override
+  public boolean delete(final Key key) {
+    return write(Set.of(key), () -> delegate.delete(key));
+  }
+
+  @Override
+  public boolean delete(final Filter filter) {
+    return write(null, () -> delegate.delete(filter));
+  }
+
+  @Override
+  public BulkDeleteResult delete(final Set<Key> keys) {
+    return write(keys, () -> delegate.delete(keys));
+  }
+
+  @Override
+  public boolean deleteSubDoc(final Key key, final String subDocPath) {
+    return write(Set.of(key), () -> delegate.deleteSubDoc(key, subDocPath));
+  }
+
+  @Override
+  public boolean deleteAll() {
+    return write(null, delegate::deleteAll);
+  }
+
+  @Override
+  public long count() {
+    return delegate.count();
+  }
+
+  @Override
+  public long total(final Query query) {
+    return delegate.total(query);
+  }
+
+  @Override
+  public long count(final org.hypertrace.core.documentstore.query.Query query) {
+    return delegate.count(query);
+  }
+
+  @Override
+  public long estimatedCount() {
+    return delegate.estimatedCount();
+  }
+
+  @Override
+  public long estimatedCount(final org.hypertrace.core.documentstore.query.Query query) {
+    return delegate.estimatedCount(query);
+  }
+
+  @Override
+  public boolean bulkUpsert(final Map<Key, Document> documents) {
+    return write(documents.keySet(), () -> delegate.bulkUpsert(documents));
+  }
+
+  @Override
+  public CloseableIterator<Document> bulkUpsertAndReturnOlderDocuments(
+      final Map<Key, Document> documents) throws IOException {
+    return write(documents.keySet(), () -> delegate.bulkUpsertAndReturnOlderDocuments(documents));
+  }
+
+  @Override
+  public void drop() {
+    write(
+        null,
+        () -> {
+          delegate.drop();
+          return null;
+        });
+  }
+
+  @Override
+  public CreateResult create(final Key key, final Document document) throws IOException {
+    return write(Set.of(key), () -> delegate.create(key, document));
+  }
+
+  @Override
+  public BulkUpdateResult bulkUpdate(final List<BulkUpdateRequest> bulkUpdateRequests)
+      throws Exception {
+    return write(
+        bulkUpdateRequests.stream().map(BulkUpdateRequest::getKey).collect(Collectors.toSet()),
+        () -> delegate.bulkUpdate(bulkUpdateRequests));
+  }
+
+  @Override
+  public UpdateResult update(final Key key, final Document document, final Filter condition)
+      throws IOException {
+    return write(Set.of(key), () -> delegate.update(key, document, condition));
+  }
+
+  @Override
+  public CloseableIterator<ChangeEvent> watch(
+      final FilterTypeExpression filter, final WatchOptions options) {
+    return delegate.watch(filter, options);
+  }
+
+  @Override
+  public CloseableIterator<ChangedDocument> changesSince(
+      final Watermark watermark, final int batchSize) {
+    return delegate.changesSince(watermark, batchSize);
+  }
+
+  @Override
+  public Map<Key, VersionedDocument> getIfModified(final Map<Key, Instant> updateTimes) {
+    return delegate.getIfModified(updateTimes);
+  }
+
+  @Override
+  public long exportTo(final OutputStream output, final LongConsumer progress) throws IOException {
+    return delegate.exportTo(output, progress);
+  }
+
+  @Override
+  public long importFrom(final InputStream input, final LongConsumer progress) throws IOException {
+    return write(null, () -> delegate.importFrom(input, progress));
+  }
+
+  /**
+   * Runs a write, and invalidates the cached copies of the documents written once it is done
+   *
+   * @param keys The keys of the documents written, or null if they are not known
+   */
+  private <T, E extends Exception> T write(
+      final Iterable<Key> keys, final ThrowingSupplier<T, E> call) throws E {
+    writes.incrementAndGet();
+    try {
+      return call.get();
+    } finally {
+      writes.incrementAndGet();
+      if (keys == null) {
+        cache.invalidateAll();
+      } else {
+        cache.invalidateAll(keys);
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface ThrowingSupplier<T, E extends Exception> {
+    T get() throws E;
+  }
+
+  private static final class Entry {
+    private final Document document;
+    private final Instant updateTime;
+    private final long validatedAt;
+
+    private Entry(final Document document, final Instant updateTime, final long validatedAt) {
+      this.document = document;
+      this.updateTime = updateTime;
+      this.validatedAt = validatedAt;
+    }
+  }
+}
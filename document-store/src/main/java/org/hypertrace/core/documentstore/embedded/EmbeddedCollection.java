@@ -0,0 +1,94 @@
+package org.hypertrace.core.documentstore.embedded;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.TreeSet;
+import org.hypertrace.core.documentstore.memory.InMemoryCollection;
+
+/**
+ * An {@link InMemoryCollection} persisting its documents in a directory of its own, as an
+ * append-only log of memory-mapped segments (see {@link LogDocumentStorage}). The paths of the
+ * secondary indexes are persisted alongside, and the indexes are rebuilt when the collection is
+ * opened.
+ */
+public class EmbeddedCollection extends InMemoryCollection implements Closeable {
+  private static final String INDEXES_FILE = "indexes";
+
+  private final Path directory;
+  private final LogDocumentStorage storage;
+
+  EmbeddedCollection(
+      final String collectionName,
+      final Path directory,
+      final int segmentSize,
+      final boolean syncWrites)
+      throws IOException {
+    this(collectionName, directory, new LogDocumentStorage(directory, segmentSize, syncWrites));
+  }
+
+  private EmbeddedCollection(
+      final String collectionName, final Path directory, final LogDocumentStorage storage)
+      throws IOException {
+    super(collectionName, storage);
+    this.directory = directory;
+    this.storage = storage;
+
+    final Path indexesFile = directory.resolve(INDEXES_FILE);
+    if (Files.exists(indexesFile)) {
+      for (final String path : Files.readAllLines(indexesFile, UTF_8)) {
+        if (!path.isBlank()) {
+          super.createIndex(path);
+        }
+      }
+    }
+  }
+
+  /** Creates a hash index on the given (dot separated) path, and persists its definition */
+  @Override
+  public synchronized void createIndex(final String path) {
+    if (getIndexedPaths().contains(path)) {
+      return;
+    }
+
+    super.createIndex(path);
+    final Path indexesFile = directory.resolve(INDEXES_FILE);
+    final Path temporaryFile = directory.resolve(INDEXES_FILE + ".tmp");
+    try {
+      Files.write(temporaryFile, new TreeSet<>(getIndexedPaths()), UTF_8);
+      Files.move(temporaryFile, indexesFile, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to persist the indexes of " + directory, e);
+    }
+  }
+
+  /**
+   * Rewrites the live documents of the log segments holding mostly stale records, and deletes those
+   * segments.
+   *
+   * @param liveRatioThreshold The ratio of live bytes under which a segment is compacted
+   * @return The number of segments compacted
+   */
+  public int compact(final double liveRatioThreshold) {
+    return storage.compact(liveRatioThreshold);
+  }
+
+  /** Forces the writes made so far to the storage device */
+  public void flush() {
+    storage.flush();
+  }
+
+  int getSegmentCount() {
+    return storage.getSegmentCount();
+  }
+
+  @Override
+  public void close() {
+    storage.close();
+  }
+}
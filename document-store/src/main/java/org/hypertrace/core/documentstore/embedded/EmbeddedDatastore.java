@@ -0,0 +1,297 @@
+package org.hypertrace.core.documentstore.embedded;
+
+import com.typesafe.config.Config;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.hypertrace.core.documentstore.AsyncCollection;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.Transaction;
+import org.hypertrace.core.documentstore.WriteOptions;
+import org.hypertrace.core.documentstore.memory.InMemoryDatastore;
+import org.hypertrace.core.documentstore.memory.InMemoryTransactions;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListener;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListenerProvider;
+import org.hypertrace.core.documentstore.metrics.InstrumentedCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Datastore} running in the process, persisting each collection in a sub-directory of the
+ * configured data directory. The documents are served from memory-mapped log segments with the
+ * query semantics of the MongoDB backend (see {@link EmbeddedCollection}).
+ *
+ * <p>The configuration keys are:
+ *
+ * <ul>
+ *   <li>{@value #DATA_DIR_CONFIG} - The data directory (required)
+ *   <li>{@value #SEGMENT_SIZE_CONFIG} - The size of a log segment, in bytes (default: 64 MiB)
+ *   <li>{@value #SYNC_WRITES_CONFIG} - Whether every write is forced to the storage device before
+ *       returning (default: false)
+ *   <li>{@value #COMPACTION_INTERVAL_CONFIG} - The interval of the background compaction (default:
+ *       1 minute)
+ *   <li>{@value #COMPACTION_THRESHOLD_CONFIG} - The ratio of live bytes under which a segment is
+ *       compacted (default: 0.5)
+ * </ul>
+ *
+ * Secondary indexes can be requested with the {@value InMemoryDatastore#INDEXES_OPTION} option of
+ * {@link #createCollection(String, Map)}, like for the {@link InMemoryDatastore}.
+ */
+public class EmbeddedDatastore implements Datastore, Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedDatastore.class);
+
+  public static final String DATA_DIR_CONFIG = "dataDir";
+  public static final String SEGMENT_SIZE_CONFIG = "segmentSize";
+  public static final String SYNC_WRITES_CONFIG = "syncWrites";
+  public static final String COMPACTION_INTERVAL_CONFIG = "compactionInterval";
+  public static final String COMPACTION_THRESHOLD_CONFIG = "compactionThreshold";
+
+  private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(1);
+  private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+  private static final Pattern COLLECTION_NAME = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9_.-]*");
+
+  private final Map<String, EmbeddedCollection> collections = new ConcurrentHashMap<>();
+  private final InMemoryTransactions transactions = new InMemoryTransactions();
+
+  private Path dataDirectory;
+  private int segmentSize;
+  private boolean syncWrites;
+  private double compactionThreshold;
+  private ScheduledExecutorService compactionExecutor;
+  private ExecutorService asyncExecutor;
+  private DocStoreMetricsListener metricsListener;
+
+  @Override
+  public boolean init(Config config) {
+    try {
+      dataDirectory = Paths.get(config.getString(DATA_DIR_CONFIG));
+      segmentSize =
+          config.hasPath(SEGMENT_SIZE_CONFIG)
+              ? config.getInt(SEGMENT_SIZE_CONFIG)
+              : DEFAULT_SEGMENT_SIZE;
+      syncWrites = config.hasPath(SYNC_WRITES_CONFIG) && config.getBoolean(SYNC_WRITES_CONFIG);
+      compactionThreshold =
+          config.hasPath(COMPACTION_THRESHOLD_CONFIG)
+              ? config.getDouble(COMPACTION_THRESHOLD_CONFIG)
+              : DEFAULT_COMPACTION_THRESHOLD;
+      final Duration compactionInterval =
+          config.hasPath(COMPACTION_INTERVAL_CONFIG)
+              ? config.getDuration(COMPACTION_INTERVAL_CONFIG)
+              : DEFAULT_COMPACTION_INTERVAL;
+      metricsListener = DocStoreMetricsListenerProvider.getListener(config).orElse(null);
+      asyncExecutor = AsyncCollection.newExecutor(config, "embedded-datastore");
+
+      Files.createDirectories(dataDirectory);
+      compactionExecutor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                final Thread thread = new Thread(runnable, "embedded-datastore-compaction");
+                thread.setDaemon(true);
+                return thread;
+              });
+      compactionExecutor.scheduleWithFixedDelay(
+          this::compact,
+          compactionInterval.toMillis(),
+          compactionInterval.toMillis(),
+          TimeUnit.MILLISECONDS);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to create the data directory " + dataDirectory, e);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to instantiate EmbeddedDatastore with config:%s", config), e);
+    }
+    return true;
+  }
+
+  @Override
+  public Set<String> listCollections() {
+    final Set<String> names = new HashSet<>(collections.keySet());
+    try (Stream<Path> directories = Files.list(dataDirectory)) {
+      directories
+          .filter(Files::isDirectory)
+          .map(path -> path.getFileName().toString())
+          .filter(name -> COLLECTION_NAME.matcher(name).matches())
+          .forEach(names::add);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to list the collections in " + dataDirectory, e);
+    }
+    return names;
+  }
+
+  @Override
+  public boolean createCollection(String collectionName, Map<String, String> options) {
+    EmbeddedCollection collection = open(collectionName);
+
+    if (options != null && options.containsKey(InMemoryDatastore.INDEXES_OPTION)) {
+      Arrays.stream(options.get(InMemoryDatastore.INDEXES_OPTION).split(","))
+          .map(String::trim)
+          .filter(path -> !path.isEmpty())
+          .forEach(collection::createIndex);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean deleteCollection(String collectionName) {
+    validate(collectionName);
+    final EmbeddedCollection collection = collections.remove(collectionName);
+    if (collection != null) {
+      collection.close();
+    }
+
+    final Path directory = dataDirectory.resolve(collectionName);
+    if (!Files.exists(directory)) {
+      return true;
+    }
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (final Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+      return true;
+    } catch (IOException e) {
+      LOGGER.error("Exception deleting collection: {}", collectionName, e);
+      return false;
+    }
+  }
+
+  @Override
+  public Collection getCollection(String collectionName) {
+    Collection collection = open(collectionName);
+    return metricsListener == null
+        ? collection
+        : new InstrumentedCollection(collection, collectionName, metricsListener);
+  }
+
+  /** The durability of the writes is that of the {@value #SYNC_WRITES_CONFIG} config */
+  @Override
+  public Collection getCollection(String collectionName, WriteOptions writeOptions) {
+    return getCollection(collectionName);
+  }
+
+  @Override
+  public <T> T inTransaction(Transaction.Work<T> work) throws Exception {
+    return transactions.run(this::open, this::getCollection, work);
+  }
+
+  /**
+   * The writes of a transaction are persisted as they are made, so the durability of the commits is
+   * that of the {@value #SYNC_WRITES_CONFIG} config
+   */
+  @Override
+  public <T> T inTransaction(WriteOptions writeOptions, Transaction.Work<T> work) throws Exception {
+    return inTransaction(work);
+  }
+
+  @Override
+  public AsyncCollection getAsyncCollection(String collectionName) {
+    Collection collection = getCollection(collectionName);
+    return new AsyncCollection(collection, asyncExecutor);
+  }
+
+  /**
+   * Persists the documents of the view, but not its query: the view is registered again on startup,
+   * keeping the documents of the previous refresh until the next one
+   */
+  @Override
+  public boolean createMaterializedView(
+      String viewName, String collectionName, org.hypertrace.core.documentstore.query.Query query) {
+    final boolean exists = listCollections().contains(viewName);
+    final EmbeddedCollection view = open(viewName);
+    return !view.materialize(getCollection(collectionName), query)
+        || exists
+        || refreshMaterializedView(viewName);
+  }
+
+  @Override
+  public boolean refreshMaterializedView(String viewName) {
+    final EmbeddedCollection view = collections.get(viewName);
+    if (view == null) {
+      LOGGER.error("Materialized view not registered: {}", viewName);
+      return false;
+    }
+
+    try {
+      view.refreshView();
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      LOGGER.error("Exception refreshing materialized view: {}", viewName, e);
+      return false;
+    }
+  }
+
+  @Override
+  public boolean healthCheck() {
+    return Files.isWritable(dataDirectory)
+        && compactionExecutor != null
+        && !compactionExecutor.isShutdown();
+  }
+
+  /**
+   * Stops the background compaction and the asynchronous operations, and forces the data of all the
+   * collections to the device
+   */
+  @Override
+  public void close() {
+    if (compactionExecutor != null) {
+      compactionExecutor.shutdownNow();
+    }
+    if (asyncExecutor != null) {
+      // Not interrupting the running operations, which would close the channels of the segments
+      asyncExecutor.shutdown();
+    }
+    collections.values().forEach(EmbeddedCollection::close);
+    collections.clear();
+  }
+
+  private EmbeddedCollection open(final String collectionName) {
+    validate(collectionName);
+    return collections.computeIfAbsent(
+        collectionName,
+        name -> {
+          try {
+            return new EmbeddedCollection(
+                name, dataDirectory.resolve(name), segmentSize, syncWrites);
+          } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open the collection " + name, e);
+          }
+        });
+  }
+
+  private void compact() {
+    for (final Map.Entry<String, EmbeddedCollection> entry : collections.entrySet()) {
+      try {
+        entry.getValue().compact(compactionThreshold);
+      } catch (RuntimeException e) {
+        LOGGER.warn("Exception compacting collection: {}", entry.getKey(), e);
+      }
+    }
+  }
+
+  private static void validate(final String collectionName) {
+    if (!COLLECTION_NAME.matcher(collectionName).matches()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "Invalid collection name: %s. Allowed characters: %s",
+              collectionName, COLLECTION_NAME));
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package org.hypertrace.core.documentstore.embedded;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.hypertrace.core.documentstore.memory.DocumentStorage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link DocumentStorage} persisting the documents in an append-only log of memory-mapped {@link
+ * LogSegment}s, with an in-memory index from the keys to the location of their latest record.
+ *
+ * <ul>
+ *   <li>Writes append a record (or a tombstone, for a deletion) to the active segment, and roll
+ *       over to a new segment once it is full
+ *   <li>Point reads decode the record the key index points at, straight from the mapped memory
+ *   <li>On open, the segments are replayed in order to rebuild the key index, discarding a
+ *       partially written record at the end of a segment
+ *   <li>{@link #compact(double)} rewrites the live records of the sealed segments with too much
+ *       garbage into the active segment, and deletes those segments
+ * </ul>
+ *
+ * <p>The writes reach the page cache, so they survive a crash of the process. Surviving a crash of
+ * the machine needs either {@code syncWrites} or a {@link #flush()} at the desired points.
+ */
+final class LogDocumentStorage implements DocumentStorage, Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogDocumentStorage.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Path directory;
+  private final int segmentSize;
+  private final boolean syncWrites;
+  private final NavigableMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+  private final Map<String, Location> index = new ConcurrentHashMap<>();
+
+  // Guarded by this
+  private LogSegment active;
+  private long nextSegmentId;
+
+  LogDocumentStorage(final Path directory, final int segmentSize, final boolean syncWrites)
+      throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.syncWrites = syncWrites;
+
+    Files.createDirectories(directory);
+    recover();
+  }
+
+  @Override
+  public ObjectNode get(final String key) {
+    final Location location = index.get(key);
+    return location == null ? null : read(location);
+  }
+
+  @Override
+  public boolean containsKey(final String key) {
+    return index.containsKey(key);
+  }
+
+  @Override
+  public synchronized void put(final String key, final ObjectNode document) {
+    final byte[] value;
+    try {
+      value = MAPPER.writeValueAsBytes(document);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    write(key, value);
+  }
+
+  @Override
+  public synchronized void remove(final String key) {
+    final Location previous = index.remove(key);
+    if (previous != null) {
+      previous.segment.addLiveBytes(-previous.length);
+      append(key.getBytes(UTF_8), null);
+    }
+  }
+
+  @Override
+  public long size() {
+    return index.size();
+  }
+
+  @Override
+  public Stream<ObjectNode> values() {
+    return index.values().stream().map(this::read);
+  }
+
+  @Override
+  public void forEach(final BiConsumer<String, ObjectNode> consumer) {
+    index.forEach((key, location) -> consumer.accept(key, read(location)));
+  }
+
+  @Override
+  public synchronized void clear() {
+    index.clear();
+    for (final LogSegment segment : segments.values()) {
+      delete(segment);
+    }
+    segments.clear();
+    active = null;
+  }
+
+  /** Forces the appended records to the storage device */
+  synchronized void flush() {
+    if (active != null) {
+      active.force();
+    }
+  }
+
+  /**
+   * Compacts the sealed segments whose ratio of live bytes falls below the given threshold, oldest
+   * first.
+   *
+   * @return The number of segments compacted
+   */
+  synchronized int compact(final double liveRatioThreshold) {
+    final List<LogSegment> candidates =
+        segments.values().stream()
+            .filter(segment -> segment != active)
+            .filter(
+                segment ->
+                    segment.getWriteOffset() == 0
+                        || (double) segment.getLiveBytes() / segment.getWriteOffset()
+                            < liveRatioThreshold)
+            .collect(Collectors.toList());
+
+    for (final LogSegment segment : candidates) {
+      final boolean hasOlderSegments = segments.firstKey() < segment.getId();
+
+      segment.scan(
+          0,
+          (key, offset, length, tombstone) -> {
+            if (tombstone) {
+              // A tombstone is needed only as long as an older segment may hold a record of the key
+              if (hasOlderSegments && !index.containsKey(key)) {
+                append(key.getBytes(UTF_8), null);
+              }
+              return;
+            }
+
+            final Location location = index.get(key);
+            if (location != null && location.segment == segment && location.offset == offset) {
+              write(key, segment.readValue(offset));
+            }
+          });
+
+      // The rewritten records must be durable before their originals go away
+      if (active != null) {
+        active.force();
+      }
+      segments.remove(segment.getId());
+      delete(segment);
+    }
+
+    if (!candidates.isEmpty()) {
+      LOGGER.debug("Compacted {} segment(s) in {}", candidates.size(), directory);
+    }
+    return candidates.size();
+  }
+
+  int getSegmentCount() {
+    return segments.size();
+  }
+
+  @Override
+  public synchronized void close() {
+    segments.values().forEach(LogSegment::force);
+  }
+
+  private void write(final String key, final byte[] value) {
+    final Location location = append(key.getBytes(UTF_8), value);
+    location.segment.addLiveBytes(location.length);
+    final Location previous = index.put(key, location);
+    if (previous != null) {
+      previous.segment.addLiveBytes(-previous.length);
+    }
+  }
+
+  private Location append(final byte[] key, final byte[] value) {
+    final int length = LogSegment.recordLength(key, value);
+
+    if (active == null || !active.hasRoom(length)) {
+      roll(length);
+    }
+
+    final int offset = active.append(key, value);
+    if (syncWrites) {
+      active.force();
+    }
+    return new Location(active, offset, length);
+  }
+
+  private void roll(final int minimumCapacity) {
+    final long id = nextSegmentId++;
+    try {
+      if (active != null) {
+        active.force();
+      }
+      active = LogSegment.create(directory, id, Math.max(segmentSize, minimumCapacity));
+      segments.put(id, active);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to create a new segment in " + directory, e);
+    }
+  }
+
+  private void recover() throws IOException {
+    final List<Path> paths;
+    try (Stream<Path> files = Files.list(directory)) {
+      paths = files.filter(LogSegment::isSegment).sorted().collect(Collectors.toList());
+    }
+
+    for (final Path path : paths) {
+      final LogSegment segment = LogSegment.open(path);
+      final boolean truncated =
+          segment.recover(
+              (key, offset, length, tombstone) -> {
+                final Location previous =
+                    tombstone
+                        ? index.remove(key)
+                        : index.put(key, new Location(segment, offset, length));
+                if (previous != null) {
+                  previous.segment.addLiveBytes(-previous.length);
+                }
+                if (!tombstone) {
+                  segment.addLiveBytes(length);
+                }
+              });
+
+      if (truncated) {
+        LOGGER.warn(
+            "Discarded a partially written record at offset {} of {}",
+            segment.getWriteOffset(),
+            path);
+      }
+      segments.put(segment.getId(), segment);
+    }
+
+    active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+    nextSegmentId = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+    LOGGER.info(
+        "Recovered {} document(s) from {} segment(s) in {}",
+        index.size(),
+        segments.size(),
+        directory);
+  }
+
+  private ObjectNode read(final Location location) {
+    try {
+      return (ObjectNode) MAPPER.readTree(location.segment.readValue(location.offset));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void delete(final LogSegment segment) {
+    try {
+      segment.delete();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to delete the segment {} in {}", segment.getId(), directory, e);
+    }
+  }
+
+  private static final class Location {
+    private final LogSegment segment;
+    private final int offset;
+    private final int length;
+
+    private Location(final LogSegment segment, final int offset, final int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
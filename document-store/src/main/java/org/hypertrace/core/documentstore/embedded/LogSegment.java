@@ -0,0 +1,216 @@
+package org.hypertrace.core.documentstore.embedded;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped, pre-allocated file holding a sequence of log records. Each record is laid out as
+ *
+ * <pre>
+ *   | crc32 (int) | key length (int) | value length (int) | key bytes | value bytes |
+ * </pre>
+ *
+ * where the checksum covers everything after itself and a value length of -1 marks a tombstone (a
+ * deletion of the key). The unused tail of the file is zero-filled, so a zero key length marks the
+ * end of the records.
+ *
+ * <p>The records are only ever appended, under the lock of the owning {@link LogDocumentStorage}.
+ * The reads of the records already appended need no locking.
+ */
+final class LogSegment {
+  static final int HEADER_SIZE = 12;
+  static final int TOMBSTONE = -1;
+
+  private static final String SUFFIX = ".log";
+
+  private final long id;
+  private final Path path;
+  private final MappedByteBuffer buffer;
+
+  // Guarded by the lock of the owning storage
+  private int writeOffset;
+  private long liveBytes;
+
+  private LogSegment(final long id, final Path path, final MappedByteBuffer buffer) {
+    this.id = id;
+    this.path = path;
+    this.buffer = buffer;
+  }
+
+  static LogSegment create(final Path directory, final long id, final int capacity)
+      throws IOException {
+    final Path path = directory.resolve(String.format("%020d%s", id, SUFFIX));
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      file.setLength(capacity);
+      return new LogSegment(id, path, map(file, capacity));
+    }
+  }
+
+  static LogSegment open(final Path path) throws IOException {
+    final String name = path.getFileName().toString();
+    final long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+      return new LogSegment(id, path, map(file, (int) file.length()));
+    }
+  }
+
+  static boolean isSegment(final Path path) {
+    return path.getFileName().toString().matches("\\d+\\" + SUFFIX);
+  }
+
+  private static MappedByteBuffer map(final RandomAccessFile file, final int capacity)
+      throws IOException {
+    return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+  }
+
+  long getId() {
+    return id;
+  }
+
+  int getWriteOffset() {
+    return writeOffset;
+  }
+
+  long getLiveBytes() {
+    return liveBytes;
+  }
+
+  void addLiveBytes(final long delta) {
+    liveBytes += delta;
+  }
+
+  static int recordLength(final byte[] key, final byte[] value) {
+    return HEADER_SIZE + key.length + (value == null ? 0 : value.length);
+  }
+
+  boolean hasRoom(final int length) {
+    return buffer.capacity() - writeOffset >= length;
+  }
+
+  /**
+   * Appends a record, which must fit in the remaining space
+   *
+   * @param value The value, or null for a tombstone
+   * @return The offset of the record
+   */
+  int append(final byte[] key, final byte[] value) {
+    final int offset = writeOffset;
+    final ByteBuffer view = buffer.duplicate();
+    view.position(offset + 4);
+    view.putInt(key.length);
+    view.putInt(value == null ? TOMBSTONE : value.length);
+    view.put(key);
+    if (value != null) {
+      view.put(value);
+    }
+
+    final int length = recordLength(key, value);
+    view.putInt(offset, checksum(offset, length));
+    writeOffset = offset + length;
+    return offset;
+  }
+
+  /** @return The value of the record at the given offset, or null for a tombstone */
+  byte[] readValue(final int offset) {
+    final ByteBuffer view = buffer.duplicate();
+    final int keyLength = view.getInt(offset + 4);
+    final int valueLength = view.getInt(offset + 8);
+    if (valueLength == TOMBSTONE) {
+      return null;
+    }
+
+    final byte[] value = new byte[valueLength];
+    view.position(offset + HEADER_SIZE + keyLength);
+    view.get(value);
+    return value;
+  }
+
+  /**
+   * Visits the records from the given offset, until the end of the records or a corrupted (e.g.
+   * partially written) record.
+   *
+   * @return The offset past the last valid record
+   */
+  int scan(final int from, final RecordVisitor visitor) {
+    final ByteBuffer view = buffer.duplicate();
+    int offset = from;
+
+    while (buffer.capacity() - offset >= HEADER_SIZE) {
+      final int keyLength = view.getInt(offset + 4);
+      final int valueLength = view.getInt(offset + 8);
+      if (keyLength <= 0 || valueLength < TOMBSTONE) {
+        break;
+      }
+
+      final long length = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+      if (length > buffer.capacity() - offset
+          || view.getInt(offset) != checksum(offset, (int) length)) {
+        break;
+      }
+
+      final byte[] key = new byte[keyLength];
+      view.position(offset + HEADER_SIZE);
+      view.get(key);
+      visitor.visit(new String(key, UTF_8), offset, (int) length, valueLength == TOMBSTONE);
+      offset += (int) length;
+    }
+
+    return offset;
+  }
+
+  /**
+   * Visits all the valid records, and positions the segment for appending after them. The remains
+   * of a partially written record (e.g. on a crash) are zeroed.
+   *
+   * @return true if a partially written or corrupted record was discarded
+   */
+  boolean recover(final RecordVisitor visitor) {
+    final int end = scan(0, visitor);
+    writeOffset = end;
+
+    final ByteBuffer view = buffer.duplicate();
+    view.position(end);
+    boolean dirty = false;
+    while (view.hasRemaining() && view.position() < end + HEADER_SIZE) {
+      dirty |= view.get() != 0;
+    }
+
+    if (dirty) {
+      view.position(end);
+      while (view.hasRemaining()) {
+        view.put((byte) 0);
+      }
+    }
+    return dirty;
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  void delete() throws IOException {
+    // The mapping itself stays valid for the concurrent readers until it is garbage collected
+    Files.deleteIfExists(path);
+  }
+
+  private int checksum(final int offset, final int length) {
+    final ByteBuffer view = buffer.duplicate();
+    view.position(offset + 4);
+    view.limit(offset + length);
+    final CRC32 crc = new CRC32();
+    crc.update(view);
+    return (int) crc.getValue();
+  }
+
+  interface RecordVisitor {
+    void visit(String key, int offset, int length, boolean tombstone);
+  }
+}
@@ -16,6 +16,10 @@ import org.hypertrace.core.documentstore.parser.SortTypeExpressionVisitor;
  * <p>Example: SUM(col1) can be constructed as <code>
  * AggregatorExpression.of(AggregationOperator.SUM, IdentifierExpression.of("col1"));
  * </code>
+ *
+ * <p>Example: the 95th percentile of col1 can be constructed as <code>
+ * AggregatorExpression.percentile(IdentifierExpression.of("col1"), 0.95);
+ * </code>
  */
 @Value
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
@@ -25,11 +29,30 @@ public class AggregateExpression implements SelectTypeExpression, SortTypeExpres
 
   SelectTypeExpression expression;
 
+  /** The percentile computed, in [0, 1], for the PERCENTILE aggregations only */
+  Double percentile;
+
   public static AggregateExpression of(
       final AggregationOperator aggregator, final SelectTypeExpression expression) {
     Preconditions.checkArgument(aggregator != null, "aggregator is null");
     Preconditions.checkArgument(expression != null, "expression is null");
-    return new AggregateExpression(aggregator, expression);
+    Preconditions.checkArgument(
+        aggregator != AggregationOperator.PERCENTILE, "percentile() is needed for PERCENTILE");
+    return new AggregateExpression(aggregator, expression, null);
+  }
+
+  /**
+   * @param expression The values, interpolated linearly between the two closest ranks on the
+   *     backends computing the percentiles exactly. MongoDB estimates them with $percentile, and
+   *     rejects the queries before 7.0.
+   * @param percentile The percentile, in [0, 1] (e.g. 0.95 for the 95th percentile)
+   */
+  public static AggregateExpression percentile(
+      final SelectTypeExpression expression, final double percentile) {
+    Preconditions.checkArgument(expression != null, "expression is null");
+    Preconditions.checkArgument(
+        percentile >= 0 && percentile <= 1, "percentile must be in [0, 1]: %s", percentile);
+    return new AggregateExpression(AggregationOperator.PERCENTILE, expression, percentile);
   }
 
   @Override
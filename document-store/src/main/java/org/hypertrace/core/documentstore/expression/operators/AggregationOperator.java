@@ -8,4 +8,11 @@ public enum AggregationOperator {
   SUM,
   MIN,
   MAX,
+  PERCENTILE, // See AggregateExpression.percentile()
+  /**
+   * Estimated, cheaper than DISTINCT_COUNT for many distinct values on Postgres, and exact for a
+   * few distinct values (barring collisions of their hashes). MongoDB and the in-memory store count
+   * the distinct values exactly, at the cost of DISTINCT_COUNT.
+   */
+  APPROX_DISTINCT_COUNT,
 }
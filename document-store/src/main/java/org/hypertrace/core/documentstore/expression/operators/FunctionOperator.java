@@ -5,6 +5,7 @@ public enum FunctionOperator {
   ABS,
   FLOOR,
   LENGTH,
+  ROUND, // To the nearest integer
 
   // n-ary operations
   ADD,
@@ -0,0 +1,32 @@
+package org.hypertrace.core.documentstore.memory;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * The storage of the documents of an {@link InMemoryCollection}, keyed by their primary key.
+ *
+ * <p>The documents handed to and returned by the storage are never modified. The writes are
+ * serialized by the collection, while the reads may run concurrently with each other and with the
+ * writes.
+ */
+public interface DocumentStorage {
+  /** @return The document with the given key, or null if there is none */
+  ObjectNode get(String key);
+
+  boolean containsKey(String key);
+
+  void put(String key, ObjectNode document);
+
+  void remove(String key);
+
+  long size();
+
+  /** @return The documents, weakly consistent with the concurrent writes */
+  Stream<ObjectNode> values();
+
+  void forEach(BiConsumer<String, ObjectNode> consumer);
+
+  void clear();
+}
@@ -0,0 +1,442 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static java.util.Collections.unmodifiableMap;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.CONTAINS;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EXISTS;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GTE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.IN;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LIKE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LTE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NEQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NOT_EXISTS;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NOT_IN;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.canonical;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.comparable;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.compare;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.getUnsupportedOperationException;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.splitPath;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.toJsonNode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.operators.LogicalOperator;
+import org.hypertrace.core.documentstore.expression.operators.RelationalOperator;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.parser.FilterTypeExpressionVisitor;
+
+/**
+ * Compiles the filters into predicates on the JSON documents, to evaluate them in the JVM (e.g. on
+ * cached or streamed documents). The semantics follow the MongoDB ones:
+ *
+ * <ul>
+ *   <li>EQ, IN, GT, etc. match if any of the values at the path (including the elements of an
+ *       array) matches
+ *   <li>NEQ and NOT_IN match the documents not having the field
+ *   <li>GT, LT, etc. compare only the values of the same type
+ *   <li>LIKE is a case-insensitive, unanchored regex search
+ *   <li>CONTAINS matches an array containing the value (or a superset of the value, if it is an
+ *       object)
+ * </ul>
+ *
+ * <p>All the work not depending on the document is done upfront: the paths are split once, the IN
+ * lists are turned into hash sets and the LIKE patterns are compiled. Testing a document walks it
+ * in place and allocates nothing for the string and integral values. The predicates are
+ * thread-safe.
+ */
+public final class FilterPredicateCompiler {
+  private static final Predicate<JsonNode> ALWAYS = node -> true;
+  private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+  private static final Map<RelationalOperator, BiFunction<JsonPath, JsonNode, Predicate<JsonNode>>>
+      HANDLERS =
+          unmodifiableMap(
+              new EnumMap<>(RelationalOperator.class) {
+                {
+                  put(EQ, FilterPredicateCompiler::eq);
+                  put(NEQ, (path, value) -> eq(path, value).negate());
+                  put(GT, comparing(result -> result > 0));
+                  put(LT, comparing(result -> result < 0));
+                  put(GTE, comparing(result -> result >= 0));
+                  put(LTE, comparing(result -> result <= 0));
+                  put(IN, FilterPredicateCompiler::in);
+                  put(NOT_IN, (path, value) -> in(path, value).negate());
+                  put(CONTAINS, FilterPredicateCompiler::contains);
+                  put(EXISTS, (path, value) -> path::exists);
+                  put(NOT_EXISTS, (path, value) -> node -> !path.exists(node));
+                  put(LIKE, FilterPredicateCompiler::like);
+                }
+              });
+
+  private FilterPredicateCompiler() {}
+
+  public static Predicate<JsonNode> compile(final FilterTypeExpression filter) {
+    return filter.accept(new Compiler());
+  }
+
+  /** @return A predicate matching everything if the filter is absent */
+  public static Predicate<JsonNode> compile(final Optional<FilterTypeExpression> filter) {
+    return filter.map(FilterPredicateCompiler::compile).orElse(ALWAYS);
+  }
+
+  /** Compiles a legacy filter. A null filter matches everything. */
+  public static Predicate<JsonNode> compile(final Filter filter) {
+    if (filter == null) {
+      return ALWAYS;
+    }
+
+    if (filter.isComposite()) {
+      final Filter.Op op = filter.getOp();
+      switch (op) {
+        case AND:
+        case OR:
+          final List<Predicate<JsonNode>> children = new ArrayList<>();
+          for (final Filter child : filter.getChildFilters()) {
+            children.add(compile(child));
+          }
+          return combine(LogicalOperator.valueOf(op.name()), children);
+        default:
+          throw new UnsupportedOperationException(
+              String.format("Boolean operation:%s not supported", op));
+      }
+    }
+
+    final RelationalOperator operator;
+    try {
+      operator = RelationalOperator.valueOf(filter.getOp().name());
+    } catch (IllegalArgumentException e) {
+      throw getUnsupportedOperationException(filter.getOp());
+    }
+    return generatePredicate(filter.getFieldName(), operator, filter.getValue());
+  }
+
+  private static Predicate<JsonNode> generatePredicate(
+      final String key, final RelationalOperator operator, final Object value) {
+    final BiFunction<JsonPath, JsonNode, Predicate<JsonNode>> handler = HANDLERS.get(operator);
+    if (handler == null) {
+      throw getUnsupportedOperationException(operator);
+    }
+
+    return handler.apply(new JsonPath(splitPath(key)), toJsonNode(value));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Predicate<JsonNode> combine(
+      final LogicalOperator operator, final List<Predicate<JsonNode>> operandList) {
+    if (operandList.isEmpty()) {
+      return ALWAYS;
+    }
+    if (operandList.size() == 1) {
+      return operandList.get(0);
+    }
+
+    final Predicate<JsonNode>[] operands = operandList.toArray(new Predicate[0]);
+    switch (operator) {
+      case AND:
+        return node -> {
+          for (final Predicate<JsonNode> operand : operands) {
+            if (!operand.test(node)) {
+              return false;
+            }
+          }
+          return true;
+        };
+      case OR:
+        return node -> {
+          for (final Predicate<JsonNode> operand : operands) {
+            if (operand.test(node)) {
+              return true;
+            }
+          }
+          return false;
+        };
+      default:
+        throw getUnsupportedOperationException(operator);
+    }
+  }
+
+  private static Predicate<JsonNode> eq(final JsonPath path, final JsonNode value) {
+    if (value.isNull()) {
+      // Matches the documents not having the field as well
+      return node -> !path.exists(node) || path.anyMatch(node, true, JsonNode::isNull);
+    }
+
+    if (value.isTextual()) {
+      final String text = value.textValue();
+      return node -> path.anyMatch(node, true, c -> c.isTextual() && text.equals(c.textValue()));
+    }
+
+    if (value.isNumber()) {
+      return node -> path.anyMatch(node, true, c -> c.isNumber() && compare(c, value) == 0);
+    }
+
+    return node -> path.anyMatch(node, true, value::equals);
+  }
+
+  private static BiFunction<JsonPath, JsonNode, Predicate<JsonNode>> comparing(
+      final IntPredicate condition) {
+    return (path, value) -> {
+      final Predicate<JsonNode> matcher =
+          c -> comparable(c, value) && condition.test(compare(c, value));
+      return node -> path.anyMatch(node, true, matcher);
+    };
+  }
+
+  private static Predicate<JsonNode> in(final JsonPath path, final JsonNode value) {
+    final ValueSet values = new ValueSet(value.isArray() ? value : List.of(value));
+    if (values.containsNull) {
+      // Like an EQ on null, matches the documents not having the field as well
+      return node -> !path.exists(node) || path.anyMatch(node, true, values::contains);
+    }
+    return node -> path.anyMatch(node, true, values::contains);
+  }
+
+  private static Predicate<JsonNode> like(final JsonPath path, final JsonNode value) {
+    final String regex = value.asText();
+
+    if (regex.chars().noneMatch(c -> REGEX_META_CHARACTERS.indexOf(c) >= 0)) {
+      // A plain substring search needs no regex engine
+      return node ->
+          path.anyMatch(node, true, c -> c.isTextual() && containsIgnoreCase(c.textValue(), regex));
+    }
+
+    // The matchers are reused per thread, as they are stateful
+    final Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+    final ThreadLocal<Matcher> matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+    return node ->
+        path.anyMatch(node, true, c -> c.isTextual() && matchers.get().reset(c.textValue()).find());
+  }
+
+  private static Predicate<JsonNode> contains(final JsonPath path, final JsonNode value) {
+    return node ->
+        path.anyMatch(
+            node,
+            false,
+            candidate -> {
+              if (!candidate.isArray()) {
+                return false;
+              }
+              for (int i = 0; i < candidate.size(); i++) {
+                if (isSuperset(candidate.get(i), value)) {
+                  return true;
+                }
+              }
+              return false;
+            });
+  }
+
+  private static boolean isSuperset(final JsonNode node, final JsonNode value) {
+    if (!value.isObject()) {
+      return InMemoryUtils.equal(node, value);
+    }
+
+    if (!node.isObject()) {
+      return false;
+    }
+
+    final Iterator<Entry<String, JsonNode>> fields = value.fields();
+    while (fields.hasNext()) {
+      final Entry<String, JsonNode> field = fields.next();
+      final JsonNode child = node.get(field.getKey());
+      if (child == null || !isSuperset(child, field.getValue())) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static boolean containsIgnoreCase(final String text, final String substring) {
+    final int last = text.length() - substring.length();
+    for (int i = 0; i <= last; i++) {
+      if (text.regionMatches(true, i, substring, 0, substring.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class Compiler implements FilterTypeExpressionVisitor {
+    @SuppressWarnings("unchecked")
+    @Override
+    public Predicate<JsonNode> visit(final LogicalExpression expression) {
+      final List<Predicate<JsonNode>> operands = new ArrayList<>();
+      for (final FilterTypeExpression operand : expression.getOperands()) {
+        operands.add(operand.accept(this));
+      }
+      return combine(expression.getOperator(), operands);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Predicate<JsonNode> visit(final RelationalExpression expression) {
+      // Only an identifier LHS and a constant RHS is supported as of now.
+      if (!(expression.getLhs() instanceof IdentifierExpression)) {
+        throw getUnsupportedOperationException(expression.getLhs());
+      }
+      if (!(expression.getRhs() instanceof ConstantExpression)) {
+        throw getUnsupportedOperationException(expression.getRhs());
+      }
+
+      final String key = ((IdentifierExpression) expression.getLhs()).getName();
+      final Object value = ((ConstantExpression) expression.getRhs()).getValue();
+      return generatePredicate(key, expression.getOperator(), value);
+    }
+  }
+
+  /**
+   * A pre-split path, resolved against a document without materializing the values found. The
+   * arrays found along the path are traversed element-wise, and (optionally) an array found at the
+   * end of the path is tested both as a whole and element-wise (see {@link
+   * InMemoryUtils#candidates}).
+   */
+  private static final class JsonPath {
+    private final String[] segments;
+
+    private JsonPath(final String[] segments) {
+      this.segments = segments;
+    }
+
+    boolean exists(final JsonNode root) {
+      return anyMatch(root, 0, false, ALWAYS);
+    }
+
+    boolean anyMatch(
+        final JsonNode root, final boolean expandLeafArrays, final Predicate<JsonNode> test) {
+      return anyMatch(root, 0, expandLeafArrays, test);
+    }
+
+    private boolean anyMatch(
+        final JsonNode node,
+        final int index,
+        final boolean expandLeafArrays,
+        final Predicate<JsonNode> test) {
+      if (index == segments.length) {
+        if (test.test(node)) {
+          return true;
+        }
+        if (expandLeafArrays && node.isArray()) {
+          for (int i = 0; i < node.size(); i++) {
+            if (test.test(node.get(i))) {
+              return true;
+            }
+          }
+        }
+        return false;
+      }
+
+      if (node.isObject()) {
+        final JsonNode child = node.get(segments[index]);
+        return child != null && anyMatch(child, index + 1, expandLeafArrays, test);
+      }
+
+      if (node.isArray()) {
+        for (int i = 0; i < node.size(); i++) {
+          final JsonNode element = node.get(i);
+          if (element.isObject() && anyMatch(element, index, expandLeafArrays, test)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The values of an IN list, bucketed by type so that the common lookups (strings and integral
+   * numbers) neither scan the list nor allocate.
+   */
+  private static final class ValueSet {
+    private final Set<String> strings = new HashSet<>();
+    private final long[] longs;
+    private final List<JsonNode> decimals = new ArrayList<>();
+    private final List<JsonNode> others = new ArrayList<>();
+    private final boolean containsNull;
+
+    private ValueSet(final Iterable<JsonNode> values) {
+      final List<Long> integrals = new ArrayList<>();
+      boolean hasNull = false;
+
+      for (final JsonNode value : values) {
+        if (value.isTextual()) {
+          strings.add(value.textValue());
+        } else if (value.isNumber()) {
+          final JsonNode number = canonical(value);
+          if (number.isIntegralNumber()) {
+            integrals.add(number.longValue());
+          } else {
+            decimals.add(number);
+          }
+        } else if (value.isNull()) {
+          hasNull = true;
+        } else {
+          others.add(value);
+        }
+      }
+
+      this.longs = integrals.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+      this.containsNull = hasNull;
+    }
+
+    boolean contains(final JsonNode candidate) {
+      if (candidate.isTextual()) {
+        return strings.contains(candidate.textValue());
+      }
+
+      if (candidate.isNumber()) {
+        if (candidate.isIntegralNumber() && candidate.canConvertToLong()) {
+          return Arrays.binarySearch(longs, candidate.longValue()) >= 0;
+        }
+        if (candidate.isDouble() || candidate.isFloat()) {
+          final double value = candidate.doubleValue();
+          if (value == Math.rint(value) && Math.abs(value) < 0x1p53) {
+            return Arrays.binarySearch(longs, (long) value) >= 0;
+          }
+        }
+
+        final JsonNode number = canonical(candidate);
+        if (number.isIntegralNumber()) {
+          return Arrays.binarySearch(longs, number.longValue()) >= 0;
+        }
+        for (final JsonNode decimal : decimals) {
+          if (compare(number, decimal) == 0) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      if (candidate.isNull()) {
+        return containsNull;
+      }
+
+      for (final JsonNode other : others) {
+        if (other.equals(candidate)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package org.hypertrace.core.documentstore.memory;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/** Holds the documents in a concurrent hash map on the heap */
+final class HeapDocumentStorage implements DocumentStorage {
+  private final Map<String, ObjectNode> documents = new ConcurrentHashMap<>();
+
+  @Override
+  public ObjectNode get(final String key) {
+    return documents.get(key);
+  }
+
+  @Override
+  public boolean containsKey(final String key) {
+    return documents.containsKey(key);
+  }
+
+  @Override
+  public void put(final String key, final ObjectNode document) {
+    documents.put(key, document);
+  }
+
+  @Override
+  public void remove(final String key) {
+    documents.remove(key);
+  }
+
+  @Override
+  public long size() {
+    return documents.size();
+  }
+
+  @Override
+  public Stream<ObjectNode> values() {
+    return documents.values().stream();
+  }
+
+  @Override
+  public void forEach(final BiConsumer<String, ObjectNode> consumer) {
+    documents.forEach(consumer);
+  }
+
+  @Override
+  public void clear() {
+    documents.clear();
+  }
+}
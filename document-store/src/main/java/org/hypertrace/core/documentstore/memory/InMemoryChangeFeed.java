@@ -0,0 +1,167 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static org.hypertrace.core.documentstore.memory.InMemoryQueryExecutor.ID_KEY;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+
+/**
+ * The changes made to the documents of an {@link InMemoryCollection}, fanned out to the watchers.
+ * The latest changes are retained, so that a watcher can resume after a change it has processed.
+ * The resume tokens are the sequence numbers of the changes.
+ */
+final class InMemoryChangeFeed {
+  private static final int HISTORY_SIZE = 10_000;
+
+  private final Deque<Change> history = new ArrayDeque<>();
+  private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+  private long sequence;
+
+  /**
+   * Publishes a change. The documents are never modified once stored, so they are shared with the
+   * watchers as is.
+   *
+   * @param document The document after the change, or null for a deletion
+   */
+  synchronized void publish(
+      final ChangeEvent.Type type, final String key, final ObjectNode document) {
+    final Change change = new Change(++sequence, type, key, document);
+    if (history.size() == HISTORY_SIZE) {
+      history.removeFirst();
+    }
+    history.addLast(change);
+    watchers.forEach(watcher -> watcher.changes.add(change));
+  }
+
+  synchronized CloseableIterator<ChangeEvent> watch(
+      final FilterTypeExpression filter, final WatchOptions options) {
+    final Watcher watcher =
+        new Watcher(
+            filter == null ? null : FilterPredicateCompiler.compile(filter),
+            options.isFullDocument(),
+            options.getMaxAwaitTime().toMillis());
+
+    if (options.getResumeAfter() != null) {
+      final long resumeAfter = parseResumeToken(options.getResumeAfter());
+      final long oldest = history.isEmpty() ? sequence + 1 : history.getFirst().sequence;
+      if (resumeAfter > sequence || resumeAfter < oldest - 1) {
+        throw new IllegalArgumentException(
+            "The resume token is no longer available: " + options.getResumeAfter());
+      }
+      history.stream()
+          .filter(change -> change.sequence > resumeAfter)
+          .forEach(watcher.changes::add);
+    }
+
+    watchers.add(watcher);
+    return watcher;
+  }
+
+  private static long parseResumeToken(final String token) {
+    try {
+      return Long.parseLong(token);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid resume token: " + token, e);
+    }
+  }
+
+  private static final class Change {
+    private final long sequence;
+    private final ChangeEvent.Type type;
+    private final String key;
+    private final ObjectNode document;
+
+    private Change(
+        final long sequence,
+        final ChangeEvent.Type type,
+        final String key,
+        final ObjectNode document) {
+      this.sequence = sequence;
+      this.type = type;
+      this.key = key;
+      this.document = document;
+    }
+  }
+
+  private final class Watcher implements CloseableIterator<ChangeEvent> {
+    private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    private final Predicate<JsonNode> filter;
+    private final boolean fullDocument;
+    private final long maxAwaitMillis;
+    private volatile boolean closed;
+    private Change next;
+
+    private Watcher(
+        final Predicate<JsonNode> filter, final boolean fullDocument, final long maxAwaitMillis) {
+      this.filter = filter;
+      this.fullDocument = fullDocument;
+      this.maxAwaitMillis = maxAwaitMillis;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && !closed) {
+        final Change change;
+        try {
+          change = changes.poll(maxAwaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          close();
+          return false;
+        }
+
+        if (change != null && matches(change)) {
+          next = change;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public ChangeEvent next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      final Change change = next;
+      next = null;
+      return ChangeEvent.builder()
+          .type(change.type)
+          .key(change.key)
+          .document(fullDocument && change.document != null ? toDocument(change.document) : null)
+          .resumeToken(String.valueOf(change.sequence))
+          .build();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      watchers.remove(this);
+      changes.clear();
+    }
+
+    private boolean matches(final Change change) {
+      return filter == null || change.document == null || filter.test(change.document);
+    }
+
+    private JSONDocument toDocument(final ObjectNode document) {
+      final ObjectNode copy = document.deepCopy();
+      copy.remove(ID_KEY);
+      return new JSONDocument(copy);
+    }
+  }
+}
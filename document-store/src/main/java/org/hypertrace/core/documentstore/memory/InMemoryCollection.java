@@ -0,0 +1,1261 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hypertrace.core.documentstore.memory.InMemoryQueryExecutor.ID_KEY;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.MAPPER;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.VALUE_COMPARATOR;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.getDirect;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.splitPath;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.toJsonNode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
+import org.hypertrace.core.documentstore.BulkDeleteResult;
+import org.hypertrace.core.documentstore.BulkUpdateRequest;
+import org.hypertrace.core.documentstore.BulkUpdateResult;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.CreateResult;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.DocumentPublisher;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.OrderBy;
+import org.hypertrace.core.documentstore.Query;
+import org.hypertrace.core.documentstore.UpdateResult;
+import org.hypertrace.core.documentstore.VersionedDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.metrics.CollectionOperation;
+import org.hypertrace.core.documentstore.metrics.OperationTrace;
+import org.hypertrace.core.documentstore.parser.FilterTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.query.transform.KeyRangePartitioner;
+import org.hypertrace.core.documentstore.transfer.NdJsonReader;
+import org.hypertrace.core.documentstore.transfer.NdJsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Collection} holding the documents in memory, with the query semantics of the MongoDB
+ * backend. Meant to be used as a cache tier in front of a persistent store, or as a fast stand-in
+ * for a real database in tests.
+ *
+ * <p>The documents are stored as immutable trees keyed by the primary key (in a concurrent hash map
+ * on the heap, unless another {@link DocumentStorage} is provided), and are copied on their way in
+ * and out. Secondary hash indexes can be defined on JSON paths (see {@link #createIndex(String)}),
+ * and are used to answer the EQ and IN filters on the indexed paths (alone or within an AND)
+ * without scanning the collection. The writes are serialized, while the reads run concurrently with
+ * each other and with the writes.
+ */
+public class InMemoryCollection implements Collection {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryCollection.class);
+
+  private static final String LAST_UPDATED_TIME = "lastUpdatedTime";
+  private static final String CREATED_TIME = "createdTime";
+  private static final int IMPORT_BATCH_SIZE = 1000;
+  private static final Comparator<JsonNode> CHANGE_ORDER =
+      Comparator.<JsonNode>comparingLong(node -> node.path(LAST_UPDATED_TIME).asLong())
+          .thenComparing(node -> node.path(ID_KEY).asText());
+
+  private final String collectionName;
+  private final DocumentStorage documents;
+  private final Map<String, InMemoryIndex> indexes = new ConcurrentHashMap<>();
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final InMemoryChangeFeed changes = new InMemoryChangeFeed();
+  private Collection viewSource;
+  private org.hypertrace.core.documentstore.query.Query viewQuery;
+
+  InMemoryCollection(final String collectionName) {
+    this(collectionName, new HeapDocumentStorage());
+  }
+
+  /** Creates a collection on top of the given storage, indexing none of its documents yet */
+  protected InMemoryCollection(final String collectionName, final DocumentStorage documents) {
+    this.collectionName = collectionName;
+    this.documents = documents;
+  }
+
+  /**
+   * Creates a hash index on the given (dot separated) path, if one does not exist already. The
+   * existing documents are indexed right away.
+   */
+  public void createIndex(final String path) {
+    final Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      if (indexes.containsKey(path)) {
+        return;
+      }
+
+      final InMemoryIndex index = new InMemoryIndex(path);
+      documents.forEach(index::add);
+      indexes.put(path, index);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  public Set<String> getIndexedPaths() {
+    return Set.copyOf(indexes.keySet());
+  }
+
+  /** @return The documents, by key, to be restored by {@link #restore(Map)} */
+  public Map<String, ObjectNode> snapshot() {
+    final Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      final Map<String, ObjectNode> snapshot = new HashMap<>();
+      documents.forEach(snapshot::put);
+      return snapshot;
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /** Restores the documents of a {@link #snapshot()}, writing back those changed since only */
+  public void restore(final Map<String, ObjectNode> snapshot) {
+    final Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      final List<String> added = new ArrayList<>();
+      documents.forEach(
+          (key, document) -> {
+            if (!snapshot.containsKey(key)) {
+              added.add(key);
+            }
+          });
+      added.forEach(this::remove);
+      snapshot.forEach(
+          (key, document) -> {
+            final ObjectNode existing = documents.get(key);
+            if (!document.equals(existing)) {
+              replace(key, existing, document);
+            }
+          });
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Makes the collection a materialized view of a query, refreshed by {@link #refreshView()}. The
+   * query of an existing view is kept.
+   *
+   * @return false if the collection was a view already
+   */
+  public synchronized boolean materialize(
+      final Collection source, final org.hypertrace.core.documentstore.query.Query query) {
+    if (viewQuery != null) {
+      return false;
+    }
+    viewSource = source;
+    viewQuery = query;
+    return true;
+  }
+
+  /**
+   * Replaces the documents of a materialized view with the results of its query. The results are
+   * keyed by their hashes, so that only the results changed since the previous refresh are written,
+   * and they are swapped in at once under the write lock.
+   */
+  public synchronized void refreshView() throws IOException {
+    if (viewQuery == null) {
+      throw new IllegalStateException(collectionName + " is not a materialized view");
+    }
+
+    final Map<String, ObjectNode> rows = new LinkedHashMap<>();
+    try (final CloseableIterator<Document> results = viewSource.aggregate(viewQuery)) {
+      while (results.hasNext()) {
+        final ObjectNode row = parse(results.next());
+        final String hash = Hashing.sha256().hashString(row.toString(), UTF_8).toString();
+        int occurrence = 1;
+        while (rows.containsKey(hash + "-" + occurrence)) {
+          occurrence++;
+        }
+        rows.put(hash + "-" + occurrence, row);
+      }
+    }
+
+    final long now = System.currentTimeMillis();
+    final Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      final List<String> stale = new ArrayList<>();
+      documents.forEach(
+          (key, document) -> {
+            if (!rows.containsKey(key)) {
+              stale.add(key);
+            }
+          });
+      stale.forEach(this::remove);
+      rows.forEach(
+          (key, row) -> {
+            if (!documents.containsKey(key)) {
+              write(key, row, now);
+            }
+          });
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /** Adds the following fields automatically: _id, lastUpdatedTime and createdTime */
+  @Override
+  public boolean upsert(Key key, Document document) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPSERT)) {
+      final ObjectNode node = parse(document);
+      trace.parsed();
+      write(key.toString(), node, System.currentTimeMillis());
+      trace.executed();
+      trace.succeeded(1);
+      return true;
+    }
+  }
+
+  /** Adds the following fields automatically: _id, lastUpdatedTime and createdTime */
+  @Override
+  public Document upsertAndReturn(Key key, Document document) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPSERT_AND_RETURN)) {
+      final ObjectNode node = parse(document);
+      trace.parsed();
+      final ObjectNode stored = write(key.toString(), node, System.currentTimeMillis());
+      trace.executed();
+      trace.succeeded(1);
+      return toDocument(stored);
+    }
+  }
+
+  /** Updates auto-field lastUpdatedTime when sub doc is updated */
+  @Override
+  public boolean updateSubDoc(Key key, String subDocPath, Document subDocument) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPDATE_SUB_DOC)) {
+      final JsonNode subDoc = MAPPER.readTree(subDocument.toJson());
+      trace.parsed();
+      final boolean updated = modify(key.toString(), node -> setSubDoc(node, subDocPath, subDoc));
+      trace.executed();
+      trace.succeeded(updated ? 1 : 0);
+      return true;
+    } catch (IOException e) {
+      LOGGER.error("Exception updating document. key: {} content:{}", key, subDocument);
+      return false;
+    }
+  }
+
+  @Override
+  public BulkUpdateResult bulkUpdateSubDocs(Map<Key, Map<String, Document>> documents)
+      throws Exception {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_UPDATE_SUB_DOCS)) {
+      final Map<String, Map<String, JsonNode>> updates = new LinkedHashMap<>();
+      for (final Entry<Key, Map<String, Document>> entry : documents.entrySet()) {
+        final Map<String, JsonNode> subDocs = new LinkedHashMap<>();
+        for (final Entry<String, Document> subDoc : entry.getValue().entrySet()) {
+          subDocs.put(subDoc.getKey(), MAPPER.readTree(subDoc.getValue().toJson()));
+        }
+        updates.put(entry.getKey().toString(), subDocs);
+      }
+      trace.parsed();
+
+      long updated = 0;
+      for (final Entry<String, Map<String, JsonNode>> entry : updates.entrySet()) {
+        final boolean modified =
+            modify(
+                entry.getKey(),
+                node -> {
+                  entry.getValue().forEach((path, subDoc) -> setSubDoc(node, path, subDoc));
+                  return !entry.getValue().isEmpty();
+                });
+        updated += modified ? 1 : 0;
+      }
+
+      trace.executed();
+      trace.succeeded(updated);
+      return new BulkUpdateResult(updated);
+    }
+  }
+
+  @Override
+  public BulkUpdateResult bulkOperationOnArrayValue(BulkArrayValueUpdateRequest request)
+      throws Exception {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_OPERATION_ON_ARRAY_VALUE)) {
+      final List<JsonNode> values = new ArrayList<>();
+      for (final Document subDocument : request.getSubDocuments()) {
+        values.add(MAPPER.readTree(subDocument.toJson()));
+      }
+      final String[] path = splitPath(request.getSubDocPath());
+      trace.parsed();
+
+      long updated = 0;
+      for (final Key key : request.getKeys()) {
+        final boolean modified =
+            modify(
+                key.toString(),
+                node -> {
+                  final JsonNode existing = getDirect(node, path);
+                  final ArrayNode array =
+                      existing.isArray()
+                          ? ((ArrayNode) existing).deepCopy()
+                          : JsonNodeFactory.instance.arrayNode();
+
+                  switch (request.getOperation()) {
+                    case ADD:
+                      // Like $addToSet, adds only the values not present already
+                      values.stream().filter(value -> !contains(array, value)).forEach(array::add);
+                      break;
+                    case REMOVE:
+                      // Like $pullAll, removes all the occurrences of the values
+                      for (int i = array.size() - 1; i >= 0; i--) {
+                        if (contains(values, array.get(i))) {
+                          array.remove(i);
+                        }
+                      }
+                      break;
+                    case SET:
+                      array.removeAll();
+                      values.forEach(array::add);
+                      break;
+                    default:
+                      throw new UnsupportedOperationException(
+                          "Unknown operation : " + request.getOperation());
+                  }
+
+                  if (array.equals(existing)) {
+                    return false;
+                  }
+                  InMemoryUtils.set(node, path, array);
+                  return true;
+                });
+        updated += modified ? 1 : 0;
+      }
+
+      trace.executed();
+      trace.succeeded(updated);
+      return new BulkUpdateResult(updated);
+    }
+  }
+
+  @Override
+  public Optional<Document> get(final Key key) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.GET)) {
+      final Optional<Document> document =
+          Optional.ofNullable(documents.get(key.toString())).map(InMemoryCollection::toDocument);
+      trace.executed();
+      trace.succeeded(document.isPresent() ? 1 : 0);
+      return document;
+    }
+  }
+
+  @Override
+  public Map<Key, Document> getAll(final java.util.Collection<Key> keys) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.GET_ALL)) {
+      final Map<Key, Document> result = new LinkedHashMap<>();
+      for (final Key key : keys) {
+        final ObjectNode node = documents.get(key.toString());
+        if (node != null) {
+          result.put(key, toDocument(node));
+        }
+      }
+      trace.executed();
+      trace.succeeded(result.size());
+      return result;
+    }
+  }
+
+  @Override
+  public CloseableIterator<Document> search(Query query) {
+    final OperationTrace trace = beginTrace(CollectionOperation.SEARCH);
+    Stream<JsonNode> stream = scan(query.getFilter());
+
+    if (!query.getOrderBys().isEmpty()) {
+      Comparator<JsonNode> comparator = null;
+      for (final OrderBy orderBy : query.getOrderBys()) {
+        final String[] path = splitPath(orderBy.getField());
+        Comparator<JsonNode> next =
+            Comparator.comparing(node -> InMemoryUtils.get(node, path), VALUE_COMPARATOR);
+        next = orderBy.isAsc() ? next : next.reversed();
+        comparator = comparator == null ? next : comparator.thenComparing(next);
+      }
+      stream = stream.sorted(comparator);
+    }
+
+    final Integer offset = query.getOffset();
+    if (offset != null && offset >= 0) {
+      stream = stream.skip(offset);
+    }
+
+    final Integer limit = query.getLimit();
+    if (limit != null && limit >= 0) {
+      stream = stream.limit(limit);
+    }
+
+    final List<String> selections = query.getSelections();
+    trace.parsed(query);
+    final Stream<JsonNode> projected =
+        selections.isEmpty()
+            ? stream
+            : stream.map(
+                node -> {
+                  final ObjectNode projection = JsonNodeFactory.instance.objectNode();
+                  for (final String selection : selections) {
+                    final String[] path = splitPath(selection);
+                    final JsonNode value = InMemoryUtils.get(node, path);
+                    if (!value.isMissingNode()) {
+                      InMemoryUtils.set(projection, path, value);
+                    }
+                  }
+                  return projection;
+                });
+    trace.executed();
+    return convertToDocumentIterator(projected, trace, true);
+  }
+
+  @Override
+  public CloseableIterator<Document> find(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    final OperationTrace trace = beginTrace(CollectionOperation.FIND);
+    try {
+      final Stream<JsonNode> results = InMemoryQueryExecutor.find(query, scan(query.getFilter()));
+      trace.parsed(query);
+      return convertToDocumentIterator(results, trace, false);
+    } catch (RuntimeException e) {
+      trace.failed();
+      throw e;
+    }
+  }
+
+  @Override
+  public List<CloseableIterator<Document>> parallelScan(
+      final org.hypertrace.core.documentstore.query.Query query, final int partitions) {
+    KeyRangePartitioner.validate(query, partitions);
+    final List<String> boundaries;
+    try (OperationTrace trace = beginTrace(CollectionOperation.PARALLEL_SCAN)) {
+      // The partitions hold even numbers of the documents matching the filter
+      final List<String> keys =
+          scan(query.getFilter())
+              .filter(FilterPredicateCompiler.compile(query.getFilter()))
+              .map(node -> node.path(ID_KEY).asText())
+              .sorted()
+              .collect(Collectors.toList());
+      boundaries = KeyRangePartitioner.quantiles(keys, partitions);
+      trace.executed();
+      trace.succeeded(0);
+    }
+
+    return KeyRangePartitioner.partition(query, ID_KEY, boundaries).stream()
+        .map(this::find)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public CloseableIterator<Document> aggregate(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    final OperationTrace trace = beginTrace(CollectionOperation.AGGREGATE);
+    try {
+      final Stream<JsonNode> results =
+          InMemoryQueryExecutor.aggregate(query, scan(query.getFilter()));
+      trace.parsed(query);
+      return convertToDocumentIterator(results, trace, false);
+    } catch (RuntimeException e) {
+      trace.failed();
+      throw e;
+    }
+  }
+
+  /** The documents are in memory already, so the demand of the subscriber is not used */
+  @Override
+  public Flow.Publisher<Document> findPublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return new DocumentPublisher(batchSize -> find(query));
+  }
+
+  /** The documents are in memory already, so the demand of the subscriber is not used */
+  @Override
+  public Flow.Publisher<Document> aggregatePublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return new DocumentPublisher(batchSize -> aggregate(query));
+  }
+
+  /** The queries are evaluated lazily, as they are iterated, there being no round trip to save */
+  @Override
+  public List<CloseableIterator<Document>> executeBatch(
+      final List<org.hypertrace.core.documentstore.query.Query> queries) {
+    return queries.stream().map(this::aggregate).collect(Collectors.toList());
+  }
+
+  @Override
+  public long count(final org.hypertrace.core.documentstore.query.Query query) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.COUNT)) {
+      final long count = InMemoryQueryExecutor.count(query, scan(query.getFilter()));
+      trace.executed();
+      trace.succeeded(1);
+      return count;
+    }
+  }
+
+  @Override
+  public boolean delete(Key key) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE)) {
+      final boolean deleted = remove(key.toString());
+      trace.executed();
+      trace.succeeded(deleted ? 1 : 0);
+      return deleted;
+    }
+  }
+
+  @Override
+  public boolean delete(Filter filter) {
+    if (filter == null) {
+      throw new UnsupportedOperationException("Filter must be provided");
+    }
+
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE_BY_FILTER)) {
+      final Predicate<JsonNode> predicate = FilterPredicateCompiler.compile(filter);
+      trace.parsed(filter);
+
+      long deleted = 0;
+      final Lock writeLock = lock.writeLock();
+      writeLock.lock();
+      try {
+        final List<String> keys =
+            candidates(lookup(filter))
+                .filter(predicate)
+                .map(node -> node.get(ID_KEY).textValue())
+                .collect(Collectors.toList());
+        for (final String key : keys) {
+          deleted += remove(key) ? 1 : 0;
+        }
+      } finally {
+        writeLock.unlock();
+      }
+
+      trace.executed();
+      trace.succeeded(deleted);
+      return deleted > 0;
+    }
+  }
+
+  @Override
+  public BulkDeleteResult delete(Set<Key> keys) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_DELETE)) {
+      long deleted = 0;
+      for (final Key key : keys) {
+        deleted += remove(key.toString()) ? 1 : 0;
+      }
+      trace.executed();
+      trace.succeeded(deleted);
+      return new BulkDeleteResult(deleted);
+    }
+  }
+
+  @Override
+  public boolean deleteSubDoc(Key key, String subDocPath) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE_SUB_DOC)) {
+      final String[] path = splitPath(subDocPath);
+      final boolean deleted = modify(key.toString(), node -> InMemoryUtils.remove(node, path));
+      trace.executed();
+      trace.succeeded(deleted ? 1 : 0);
+      return deleted;
+    }
+  }
+
+  @Override
+  public boolean deleteAll() {
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE_ALL)) {
+      final Lock writeLock = lock.writeLock();
+      writeLock.lock();
+      final long deleted;
+      try {
+        deleted = documents.size();
+        documents.forEach((key, document) -> changes.publish(ChangeEvent.Type.DELETE, key, null));
+        documents.clear();
+        indexes.values().forEach(InMemoryIndex::clear);
+      } finally {
+        writeLock.unlock();
+      }
+      trace.executed();
+      trace.succeeded(deleted);
+      return true;
+    }
+  }
+
+  @Override
+  public long count() {
+    try (OperationTrace trace = beginTrace(CollectionOperation.COUNT)) {
+      final long count = documents.size();
+      trace.executed();
+      trace.succeeded(1);
+      return count;
+    }
+  }
+
+  /** The documents are counted, as cheaply as they would be estimated */
+  @Override
+  public long estimatedCount() {
+    return count();
+  }
+
+  /** The documents are counted, as cheaply as they would be estimated */
+  @Override
+  public long estimatedCount(final org.hypertrace.core.documentstore.query.Query query) {
+    return count(query);
+  }
+
+  @Override
+  public long total(Query query) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.TOTAL)) {
+      trace.parsed(query);
+      final long total = scan(query.getFilter()).count();
+      trace.executed();
+      trace.succeeded(1);
+      return total;
+    }
+  }
+
+  /** Adds the following fields automatically: _id, lastUpdatedTime and createdTime */
+  @Override
+  public boolean bulkUpsert(Map<Key, Document> documents) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_UPSERT)) {
+      final Map<String, ObjectNode> nodes = parse(documents);
+      trace.parsed();
+      final long now = System.currentTimeMillis();
+      nodes.forEach((key, node) -> write(key, node, now));
+      trace.executed();
+      trace.succeeded(nodes.size());
+      return true;
+    } catch (IOException e) {
+      LOGGER.error("Error during bulk upsert for documents:{}", documents, e);
+      return false;
+    }
+  }
+
+  @Override
+  public CloseableIterator<Document> bulkUpsertAndReturnOlderDocuments(Map<Key, Document> documents)
+      throws IOException {
+    final OperationTrace trace =
+        beginTrace(CollectionOperation.BULK_UPSERT_AND_RETURN_OLDER_DOCUMENTS);
+    try {
+      final Map<String, ObjectNode> nodes = parse(documents);
+      trace.parsed();
+      final long now = System.currentTimeMillis();
+      final List<JsonNode> olderDocuments = new ArrayList<>();
+
+      final Lock writeLock = lock.writeLock();
+      writeLock.lock();
+      try {
+        for (final Entry<String, ObjectNode> entry : nodes.entrySet()) {
+          Optional.ofNullable(this.documents.get(entry.getKey())).ifPresent(olderDocuments::add);
+          write(entry.getKey(), entry.getValue(), now);
+        }
+      } finally {
+        writeLock.unlock();
+      }
+
+      trace.executed();
+      return convertToDocumentIterator(olderDocuments.stream(), trace, true);
+    } catch (IOException e) {
+      trace.failed();
+      LOGGER.error("Error during bulk upsert for documents:{}", documents, e);
+      throw new IOException("Error during bulk upsert.");
+    }
+  }
+
+  @Override
+  public void drop() {
+    deleteAll();
+  }
+
+  /** create a new document if one doesn't exists with key */
+  @Override
+  public CreateResult create(Key key, Document document) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.CREATE)) {
+      final ObjectNode node = parse(document);
+      trace.parsed();
+
+      final Lock writeLock = lock.writeLock();
+      writeLock.lock();
+      try {
+        if (documents.containsKey(key.toString())) {
+          throw new IOException("Document already exists with key: " + key);
+        }
+        write(key.toString(), node, System.currentTimeMillis());
+      } finally {
+        writeLock.unlock();
+      }
+
+      trace.executed();
+      trace.succeeded(1);
+      return new CreateResult(true);
+    }
+  }
+
+  /**
+   * Bulk updates existing documents if condition for the corresponding document evaluates to true.
+   */
+  @Override
+  public BulkUpdateResult bulkUpdate(List<BulkUpdateRequest> bulkUpdateRequests) throws Exception {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_UPDATE)) {
+      long updated = 0;
+      for (final BulkUpdateRequest request : bulkUpdateRequests) {
+        updated +=
+            update(request.getKey(), request.getDocument(), request.getFilter()).getUpdatedCount();
+      }
+      trace.executed();
+      trace.succeeded(updated);
+      return new BulkUpdateResult(updated);
+    }
+  }
+
+  /**
+   * Update an existing document if condition is evaluated to true. Conditional will help in
+   * providing optimistic locking support for concurrency update.
+   */
+  @Override
+  public UpdateResult update(Key key, Document document, Filter condition) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPDATE)) {
+      final ObjectNode node = parse(document);
+      final Predicate<JsonNode> predicate = FilterPredicateCompiler.compile(condition);
+      trace.parsed(condition);
+
+      final Lock writeLock = lock.writeLock();
+      writeLock.lock();
+      final boolean updated;
+      try {
+        final ObjectNode existing = documents.get(key.toString());
+        updated = existing != null && predicate.test(existing);
+        if (updated) {
+          write(key.toString(), node, System.currentTimeMillis());
+        }
+      } finally {
+        writeLock.unlock();
+      }
+
+      trace.executed();
+      trace.succeeded(updated ? 1 : 0);
+      return new UpdateResult(updated ? 1 : 0);
+    }
+  }
+
+  /**
+   * The changes are fanned out from memory. Only the latest changes are retained for resuming, and
+   * the history does not survive the collection instance.
+   */
+  @Override
+  public CloseableIterator<ChangeEvent> watch(
+      final FilterTypeExpression filter, final WatchOptions options) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.WATCH)) {
+      final CloseableIterator<ChangeEvent> events = changes.watch(filter, options);
+      trace.executed();
+      trace.succeeded(0);
+      return events;
+    }
+  }
+
+  @Override
+  public CloseableIterator<ChangedDocument> changesSince(
+      final Watermark watermark, final int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+    }
+    return new ChangesIterator(watermark, batchSize);
+  }
+
+  @Override
+  public Map<Key, VersionedDocument> getIfModified(final Map<Key, Instant> updateTimes) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.GET_IF_MODIFIED)) {
+      final Map<Key, VersionedDocument> result = new LinkedHashMap<>();
+      updateTimes.forEach(
+          (key, knownUpdateTime) -> {
+            final ObjectNode node = documents.get(key.toString());
+            if (node != null) {
+              final Instant updateTime =
+                  Instant.ofEpochMilli(node.path(LAST_UPDATED_TIME).asLong());
+              result.put(
+                  key,
+                  !updateTime.equals(knownUpdateTime)
+                      ? VersionedDocument.of(toDocument(node), updateTime)
+                      : VersionedDocument.unmodified(updateTime));
+            }
+          });
+      trace.executed();
+      trace.succeeded(result.size());
+      return result;
+    }
+  }
+
+  @Override
+  public long exportTo(final OutputStream output, final LongConsumer progress) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.EXPORT)) {
+      trace.executed();
+      final NdJsonWriter writer = new NdJsonWriter(output, progress);
+      final Iterator<ObjectNode> iterator = documents.values().iterator();
+      while (iterator.hasNext()) {
+        writer.write(iterator.next());
+      }
+      final long count = writer.finish();
+      trace.succeeded(count);
+      return count;
+    }
+  }
+
+  /** Adds the following fields automatically: lastUpdatedTime and createdTime */
+  @Override
+  public long importFrom(final InputStream input, final LongConsumer progress) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.IMPORT)) {
+      final NdJsonReader reader = new NdJsonReader(input, progress);
+      long inserted = 0;
+      List<ObjectNode> batch;
+      while (!(batch = reader.readBatch(IMPORT_BATCH_SIZE)).isEmpty()) {
+        final long now = System.currentTimeMillis();
+        final Lock writeLock = lock.writeLock();
+        writeLock.lock();
+        try {
+          for (final ObjectNode node : batch) {
+            final String key = node.get(ID_KEY).textValue();
+            if (!documents.containsKey(key)) {
+              write(key, node, now);
+              inserted++;
+            }
+          }
+        } finally {
+          writeLock.unlock();
+        }
+      }
+      trace.executed();
+      trace.succeeded(inserted);
+      return inserted;
+    }
+  }
+
+  /**
+   * Reads the next batch of the documents updated after the watermark. There is no index on the
+   * update times, so each batch scans the collection, keeping the earliest documents in a bounded
+   * heap.
+   */
+  private List<ObjectNode> readChanges(final Watermark watermark, final int batchSize) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.CHANGES_SINCE)) {
+      final PriorityQueue<ObjectNode> latest =
+          new PriorityQueue<>(batchSize + 1, CHANGE_ORDER.reversed());
+      documents
+          .values()
+          .filter(node -> isAfter(node, watermark))
+          .forEach(
+              node -> {
+                latest.add(node);
+                if (latest.size() > batchSize) {
+                  latest.poll();
+                }
+              });
+      trace.executed();
+
+      final List<ObjectNode> batch = new ArrayList<>(latest);
+      batch.sort(CHANGE_ORDER);
+      trace.succeeded(batch.size());
+      return batch;
+    }
+  }
+
+  private static boolean isAfter(final ObjectNode node, final Watermark watermark) {
+    final long updateTime = node.path(LAST_UPDATED_TIME).asLong();
+    final long watermarkTime = watermark.getTimestamp().toEpochMilli();
+    return updateTime > watermarkTime
+        || (updateTime == watermarkTime
+            && node.path(ID_KEY).asText().compareTo(watermark.getKey()) > 0);
+  }
+
+  private static Watermark toWatermark(final ObjectNode node) {
+    return Watermark.of(
+        Instant.ofEpochMilli(node.path(LAST_UPDATED_TIME).asLong()), node.path(ID_KEY).asText());
+  }
+
+  /**
+   * Stores the document (replacing the existing one, if any) and maintains the indexes. The
+   * creation time of the existing document, if any, is retained.
+   *
+   * @return The stored document
+   */
+  private ObjectNode write(final String key, final ObjectNode node, final long now) {
+    final Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      final ObjectNode existing = documents.get(key);
+      node.put(ID_KEY, key);
+      node.put(LAST_UPDATED_TIME, now);
+      if (existing != null && existing.has(CREATED_TIME)) {
+        node.set(CREATED_TIME, existing.get(CREATED_TIME));
+      } else {
+        node.put(CREATED_TIME, now);
+      }
+      replace(key, existing, node);
+      return node;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Applies the modification on a copy of the document with the given key (if present), and stores
+   * the copy if the modification reports a change.
+   *
+   * @return true if the document was modified
+   */
+  private boolean modify(final String key, final Predicate<ObjectNode> modification) {
+    final Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      final ObjectNode existing = documents.get(key);
+      if (existing == null) {
+        return false;
+      }
+
+      final ObjectNode copy = existing.deepCopy();
+      if (!modification.test(copy)) {
+        return false;
+      }
+
+      copy.put(LAST_UPDATED_TIME, System.currentTimeMillis());
+      replace(key, existing, copy);
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private boolean remove(final String key) {
+    final Lock writeLock = lock.writeLock();
+    writeLock.lock();
+    try {
+      final ObjectNode existing = documents.get(key);
+      if (existing == null) {
+        return false;
+      }
+      replace(key, existing, null);
+      return true;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /** Must be called with the write lock held */
+  private void replace(final String key, final ObjectNode existing, final ObjectNode node) {
+    for (final InMemoryIndex index : indexes.values()) {
+      if (existing != null) {
+        index.remove(key, existing);
+      }
+      if (node != null) {
+        index.add(key, node);
+      }
+    }
+
+    if (node == null) {
+      documents.remove(key);
+      changes.publish(ChangeEvent.Type.DELETE, key, null);
+    } else {
+      documents.put(key, node);
+      changes.publish(
+          existing == null ? ChangeEvent.Type.INSERT : ChangeEvent.Type.UPDATE, key, node);
+    }
+  }
+
+  private static boolean setSubDoc(final ObjectNode node, final String path, final JsonNode value) {
+    InMemoryUtils.set(node, splitPath(path), value.deepCopy());
+    return true;
+  }
+
+  private static boolean contains(final Iterable<JsonNode> values, final JsonNode value) {
+    return StreamSupport.stream(values.spliterator(), false)
+        .anyMatch(element -> InMemoryUtils.equal(element, value));
+  }
+
+  /** Scans the documents possibly matching the filter (using an index, if possible) */
+  private Stream<JsonNode> scan(final Filter filter) {
+    final Stream<JsonNode> candidates = candidates(lookup(filter));
+    return filter == null ? candidates : candidates.filter(FilterPredicateCompiler.compile(filter));
+  }
+
+  /**
+   * Scans the documents possibly matching the filter (using an index, if possible). The filter
+   * itself is evaluated by the caller.
+   */
+  private Stream<JsonNode> scan(final Optional<FilterTypeExpression> filter) {
+    return candidates(filter.flatMap(expression -> expression.accept(new IndexLookup())));
+  }
+
+  private Stream<JsonNode> candidates(final Optional<Set<String>> keys) {
+    if (keys.isEmpty()) {
+      return documents.values().map(JsonNode.class::cast);
+    }
+
+    return keys.get().stream()
+        .map(documents::get)
+        .filter(Objects::nonNull)
+        .map(JsonNode.class::cast);
+  }
+
+  private Optional<Set<String>> lookup(final Filter filter) {
+    if (filter == null) {
+      return Optional.empty();
+    }
+
+    if (filter.isComposite()) {
+      final List<Optional<Set<String>>> children = new ArrayList<>();
+      for (final Filter child : filter.getChildFilters()) {
+        children.add(lookup(child));
+      }
+      return combine(filter.getOp() == Filter.Op.AND, children);
+    }
+
+    switch (filter.getOp()) {
+      case EQ:
+        return lookup(filter.getFieldName(), List.of(toJsonNode(filter.getValue())));
+      case IN:
+        final JsonNode values = toJsonNode(filter.getValue());
+        return lookup(filter.getFieldName(), values.isArray() ? values : List.of(values));
+      default:
+        return Optional.empty();
+    }
+  }
+
+  private Optional<Set<String>> lookup(final String path, final Iterable<JsonNode> values) {
+    final InMemoryIndex index = indexes.get(path);
+    if (index == null) {
+      return Optional.empty();
+    }
+
+    for (final JsonNode value : values) {
+      // Filters on null also match the documents missing the field, which are not indexed
+      if (value.isNull()) {
+        return Optional.empty();
+      }
+    }
+
+    final Lock readLock = lock.readLock();
+    readLock.lock();
+    try {
+      return Optional.of(index.lookup(values));
+    } finally {
+      readLock.unlock();
+    }
+  }
+
+  /**
+   * Combines the index lookups of the operands of a logical expression. A conjunction is answered
+   * by the smallest of the operand lookups, while a disjunction needs all of its operands looked
+   * up.
+   */
+  private static Optional<Set<String>> combine(
+      final boolean conjunction, final List<Optional<Set<String>>> lookups) {
+    if (conjunction) {
+      return lookups.stream()
+          .filter(Optional::isPresent)
+          .map(Optional::get)
+          .min(Comparator.comparingInt(Set::size));
+    }
+
+    if (lookups.isEmpty() || !lookups.stream().allMatch(Optional::isPresent)) {
+      return Optional.empty();
+    }
+
+    final Set<String> keys = new HashSet<>();
+    lookups.forEach(lookup -> keys.addAll(lookup.get()));
+    return Optional.of(keys);
+  }
+
+  private static ObjectNode parse(final Document document) throws IOException {
+    final JsonNode node = MAPPER.readTree(document.toJson());
+    if (!node.isObject()) {
+      throw new IOException("Document is not a JSON object: " + document.toJson());
+    }
+    return (ObjectNode) node;
+  }
+
+  private static Map<String, ObjectNode> parse(final Map<Key, Document> documents)
+      throws IOException {
+    final Map<String, ObjectNode> nodes = new LinkedHashMap<>();
+    for (final Entry<Key, Document> entry : documents.entrySet()) {
+      nodes.put(entry.getKey().toString(), parse(entry.getValue()));
+    }
+    return nodes;
+  }
+
+  private static Document toDocument(final JsonNode node) {
+    final ObjectNode copy = node.deepCopy();
+    copy.remove(ID_KEY);
+    return new JSONDocument(copy);
+  }
+
+  private OperationTrace beginTrace(final CollectionOperation operation) {
+    return OperationTrace.begin(collectionName, operation);
+  }
+
+  /**
+   * The results of the queries are evaluated lazily, while iterating. The documents are copied
+   * before being handed out, unless the query already produced fresh copies.
+   */
+  private static CloseableIterator<Document> convertToDocumentIterator(
+      final Stream<? extends JsonNode> stream, final OperationTrace trace, final boolean copy) {
+    final Iterator<? extends JsonNode> iterator = stream.iterator();
+    return new CloseableIterator<>() {
+      private boolean closed = false;
+      private long rowCount = 0;
+
+      @Override
+      public void close() {
+        if (!closed) {
+          stream.close();
+          trace.succeeded(rowCount);
+        }
+        closed = true;
+      }
+
+      @Override
+      public boolean hasNext() {
+        final boolean hasNext = !closed && iterator.hasNext();
+        if (hasNext) {
+          trace.rowAvailable();
+        } else {
+          close();
+        }
+        return hasNext;
+      }
+
+      @Override
+      public Document next() {
+        try {
+          final JsonNode node = iterator.next();
+          trace.rowAvailable();
+          final long decodingStart = trace.decoding();
+          final Document document = copy ? toDocument(node) : new JSONDocument(node);
+          trace.decoded(decodingStart);
+          rowCount++;
+          return document;
+        } catch (RuntimeException e) {
+          trace.failed();
+          close();
+          throw e;
+        }
+      }
+    };
+  }
+
+  /** Reads the changes one batch at a time, each resuming after the last document read */
+  private class ChangesIterator implements CloseableIterator<ChangedDocument> {
+    private final int batchSize;
+    private final Deque<ObjectNode> batch = new ArrayDeque<>();
+    private Watermark watermark;
+    private boolean exhausted;
+
+    private ChangesIterator(final Watermark watermark, final int batchSize) {
+      this.watermark = watermark;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (batch.isEmpty() && !exhausted) {
+        final List<ObjectNode> read = readChanges(watermark, batchSize);
+        exhausted = read.size() < batchSize;
+        batch.addAll(read);
+      }
+      return !batch.isEmpty();
+    }
+
+    @Override
+    public ChangedDocument next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      final ObjectNode node = batch.removeFirst();
+      watermark = toWatermark(node);
+      return ChangedDocument.of(toDocument(node), watermark);
+    }
+
+    @Override
+    public void close() {
+      exhausted = true;
+      batch.clear();
+    }
+  }
+
+  /** Looks up the indexes for the EQ and IN filters on the indexed paths */
+  private class IndexLookup implements FilterTypeExpressionVisitor {
+    @SuppressWarnings("unchecked")
+    @Override
+    public Optional<Set<String>> visit(final LogicalExpression expression) {
+      final List<Optional<Set<String>>> lookups =
+          expression.getOperands().stream()
+              .map(operand -> operand.<Optional<Set<String>>>accept(this))
+              .collect(Collectors.toList());
+      switch (expression.getOperator()) {
+        case AND:
+          return combine(true, lookups);
+        case OR:
+          return combine(false, lookups);
+        default:
+          return Optional.empty();
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Optional<Set<String>> visit(final RelationalExpression expression) {
+      if (!(expression.getLhs() instanceof IdentifierExpression)
+          || !(expression.getRhs() instanceof ConstantExpression)) {
+        return Optional.empty();
+      }
+
+      final String path = ((IdentifierExpression) expression.getLhs()).getName();
+      final JsonNode value = toJsonNode(((ConstantExpression) expression.getRhs()).getValue());
+
+      switch (expression.getOperator()) {
+        case EQ:
+          return lookup(path, List.of(value));
+        case IN:
+          return lookup(path, value.isArray() ? value : List.of(value));
+        default:
+          return Optional.empty();
+      }
+    }
+  }
+}
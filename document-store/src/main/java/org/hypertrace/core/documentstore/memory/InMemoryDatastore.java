@@ -0,0 +1,133 @@
+package org.hypertrace.core.documentstore.memory;
+
+import com.typesafe.config.Config;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import org.hypertrace.core.documentstore.AsyncCollection;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.Transaction;
+import org.hypertrace.core.documentstore.WriteOptions;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListener;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListenerProvider;
+import org.hypertrace.core.documentstore.metrics.InstrumentedCollection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Datastore} holding its collections in the heap of the JVM. Nothing is persisted: the
+ * data lives as long as the datastore instance.
+ *
+ * <p>Secondary indexes can be requested with the {@value #INDEXES_OPTION} option of {@link
+ * #createCollection(String, Map)}, as a comma separated list of JSON paths (e.g. <code>
+ * "attributes.name,tags"</code>).
+ */
+public class InMemoryDatastore implements Datastore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(InMemoryDatastore.class);
+  public static final String INDEXES_OPTION = "indexes";
+
+  private final Map<String, InMemoryCollection> collections = new ConcurrentHashMap<>();
+  private final InMemoryTransactions transactions = new InMemoryTransactions();
+  private DocStoreMetricsListener metricsListener;
+  private ExecutorService asyncExecutor;
+
+  @Override
+  public boolean init(Config config) {
+    metricsListener = DocStoreMetricsListenerProvider.getListener(config).orElse(null);
+    asyncExecutor = AsyncCollection.newExecutor(config, "in-memory-datastore");
+    return true;
+  }
+
+  @Override
+  public Set<String> listCollections() {
+    return Set.copyOf(collections.keySet());
+  }
+
+  @Override
+  public boolean createCollection(String collectionName, Map<String, String> options) {
+    InMemoryCollection collection =
+        collections.computeIfAbsent(collectionName, InMemoryCollection::new);
+
+    if (options != null && options.containsKey(INDEXES_OPTION)) {
+      Arrays.stream(options.get(INDEXES_OPTION).split(","))
+          .map(String::trim)
+          .filter(path -> !path.isEmpty())
+          .forEach(collection::createIndex);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean deleteCollection(String collectionName) {
+    collections.remove(collectionName);
+    return true;
+  }
+
+  @Override
+  public Collection getCollection(String collectionName) {
+    Collection collection = collections.computeIfAbsent(collectionName, InMemoryCollection::new);
+    return metricsListener == null
+        ? collection
+        : new InstrumentedCollection(collection, collectionName, metricsListener);
+  }
+
+  /** The documents are held in memory only, so the writes have no durability to choose */
+  @Override
+  public Collection getCollection(String collectionName, WriteOptions writeOptions) {
+    return getCollection(collectionName);
+  }
+
+  @Override
+  public <T> T inTransaction(Transaction.Work<T> work) throws Exception {
+    return transactions.run(
+        name -> collections.computeIfAbsent(name, InMemoryCollection::new),
+        this::getCollection,
+        work);
+  }
+
+  /** The documents are held in memory only, so the commits have no durability to choose */
+  @Override
+  public <T> T inTransaction(WriteOptions writeOptions, Transaction.Work<T> work) throws Exception {
+    return inTransaction(work);
+  }
+
+  @Override
+  public AsyncCollection getAsyncCollection(String collectionName) {
+    Collection collection = getCollection(collectionName);
+    return new AsyncCollection(collection, asyncExecutor);
+  }
+
+  @Override
+  public boolean createMaterializedView(
+      String viewName, String collectionName, org.hypertrace.core.documentstore.query.Query query) {
+    InMemoryCollection view = collections.computeIfAbsent(viewName, InMemoryCollection::new);
+    return !view.materialize(getCollection(collectionName), query)
+        || refreshMaterializedView(viewName);
+  }
+
+  @Override
+  public boolean refreshMaterializedView(String viewName) {
+    InMemoryCollection view = collections.get(viewName);
+    if (view == null) {
+      LOGGER.error("Materialized view not registered: {}", viewName);
+      return false;
+    }
+
+    try {
+      view.refreshView();
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      LOGGER.error("Exception refreshing materialized view: {}", viewName, e);
+      return false;
+    }
+  }
+
+  @Override
+  public boolean healthCheck() {
+    return true;
+  }
+}
@@ -0,0 +1,65 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.candidates;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.canonical;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.splitPath;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hash index on a JSON path of the documents of an {@link InMemoryCollection}. The index is
+ * multi-key: a document is indexed under every value an EQ filter on the path could match, i.e. the
+ * value itself and the elements of the arrays found along the path.
+ *
+ * <p>Not thread-safe. The collection guards the index with its read-write lock.
+ */
+final class InMemoryIndex {
+  private final String path;
+  private final String[] segments;
+  private final Map<JsonNode, Set<String>> entries = new HashMap<>();
+
+  InMemoryIndex(final String path) {
+    this.path = path;
+    this.segments = splitPath(path);
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  void add(final String key, final JsonNode document) {
+    for (final JsonNode value : candidates(document, segments, true)) {
+      entries.computeIfAbsent(canonical(value), k -> new HashSet<>()).add(key);
+    }
+  }
+
+  void remove(final String key, final JsonNode document) {
+    for (final JsonNode value : candidates(document, segments, true)) {
+      final JsonNode indexed = canonical(value);
+      final Set<String> keys = entries.get(indexed);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          entries.remove(indexed);
+        }
+      }
+    }
+  }
+
+  /** @return The keys of the documents which possibly have any of the given values at the path */
+  Set<String> lookup(final Iterable<JsonNode> values) {
+    final Set<String> keys = new HashSet<>();
+    for (final JsonNode value : values) {
+      keys.addAll(entries.getOrDefault(canonical(value), Set.of()));
+    }
+    return keys;
+  }
+
+  void clear() {
+    entries.clear();
+  }
+}
@@ -0,0 +1,563 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static org.hypertrace.core.documentstore.memory.FilterPredicateCompiler.compile;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.VALUE_COMPARATOR;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.canonical;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.get;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.getDirect;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.getUnsupportedOperationException;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.splitPath;
+import static org.hypertrace.core.documentstore.memory.InMemoryUtils.toJsonNode;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.FunctionExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
+import org.hypertrace.core.documentstore.expression.operators.AggregationOperator;
+import org.hypertrace.core.documentstore.expression.operators.FunctionOperator;
+import org.hypertrace.core.documentstore.expression.type.GroupTypeExpression;
+import org.hypertrace.core.documentstore.expression.type.SelectTypeExpression;
+import org.hypertrace.core.documentstore.expression.type.SortTypeExpression;
+import org.hypertrace.core.documentstore.parser.FromTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.GroupTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.SelectTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.SortTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.query.Pagination;
+import org.hypertrace.core.documentstore.query.Query;
+import org.hypertrace.core.documentstore.query.Sampling;
+import org.hypertrace.core.documentstore.query.SelectionSpec;
+import org.hypertrace.core.documentstore.query.SortingSpec;
+
+/**
+ * Evaluates the queries on a stream of JSON documents, mirroring the pipeline of the MongoDB
+ * backend: filter, unnest (and the unnest filter), group, project, aggregation filter, sort, skip
+ * and limit.
+ *
+ * <p>The source documents are never modified. The documents returned are always fresh copies and do
+ * not contain the internal "_id" field.
+ */
+@Slf4j
+final class InMemoryQueryExecutor {
+  static final String ID_KEY = "_id";
+
+  private InMemoryQueryExecutor() {}
+
+  /** Evaluates the filter, the selections, the sorts and the pagination of the query */
+  static Stream<JsonNode> find(final Query query, final Stream<JsonNode> source) {
+    log.debug("In-memory find(): {}", query);
+    final Stream<JsonNode> filtered = sample(source, query).filter(compile(query.getFilter()));
+    final Stream<JsonNode> sorted = sort(filtered, query.getSorts(), Evaluator::new);
+    return paginate(sorted, query.getPagination())
+        .map(row -> project(query.getSelections(), new Evaluator(row)));
+  }
+
+  /** Evaluates all the clauses of the query */
+  static Stream<JsonNode> aggregate(final Query query, final Stream<JsonNode> source) {
+    log.debug("In-memory aggregate(): {}", query);
+    Stream<JsonNode> rows = sample(source, query).filter(compile(query.getFilter()));
+
+    for (final UnnestExpression expression : getUnnestExpressions(query)) {
+      rows = unnest(rows, expression);
+    }
+
+    final Predicate<JsonNode> aggregationFilter = compile(query.getAggregationFilter());
+    final Stream<Row> output;
+
+    if (isGrouped(query)) {
+      output =
+          sort(
+              group(rows, query)
+                  .map(
+                      group ->
+                          new Row(
+                              scale(project(query.getSelections(), group), query, group), group))
+                  .filter(row -> aggregationFilter.test(row.output)),
+              query.getSorts(),
+              row -> row.evaluator);
+    } else {
+      output =
+          sort(rows.map(Evaluator::new), query.getSorts(), Function.identity())
+              .map(evaluator -> new Row(project(query.getSelections(), evaluator), evaluator))
+              .filter(row -> aggregationFilter.test(row.output));
+    }
+
+    return paginate(output, query.getPagination()).map(row -> row.output);
+  }
+
+  /** Counts the documents returned by {@link #aggregate(Query, Stream)} */
+  static long count(final Query query, final Stream<JsonNode> source) {
+    return aggregate(query, source).count();
+  }
+
+  /** Samples each document independently, whatever the sampling method */
+  private static Stream<JsonNode> sample(final Stream<JsonNode> source, final Query query) {
+    if (query.getSampling().isEmpty()) {
+      return source;
+    }
+
+    final double fraction = query.getSampling().get().getFraction();
+    return source.filter(row -> ThreadLocalRandom.current().nextDouble() < fraction);
+  }
+
+  /**
+   * Scales the additive aggregations of a sampled query up to the whole collection, and records the
+   * number of documents sampled for the group
+   */
+  private static ObjectNode scale(
+      final ObjectNode output, final Query query, final Evaluator group) {
+    if (query.getSampling().isEmpty()) {
+      return output;
+    }
+
+    final double fraction = query.getSampling().get().getFraction();
+    for (final SelectionSpec spec : query.getSelections()) {
+      if (!(spec.getExpression() instanceof AggregateExpression)
+          || spec.getAlias() == null
+          || !output.has(spec.getAlias())) {
+        continue;
+      }
+
+      final AggregationOperator operator =
+          ((AggregateExpression) spec.getExpression()).getAggregator();
+      if (Sampling.isScaled(operator)) {
+        final double estimate = output.get(spec.getAlias()).asDouble() / fraction;
+        if (operator == AggregationOperator.COUNT) {
+          output.put(spec.getAlias(), Math.round(estimate));
+        } else {
+          output.put(spec.getAlias(), estimate);
+        }
+      }
+    }
+    output.put(Sampling.SAMPLE_SIZE_ALIAS, group.groupRows.size());
+    return output;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<UnnestExpression> getUnnestExpressions(final Query query) {
+    final FromTypeExpressionVisitor visitor =
+        new FromTypeExpressionVisitor() {
+          @Override
+          public UnnestExpression visit(final UnnestExpression expression) {
+            return expression;
+          }
+        };
+    return query.getFromTypeExpressions().stream()
+        .map(expression -> expression.<UnnestExpression>accept(visitor))
+        .collect(Collectors.toList());
+  }
+
+  private static Stream<JsonNode> unnest(
+      final Stream<JsonNode> rows, final UnnestExpression expression) {
+    final String[] path = splitPath(expression.getIdentifierExpression().getName());
+    final boolean preserve = expression.isPreserveNullAndEmptyArrays();
+    final Predicate<JsonNode> filter =
+        compile(Optional.ofNullable(expression.getFilterTypeExpression()));
+
+    return rows.flatMap(
+            row -> {
+              final JsonNode value = getDirect(row, path);
+
+              if (!value.isArray()) {
+                // Like $unwind, a non-array value is treated as a single element array
+                return value.isMissingNode() || value.isNull()
+                    ? (preserve ? Stream.of(row) : Stream.empty())
+                    : Stream.of(row);
+              }
+
+              if (value.isEmpty()) {
+                if (!preserve) {
+                  return Stream.empty();
+                }
+                final ObjectNode copy = row.deepCopy();
+                InMemoryUtils.remove(copy, path);
+                return Stream.of(copy);
+              }
+
+              final List<JsonNode> unnested = new ArrayList<>(value.size());
+              for (final JsonNode element : value) {
+                final ObjectNode copy = row.deepCopy();
+                InMemoryUtils.set(copy, path, element);
+                unnested.add(copy);
+              }
+              return unnested.stream();
+            })
+        .filter(filter);
+  }
+
+  private static boolean isGrouped(final Query query) {
+    return !query.getAggregations().isEmpty()
+        || query.getSelections().stream()
+            .anyMatch(spec -> spec.getExpression() instanceof AggregateExpression);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Stream<Evaluator> group(final Stream<JsonNode> rows, final Query query) {
+    final GroupTypeExpressionVisitor visitor =
+        new GroupTypeExpressionVisitor() {
+          @Override
+          public String visit(final FunctionExpression expression) {
+            throw new UnsupportedOperationException(
+                String.format(
+                    "Grouping by a function ($%s) is not yet supported by this library for the in-memory store",
+                    expression));
+          }
+
+          @Override
+          public String visit(final IdentifierExpression expression) {
+            return expression.getName();
+          }
+        };
+
+    final List<String> groupKeys = new ArrayList<>();
+    for (final GroupTypeExpression expression : query.getAggregations()) {
+      groupKeys.add(expression.accept(visitor));
+    }
+    final List<String[]> groupPaths =
+        groupKeys.stream().map(InMemoryUtils::splitPath).collect(Collectors.toList());
+
+    final Map<List<JsonNode>, List<JsonNode>> groups =
+        rows.collect(
+            Collectors.groupingBy(
+                row ->
+                    groupPaths.stream()
+                        .map(path -> canonical(get(row, path)))
+                        .collect(Collectors.toList()),
+                LinkedHashMap::new,
+                Collectors.toList()));
+
+    return groups.entrySet().stream()
+        .map(
+            entry -> {
+              final Map<String, JsonNode> values = new LinkedHashMap<>();
+              for (int i = 0; i < groupKeys.size(); i++) {
+                values.put(groupKeys.get(i), entry.getKey().get(i));
+              }
+              return new Evaluator(values, entry.getValue());
+            });
+  }
+
+  private static ObjectNode project(
+      final List<SelectionSpec> selections, final Evaluator evaluator) {
+    final ObjectNode output;
+
+    if (selections.isEmpty()) {
+      output =
+          evaluator.row == null
+              ? JsonNodeFactory.instance.objectNode()
+              : (ObjectNode) evaluator.row.deepCopy();
+    } else {
+      output = JsonNodeFactory.instance.objectNode();
+
+      for (final SelectionSpec spec : selections) {
+        final SelectTypeExpression expression = spec.getExpression();
+        final String alias = spec.getAlias();
+
+        if (alias == null && !(expression instanceof IdentifierExpression)) {
+          throw new IllegalArgumentException(
+              String.format("Alias is must for: %s", expression.toString()));
+        }
+
+        final JsonNode value = expression.accept(evaluator);
+        if (value.isMissingNode()) {
+          continue;
+        }
+
+        if (alias == null) {
+          InMemoryUtils.set(
+              output, splitPath(((IdentifierExpression) expression).getName()), value.deepCopy());
+        } else {
+          output.set(alias, value.deepCopy());
+        }
+      }
+    }
+
+    output.remove(ID_KEY);
+    return output;
+  }
+
+  private static <T> Stream<T> sort(
+      final Stream<T> rows,
+      final List<SortingSpec> sorts,
+      final Function<T, Evaluator> evaluatorProvider) {
+    if (sorts.isEmpty()) {
+      return rows;
+    }
+
+    Comparator<T> comparator = null;
+    for (final SortingSpec spec : sorts) {
+      final SortTypeExpression expression = spec.getExpression();
+      Comparator<T> next =
+          Comparator.comparing(
+              row -> evaluatorProvider.apply(row).evaluate(expression), VALUE_COMPARATOR);
+      switch (spec.getOrder()) {
+        case ASC:
+          break;
+        case DESC:
+          next = next.reversed();
+          break;
+        default:
+          throw getUnsupportedOperationException(spec.getOrder());
+      }
+      comparator = comparator == null ? next : comparator.thenComparing(next);
+    }
+
+    return rows.sorted(comparator);
+  }
+
+  private static <T> Stream<T> paginate(final Stream<T> rows, final Optional<Pagination> page) {
+    if (page.isEmpty()) {
+      return rows;
+    }
+
+    return rows.skip(page.get().getOffset()).limit(page.get().getLimit());
+  }
+
+  private static final class Row {
+    private final ObjectNode output;
+    private final Evaluator evaluator;
+
+    private Row(final ObjectNode output, final Evaluator evaluator) {
+      this.output = output;
+      this.evaluator = evaluator;
+      evaluator.output = output;
+    }
+  }
+
+  /**
+   * Evaluates the expressions either on a single row, or on a group of rows (in which case the
+   * identifiers resolve to the grouping values and the aggregations run over the rows of the group)
+   */
+  private static final class Evaluator
+      implements SelectTypeExpressionVisitor, SortTypeExpressionVisitor {
+    private final JsonNode row;
+    private final Map<String, JsonNode> groupValues;
+    private final List<JsonNode> groupRows;
+    private JsonNode output;
+
+    private Evaluator(final JsonNode row) {
+      this.row = row;
+      this.groupValues = null;
+      this.groupRows = null;
+    }
+
+    private Evaluator(final Map<String, JsonNode> groupValues, final List<JsonNode> groupRows) {
+      this.row = null;
+      this.groupValues = groupValues;
+      this.groupRows = groupRows;
+    }
+
+    private JsonNode evaluate(final SortTypeExpression expression) {
+      return expression.accept(this);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JsonNode visit(final AggregateExpression expression) {
+      if (groupRows == null) {
+        throw new UnsupportedOperationException(
+            String.format("Aggregation (%s) is not supported without grouping", expression));
+      }
+
+      final SelectTypeExpression operand = expression.getExpression();
+      final List<JsonNode> values = new ArrayList<>(groupRows.size());
+      for (final JsonNode groupRow : groupRows) {
+        final JsonNode value = operand.accept(new Evaluator(groupRow));
+        if (!value.isMissingNode()) {
+          values.add(value);
+        }
+      }
+
+      switch (expression.getAggregator()) {
+        case COUNT:
+          return JsonNodeFactory.instance.numberNode(values.size());
+        case SUM:
+          return sum(values);
+        case AVG:
+          return average(values);
+        case MIN:
+          return extreme(values, VALUE_COMPARATOR);
+        case MAX:
+          return extreme(values, VALUE_COMPARATOR.reversed());
+        case DISTINCT:
+          final ArrayNode distinct = JsonNodeFactory.instance.arrayNode();
+          distinct(values).forEach(distinct::add);
+          return distinct;
+        case DISTINCT_COUNT:
+        case APPROX_DISTINCT_COUNT:
+          return JsonNodeFactory.instance.numberNode(distinct(values).size());
+        case PERCENTILE:
+          return percentile(values, expression.getPercentile());
+        default:
+          throw getUnsupportedOperationException(expression.getAggregator());
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JsonNode visit(final ConstantExpression expression) {
+      return toJsonNode(expression.getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JsonNode visit(final FunctionExpression expression) {
+      final List<JsonNode> operands = new ArrayList<>(expression.getOperands().size());
+      for (final SelectTypeExpression operand : expression.getOperands()) {
+        operands.add(operand.accept(this));
+      }
+
+      switch (expression.getOperator()) {
+        case LENGTH:
+          final JsonNode array = operands.get(0);
+          return array.isArray()
+              ? JsonNodeFactory.instance.numberNode(array.size())
+              : NullNode.getInstance();
+        case ABS:
+        case FLOOR:
+        case ROUND:
+        case ADD:
+        case SUBTRACT:
+        case MULTIPLY:
+        case DIVIDE:
+          return arithmetic(expression.getOperator(), operands);
+        default:
+          throw getUnsupportedOperationException(expression.getOperator());
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JsonNode visit(final IdentifierExpression expression) {
+      if (groupValues == null) {
+        return get(row, splitPath(expression.getName()));
+      }
+
+      // The aliases of the selections (e.g. in sorts) are resolved from the projected group
+      if (output != null) {
+        final JsonNode projected = output.get(expression.getName());
+        if (projected != null) {
+          return projected;
+        }
+      }
+      return groupValues.getOrDefault(expression.getName(), MissingNode.getInstance());
+    }
+
+    private static JsonNode arithmetic(
+        final FunctionOperator operator, final List<JsonNode> operands) {
+      if (!operands.stream().allMatch(JsonNode::isNumber)) {
+        return NullNode.getInstance();
+      }
+
+      final boolean integral = operands.stream().allMatch(JsonNode::isIntegralNumber);
+      final JsonNode first = operands.get(0);
+
+      switch (operator) {
+        case ABS:
+          return integral
+              ? JsonNodeFactory.instance.numberNode(Math.abs(first.longValue()))
+              : JsonNodeFactory.instance.numberNode(Math.abs(first.doubleValue()));
+        case FLOOR:
+          return JsonNodeFactory.instance.numberNode((long) Math.floor(first.doubleValue()));
+        case ROUND:
+          return JsonNodeFactory.instance.numberNode(Math.round(first.doubleValue()));
+        case ADD:
+          return integral
+              ? JsonNodeFactory.instance.numberNode(
+                  operands.stream().mapToLong(JsonNode::longValue).sum())
+              : JsonNodeFactory.instance.numberNode(
+                  operands.stream().mapToDouble(JsonNode::doubleValue).sum());
+        case MULTIPLY:
+          return integral
+              ? JsonNodeFactory.instance.numberNode(
+                  operands.stream().mapToLong(JsonNode::longValue).reduce(1, (a, b) -> a * b))
+              : JsonNodeFactory.instance.numberNode(
+                  operands.stream().mapToDouble(JsonNode::doubleValue).reduce(1, (a, b) -> a * b));
+        case SUBTRACT:
+          return integral
+              ? JsonNodeFactory.instance.numberNode(first.longValue() - operands.get(1).longValue())
+              : JsonNodeFactory.instance.numberNode(
+                  first.doubleValue() - operands.get(1).doubleValue());
+        case DIVIDE:
+          final double divisor = operands.get(1).doubleValue();
+          return divisor == 0
+              ? NullNode.getInstance()
+              : JsonNodeFactory.instance.numberNode(first.doubleValue() / divisor);
+        default:
+          throw getUnsupportedOperationException(operator);
+      }
+    }
+
+    private static JsonNode sum(final List<JsonNode> values) {
+      final List<JsonNode> numbers = numbers(values);
+      if (numbers.stream().allMatch(JsonNode::isIntegralNumber)) {
+        return JsonNodeFactory.instance.numberNode(
+            numbers.stream().mapToLong(JsonNode::longValue).sum());
+      }
+      return JsonNodeFactory.instance.numberNode(
+          numbers.stream().mapToDouble(JsonNode::doubleValue).sum());
+    }
+
+    private static JsonNode average(final List<JsonNode> values) {
+      final List<JsonNode> numbers = numbers(values);
+      if (numbers.isEmpty()) {
+        return NullNode.getInstance();
+      }
+      return JsonNodeFactory.instance.numberNode(
+          numbers.stream().mapToDouble(JsonNode::doubleValue).average().orElseThrow());
+    }
+
+    /** Interpolates linearly between the two closest ranks, as PERCENTILE_CONT on Postgres */
+    private static JsonNode percentile(final List<JsonNode> values, final double percentile) {
+      final double[] numbers =
+          numbers(values).stream().mapToDouble(JsonNode::doubleValue).sorted().toArray();
+      if (numbers.length == 0) {
+        return NullNode.getInstance();
+      }
+
+      final double rank = percentile * (numbers.length - 1);
+      final int lower = (int) Math.floor(rank);
+      final int upper = (int) Math.ceil(rank);
+      return JsonNodeFactory.instance.numberNode(
+          numbers[lower] + (rank - lower) * (numbers[upper] - numbers[lower]));
+    }
+
+    private static JsonNode extreme(
+        final List<JsonNode> values, final Comparator<JsonNode> comparator) {
+      return values.stream()
+          .filter(value -> !value.isNull())
+          .min(comparator)
+          .orElse(NullNode.getInstance());
+    }
+
+    private static Set<JsonNode> distinct(final List<JsonNode> values) {
+      final Set<JsonNode> distinct = new LinkedHashSet<>();
+      values.forEach(value -> distinct.add(canonical(value)));
+      return distinct;
+    }
+
+    private static List<JsonNode> numbers(final List<JsonNode> values) {
+      return values.stream().filter(JsonNode::isNumber).collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package org.hypertrace.core.documentstore.memory;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Transaction;
+
+/**
+ * Runs the transactions of the datastores holding {@link InMemoryCollection}s, one at a time. The
+ * collections are snapshotted when first used by a transaction, and restored if it fails.
+ *
+ * <p>The writes of a transaction are applied as they are made, so that the operations made outside
+ * of the transactions see them before the commit, and the writes they make meanwhile on the same
+ * collections are rolled back with the transaction.
+ */
+public class InMemoryTransactions {
+  private final Lock lock = new ReentrantLock();
+
+  /**
+   * @param collections Opens the collections used by the transactions
+   * @param handles Returns the handles on the collections passed to the work
+   * @param work The work of the transaction
+   */
+  public <T> T run(
+      final Function<String, InMemoryCollection> collections,
+      final Function<String, Collection> handles,
+      final Transaction.Work<T> work)
+      throws Exception {
+    lock.lock();
+    try {
+      final Map<InMemoryCollection, Map<String, ObjectNode>> snapshots = new LinkedHashMap<>();
+      try {
+        return work.apply(
+            collectionName -> {
+              snapshots.computeIfAbsent(
+                  collections.apply(collectionName), InMemoryCollection::snapshot);
+              return handles.apply(collectionName);
+            });
+      } catch (Exception | Error e) {
+        snapshots.forEach(InMemoryCollection::restore);
+        throw e;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+}
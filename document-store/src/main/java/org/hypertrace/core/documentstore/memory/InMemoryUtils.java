@@ -0,0 +1,254 @@
+package org.hypertrace.core.documentstore.memory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers to navigate and compare {@link JsonNode}s following the MongoDB semantics, so that the
+ * in-memory backend behaves like the Mongo backend:
+ *
+ * <ul>
+ *   <li>Dotted paths traverse into the elements of the arrays found along the way
+ *   <li>A filter on an array field matches if any of the elements matches
+ *   <li>Values of different types are ordered by their type first (null, numbers, strings, objects,
+ *       arrays, booleans)
+ * </ul>
+ */
+public final class InMemoryUtils {
+  public static final String FIELD_SEPARATOR = ".";
+  private static final Pattern FIELD_SEPARATOR_PATTERN =
+      Pattern.compile(FIELD_SEPARATOR, Pattern.LITERAL);
+  private static final String UNSUPPORTED_OPERATION = "No in-memory support available for: '%s'";
+
+  static final ObjectMapper MAPPER = new ObjectMapper();
+
+  /** Orders values by type first, then by value. Missing values are ordered as nulls. */
+  public static final Comparator<JsonNode> VALUE_COMPARATOR = InMemoryUtils::compare;
+
+  private InMemoryUtils() {}
+
+  public static <T> UnsupportedOperationException getUnsupportedOperationException(T t) {
+    return new UnsupportedOperationException(String.format(UNSUPPORTED_OPERATION, t));
+  }
+
+  public static String[] splitPath(final String path) {
+    return FIELD_SEPARATOR_PATTERN.split(path);
+  }
+
+  /**
+   * Resolves the value at the given path. The arrays found before the last segment are traversed
+   * element-wise, and the values found in the elements are collected into an array (like a MongoDB
+   * projection does).
+   *
+   * @return The value at the path, or {@link MissingNode} if there is none
+   */
+  public static JsonNode get(final JsonNode root, final String[] segments) {
+    return get(root, segments, 0);
+  }
+
+  private static JsonNode get(final JsonNode node, final String[] segments, final int index) {
+    if (index == segments.length) {
+      return node;
+    }
+
+    if (node.isObject()) {
+      final JsonNode child = node.get(segments[index]);
+      return child == null ? MissingNode.getInstance() : get(child, segments, index + 1);
+    }
+
+    if (node.isArray()) {
+      final ArrayNode values = JsonNodeFactory.instance.arrayNode();
+      for (final JsonNode element : node) {
+        final JsonNode value = get(element, segments, index);
+        if (!value.isMissingNode()) {
+          values.add(value);
+        }
+      }
+      return values.isEmpty() ? MissingNode.getInstance() : values;
+    }
+
+    return MissingNode.getInstance();
+  }
+
+  /**
+   * Collects the values a filter on the given path is to be evaluated against. The arrays found
+   * along the path are traversed element-wise, and (optionally) an array found at the end of the
+   * path contributes both itself and its elements.
+   */
+  public static List<JsonNode> candidates(
+      final JsonNode root, final String[] segments, final boolean expandLeafArrays) {
+    final List<JsonNode> out = new ArrayList<>(2);
+    collectCandidates(root, segments, 0, expandLeafArrays, out);
+    return out;
+  }
+
+  private static void collectCandidates(
+      final JsonNode node,
+      final String[] segments,
+      final int index,
+      final boolean expandLeafArrays,
+      final List<JsonNode> out) {
+    if (index == segments.length) {
+      out.add(node);
+      if (expandLeafArrays && node.isArray()) {
+        node.forEach(out::add);
+      }
+      return;
+    }
+
+    if (node.isObject()) {
+      final JsonNode child = node.get(segments[index]);
+      if (child != null) {
+        collectCandidates(child, segments, index + 1, expandLeafArrays, out);
+      }
+    } else if (node.isArray()) {
+      for (final JsonNode element : node) {
+        if (element.isObject()) {
+          collectCandidates(element, segments, index, expandLeafArrays, out);
+        }
+      }
+    }
+  }
+
+  /** Resolves the value at the given path without traversing into arrays */
+  public static JsonNode getDirect(final JsonNode root, final String[] segments) {
+    JsonNode node = root;
+    for (final String segment : segments) {
+      node = node.path(segment);
+    }
+    return node;
+  }
+
+  /** Sets the value at the given path, creating the missing intermediate objects */
+  public static void set(final ObjectNode root, final String[] segments, final JsonNode value) {
+    ObjectNode node = root;
+    for (int i = 0; i < segments.length - 1; i++) {
+      final JsonNode child = node.get(segments[i]);
+      if (child instanceof ObjectNode) {
+        node = (ObjectNode) child;
+      } else {
+        node = node.putObject(segments[i]);
+      }
+    }
+    node.set(segments[segments.length - 1], value);
+  }
+
+  /** @return true if a value was removed */
+  public static boolean remove(final ObjectNode root, final String[] segments) {
+    JsonNode node = root;
+    for (int i = 0; i < segments.length - 1; i++) {
+      node = node.get(segments[i]);
+      if (!(node instanceof ObjectNode)) {
+        return false;
+      }
+    }
+    return ((ObjectNode) node).remove(segments[segments.length - 1]) != null;
+  }
+
+  public static JsonNode toJsonNode(final Object value) {
+    if (value == null) {
+      return NullNode.getInstance();
+    }
+    return value instanceof JsonNode ? (JsonNode) value : MAPPER.valueToTree(value);
+  }
+
+  /**
+   * Converts the numbers to a canonical form, so that the numerically equal values (e.g. 1 and 1.0)
+   * are equal and hash alike. The other values are returned as-is.
+   */
+  public static JsonNode canonical(final JsonNode value) {
+    if (value.isNumber()) {
+      if (value.isIntegralNumber() && value.canConvertToLong()) {
+        return JsonNodeFactory.instance.numberNode(value.longValue());
+      }
+      final BigDecimal decimal = value.decimalValue().stripTrailingZeros();
+      if (decimal.scale() <= 0 && decimal.precision() - decimal.scale() <= 18) {
+        return JsonNodeFactory.instance.numberNode(decimal.longValueExact());
+      }
+      return JsonNodeFactory.instance.numberNode(decimal);
+    }
+    return value;
+  }
+
+  public static boolean equal(final JsonNode first, final JsonNode second) {
+    if (first.isNumber() && second.isNumber()) {
+      return canonical(first).equals(canonical(second));
+    }
+    return first.equals(second);
+  }
+
+  /** @return true if both the values are of the same type bracket, and thus can be compared */
+  public static boolean comparable(final JsonNode first, final JsonNode second) {
+    return typeOrder(first) == typeOrder(second);
+  }
+
+  public static int compare(final JsonNode first, final JsonNode second) {
+    final int firstOrder = typeOrder(first);
+    final int secondOrder = typeOrder(second);
+    if (firstOrder != secondOrder) {
+      return Integer.compare(firstOrder, secondOrder);
+    }
+
+    if (first.isNumber()) {
+      return compareNumbers(first, second);
+    }
+    if (first.isTextual()) {
+      return first.textValue().compareTo(second.textValue());
+    }
+    if (first.isBoolean()) {
+      return Boolean.compare(first.booleanValue(), second.booleanValue());
+    }
+    if (first.isContainerNode()) {
+      return first.toString().compareTo(second.toString());
+    }
+    return 0;
+  }
+
+  private static int compareNumbers(final JsonNode first, final JsonNode second) {
+    if (first.isIntegralNumber()
+        && second.isIntegralNumber()
+        && first.canConvertToLong()
+        && second.canConvertToLong()) {
+      return Long.compare(first.longValue(), second.longValue());
+    }
+    if (first.isBigDecimal()
+        || second.isBigDecimal()
+        || first.isBigInteger()
+        || second.isBigInteger()) {
+      return first.decimalValue().compareTo(second.decimalValue());
+    }
+    return Double.compare(first.doubleValue(), second.doubleValue());
+  }
+
+  private static int typeOrder(final JsonNode node) {
+    if (node.isMissingNode() || node.isNull()) {
+      return 0;
+    }
+    if (node.isNumber()) {
+      return 1;
+    }
+    if (node.isTextual()) {
+      return 2;
+    }
+    if (node.isObject()) {
+      return 3;
+    }
+    if (node.isArray()) {
+      return 4;
+    }
+    if (node.isBoolean()) {
+      return 5;
+    }
+    return 6;
+  }
+}
@@ -0,0 +1,36 @@
+package org.hypertrace.core.documentstore.metrics;
+
+/** The {@link org.hypertrace.core.documentstore.Collection} operations that are instrumented */
+public enum CollectionOperation {
+  UPSERT,
+  UPSERT_AND_RETURN,
+  UPDATE_SUB_DOC,
+  BULK_UPDATE_SUB_DOCS,
+  BULK_OPERATION_ON_ARRAY_VALUE,
+  GET,
+  GET_ALL,
+  SEARCH,
+  FIND,
+  PARALLEL_SCAN,
+  EXECUTE_BATCH,
+  AGGREGATE,
+  DELETE,
+  DELETE_BY_FILTER,
+  BULK_DELETE,
+  DELETE_SUB_DOC,
+  DELETE_ALL,
+  COUNT,
+  TOTAL,
+  ESTIMATED_COUNT,
+  BULK_UPSERT,
+  BULK_UPSERT_AND_RETURN_OLDER_DOCUMENTS,
+  DROP,
+  CREATE,
+  BULK_UPDATE,
+  UPDATE,
+  WATCH,
+  CHANGES_SINCE,
+  GET_IF_MODIFIED,
+  EXPORT,
+  IMPORT,
+}
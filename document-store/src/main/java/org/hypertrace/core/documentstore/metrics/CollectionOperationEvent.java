@@ -0,0 +1,62 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event emitted for every {@link org.hypertrace.core.documentstore.Collection}
+ * operation. The event duration spans the whole operation (including the iteration of the results,
+ * if any), while the phase durations break it down further.
+ *
+ * <p>Enable with <code>-XX:StartFlightRecording</code> and the event name {@value #NAME}.
+ */
+@Name(CollectionOperationEvent.NAME)
+@Label("Document Store Operation")
+@Category({"Hypertrace", "Document Store"})
+@Description("An operation on a document store collection")
+@StackTrace(false)
+class CollectionOperationEvent extends Event {
+  static final String NAME = "org.hypertrace.documentstore.CollectionOperation";
+
+  @Label("Collection")
+  String collection;
+
+  @Label("Operation")
+  String operation;
+
+  @Label("Query Fingerprint")
+  @Description("Hash of the query shape with the constants masked")
+  String queryFingerprint;
+
+  @Label("Row Count")
+  @Description("The number of documents written, read or affected")
+  long rowCount;
+
+  @Label("Parse Duration")
+  @Description("Time spent translating the request into the database query/statement")
+  @Timespan(Timespan.NANOSECONDS)
+  long parseDuration;
+
+  @Label("Execute Duration")
+  @Description("Time spent executing the database query/statement")
+  @Timespan(Timespan.NANOSECONDS)
+  long executeDuration;
+
+  @Label("First Row Duration")
+  @Description("Time from the end of the execution until the first row was available")
+  @Timespan(Timespan.NANOSECONDS)
+  long firstRowDuration;
+
+  @Label("Decode Duration")
+  @Description("Cumulative time spent converting the database rows into documents")
+  @Timespan(Timespan.NANOSECONDS)
+  long decodeDuration;
+
+  @Label("Failed")
+  boolean failed;
+}
@@ -0,0 +1,84 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An in-memory {@link DocStoreMetricsListener} accumulating {@link OperationMetrics} per collection
+ * and per operation. The hot path is a map lookup followed by a few {@link
+ * java.util.concurrent.atomic.LongAdder} increments, so it is cheap enough to be always-on.
+ *
+ * <p>The accumulated metrics can be read at any time (e.g. by a periodic reporter bridging them to
+ * the application's metrics registry).
+ */
+public class DefaultDocStoreMetricsListener implements DocStoreMetricsListener {
+  private final ConcurrentMap<String, Map<CollectionOperation, OperationMetrics>> metrics =
+      new ConcurrentHashMap<>();
+  private final boolean payloadSizeEnabled;
+
+  public DefaultDocStoreMetricsListener() {
+    this(true);
+  }
+
+  public DefaultDocStoreMetricsListener(final boolean payloadSizeEnabled) {
+    this.payloadSizeEnabled = payloadSizeEnabled;
+  }
+
+  @Override
+  public void onSuccess(
+      final String collectionName,
+      final CollectionOperation operation,
+      final long durationNanos,
+      final long documentCount,
+      final long payloadBytes) {
+    getOrCreate(collectionName, operation)
+        .recordSuccess(durationNanos, documentCount, payloadBytes);
+  }
+
+  @Override
+  public void onFailure(
+      final String collectionName,
+      final CollectionOperation operation,
+      final long durationNanos,
+      final Throwable error) {
+    getOrCreate(collectionName, operation).recordFailure(durationNanos);
+  }
+
+  @Override
+  public boolean isPayloadSizeEnabled() {
+    return payloadSizeEnabled;
+  }
+
+  public Optional<OperationMetrics> getMetrics(
+      final String collectionName, final CollectionOperation operation) {
+    return Optional.ofNullable(metrics.get(collectionName)).map(map -> map.get(operation));
+  }
+
+  /**
+   * @return An unmodifiable view of the metrics of all the collections, keyed by collection name
+   */
+  public Map<String, Map<CollectionOperation, OperationMetrics>> getAllMetrics() {
+    return Collections.unmodifiableMap(metrics);
+  }
+
+  private OperationMetrics getOrCreate(
+      final String collectionName, final CollectionOperation operation) {
+    final Map<CollectionOperation, OperationMetrics> operationMetrics =
+        metrics.computeIfAbsent(collectionName, name -> createOperationMetrics());
+    return operationMetrics.get(operation);
+  }
+
+  private static Map<CollectionOperation, OperationMetrics> createOperationMetrics() {
+    // Pre-populated and never modified later, hence safe to be read concurrently
+    final Map<CollectionOperation, OperationMetrics> operationMetrics =
+        new EnumMap<>(CollectionOperation.class);
+    for (final CollectionOperation operation : CollectionOperation.values()) {
+      operationMetrics.put(operation, new OperationMetrics());
+    }
+    return Collections.unmodifiableMap(operationMetrics);
+  }
+}
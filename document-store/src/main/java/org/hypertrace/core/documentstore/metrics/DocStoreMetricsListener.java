@@ -0,0 +1,45 @@
+package org.hypertrace.core.documentstore.metrics;
+
+/**
+ * SPI to receive the outcome of every {@link org.hypertrace.core.documentstore.Collection}
+ * operation. Implementations are invoked on the caller's thread and hence must be thread-safe and
+ * cheap.
+ *
+ * <p>For operations returning a {@link org.hypertrace.core.documentstore.CloseableIterator}, the
+ * operation is reported once the iterator is exhausted or closed, so that the duration and the
+ * document count cover the whole result-set.
+ */
+public interface DocStoreMetricsListener {
+
+  /**
+   * @param collectionName The name of the collection the operation was performed on
+   * @param operation The operation performed
+   * @param durationNanos The wall-clock duration of the operation in nanoseconds
+   * @param documentCount The number of documents written, read or affected
+   * @param payloadBytes The approximate size of the documents written or read (0, if unknown)
+   */
+  void onSuccess(
+      String collectionName,
+      CollectionOperation operation,
+      long durationNanos,
+      long documentCount,
+      long payloadBytes);
+
+  /**
+   * @param collectionName The name of the collection the operation was performed on
+   * @param operation The operation performed
+   * @param durationNanos The wall-clock duration until the failure in nanoseconds
+   * @param error The failure cause, or an {@link IllegalStateException} describing the result of
+   *     the operations reporting their failures by their result (e.g. false, or a negative count)
+   */
+  void onFailure(
+      String collectionName, CollectionOperation operation, long durationNanos, Throwable error);
+
+  /**
+   * @return true if the payload sizes should be computed. Computing payload sizes requires
+   *     serializing the documents once more, so listeners not interested in them can opt out.
+   */
+  default boolean isPayloadSizeEnabled() {
+    return true;
+  }
+}
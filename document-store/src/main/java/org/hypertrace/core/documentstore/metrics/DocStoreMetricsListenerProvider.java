@@ -0,0 +1,59 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import com.typesafe.config.Config;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the {@link DocStoreMetricsListener} configured for a {@link
+ * org.hypertrace.core.documentstore.Datastore}.
+ *
+ * <p>The value of the {@value #METRICS_LISTENER_CONFIG_KEY} config is looked up as follows
+ *
+ * <ol>
+ *   <li>{@value #DEFAULT_LISTENER_NAME}: a new {@link DefaultDocStoreMetricsListener}
+ *   <li>the name of a listener instance registered via {@link #register(String,
+ *       DocStoreMetricsListener)}. This allows sharing a listener instance with the application
+ *       (e.g. to report the collected metrics)
+ *   <li>the fully qualified name of a {@link DocStoreMetricsListener} implementation with a no-args
+ *       constructor
+ * </ol>
+ */
+public class DocStoreMetricsListenerProvider {
+  public static final String METRICS_LISTENER_CONFIG_KEY = "metricsListener";
+  public static final String DEFAULT_LISTENER_NAME = "default";
+
+  private static final Map<String, DocStoreMetricsListener> registry = new ConcurrentHashMap<>();
+
+  public static void register(final String name, final DocStoreMetricsListener listener) {
+    registry.put(name, listener);
+  }
+
+  public static Optional<DocStoreMetricsListener> getListener(final Config config) {
+    if (!config.hasPath(METRICS_LISTENER_CONFIG_KEY)) {
+      return Optional.empty();
+    }
+
+    final String name = config.getString(METRICS_LISTENER_CONFIG_KEY);
+    if (DEFAULT_LISTENER_NAME.equals(name)) {
+      return Optional.of(new DefaultDocStoreMetricsListener());
+    }
+
+    final DocStoreMetricsListener registered = registry.get(name);
+    if (registered != null) {
+      return Optional.of(registered);
+    }
+
+    try {
+      return Optional.of(
+          Class.forName(name)
+              .asSubclass(DocStoreMetricsListener.class)
+              .getConstructor()
+              .newInstance());
+    } catch (Exception e) {
+      throw new IllegalArgumentException(
+          String.format("Unable to instantiate the metrics listener: %s", name), e);
+    }
+  }
+}
@@ -0,0 +1,527 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.AGGREGATE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.BULK_DELETE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.BULK_OPERATION_ON_ARRAY_VALUE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.BULK_UPDATE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.BULK_UPDATE_SUB_DOCS;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.BULK_UPSERT;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.BULK_UPSERT_AND_RETURN_OLDER_DOCUMENTS;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.CHANGES_SINCE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.COUNT;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.CREATE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.DELETE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.DELETE_ALL;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.DELETE_BY_FILTER;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.DELETE_SUB_DOC;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.DROP;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.ESTIMATED_COUNT;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.EXECUTE_BATCH;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.EXPORT;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.FIND;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.GET;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.GET_ALL;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.GET_IF_MODIFIED;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.IMPORT;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.PARALLEL_SCAN;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.SEARCH;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.TOTAL;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.UPDATE;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.UPDATE_SUB_DOC;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.UPSERT;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.UPSERT_AND_RETURN;
+import static org.hypertrace.core.documentstore.metrics.CollectionOperation.WATCH;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
+import org.hypertrace.core.documentstore.BulkDeleteResult;
+import org.hypertrace.core.documentstore.BulkUpdateRequest;
+import org.hypertrace.core.documentstore.BulkUpdateResult;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.CreateResult;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.DocumentPublisher;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.Query;
+import org.hypertrace.core.documentstore.UpdateResult;
+import org.hypertrace.core.documentstore.VersionedDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+
+/**
+ * A {@link Collection} decorator reporting the latency, the outcome, the document count and the
+ * payload size of every operation to a {@link DocStoreMetricsListener}
+ */
+public class InstrumentedCollection implements Collection {
+  private final Collection delegate;
+  private final String collectionName;
+  private final DocStoreMetricsListener listener;
+
+  public InstrumentedCollection(
+      final Collection delegate,
+      final String collectionName,
+      final DocStoreMetricsListener listener) {
+    this.delegate = delegate;
+    this.collectionName = collectionName;
+    this.listener = listener;
+  }
+
+  @Override
+  public boolean upsert(final Key key, final Document document) throws IOException {
+    return measure(
+        UPSERT,
+        () -> delegate.upsert(key, document),
+        result -> result,
+        result -> 1,
+        sizeOf(document));
+  }
+
+  @Override
+  public Document upsertAndReturn(final Key key, final Document document) throws IOException {
+    return measure(
+        UPSERT_AND_RETURN,
+        () -> delegate.upsertAndReturn(key, document),
+        result -> 1,
+        sizeOf(document));
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public boolean updateSubDoc(final Key key, final String subDocPath, final Document subDocument) {
+    return measure(
+        UPDATE_SUB_DOC,
+        () -> delegate.updateSubDoc(key, subDocPath, subDocument),
+        result -> result,
+        result -> 1,
+        sizeOf(subDocument));
+  }
+
+  @Override
+  public BulkUpdateResult bulkUpdateSubDocs(final Map<Key, Map<String, Document>> documents)
+      throws Exception {
+    return measure(
+        BULK_UPDATE_SUB_DOCS,
+        () -> delegate.bulkUpdateSubDocs(documents),
+        UpdateResult::getUpdatedCount,
+        isPayloadSizeEnabled()
+            ? documents.values().stream().mapToLong(subDocs -> sizeOf(subDocs.values())).sum()
+            : 0);
+  }
+
+  @Override
+  public BulkUpdateResult bulkOperationOnArrayValue(final BulkArrayValueUpdateRequest request)
+      throws Exception {
+    return measure(
+        BULK_OPERATION_ON_ARRAY_VALUE,
+        () -> delegate.bulkOperationOnArrayValue(request),
+        UpdateResult::getUpdatedCount,
+        sizeOf(request.getSubDocuments()));
+  }
+
+  @Override
+  public Optional<Document> get(final Key key) {
+    return measure(GET, () -> delegate.get(key), document -> document.isPresent() ? 1 : 0, 0);
+  }
+
+  @Override
+  public Map<Key, Document> getAll(final java.util.Collection<Key> keys) {
+    return measure(GET_ALL, () -> delegate.getAll(keys), documents -> documents.size(), 0);
+  }
+
+  @Override
+  public CloseableIterator<Document> search(final Query query) {
+    return measureIterator(SEARCH, () -> delegate.search(query));
+  }
+
+  @Override
+  public CloseableIterator<Document> find(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return measureIterator(FIND, () -> delegate.find(query));
+  }
+
+  @Override
+  public List<CloseableIterator<Document>> parallelScan(
+      final org.hypertrace.core.documentstore.query.Query query, final int partitions) {
+    return measureIterators(PARALLEL_SCAN, () -> delegate.parallelScan(query, partitions));
+  }
+
+  @Override
+  public CloseableIterator<Document> aggregate(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return measureIterator(AGGREGATE, () -> delegate.aggregate(query));
+  }
+
+  @Override
+  public Flow.Publisher<Document> findPublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return measurePublisher(FIND, delegate.findPublisher(query));
+  }
+
+  @Override
+  public Flow.Publisher<Document> aggregatePublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return measurePublisher(AGGREGATE, delegate.aggregatePublisher(query));
+  }
+
+  @Override
+  public List<CloseableIterator<Document>> executeBatch(
+      final List<org.hypertrace.core.documentstore.query.Query> queries) {
+    return measureIterators(EXECUTE_BATCH, () -> delegate.executeBatch(queries));
+  }
+
+  @Override
+  public boolean delete(final Key key) {
+    // false also tells that no document matched the key, hence is not reported as a failure
+    return measure(DELETE, () -> delegate.delete(key), result -> result ? 1 : 0, 0);
+  }
+
+  @Override
+  public boolean delete(final Filter filter) {
+    return measure(DELETE_BY_FILTER, () -> delegate.delete(filter), result -> 0, 0);
+  }
+
+  @Override
+  public BulkDeleteResult delete(final Set<Key> keys) {
+    return measure(BULK_DELETE, () -> delegate.delete(keys), BulkDeleteResult::getDeletedCount, 0);
+  }
+
+  @Override
+  public boolean deleteSubDoc(final Key key, final String subDocPath) {
+    return measure(
+        DELETE_SUB_DOC, () -> delegate.deleteSubDoc(key, subDocPath), result -> result ? 1 : 0, 0);
+  }
+
+  @Override
+  public boolean deleteAll() {
+    return measure(DELETE_ALL, delegate::deleteAll, result -> result, result -> 0, 0);
+  }
+
+  @Override
+  public long count() {
+    return measure(COUNT, delegate::count, count -> count >= 0, count -> 0, 0);
+  }
+
+  @Override
+  public long total(final Query query) {
+    return measure(TOTAL, () -> delegate.total(query), count -> count >= 0, count -> 0, 0);
+  }
+
+  @Override
+  public long count(final org.hypertrace.core.documentstore.query.Query query) {
+    return measure(COUNT, () -> delegate.count(query), count -> count >= 0, count -> 0, 0);
+  }
+
+  @Override
+  public long estimatedCount() {
+    return measure(ESTIMATED_COUNT, delegate::estimatedCount, count -> count >= 0, count -> 0, 0);
+  }
+
+  @Override
+  public long estimatedCount(final org.hypertrace.core.documentstore.query.Query query) {
+    return measure(
+        ESTIMATED_COUNT, () -> delegate.estimatedCount(query), count -> count >= 0, count -> 0, 0);
+  }
+
+  @Override
+  public boolean bulkUpsert(final Map<Key, Document> documents) {
+    return measure(
+        BULK_UPSERT,
+        () -> delegate.bulkUpsert(documents),
+        result -> result,
+        result -> documents.size(),
+        sizeOf(documents.values()));
+  }
+
+  @Override
+  public CloseableIterator<Document> bulkUpsertAndReturnOlderDocuments(
+      final Map<Key, Document> documents) throws IOException {
+    return measure(
+        BULK_UPSERT_AND_RETURN_OLDER_DOCUMENTS,
+        () -> delegate.bulkUpsertAndReturnOlderDocuments(documents),
+        result -> documents.size(),
+        sizeOf(documents.values()));
+  }
+
+  @Override
+  public void drop() {
+    measure(
+        DROP,
+        () -> {
+          delegate.drop();
+          return null;
+        },
+        result -> 0,
+        0);
+  }
+
+  @Override
+  public CreateResult create(final Key key, final Document document) throws IOException {
+    return measure(
+        CREATE,
+        () -> delegate.create(key, document),
+        result -> result.isSucceed() ? 1 : 0,
+        sizeOf(document));
+  }
+
+  @Override
+  public BulkUpdateResult bulkUpdate(final List<BulkUpdateRequest> bulkUpdateRequests)
+      throws Exception {
+    return measure(
+        BULK_UPDATE,
+        () -> delegate.bulkUpdate(bulkUpdateRequests),
+        UpdateResult::getUpdatedCount,
+        isPayloadSizeEnabled()
+            ? bulkUpdateRequests.stream().mapToLong(request -> sizeOf(request.getDocument())).sum()
+            : 0);
+  }
+
+  @Override
+  public UpdateResult update(final Key key, final Document document, final Filter condition)
+      throws IOException {
+    return measure(
+        UPDATE,
+        () -> delegate.update(key, document, condition),
+        UpdateResult::getUpdatedCount,
+        sizeOf(document));
+  }
+
+  @Override
+  public CloseableIterator<ChangeEvent> watch(
+      final FilterTypeExpression filter, final WatchOptions options) {
+    // Only the opening of the stream is measured, as the stream itself lives indefinitely
+    return measure(WATCH, () -> delegate.watch(filter, options), result -> 0, 0);
+  }
+
+  @Override
+  public CloseableIterator<ChangedDocument> changesSince(
+      final Watermark watermark, final int batchSize) {
+    return measureIterator(
+        CHANGES_SINCE,
+        () -> delegate.changesSince(watermark, batchSize),
+        change -> sizeOf(change.getDocument()));
+  }
+
+  @Override
+  public Map<Key, VersionedDocument> getIfModified(final Map<Key, Instant> updateTimes) {
+    return measure(
+        GET_IF_MODIFIED, () -> delegate.getIfModified(updateTimes), result -> result.size(), 0);
+  }
+
+  @Override
+  public long exportTo(final OutputStream output, final LongConsumer progress) throws IOException {
+    return measure(EXPORT, () -> delegate.exportTo(output, progress), count -> count, 0);
+  }
+
+  @Override
+  public long importFrom(final InputStream input, final LongConsumer progress) throws IOException {
+    return measure(IMPORT, () -> delegate.importFrom(input, progress), count -> count, 0);
+  }
+
+  private <T, E extends Exception> T measure(
+      final CollectionOperation operation,
+      final ThrowingSupplier<T, E> call,
+      final ToLongFunction<T> documentCounter,
+      final long payloadBytes)
+      throws E {
+    return measure(operation, call, result -> true, documentCounter, payloadBytes);
+  }
+
+  /**
+   * @param succeeded Tells whether the result reports a success, for the operations reporting their
+   *     failures by their result (e.g. false, or a negative count) rather than by throwing
+   */
+  private <T, E extends Exception> T measure(
+      final CollectionOperation operation,
+      final ThrowingSupplier<T, E> call,
+      final Predicate<T> succeeded,
+      final ToLongFunction<T> documentCounter,
+      final long payloadBytes)
+      throws E {
+    final long startNanos = System.nanoTime();
+    final T result;
+    try {
+      result = call.get();
+    } catch (final Throwable t) {
+      listener.onFailure(collectionName, operation, System.nanoTime() - startNanos, t);
+      throw t;
+    }
+
+    if (!succeeded.test(result)) {
+      listener.onFailure(
+          collectionName,
+          operation,
+          System.nanoTime() - startNanos,
+          new IllegalStateException(String.format("%s reported a failure: %s", operation, result)));
+      return result;
+    }
+    listener.onSuccess(
+        collectionName,
+        operation,
+        System.nanoTime() - startNanos,
+        documentCounter.applyAsLong(result),
+        payloadBytes);
+    return result;
+  }
+
+  private CloseableIterator<Document> measureIterator(
+      final CollectionOperation operation,
+      final ThrowingSupplier<CloseableIterator<Document>, RuntimeException> call) {
+    return measureIterator(operation, call, this::sizeOf);
+  }
+
+  private <T> CloseableIterator<T> measureIterator(
+      final CollectionOperation operation,
+      final ThrowingSupplier<CloseableIterator<T>, RuntimeException> call,
+      final ToLongFunction<T> sizer) {
+    final long startNanos = System.nanoTime();
+    try {
+      return new InstrumentedIterator<>(call.get(), operation, startNanos, sizer);
+    } catch (final RuntimeException | Error e) {
+      listener.onFailure(collectionName, operation, System.nanoTime() - startNanos, e);
+      throw e;
+    }
+  }
+
+  /** Each subscription reports its own outcome, timed from the opening of its cursor */
+  private Flow.Publisher<Document> measurePublisher(
+      final CollectionOperation operation, final Flow.Publisher<Document> publisher) {
+    if (!(publisher instanceof DocumentPublisher)) {
+      return publisher;
+    }
+    return ((DocumentPublisher) publisher)
+        .decorate(
+            cursor ->
+                new InstrumentedIterator<>(cursor, operation, System.nanoTime(), this::sizeOf));
+  }
+
+  /** Each iterator reports its own outcome, timed from the start of the call */
+  private List<CloseableIterator<Document>> measureIterators(
+      final CollectionOperation operation,
+      final ThrowingSupplier<List<CloseableIterator<Document>>, RuntimeException> call) {
+    final long startNanos = System.nanoTime();
+    final List<CloseableIterator<Document>> iterators;
+    try {
+      iterators = call.get();
+    } catch (final RuntimeException | Error e) {
+      listener.onFailure(collectionName, operation, System.nanoTime() - startNanos, e);
+      throw e;
+    }
+    final List<CloseableIterator<Document>> instrumented = new ArrayList<>();
+    for (final CloseableIterator<Document> iterator : iterators) {
+      instrumented.add(new InstrumentedIterator<>(iterator, operation, startNanos, this::sizeOf));
+    }
+    return instrumented;
+  }
+
+  private boolean isPayloadSizeEnabled() {
+    return listener.isPayloadSizeEnabled();
+  }
+
+  private long sizeOf(final Document document) {
+    return isPayloadSizeEnabled() && document != null ? document.toJson().length() : 0;
+  }
+
+  private long sizeOf(final java.util.Collection<Document> documents) {
+    return isPayloadSizeEnabled() && documents != null
+        ? documents.stream().mapToLong(this::sizeOf).sum()
+        : 0;
+  }
+
+  @FunctionalInterface
+  private interface ThrowingSupplier<T, E extends Exception> {
+    T get() throws E;
+  }
+
+  private class InstrumentedIterator<T> implements CloseableIterator<T> {
+    private final CloseableIterator<T> iterator;
+    private final CollectionOperation operation;
+    private final long startNanos;
+    private final ToLongFunction<T> sizer;
+    private long documentCount;
+    private long payloadBytes;
+    private boolean reported;
+
+    private InstrumentedIterator(
+        final CloseableIterator<T> iterator,
+        final CollectionOperation operation,
+        final long startNanos,
+        final ToLongFunction<T> sizer) {
+      this.iterator = iterator;
+      this.operation = operation;
+      this.startNanos = startNanos;
+      this.sizer = sizer;
+    }
+
+    @Override
+    public boolean hasNext() {
+      final boolean hasNext;
+      try {
+        hasNext = iterator.hasNext();
+      } catch (final RuntimeException | Error e) {
+        reportFailure(e);
+        throw e;
+      }
+
+      if (!hasNext) {
+        reportSuccess();
+      }
+      return hasNext;
+    }
+
+    @Override
+    public T next() {
+      final T document;
+      try {
+        document = iterator.next();
+      } catch (final RuntimeException | Error e) {
+        reportFailure(e);
+        throw e;
+      }
+
+      documentCount++;
+      payloadBytes += sizer.applyAsLong(document);
+      return document;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        iterator.close();
+      } finally {
+        reportSuccess();
+      }
+    }
+
+    private void reportSuccess() {
+      if (!reported) {
+        reported = true;
+        listener.onSuccess(
+            collectionName, operation, System.nanoTime() - startNanos, documentCount, payloadBytes);
+      }
+    }
+
+    private void reportFailure(final Throwable t) {
+      if (!reported) {
+        reported = true;
+        listener.onFailure(collectionName, operation, System.nanoTime() - startNanos, t);
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative long values using HDR-style log-linear bucketing.
+ *
+ * <p>Values below {@link #SUB_BUCKET_COUNT} are recorded exactly. Every higher power-of-two range
+ * is split into {@link #SUB_BUCKET_COUNT}/2 linear sub-buckets, which bounds the relative error of
+ * the reported percentiles to ~6% while covering the whole long range in under 1000 buckets.
+ */
+public class LogLinearHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+  private static final int MAX_SHIFT = Long.SIZE - SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + MAX_SHIFT * SUB_BUCKET_HALF_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder totalSum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public void record(final long value) {
+    final long sanitized = Math.max(0, value);
+    counts.incrementAndGet(bucketIndex(sanitized));
+    totalCount.increment();
+    totalSum.add(sanitized);
+    max.accumulate(sanitized);
+  }
+
+  public long getCount() {
+    return totalCount.sum();
+  }
+
+  public long getSum() {
+    return totalSum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    final long count = getCount();
+    return count == 0 ? 0 : (double) getSum() / count;
+  }
+
+  /**
+   * @param percentile The percentile in the range [0, 100]
+   * @return The (upper-bound of the bucket holding the) value at the given percentile, or 0 if
+   *     nothing was recorded yet
+   */
+  public long getValueAtPercentile(final double percentile) {
+    Preconditions.checkArgument(
+        percentile >= 0 && percentile <= 100, "percentile must be within [0, 100]");
+
+    long count = 0;
+    final long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+
+    if (count == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), getMax());
+      }
+    }
+
+    return getMax();
+  }
+
+  static int bucketIndex(final long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    final int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    final int shift = magnitude - (SUB_BUCKET_BITS - 1);
+    final int subBucket = (int) (value >>> shift);
+    return SUB_BUCKET_COUNT
+        + (shift - 1) * SUB_BUCKET_HALF_COUNT
+        + subBucket
+        - SUB_BUCKET_HALF_COUNT;
+  }
+
+  static long bucketUpperBound(final int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+
+    final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    final long subBucket =
+        (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+    final long upperBound = ((subBucket + 1) << shift) - 1;
+    // The last bucket overflows into the sign bit
+    return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+  }
+}
@@ -0,0 +1,55 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Metrics accumulated for one operation on one collection */
+public class OperationMetrics {
+  private final LongAdder successCount = new LongAdder();
+  private final LongAdder errorCount = new LongAdder();
+  private final LongAdder documentCount = new LongAdder();
+  private final LongAdder payloadBytes = new LongAdder();
+  private final LogLinearHistogram latencyNanos = new LogLinearHistogram();
+  private final LogLinearHistogram payloadSizes = new LogLinearHistogram();
+
+  void recordSuccess(final long durationNanos, final long documents, final long bytes) {
+    successCount.increment();
+    documentCount.add(documents);
+    latencyNanos.record(durationNanos);
+
+    if (bytes > 0) {
+      payloadBytes.add(bytes);
+      payloadSizes.record(bytes);
+    }
+  }
+
+  void recordFailure(final long durationNanos) {
+    errorCount.increment();
+    latencyNanos.record(durationNanos);
+  }
+
+  public long getSuccessCount() {
+    return successCount.sum();
+  }
+
+  public long getErrorCount() {
+    return errorCount.sum();
+  }
+
+  public long getDocumentCount() {
+    return documentCount.sum();
+  }
+
+  public long getPayloadBytes() {
+    return payloadBytes.sum();
+  }
+
+  /** @return The histogram of latencies (in nanoseconds) of both successful and failed calls */
+  public LogLinearHistogram getLatencyNanos() {
+    return latencyNanos;
+  }
+
+  /** @return The histogram of payload sizes (in bytes) per successful call */
+  public LogLinearHistogram getPayloadSizes() {
+    return payloadSizes;
+  }
+}
@@ -0,0 +1,140 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import jdk.jfr.EventType;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.query.Query;
+
+/**
+ * Tracks the phases of a single collection operation and emits them as a {@link
+ * CollectionOperationEvent}. When the event is not enabled in any running recording, {@link
+ * #begin(String, CollectionOperation)} hands out a shared no-op instance, so the instrumentation
+ * costs a volatile read per operation and no allocation.
+ *
+ * <p>The phases are expected to be marked in order: {@link #parsed()}, {@link #executed()}, {@link
+ * #rowAvailable()} and then {@link #succeeded(long)} or {@link #failed()}. Closing a trace which
+ * has not succeeded commits it as failed, so that try-with-resources covers the failure paths. A
+ * trace is not thread-safe and must be confined to the thread driving the operation (or iterating
+ * its results).
+ */
+public final class OperationTrace implements AutoCloseable {
+  private static final EventType EVENT_TYPE =
+      EventType.getEventType(CollectionOperationEvent.class);
+  private static final OperationTrace DISABLED = new OperationTrace(null);
+
+  private final CollectionOperationEvent event;
+  private long phaseStartNanos;
+  private boolean rowSeen;
+  private boolean ended;
+
+  private OperationTrace(final CollectionOperationEvent event) {
+    this.event = event;
+    this.phaseStartNanos = event == null ? 0 : System.nanoTime();
+  }
+
+  public static OperationTrace begin(
+      final String collectionName, final CollectionOperation operation) {
+    if (!EVENT_TYPE.isEnabled()) {
+      return DISABLED;
+    }
+
+    final CollectionOperationEvent event = new CollectionOperationEvent();
+    event.collection = collectionName;
+    event.operation = operation.name();
+    event.begin();
+    return new OperationTrace(event);
+  }
+
+  public static OperationTrace disabled() {
+    return DISABLED;
+  }
+
+  /** Marks the end of the parse phase */
+  public void parsed() {
+    if (event != null) {
+      event.parseDuration = lap();
+    }
+  }
+
+  /** Marks the end of the parse phase, recording the fingerprint of the given query */
+  public void parsed(final Query query) {
+    if (event != null) {
+      event.parseDuration = lap();
+      event.queryFingerprint = QueryFingerprint.of(query);
+    }
+  }
+
+  /** Marks the end of the parse phase, recording the fingerprint of the given query */
+  public void parsed(final org.hypertrace.core.documentstore.Query query) {
+    if (event != null) {
+      event.parseDuration = lap();
+      event.queryFingerprint = QueryFingerprint.of(query);
+    }
+  }
+
+  /** Marks the end of the parse phase, recording the fingerprint of the given filter */
+  public void parsed(final Filter filter) {
+    if (event != null) {
+      event.parseDuration = lap();
+      event.queryFingerprint = QueryFingerprint.of(filter);
+    }
+  }
+
+  /** Marks the end of the execute phase */
+  public void executed() {
+    if (event != null) {
+      event.executeDuration = lap();
+    }
+  }
+
+  /** Marks the availability of a row. Only the first call is recorded. */
+  public void rowAvailable() {
+    if (event != null && !rowSeen) {
+      rowSeen = true;
+      event.firstRowDuration = lap();
+    }
+  }
+
+  /** @return The start timestamp to be passed to {@link #decoded(long)} */
+  public long decoding() {
+    return event == null ? 0 : System.nanoTime();
+  }
+
+  /** Adds the time elapsed since the given {@link #decoding()} timestamp to the decode phase */
+  public void decoded(final long decodingStartNanos) {
+    if (event != null) {
+      event.decodeDuration += System.nanoTime() - decodingStartNanos;
+    }
+  }
+
+  /** Commits the event. Calls after the first call to either this or {@link #failed()} no-op. */
+  public void succeeded(final long rowCount) {
+    end(rowCount, false);
+  }
+
+  /** Commits the event as failed. Calls after the first call to end the trace no-op. */
+  public void failed() {
+    end(0, true);
+  }
+
+  /** Commits the event as failed, unless it was already committed */
+  @Override
+  public void close() {
+    failed();
+  }
+
+  private void end(final long rowCount, final boolean failed) {
+    if (event != null && !ended) {
+      ended = true;
+      event.rowCount = rowCount;
+      event.failed = failed;
+      event.commit();
+    }
+  }
+
+  private long lap() {
+    final long now = System.nanoTime();
+    final long elapsed = now - phaseStartNanos;
+    phaseStartNanos = now;
+    return elapsed;
+  }
+}
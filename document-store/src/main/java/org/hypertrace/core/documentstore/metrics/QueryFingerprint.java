@@ -0,0 +1,181 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.FunctionExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
+import org.hypertrace.core.documentstore.parser.FilterTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.FromTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.GroupTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.SelectTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.parser.SortTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.query.Query;
+
+/**
+ * Computes a stable fingerprint of the shape of a query. Constants are masked, so that the queries
+ * differing only in the filter values (or pagination values) share the same fingerprint.
+ *
+ * <p>Example: Both <code>price > 10 AND item IN ('a', 'b')</code> and <code>
+ * price > 20 AND item IN ('c')</code> are normalized to <code>AND(GT(price,?),IN(item,?))</code>
+ * before hashing.
+ */
+public final class QueryFingerprint {
+  private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+  private static final String MASK = "?";
+
+  private QueryFingerprint() {}
+
+  public static String of(final Query query) {
+    return hash(normalize(query));
+  }
+
+  public static String of(final org.hypertrace.core.documentstore.Query query) {
+    return hash(normalize(query));
+  }
+
+  public static String of(final Filter filter) {
+    return hash(normalize(filter));
+  }
+
+  static String normalize(final Query query) {
+    final NormalizingVisitor visitor = new NormalizingVisitor();
+    return new StringBuilder()
+        .append("SELECT ")
+        .append(join(query.getSelections(), spec -> spec.getExpression().<String>accept(visitor)))
+        .append(" FROM ")
+        .append(join(query.getFromTypeExpressions(), expr -> expr.<String>accept(visitor)))
+        .append(" WHERE ")
+        .append(query.getFilter().map(filter -> filter.<String>accept(visitor)).orElse(""))
+        .append(" GROUP BY ")
+        .append(join(query.getAggregations(), expr -> expr.<String>accept(visitor)))
+        .append(" HAVING ")
+        .append(
+            query.getAggregationFilter().map(filter -> filter.<String>accept(visitor)).orElse(""))
+        .append(" ORDER BY ")
+        .append(
+            join(
+                query.getSorts(),
+                spec -> spec.getExpression().<String>accept(visitor) + " " + spec.getOrder()))
+        .append(query.getPagination().isPresent() ? " PAGINATED" : "")
+        .toString();
+  }
+
+  static String normalize(final org.hypertrace.core.documentstore.Query query) {
+    return new StringBuilder()
+        .append("SELECT ")
+        .append(String.join(",", query.getSelections()))
+        .append(" WHERE ")
+        .append(normalize(query.getFilter()))
+        .append(" ORDER BY ")
+        .append(
+            join(
+                query.getOrderBys(),
+                orderBy -> orderBy.getField() + (orderBy.isAsc() ? " ASC" : " DESC")))
+        .append(query.getLimit() != null || query.getOffset() != null ? " PAGINATED" : "")
+        .toString();
+  }
+
+  static String normalize(final Filter filter) {
+    if (filter == null) {
+      return "";
+    }
+
+    if (filter.isComposite()) {
+      return filter.getOp()
+          + "("
+          + Arrays.stream(filter.getChildFilters())
+              .map(QueryFingerprint::normalize)
+              .collect(joining(","))
+          + ")";
+    }
+
+    return filter.getOp() + "(" + filter.getFieldName() + "," + MASK + ")";
+  }
+
+  private static String hash(final String normalized) {
+    return HASH_FUNCTION.hashString(normalized, UTF_8).toString();
+  }
+
+  private static <T> String join(final List<T> items, final Function<T, String> mapper) {
+    return items.stream().map(mapper).collect(joining(","));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static class NormalizingVisitor
+      implements FilterTypeExpressionVisitor,
+          FromTypeExpressionVisitor,
+          GroupTypeExpressionVisitor,
+          SelectTypeExpressionVisitor,
+          SortTypeExpressionVisitor {
+
+    @Override
+    public String visit(final LogicalExpression expression) {
+      return expression.getOperator()
+          + "("
+          + join(expression.getOperands(), operand -> operand.<String>accept(this))
+          + ")";
+    }
+
+    @Override
+    public String visit(final RelationalExpression expression) {
+      return expression.getOperator()
+          + "("
+          + expression.getLhs().<String>accept(this)
+          + ","
+          + expression.getRhs().<String>accept(this)
+          + ")";
+    }
+
+    @Override
+    public String visit(final UnnestExpression expression) {
+      return "UNNEST("
+          + expression.getIdentifierExpression().getName()
+          + ","
+          + expression.isPreserveNullAndEmptyArrays()
+          + (expression.getFilterTypeExpression() == null
+              ? ""
+              : "," + expression.getFilterTypeExpression().<String>accept(this))
+          + ")";
+    }
+
+    @Override
+    public String visit(final AggregateExpression expression) {
+      return expression.getAggregator()
+          + "("
+          + expression.getExpression().<String>accept((SelectTypeExpressionVisitor) this)
+          + ")";
+    }
+
+    @Override
+    public String visit(final ConstantExpression expression) {
+      return MASK;
+    }
+
+    @Override
+    public String visit(final FunctionExpression expression) {
+      return expression.getOperator()
+          + "("
+          + join(
+              expression.getOperands(),
+              operand -> operand.<String>accept((SelectTypeExpressionVisitor) this))
+          + ")";
+    }
+
+    @Override
+    public String visit(final IdentifierExpression expression) {
+      return expression.getName();
+    }
+  }
+}
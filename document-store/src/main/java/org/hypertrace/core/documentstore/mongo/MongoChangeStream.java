@@ -0,0 +1,173 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import static org.hypertrace.core.documentstore.mongo.MongoCollection.ID_KEY;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.mongo.parser.MongoFilterTypeExpressionParser;
+
+/**
+ * Watches a collection with a MongoDB change stream (which needs a replica set or a sharded
+ * cluster). The filter is matched against the full document looked up at the time the change is
+ * read, so it is evaluated by the server.
+ */
+final class MongoChangeStream implements CloseableIterator<ChangeEvent> {
+  private static final String OPERATION_TYPE = "operationType";
+  private static final String FULL_DOCUMENT = "fullDocument";
+
+  private final MongoChangeStreamCursor<ChangeStreamDocument<BasicDBObject>> cursor;
+  private final Function<BasicDBObject, Document> decoder;
+  private final boolean fullDocument;
+  private volatile boolean closed;
+  private ChangeStreamDocument<BasicDBObject> next;
+
+  private MongoChangeStream(
+      final MongoChangeStreamCursor<ChangeStreamDocument<BasicDBObject>> cursor,
+      final Function<BasicDBObject, Document> decoder,
+      final boolean fullDocument) {
+    this.cursor = cursor;
+    this.decoder = decoder;
+    this.fullDocument = fullDocument;
+  }
+
+  static MongoChangeStream open(
+      final com.mongodb.client.MongoCollection<BasicDBObject> collection,
+      final FilterTypeExpression filter,
+      final WatchOptions options,
+      final Function<BasicDBObject, Document> decoder) {
+    final List<BasicDBObject> conditions = new ArrayList<>();
+    conditions.add(
+        new BasicDBObject(
+            OPERATION_TYPE,
+            new BasicDBObject(
+                "$in",
+                List.of(
+                    OperationType.INSERT.getValue(),
+                    OperationType.UPDATE.getValue(),
+                    OperationType.REPLACE.getValue(),
+                    OperationType.DELETE.getValue()))));
+    if (filter != null) {
+      conditions.add(
+          new BasicDBObject(
+              "$or",
+              List.of(
+                  new BasicDBObject(OPERATION_TYPE, OperationType.DELETE.getValue()),
+                  prefixFields(MongoFilterTypeExpressionParser.getFilterClause(filter)))));
+    }
+
+    final List<BasicDBObject> pipeline =
+        List.of(new BasicDBObject("$match", new BasicDBObject("$and", conditions)));
+    final boolean lookup = options.isFullDocument() || filter != null;
+    ChangeStreamIterable<BasicDBObject> changeStream =
+        collection
+            .watch(pipeline)
+            .fullDocument(lookup ? FullDocument.UPDATE_LOOKUP : FullDocument.DEFAULT)
+            .maxAwaitTime(options.getMaxAwaitTime().toMillis(), TimeUnit.MILLISECONDS);
+    if (options.getResumeAfter() != null) {
+      changeStream = changeStream.resumeAfter(BsonDocument.parse(options.getResumeAfter()));
+    }
+
+    return new MongoChangeStream(changeStream.cursor(), decoder, options.isFullDocument());
+  }
+
+  /** Moves the filter on the documents to the full documents of the change events */
+  @SuppressWarnings("unchecked")
+  private static Object prefixFields(final Object condition) {
+    if (condition instanceof Map) {
+      final BasicDBObject prefixed = new BasicDBObject();
+      for (final Map.Entry<String, Object> entry : ((Map<String, Object>) condition).entrySet()) {
+        final String key = entry.getKey();
+        if (key.startsWith("$")) {
+          prefixed.put(key, prefixFields(entry.getValue()));
+        } else {
+          prefixed.put(FULL_DOCUMENT + "." + key, entry.getValue());
+        }
+      }
+      return prefixed;
+    }
+
+    if (condition instanceof List) {
+      final List<Object> prefixed = new ArrayList<>();
+      for (final Object element : (List<Object>) condition) {
+        prefixed.add(prefixFields(element));
+      }
+      return prefixed;
+    }
+
+    return condition;
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      while (next == null && !closed) {
+        // Returns null once the max await time elapses without a change
+        next = cursor.tryNext();
+      }
+    } catch (MongoException | IllegalStateException e) {
+      if (closed) {
+        return false;
+      }
+      throw e;
+    }
+    return next != null;
+  }
+
+  @Override
+  public ChangeEvent next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    final ChangeStreamDocument<BasicDBObject> change = next;
+    next = null;
+    final BsonValue id = change.getDocumentKey().get(ID_KEY);
+    return ChangeEvent.builder()
+        .type(toType(change.getOperationType()))
+        .key(id.isString() ? id.asString().getValue() : id.toString())
+        .document(
+            fullDocument && change.getFullDocument() != null
+                ? decoder.apply(change.getFullDocument())
+                : null)
+        .resumeToken(change.getResumeToken().toJson())
+        .build();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    cursor.close();
+  }
+
+  private static ChangeEvent.Type toType(final OperationType operationType) {
+    switch (operationType) {
+      case INSERT:
+        return ChangeEvent.Type.INSERT;
+      case UPDATE:
+      case REPLACE:
+        return ChangeEvent.Type.UPDATE;
+      case DELETE:
+        return ChangeEvent.Type.DELETE;
+      default:
+        throw new IllegalStateException("Unexpected change: " + operationType);
+    }
+  }
+}
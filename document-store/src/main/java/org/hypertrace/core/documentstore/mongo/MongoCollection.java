@@ -5,15 +5,19 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.mongodb.BasicDBObject;
 import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
 import com.mongodb.MongoServerException;
 import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateManyModel;
@@ -23,16 +27,27 @@ import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertOneResult;
 import com.mongodb.client.result.UpdateResult;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Flow;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import net.jodah.failsafe.Failsafe;
 import net.jodah.failsafe.RetryPolicy;
@@ -43,14 +58,28 @@ import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
 import org.hypertrace.core.documentstore.BulkDeleteResult;
 import org.hypertrace.core.documentstore.BulkUpdateRequest;
 import org.hypertrace.core.documentstore.BulkUpdateResult;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
 import org.hypertrace.core.documentstore.CloseableIterator;
 import org.hypertrace.core.documentstore.Collection;
 import org.hypertrace.core.documentstore.CreateResult;
 import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.DocumentPublisher;
 import org.hypertrace.core.documentstore.Filter;
 import org.hypertrace.core.documentstore.JSONDocument;
 import org.hypertrace.core.documentstore.Key;
 import org.hypertrace.core.documentstore.Query;
+import org.hypertrace.core.documentstore.VersionedDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.metrics.CollectionOperation;
+import org.hypertrace.core.documentstore.metrics.OperationTrace;
+import org.hypertrace.core.documentstore.mongo.parser.MongoFilterTypeExpressionParser;
+import org.hypertrace.core.documentstore.query.transform.KeyRangePartitioner;
+import org.hypertrace.core.documentstore.transfer.NdJsonReader;
+import org.hypertrace.core.documentstore.transfer.NdJsonWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,19 +90,24 @@ public class MongoCollection implements Collection {
 
   // Fields automatically added for each document
   public static final String ID_KEY = "_id";
-  private static final String LAST_UPDATE_TIME = "_lastUpdateTime";
+  static final String LAST_UPDATE_TIME = "_lastUpdateTime";
   private static final String LAST_UPDATED_TIME = "lastUpdatedTime";
   /* follow json/protobuf convention to make it deser, let's not make our life harder */
   private static final String CREATED_TIME = "createdTime";
+  private static final BasicDBObject CURRENT_UPDATE_TIME =
+      new BasicDBObject(LAST_UPDATE_TIME, true);
 
   private static final ObjectMapper MAPPER = new ObjectMapper();
 
   private static final int MAX_RETRY_ATTEMPTS_FOR_DUPLICATE_KEY_ISSUE = 2;
   private static final int DELAY_BETWEEN_RETRIES_MILLIS = 10;
   private static final int MONGODB_DUPLICATE_KEY_ERROR_CODE = 11000;
+  private static final int EXPORT_BATCH_SIZE = 10_000;
+  private static final int IMPORT_BATCH_SIZE = 1000;
 
   private final com.mongodb.client.MongoCollection<BasicDBObject> collection;
   private final MongoQueryExecutor queryExecutor;
+  private volatile boolean changeIndexCreated;
 
   /**
    * The current MongoDB servers we use have a known issue - https://jira.mongodb
@@ -103,8 +137,14 @@ public class MongoCollection implements Collection {
           .withMaxRetries(MAX_RETRY_ATTEMPTS_FOR_DUPLICATE_KEY_ISSUE);
 
   MongoCollection(com.mongodb.client.MongoCollection<BasicDBObject> collection) {
+    this(collection, MongoServerVersion.LATEST);
+  }
+
+  MongoCollection(
+      com.mongodb.client.MongoCollection<BasicDBObject> collection,
+      MongoServerVersion serverVersion) {
     this.collection = collection;
-    this.queryExecutor = new MongoQueryExecutor(collection);
+    this.queryExecutor = new MongoQueryExecutor(collection, serverVersion);
   }
 
   /**
@@ -117,21 +157,42 @@ public class MongoCollection implements Collection {
         .allMatch(error -> error.getCode() == MONGODB_DUPLICATE_KEY_ERROR_CODE);
   }
 
+  /*
+   * The unacknowledged writes (w: 0) have no counts: they are reported as 0, while the writes
+   * returning whether they changed anything report that they did.
+   */
+  private static long modifiedCount(UpdateResult result) {
+    return result.wasAcknowledged() ? result.getModifiedCount() : 0;
+  }
+
+  private static long modifiedCount(BulkWriteResult result) {
+    return result.wasAcknowledged() ? result.getModifiedCount() : 0;
+  }
+
+  private static long deletedCount(DeleteResult result) {
+    return result.wasAcknowledged() ? result.getDeletedCount() : 0;
+  }
+
   /**
    * Adds the following fields automatically: _id, _lastUpdateTime, lastUpdatedTime and created Time
    */
   @Override
   public boolean upsert(Key key, Document document) throws IOException {
-    try {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPSERT)) {
       UpdateOptions options = new UpdateOptions().upsert(true);
+      BasicDBObject upsertObject = this.prepareUpsert(key, document);
+      trace.parsed();
       UpdateResult writeResult =
-          collection.updateOne(
-              this.selectionCriteriaForKey(key), this.prepareUpsert(key, document), options);
+          collection.updateOne(this.selectionCriteriaForKey(key), upsertObject, options);
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: " + writeResult.toString());
       }
 
-      return (writeResult.getUpsertedId() != null || writeResult.getModifiedCount() > 0);
+      trace.succeeded(modifiedCount(writeResult));
+      return !writeResult.wasAcknowledged()
+          || writeResult.getUpsertedId() != null
+          || writeResult.getModifiedCount() > 0;
     } catch (IOException e) {
       LOGGER.error("Exception upserting document. key: {} content:{}", key, document, e);
       throw e;
@@ -143,19 +204,21 @@ public class MongoCollection implements Collection {
    */
   @Override
   public BulkUpdateResult bulkUpdate(List<BulkUpdateRequest> bulkUpdateRequests) throws Exception {
-    try {
-      BulkWriteResult result = bulkUpdateImpl(bulkUpdateRequests);
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_UPDATE)) {
+      BulkWriteResult result = bulkUpdateImpl(bulkUpdateRequests, trace);
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug(result.toString());
       }
-      return new BulkUpdateResult(result.getModifiedCount());
+      trace.succeeded(modifiedCount(result));
+      return new BulkUpdateResult(modifiedCount(result));
     } catch (IOException | MongoServerException e) {
       LOGGER.error("Error during bulk update for documents:{}", bulkUpdateRequests, e);
       throw new Exception(e);
     }
   }
 
-  private BulkWriteResult bulkUpdateImpl(List<BulkUpdateRequest> bulkUpdateRequests)
+  private BulkWriteResult bulkUpdateImpl(
+      List<BulkUpdateRequest> bulkUpdateRequests, OperationTrace trace)
       throws JsonProcessingException {
     List<UpdateOneModel<BasicDBObject>> bulkCollection = new ArrayList<>();
     for (BulkUpdateRequest bulkUpdateRequest : bulkUpdateRequests) {
@@ -176,8 +239,12 @@ public class MongoCollection implements Collection {
               new UpdateOptions().upsert(false)));
     }
 
-    return Failsafe.with(bulkWriteRetryPolicy)
-        .get(() -> collection.bulkWrite(bulkCollection, new BulkWriteOptions().ordered(false)));
+    trace.parsed();
+    BulkWriteResult result =
+        Failsafe.with(bulkWriteRetryPolicy)
+            .get(() -> collection.bulkWrite(bulkCollection, new BulkWriteOptions().ordered(false)));
+    trace.executed();
+    return result;
   }
 
   /**
@@ -187,19 +254,22 @@ public class MongoCollection implements Collection {
   @Override
   public org.hypertrace.core.documentstore.UpdateResult update(
       Key key, Document document, Filter condition) throws IOException {
-    try {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPDATE)) {
       Map<String, Object> conditionMap =
           condition == null ? new HashMap<>() : MongoQueryParser.parseFilter(condition);
       conditionMap.put(ID_KEY, key.toString());
       BasicDBObject conditionObject = new BasicDBObject(conditionMap);
       UpdateOptions options = new UpdateOptions().upsert(false);
+      BasicDBObject updateObject = this.prepareUpsert(key, document);
+      trace.parsed(condition);
 
-      UpdateResult writeResult =
-          collection.updateOne(conditionObject, this.prepareUpsert(key, document), options);
+      UpdateResult writeResult = collection.updateOne(conditionObject, updateObject, options);
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Update result: " + writeResult.toString());
       }
-      return new org.hypertrace.core.documentstore.UpdateResult(writeResult.getModifiedCount());
+      trace.succeeded(modifiedCount(writeResult));
+      return new org.hypertrace.core.documentstore.UpdateResult(modifiedCount(writeResult));
     } catch (Exception e) {
       LOGGER.error("Exception updating document. key: {} content: {}", key, document, e);
       throw new IOException(e);
@@ -209,13 +279,17 @@ public class MongoCollection implements Collection {
   /** create a new document if one doesn't exists with key */
   @Override
   public CreateResult create(Key key, Document document) throws IOException {
-    try {
-      BasicDBObject basicDBObject = this.prepareInsert(key, document);
+    try (OperationTrace trace = beginTrace(CollectionOperation.CREATE)) {
+      BasicDBObject basicDBObject = this.prepareInsert(key.toString(), document);
+      trace.parsed();
       InsertOneResult insertOneResult = collection.insertOne(basicDBObject);
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Create result: " + insertOneResult.toString());
       }
-      return new CreateResult(insertOneResult.getInsertedId() != null);
+      trace.succeeded(1);
+      return new CreateResult(
+          !insertOneResult.wasAcknowledged() || insertOneResult.getInsertedId() != null);
     } catch (Exception e) {
       LOGGER.error("Exception creating document. key: {} content:{}", key, document, e);
       throw new IOException(e);
@@ -227,42 +301,50 @@ public class MongoCollection implements Collection {
    */
   @Override
   public Document upsertAndReturn(Key key, Document document) throws IOException {
-    BasicDBObject upsertResult =
-        Failsafe.with(upsertRetryPolicy)
-            .get(
-                () ->
-                    collection.findOneAndUpdate(
-                        this.selectionCriteriaForKey(key),
-                        this.prepareUpsert(key, document),
-                        new FindOneAndUpdateOptions()
-                            .upsert(true)
-                            .returnDocument(ReturnDocument.AFTER)));
-    if (upsertResult == null) {
-      throw new IOException("Could not upsert the document with key: " + key);
-    }
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPSERT_AND_RETURN)) {
+      BasicDBObject upsertResult =
+          Failsafe.with(upsertRetryPolicy)
+              .get(
+                  () ->
+                      collection.findOneAndUpdate(
+                          this.selectionCriteriaForKey(key),
+                          this.prepareUpsert(key, document),
+                          new FindOneAndUpdateOptions()
+                              .upsert(true)
+                              .returnDocument(ReturnDocument.AFTER)));
+      trace.executed();
+      if (upsertResult == null) {
+        throw new IOException("Could not upsert the document with key: " + key);
+      }
 
-    return this.dbObjectToDocument(upsertResult);
+      long decodingStart = trace.decoding();
+      Document result = this.dbObjectToDocument(upsertResult);
+      trace.decoded(decodingStart);
+      trace.succeeded(1);
+      return result;
+    }
   }
 
   private BasicDBObject prepareUpsert(Key key, Document document) throws JsonProcessingException {
     long now = System.currentTimeMillis();
-    BasicDBObject setObject = prepareDocument(key, document, now);
+    BasicDBObject setObject = prepareDocument(key.toString(), document, now);
     return new BasicDBObject("$set", setObject)
-        .append("$currentDate", new BasicDBObject(LAST_UPDATE_TIME, true))
+        .append("$currentDate", CURRENT_UPDATE_TIME)
         .append("$setOnInsert", new BasicDBObject(CREATED_TIME, now));
   }
 
-  private BasicDBObject prepareInsert(Key key, Document document) throws JsonProcessingException {
+  private BasicDBObject prepareInsert(String id, Document document) throws JsonProcessingException {
     long now = System.currentTimeMillis();
-    BasicDBObject insertDbObject = prepareDocument(key, document, now);
+    BasicDBObject insertDbObject = prepareDocument(id, document, now);
+    insertDbObject.put(LAST_UPDATE_TIME, new Date(now));
     insertDbObject.put(CREATED_TIME, now);
     return insertDbObject;
   }
 
-  private BasicDBObject prepareDocument(Key key, Document document, long now)
+  private BasicDBObject prepareDocument(String id, Document document, long now)
       throws JsonProcessingException {
     BasicDBObject basicDBObject = getSanitizedObject(document);
-    basicDBObject.put(ID_KEY, key.toString());
+    basicDBObject.put(ID_KEY, id);
     basicDBObject.put(LAST_UPDATED_TIME, now);
     return basicDBObject;
   }
@@ -270,16 +352,20 @@ public class MongoCollection implements Collection {
   /** Updates auto-field lastUpdatedTime when sub doc is updated */
   @Override
   public boolean updateSubDoc(Key key, String subDocPath, Document subDocument) {
-    try {
+    try (OperationTrace trace = beginTrace(CollectionOperation.UPDATE_SUB_DOC)) {
       BasicDBObject dbObject = new BasicDBObject(subDocPath, getSanitizedObject(subDocument));
       dbObject.append(LAST_UPDATED_TIME, System.currentTimeMillis());
-      BasicDBObject setObject = new BasicDBObject("$set", dbObject);
+      BasicDBObject setObject =
+          new BasicDBObject("$set", dbObject).append("$currentDate", CURRENT_UPDATE_TIME);
+      trace.parsed();
 
       UpdateResult writeResult =
           collection.updateOne(selectionCriteriaForKey(key), setObject, new UpdateOptions());
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: " + writeResult);
       }
+      trace.succeeded(modifiedCount(writeResult));
       // TODO:look into the writeResult to ensure it was successful. Was not easy to find this from
       // docs.
       return true;
@@ -292,6 +378,13 @@ public class MongoCollection implements Collection {
   @Override
   public BulkUpdateResult bulkUpdateSubDocs(Map<Key, Map<String, Document>> documents)
       throws Exception {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_UPDATE_SUB_DOCS)) {
+      return bulkUpdateSubDocs(documents, trace);
+    }
+  }
+
+  private BulkUpdateResult bulkUpdateSubDocs(
+      Map<Key, Map<String, Document>> documents, OperationTrace trace) throws Exception {
     List<UpdateManyModel<BasicDBObject>> bulkWriteUpdate = new ArrayList<>();
     for (Key key : documents.keySet()) {
       Map<String, Document> subDocuments = documents.get(key);
@@ -313,22 +406,35 @@ public class MongoCollection implements Collection {
           throw e;
         }
       }
+      // $currentDate is not available in the update pipelines
+      updateOperations.add(new BasicDBObject("$set", new BasicDBObject(LAST_UPDATE_TIME, "$$NOW")));
       bulkWriteUpdate.add(
           new UpdateManyModel(selectionCriteriaForKey(key), updateOperations, new UpdateOptions()));
     }
     if (bulkWriteUpdate.isEmpty()) {
+      trace.succeeded(0);
       return new BulkUpdateResult(0);
     }
+    trace.parsed();
     BulkWriteResult writeResult = collection.bulkWrite(bulkWriteUpdate);
+    trace.executed();
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug("Write result: " + writeResult);
     }
-    return new BulkUpdateResult(writeResult.getModifiedCount());
+    trace.succeeded(modifiedCount(writeResult));
+    return new BulkUpdateResult(modifiedCount(writeResult));
   }
 
   @Override
   public BulkUpdateResult bulkOperationOnArrayValue(BulkArrayValueUpdateRequest request)
       throws Exception {
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_OPERATION_ON_ARRAY_VALUE)) {
+      return bulkOperationOnArrayValue(request, trace);
+    }
+  }
+
+  private BulkUpdateResult bulkOperationOnArrayValue(
+      BulkArrayValueUpdateRequest request, OperationTrace trace) throws Exception {
     List<BasicDBObject> basicDBObjects = new ArrayList<>();
     try {
       for (Document subDocument : request.getSubDocuments()) {
@@ -362,9 +468,12 @@ public class MongoCollection implements Collection {
         List.of(
             new UpdateManyModel(
                 selectionCriteriaForKeys(request.getKeys()), operationObject, new UpdateOptions()));
+    trace.parsed();
     BulkWriteResult writeResult = collection.bulkWrite(bulkWriteUpdate);
+    trace.executed();
     LOGGER.debug("Write result for bulkOperationOnArrayValue: {}", writeResult);
-    return new BulkUpdateResult(writeResult.getModifiedCount());
+    trace.succeeded(modifiedCount(writeResult));
+    return new BulkUpdateResult(modifiedCount(writeResult));
   }
 
   private BasicDBObject getAddOperationObject(
@@ -372,24 +481,27 @@ public class MongoCollection implements Collection {
     BasicDBObject eachObject = new BasicDBObject("$each", basicDBObjects);
     BasicDBObject subDocPathObject = new BasicDBObject(subDocPath, eachObject);
     return new BasicDBObject("$addToSet", subDocPathObject)
-        .append("$set", new BasicDBObject(LAST_UPDATED_TIME, System.currentTimeMillis()));
+        .append("$set", new BasicDBObject(LAST_UPDATED_TIME, System.currentTimeMillis()))
+        .append("$currentDate", CURRENT_UPDATE_TIME);
   }
 
   private BasicDBObject getRemoveOperationObject(
       String subDocPath, List<BasicDBObject> basicDBObjects) {
     BasicDBObject subDocPathObject = new BasicDBObject(subDocPath, basicDBObjects);
     return new BasicDBObject("$pullAll", subDocPathObject)
-        .append("$set", new BasicDBObject(LAST_UPDATED_TIME, System.currentTimeMillis()));
+        .append("$set", new BasicDBObject(LAST_UPDATED_TIME, System.currentTimeMillis()))
+        .append("$currentDate", CURRENT_UPDATE_TIME);
   }
 
   private BasicDBObject getSetOperationObject(
       String subDocPath, List<BasicDBObject> basicDBObjects) {
     BasicDBObject subDocPathObject = new BasicDBObject(subDocPath, basicDBObjects);
     subDocPathObject.append(LAST_UPDATED_TIME, System.currentTimeMillis());
-    return new BasicDBObject("$set", subDocPathObject);
+    return new BasicDBObject("$set", subDocPathObject).append("$currentDate", CURRENT_UPDATE_TIME);
   }
 
-  private BasicDBObject getSanitizedObject(Document document) throws JsonProcessingException {
+  @VisibleForTesting
+  BasicDBObject getSanitizedObject(Document document) throws JsonProcessingException {
     String jsonString = document.toJson();
     JsonNode jsonNode = MAPPER.readTree(jsonString);
     // escape "." and "$" in field names since Mongo DB does not like them
@@ -418,8 +530,50 @@ public class MongoCollection implements Collection {
     return tgt;
   }
 
+  @Override
+  public Optional<Document> get(Key key) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.GET)) {
+      trace.parsed();
+      BasicDBObject dbObject =
+          collection.find(new BasicDBObject(ID_KEY, key.toString())).limit(1).first();
+      trace.executed();
+      trace.succeeded(dbObject == null ? 0 : 1);
+      return Optional.ofNullable(dbObject).map(this::dbObjectToDocument);
+    }
+  }
+
+  @Override
+  public Map<Key, Document> getAll(java.util.Collection<Key> keys) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.GET_ALL)) {
+      Map<String, Key> ids = new LinkedHashMap<>();
+      keys.forEach(key -> ids.put(key.toString(), key));
+      trace.parsed();
+
+      Map<String, Document> found = new HashMap<>();
+      for (List<String> batch : Lists.partition(new ArrayList<>(ids.keySet()), MAX_KEYS_PER_READ)) {
+        for (BasicDBObject dbObject :
+            collection.find(new BasicDBObject(ID_KEY, new BasicDBObject("$in", batch)))) {
+          found.put(dbObject.getString(ID_KEY), dbObjectToDocument(dbObject));
+        }
+      }
+      trace.executed();
+
+      Map<Key, Document> result = new LinkedHashMap<>();
+      ids.forEach(
+          (id, key) -> {
+            Document document = found.get(id);
+            if (document != null) {
+              result.put(key, document);
+            }
+          });
+      trace.succeeded(result.size());
+      return result;
+    }
+  }
+
   @Override
   public CloseableIterator<Document> search(Query query) {
+    OperationTrace trace = beginTrace(CollectionOperation.SEARCH);
     Map<String, Object> map = new HashMap<>();
 
     // If there is a filter in the query, parse it fully.
@@ -459,31 +613,168 @@ public class MongoCollection implements Collection {
       cursor.sort(orderBy);
     }
 
+    trace.parsed(query);
     final MongoCursor<BasicDBObject> mongoCursor = cursor.cursor();
-    return convertToDocumentIterator(mongoCursor);
+    trace.executed();
+    return convertToDocumentIterator(mongoCursor, trace);
   }
 
   @Override
   public CloseableIterator<Document> find(
       final org.hypertrace.core.documentstore.query.Query query) {
-    return convertToDocumentIterator(queryExecutor.find(query));
+    return find(query, 0);
+  }
+
+  private CloseableIterator<Document> find(
+      final org.hypertrace.core.documentstore.query.Query query, final int batchSize) {
+    OperationTrace trace = beginTrace(CollectionOperation.FIND);
+    try {
+      return convertToDocumentIterator(queryExecutor.find(query, trace, batchSize), trace);
+    } catch (RuntimeException e) {
+      trace.failed();
+      throw e;
+    }
+  }
+
+  /** The demand of the subscriber sets the batch size of the cursor */
+  @Override
+  public Flow.Publisher<Document> findPublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return new DocumentPublisher(batchSize -> find(query, batchSize));
+  }
+
+  @Override
+  public List<CloseableIterator<Document>> parallelScan(
+      final org.hypertrace.core.documentstore.query.Query query, final int partitions) {
+    KeyRangePartitioner.validate(query, partitions);
+    List<String> boundaries = new ArrayList<>();
+    try (OperationTrace trace = beginTrace(CollectionOperation.PARALLEL_SCAN)) {
+      trace.parsed();
+      if (partitions > 1) {
+        // The buckets hold even numbers of the keys matching the filter, the last one being
+        // unbounded
+        List<BasicDBObject> pipeline = new ArrayList<>();
+        query
+            .getFilter()
+            .map(MongoFilterTypeExpressionParser::getFilterClause)
+            .ifPresent(pipeline::add);
+        pipeline.add(
+            new BasicDBObject(
+                "$bucketAuto",
+                new BasicDBObject("groupBy", "$" + ID_KEY).append("buckets", partitions)));
+        List<BasicDBObject> buckets =
+            collection.aggregate(pipeline).allowDiskUse(true).into(new ArrayList<>());
+        for (int i = 0; i < buckets.size() - 1; i++) {
+          boundaries.add(String.valueOf(((Map<?, ?>) buckets.get(i).get(ID_KEY)).get("max")));
+        }
+      }
+      trace.executed();
+      trace.succeeded(0);
+    }
+
+    return KeyRangePartitioner.partition(query, ID_KEY, boundaries).stream()
+        .map(this::find)
+        .collect(Collectors.toList());
   }
 
   @Override
   public CloseableIterator<Document> aggregate(
       final org.hypertrace.core.documentstore.query.Query query) {
-    return convertToDocumentIterator(queryExecutor.aggregate(query));
+    return aggregate(query, 0);
+  }
+
+  private CloseableIterator<Document> aggregate(
+      final org.hypertrace.core.documentstore.query.Query query, final int batchSize) {
+    OperationTrace trace = beginTrace(CollectionOperation.AGGREGATE);
+    try {
+      return convertToDocumentIterator(queryExecutor.aggregate(query, trace, batchSize), trace);
+    } catch (RuntimeException e) {
+      trace.failed();
+      throw e;
+    }
+  }
+
+  /** The demand of the subscriber sets the batch size of the cursor */
+  @Override
+  public Flow.Publisher<Document> aggregatePublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return new DocumentPublisher(batchSize -> aggregate(query, batchSize));
+  }
+
+  /**
+   * The queries sharing the same filter run as a single aggregation, whose results are read at
+   * once, while the others (and the sampled ones) run as separate aggregations.
+   */
+  @Override
+  public List<CloseableIterator<Document>> executeBatch(
+      final List<org.hypertrace.core.documentstore.query.Query> queries) {
+    Map<BasicDBObject, List<Integer>> indexesByFilter = new LinkedHashMap<>();
+    List<CloseableIterator<Document>> results = new ArrayList<>(queries.size());
+    for (int i = 0; i < queries.size(); i++) {
+      org.hypertrace.core.documentstore.query.Query query = queries.get(i);
+      if (query.getSampling().isPresent() || !isBounded(query)) {
+        // Each sample is drawn by its own pipeline, and the results of a query which could exceed
+        // the 16MB of the single document of a $facet are read through their own cursor
+        results.add(aggregate(query));
+        continue;
+      }
+      results.add(null);
+      BasicDBObject filter =
+          query
+              .getFilter()
+              .map(MongoFilterTypeExpressionParser::getFilterClause)
+              .orElseGet(BasicDBObject::new);
+      indexesByFilter.computeIfAbsent(filter, key -> new ArrayList<>()).add(i);
+    }
+
+    for (List<Integer> indexes : indexesByFilter.values()) {
+      if (indexes.size() == 1) {
+        results.set(indexes.get(0), aggregate(queries.get(indexes.get(0))));
+        continue;
+      }
+
+      List<List<BasicDBObject>> facets;
+      try (OperationTrace trace = beginTrace(CollectionOperation.EXECUTE_BATCH)) {
+        facets =
+            queryExecutor.facet(
+                indexes.stream().map(queries::get).collect(Collectors.toList()), trace);
+        trace.succeeded(facets.stream().mapToLong(List::size).sum());
+      }
+      for (int i = 0; i < indexes.size(); i++) {
+        Iterator<BasicDBObject> documents = facets.get(i).iterator();
+        results.set(
+            indexes.get(i),
+            convertToDocumentIterator(documents, () -> {}, OperationTrace.disabled()));
+      }
+    }
+    return results;
+  }
+
+  private static boolean isBounded(final org.hypertrace.core.documentstore.query.Query query) {
+    return query.getPagination().isPresent()
+        || !query.getAggregations().isEmpty()
+        || query.getSelections().stream()
+            .anyMatch(spec -> spec.getExpression() instanceof AggregateExpression);
   }
 
   @Override
   public long count(org.hypertrace.core.documentstore.query.Query query) {
-    return queryExecutor.count(query);
+    try (OperationTrace trace = beginTrace(CollectionOperation.COUNT)) {
+      long count = queryExecutor.count(query);
+      trace.executed();
+      trace.succeeded(1);
+      return count;
+    }
   }
 
   @Override
   public boolean delete(Key key) {
-    DeleteResult deleteResult = collection.deleteOne(this.selectionCriteriaForKey(key));
-    return deleteResult.getDeletedCount() > 0;
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE)) {
+      DeleteResult deleteResult = collection.deleteOne(this.selectionCriteriaForKey(key));
+      trace.executed();
+      trace.succeeded(deletedCount(deleteResult));
+      return !deleteResult.wasAcknowledged() || deleteResult.getDeletedCount() > 0;
+    }
   }
 
   @Override
@@ -491,6 +782,12 @@ public class MongoCollection implements Collection {
     if (filter == null) {
       throw new UnsupportedOperationException("Filter must be provided");
     }
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE_BY_FILTER)) {
+      return delete(filter, trace);
+    }
+  }
+
+  private boolean delete(Filter filter, OperationTrace trace) {
     Map<String, Object> map = MongoQueryParser.parseFilter(filter);
     if (LOGGER.isDebugEnabled()) {
       LOGGER.debug(
@@ -502,40 +799,88 @@ public class MongoCollection implements Collection {
       throw new UnsupportedOperationException("Parsed filter is invalid");
     }
     BasicDBObject ref = new BasicDBObject(map);
+    trace.parsed(filter);
     DeleteResult deleteResult = collection.deleteMany(ref);
-    return deleteResult.getDeletedCount() > 0;
+    trace.executed();
+    trace.succeeded(deletedCount(deleteResult));
+    return !deleteResult.wasAcknowledged() || deleteResult.getDeletedCount() > 0;
   }
 
   @Override
   public BulkDeleteResult delete(Set<Key> keys) {
-    DeleteResult deleteResult = collection.deleteMany(this.selectionCriteriaForKeys(keys));
-    return new BulkDeleteResult(deleteResult.getDeletedCount());
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_DELETE)) {
+      long deletedCount = 0;
+      // The huge key sets are deleted by chunks, keeping the $in lists short
+      for (List<Key> batch : Lists.partition(new ArrayList<>(keys), MAX_KEYS_PER_READ)) {
+        deletedCount += deletedCount(collection.deleteMany(selectionCriteriaForKeys(batch)));
+      }
+      trace.executed();
+      trace.succeeded(deletedCount);
+      return new BulkDeleteResult(deletedCount);
+    }
   }
 
   @Override
   public boolean deleteSubDoc(Key key, String subDocPath) {
-    BasicDBObject unsetObject = new BasicDBObject("$unset", new BasicDBObject(subDocPath, ""));
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE_SUB_DOC)) {
+      BasicDBObject unsetObject =
+          new BasicDBObject("$unset", new BasicDBObject(subDocPath, ""))
+              .append("$currentDate", CURRENT_UPDATE_TIME);
+
+      UpdateResult updateResult =
+          collection.updateOne(this.selectionCriteriaForKey(key), unsetObject);
+      trace.executed();
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Write result: " + updateResult.toString());
+      }
 
-    UpdateResult updateResult =
-        collection.updateOne(this.selectionCriteriaForKey(key), unsetObject);
-    if (LOGGER.isDebugEnabled()) {
-      LOGGER.debug("Write result: " + updateResult.toString());
+      trace.succeeded(modifiedCount(updateResult));
+      return !updateResult.wasAcknowledged() || updateResult.getModifiedCount() > 0;
     }
-
-    return updateResult.getModifiedCount() > 0;
   }
 
   @Override
   public boolean deleteAll() {
-    collection.deleteMany(new BasicDBObject());
+    try (OperationTrace trace = beginTrace(CollectionOperation.DELETE_ALL)) {
+      DeleteResult deleteResult = collection.deleteMany(new BasicDBObject());
+      trace.executed();
+      trace.succeeded(deletedCount(deleteResult));
 
-    // If there was no exception, the operation is successful.
-    return true;
+      // If there was no exception, the operation is successful.
+      return true;
+    }
   }
 
   @Override
   public long count() {
-    return collection.countDocuments();
+    try (OperationTrace trace = beginTrace(CollectionOperation.COUNT)) {
+      long count = collection.countDocuments();
+      trace.executed();
+      trace.succeeded(1);
+      return count;
+    }
+  }
+
+  /** Reads the document count from the metadata of the collection */
+  @Override
+  public long estimatedCount() {
+    try (OperationTrace trace = beginTrace(CollectionOperation.ESTIMATED_COUNT)) {
+      long count = collection.estimatedDocumentCount();
+      trace.executed();
+      trace.succeeded(1);
+      return count;
+    }
+  }
+
+  /** MongoDB does not estimate the result-set sizes of queries, so the documents are counted */
+  @Override
+  public long estimatedCount(org.hypertrace.core.documentstore.query.Query query) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.ESTIMATED_COUNT)) {
+      long count = queryExecutor.count(query);
+      trace.executed();
+      trace.succeeded(1);
+      return count;
+    }
   }
 
   @Override
@@ -547,7 +892,13 @@ public class MongoCollection implements Collection {
       map = MongoQueryParser.parseFilter(query.getFilter());
     }
 
-    return collection.countDocuments(new BasicDBObject(map));
+    try (OperationTrace trace = beginTrace(CollectionOperation.TOTAL)) {
+      trace.parsed(query);
+      long total = collection.countDocuments(new BasicDBObject(map));
+      trace.executed();
+      trace.succeeded(1);
+      return total;
+    }
   }
 
   /**
@@ -555,9 +906,10 @@ public class MongoCollection implements Collection {
    */
   @Override
   public boolean bulkUpsert(Map<Key, Document> documents) {
-    try {
-      BulkWriteResult result = bulkUpsertImpl(documents);
+    try (OperationTrace trace = beginTrace(CollectionOperation.BULK_UPSERT)) {
+      BulkWriteResult result = bulkUpsertImpl(documents, trace);
       LOGGER.debug(result.toString());
+      trace.succeeded(documents.size());
       return true;
     } catch (IOException | MongoServerException e) {
       LOGGER.error("Error during bulk upsert for documents:{}", documents, e);
@@ -565,7 +917,7 @@ public class MongoCollection implements Collection {
     }
   }
 
-  private BulkWriteResult bulkUpsertImpl(Map<Key, Document> documents)
+  private BulkWriteResult bulkUpsertImpl(Map<Key, Document> documents, OperationTrace trace)
       throws JsonProcessingException {
     List<UpdateOneModel<BasicDBObject>> bulkCollection = new ArrayList<>();
     for (Entry<Key, Document> entry : documents.entrySet()) {
@@ -578,13 +930,18 @@ public class MongoCollection implements Collection {
               new UpdateOptions().upsert(true)));
     }
 
-    return Failsafe.with(bulkWriteRetryPolicy)
-        .get(() -> collection.bulkWrite(bulkCollection, new BulkWriteOptions().ordered(false)));
+    trace.parsed();
+    BulkWriteResult result =
+        Failsafe.with(bulkWriteRetryPolicy)
+            .get(() -> collection.bulkWrite(bulkCollection, new BulkWriteOptions().ordered(false)));
+    trace.executed();
+    return result;
   }
 
   @Override
   public CloseableIterator<Document> bulkUpsertAndReturnOlderDocuments(Map<Key, Document> documents)
       throws IOException {
+    OperationTrace trace = beginTrace(CollectionOperation.BULK_UPSERT_AND_RETURN_OLDER_DOCUMENTS);
     try {
       // First get all the documents for the given keys.
       FindIterable<BasicDBObject> cursor =
@@ -592,26 +949,208 @@ public class MongoCollection implements Collection {
       final MongoCursor<BasicDBObject> mongoCursor = cursor.cursor();
 
       // Now go ahead and do the bulk upsert.
-      BulkWriteResult result = bulkUpsertImpl(documents);
+      BulkWriteResult result = bulkUpsertImpl(documents, trace);
       LOGGER.debug(result.toString());
 
-      return convertToDocumentIterator(mongoCursor);
+      return convertToDocumentIterator(mongoCursor, trace);
     } catch (JsonProcessingException e) {
+      trace.failed();
       LOGGER.error("Error during bulk upsert for documents:{}", documents, e);
       throw new IOException("Error during bulk upsert.");
     }
   }
 
+  @Override
+  public CloseableIterator<ChangeEvent> watch(
+      final FilterTypeExpression filter, final WatchOptions options) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.WATCH)) {
+      trace.parsed();
+      MongoChangeStream changeStream =
+          MongoChangeStream.open(collection, filter, options, this::dbObjectToDocument);
+      trace.executed();
+      trace.succeeded(0);
+      return changeStream;
+    }
+  }
+
+  @Override
+  public CloseableIterator<ChangedDocument> changesSince(Watermark watermark, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+    }
+    if (!changeIndexCreated) {
+      collection.createIndex(new BasicDBObject(LAST_UPDATE_TIME, 1).append(ID_KEY, 1));
+      changeIndexCreated = true;
+    }
+    return new ChangesIterator(watermark, batchSize);
+  }
+
+  /**
+   * Reads the update times of the documents first, and then the documents updated since, if any, so
+   * that revalidating up-to-date copies reads no document.
+   */
+  @Override
+  public Map<Key, VersionedDocument> getIfModified(Map<Key, Instant> updateTimes) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.GET_IF_MODIFIED)) {
+      Map<String, Key> keys = new HashMap<>();
+      updateTimes.keySet().forEach(key -> keys.put(key.toString(), key));
+      trace.parsed();
+
+      Map<Key, VersionedDocument> result = new HashMap<>();
+      List<String> modifiedIds = new ArrayList<>();
+      for (List<String> batch :
+          Lists.partition(new ArrayList<>(keys.keySet()), MAX_KEYS_PER_READ)) {
+        for (BasicDBObject dbObject :
+            collection
+                .find(new BasicDBObject(ID_KEY, new BasicDBObject("$in", batch)))
+                .projection(new BasicDBObject(LAST_UPDATE_TIME, 1))) {
+          Key key = keys.get(dbObject.getString(ID_KEY));
+          Date updateTime = dbObject.getDate(LAST_UPDATE_TIME);
+          // The documents never upserted have no update time, and are always read
+          if (updateTime == null || !updateTime.toInstant().equals(updateTimes.get(key))) {
+            modifiedIds.add(key.toString());
+          } else {
+            result.put(key, VersionedDocument.unmodified(updateTime.toInstant()));
+          }
+        }
+      }
+
+      for (List<String> batch : Lists.partition(modifiedIds, MAX_KEYS_PER_READ)) {
+        for (BasicDBObject dbObject :
+            collection.find(new BasicDBObject(ID_KEY, new BasicDBObject("$in", batch)))) {
+          Key key = keys.get(dbObject.getString(ID_KEY));
+          Date updateTime = dbObject.getDate(LAST_UPDATE_TIME);
+          result.put(
+              key,
+              VersionedDocument.of(
+                  dbObjectToDocument(dbObject),
+                  updateTime == null ? Instant.EPOCH : updateTime.toInstant()));
+        }
+      }
+      trace.executed();
+      trace.succeeded(result.size());
+      return result;
+    }
+  }
+
+  /**
+   * The documents are exported without their {@code _lastUpdateTime}, which is not JSON, their
+   * update times being in {@code lastUpdatedTime} already.
+   */
+  @Override
+  public long exportTo(OutputStream output, LongConsumer progress) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.EXPORT)) {
+      trace.parsed();
+      NdJsonWriter writer = new NdJsonWriter(output, progress);
+      try (MongoCursor<BasicDBObject> cursor =
+          collection.find().batchSize(EXPORT_BATCH_SIZE).iterator()) {
+        trace.executed();
+        while (cursor.hasNext()) {
+          writer.write(toExportedNode(cursor.next()));
+        }
+      } catch (MongoException e) {
+        LOGGER.error(
+            "Exception exporting the documents of the collection: {}",
+            collection.getNamespace(),
+            e);
+        throw new IOException(e);
+      }
+      long count = writer.finish();
+      trace.succeeded(count);
+      return count;
+    }
+  }
+
+  /**
+   * Inserts the documents with unordered bulk inserts, which go on past the documents whose keys
+   * exist already. Adds the following fields automatically: _lastUpdateTime, lastUpdatedTime and
+   * createdTime
+   */
+  @Override
+  public long importFrom(InputStream input, LongConsumer progress) throws IOException {
+    try (OperationTrace trace = beginTrace(CollectionOperation.IMPORT)) {
+      NdJsonReader reader = new NdJsonReader(input, progress);
+      long inserted = 0;
+      List<ObjectNode> batch;
+      while (!(batch = reader.readBatch(IMPORT_BATCH_SIZE)).isEmpty()) {
+        List<BasicDBObject> dbObjects = new ArrayList<>(batch.size());
+        for (ObjectNode node : batch) {
+          String id = node.remove(ID_KEY).textValue();
+          dbObjects.add(prepareInsert(id, new JSONDocument(node)));
+        }
+        inserted += insertNew(dbObjects);
+      }
+      trace.executed();
+      trace.succeeded(inserted);
+      return inserted;
+    }
+  }
+
+  private ObjectNode toExportedNode(BasicDBObject dbObject) throws IOException {
+    String id = dbObject.getString(ID_KEY);
+    dbObject.removeField(LAST_UPDATE_TIME);
+    JsonNode document = MAPPER.readTree(dbObjectToDocument(dbObject).toJson());
+    ObjectNode node = MAPPER.createObjectNode().put(ID_KEY, id);
+    node.setAll((ObjectNode) document);
+    return node;
+  }
+
+  /** @return The number of documents inserted, those whose keys exist already being skipped */
+  private long insertNew(List<BasicDBObject> dbObjects) throws IOException {
+    try {
+      collection.insertMany(dbObjects, new InsertManyOptions().ordered(false));
+      return dbObjects.size();
+    } catch (MongoBulkWriteException e) {
+      if (e.getWriteErrors().stream()
+          .allMatch(error -> error.getCode() == MONGODB_DUPLICATE_KEY_ERROR_CODE)) {
+        return e.getWriteResult().getInsertedCount();
+      }
+      LOGGER.error(
+          "Exception importing the documents of the collection: {}", collection.getNamespace(), e);
+      throw new IOException(e);
+    } catch (MongoException e) {
+      LOGGER.error(
+          "Exception importing the documents of the collection: {}", collection.getNamespace(), e);
+      throw new IOException(e);
+    }
+  }
+
+  /** Reads the next batch of the documents updated after the watermark, in keyset order */
+  private List<BasicDBObject> readChanges(Watermark watermark, int batchSize) {
+    try (OperationTrace trace = beginTrace(CollectionOperation.CHANGES_SINCE)) {
+      Date updateTime = Date.from(watermark.getTimestamp());
+      BasicDBObject after =
+          new BasicDBObject(
+              "$or",
+              List.of(
+                  new BasicDBObject(LAST_UPDATE_TIME, new BasicDBObject("$gt", updateTime)),
+                  new BasicDBObject(LAST_UPDATE_TIME, updateTime)
+                      .append(ID_KEY, new BasicDBObject("$gt", watermark.getKey()))));
+      trace.parsed();
+
+      List<BasicDBObject> batch =
+          collection
+              .find(after)
+              .sort(new BasicDBObject(LAST_UPDATE_TIME, 1).append(ID_KEY, 1))
+              .limit(batchSize)
+              .into(new ArrayList<>());
+      trace.executed();
+      trace.succeeded(batch.size());
+      return batch;
+    }
+  }
+
   @Override
   public void drop() {
     collection.drop();
+    changeIndexCreated = false;
   }
 
   private BasicDBObject selectionCriteriaForKey(Key key) {
     return new BasicDBObject(ID_KEY, key.toString());
   }
 
-  private BasicDBObject selectionCriteriaForKeys(Set<Key> keys) {
+  private BasicDBObject selectionCriteriaForKeys(java.util.Collection<Key> keys) {
     return new BasicDBObject(
         Map.of(
             ID_KEY,
@@ -619,14 +1158,26 @@ public class MongoCollection implements Collection {
                 "$in", keys.stream().map(Key::toString).collect(Collectors.toList()))));
   }
 
-  private CloseableIterator<Document> convertToDocumentIterator(MongoCursor<BasicDBObject> cursor) {
+  private OperationTrace beginTrace(CollectionOperation operation) {
+    return OperationTrace.begin(collection.getNamespace().getCollectionName(), operation);
+  }
+
+  private CloseableIterator<Document> convertToDocumentIterator(
+      MongoCursor<BasicDBObject> cursor, OperationTrace trace) {
+    return convertToDocumentIterator(cursor, () -> cursor.close(), trace);
+  }
+
+  private CloseableIterator<Document> convertToDocumentIterator(
+      Iterator<BasicDBObject> cursor, Runnable closer, OperationTrace trace) {
     return new CloseableIterator<>() {
       private boolean closed = false;
+      private long rowCount = 0;
 
       @Override
       public void close() {
         if (!closed) {
-          cursor.close();
+          closer.run();
+          trace.succeeded(rowCount);
         }
         closed = true;
       }
@@ -634,7 +1185,9 @@ public class MongoCollection implements Collection {
       @Override
       public boolean hasNext() {
         boolean hasNext = !closed && cursor.hasNext();
-        if (!hasNext) {
+        if (hasNext) {
+          trace.rowAvailable();
+        } else {
           close();
         }
         return hasNext;
@@ -643,8 +1196,15 @@ public class MongoCollection implements Collection {
       @Override
       public Document next() {
         try {
-          return dbObjectToDocument(cursor.next());
+          BasicDBObject dbObject = cursor.next();
+          trace.rowAvailable();
+          long decodingStart = trace.decoding();
+          Document document = dbObjectToDocument(dbObject);
+          trace.decoded(decodingStart);
+          rowCount++;
+          return document;
         } catch (Exception ex) {
+          trace.failed();
           close();
           throw ex;
         }
@@ -652,7 +1212,49 @@ public class MongoCollection implements Collection {
     };
   }
 
-  private Document dbObjectToDocument(BasicDBObject dbObject) {
+  /** Reads the changes one batch at a time, each resuming after the last document read */
+  private class ChangesIterator implements CloseableIterator<ChangedDocument> {
+    private final int batchSize;
+    private final Deque<BasicDBObject> batch = new ArrayDeque<>();
+    private Watermark watermark;
+    private boolean exhausted;
+
+    private ChangesIterator(Watermark watermark, int batchSize) {
+      this.watermark = watermark;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (batch.isEmpty() && !exhausted) {
+        List<BasicDBObject> read = readChanges(watermark, batchSize);
+        exhausted = read.size() < batchSize;
+        batch.addAll(read);
+      }
+      return !batch.isEmpty();
+    }
+
+    @Override
+    public ChangedDocument next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      BasicDBObject dbObject = batch.removeFirst();
+      watermark =
+          Watermark.of(dbObject.getDate(LAST_UPDATE_TIME).toInstant(), dbObject.getString(ID_KEY));
+      return ChangedDocument.of(dbObjectToDocument(dbObject), watermark);
+    }
+
+    @Override
+    public void close() {
+      exhausted = true;
+      batch.clear();
+    }
+  }
+
+  @VisibleForTesting
+  Document dbObjectToDocument(BasicDBObject dbObject) {
     try {
       // Hack: Remove the _id field since it's an unrecognized field for Proto layer.
       // TODO: We should rather use separate DAO classes instead of using the
@@ -7,6 +7,10 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.TransactionOptions;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
@@ -14,9 +18,18 @@ import com.typesafe.config.Config;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import org.bson.Document;
+import org.hypertrace.core.documentstore.AsyncCollection;
 import org.hypertrace.core.documentstore.Collection;
 import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.Transaction;
+import org.hypertrace.core.documentstore.WriteOptions;
+import org.hypertrace.core.documentstore.WriteOptions.Durability;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListener;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListenerProvider;
+import org.hypertrace.core.documentstore.metrics.InstrumentedCollection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,6 +39,10 @@ public class MongoDatastore implements Datastore {
   private static final String DEFAULT_DB_NAME = "default_db";
   private MongoClient client;
   private MongoDatabase database;
+  private MongoServerVersion serverVersion;
+  private DocStoreMetricsListener metricsListener;
+  private ExecutorService asyncExecutor;
+  private final Map<String, MongoMaterializedView> views = new ConcurrentHashMap<>();
 
   @Override
   public boolean init(Config config) {
@@ -43,6 +60,9 @@ public class MongoDatastore implements Datastore {
     client = MongoClients.create(settings);
 
     database = client.getDatabase(DEFAULT_DB_NAME);
+    serverVersion = MongoServerVersion.of(database);
+    metricsListener = DocStoreMetricsListenerProvider.getListener(config).orElse(null);
+    asyncExecutor = AsyncCollection.newExecutor(config, "mongo-datastore");
     return true;
   }
 
@@ -73,12 +93,135 @@ public class MongoDatastore implements Datastore {
     com.mongodb.client.MongoCollection<Document> collection =
         database.getCollection(collectionName);
     collection.drop();
+    views.remove(collectionName);
     return true;
   }
 
   @Override
   public Collection getCollection(String collectionName) {
-    return new MongoCollection(database.getCollection(collectionName, BasicDBObject.class));
+    return getCollection(collectionName, WriteOptions.DEFAULT);
+  }
+
+  /** The durability maps to the write concern of the collection */
+  @Override
+  public Collection getCollection(String collectionName, WriteOptions writeOptions) {
+    com.mongodb.client.MongoCollection<BasicDBObject> mongoCollection =
+        database.getCollection(collectionName, BasicDBObject.class);
+    if (writeOptions.getDurability() != Durability.DEFAULT) {
+      mongoCollection =
+          mongoCollection.withWriteConcern(getWriteConcern(writeOptions.getDurability()));
+    }
+    return instrument(new MongoCollection(mongoCollection, serverVersion), collectionName);
+  }
+
+  private Collection instrument(Collection collection, String collectionName) {
+    return metricsListener == null
+        ? collection
+        : new InstrumentedCollection(collection, collectionName, metricsListener);
+  }
+
+  @Override
+  public <T> T inTransaction(Transaction.Work<T> work) throws Exception {
+    return inTransaction(WriteOptions.DEFAULT, work);
+  }
+
+  /**
+   * The transaction runs in a client session, to which the collection handles are bound. The
+   * transactions need a replica set or a sharded cluster, and their commits are always
+   * acknowledged.
+   */
+  @Override
+  public <T> T inTransaction(WriteOptions writeOptions, Transaction.Work<T> work) throws Exception {
+    TransactionOptions.Builder options = TransactionOptions.builder();
+    if (writeOptions.getDurability() != Durability.DEFAULT) {
+      WriteConcern writeConcern = getWriteConcern(writeOptions.getDurability());
+      options.writeConcern(writeConcern.isAcknowledged() ? writeConcern : WriteConcern.W1);
+    }
+
+    try (ClientSession session = client.startSession()) {
+      session.startTransaction(options.build());
+      T result;
+      try {
+        result =
+            work.apply(
+                collectionName ->
+                    instrument(
+                        new MongoCollection(
+                            MongoSessionBinding.bind(
+                                database.getCollection(collectionName, BasicDBObject.class),
+                                session),
+                            serverVersion),
+                        collectionName));
+      } catch (Exception | Error e) {
+        try {
+          session.abortTransaction();
+        } catch (MongoException abortException) {
+          e.addSuppressed(abortException);
+        }
+        throw e;
+      }
+      session.commitTransaction();
+      return result;
+    }
+  }
+
+  @VisibleForTesting
+  static WriteConcern getWriteConcern(Durability durability) {
+    switch (durability) {
+      case UNACKNOWLEDGED:
+        return WriteConcern.UNACKNOWLEDGED;
+      case ACKNOWLEDGED:
+        return WriteConcern.W1;
+      case JOURNALED:
+        return WriteConcern.W1.withJournal(true);
+      case MAJORITY:
+        return WriteConcern.MAJORITY.withJournal(true);
+      default:
+        return WriteConcern.ACKNOWLEDGED;
+    }
+  }
+
+  /** The sync driver is thread-safe, so the I/O threads share the connection pool of the client */
+  @Override
+  public AsyncCollection getAsyncCollection(String collectionName) {
+    Collection collection = getCollection(collectionName);
+    return new AsyncCollection(collection, asyncExecutor);
+  }
+
+  /**
+   * Keeps the query of the view, to refresh it, and fills the view unless its collection exists
+   * already (e.g. from a previous registration)
+   */
+  @Override
+  public boolean createMaterializedView(
+      String viewName, String collectionName, org.hypertrace.core.documentstore.query.Query query) {
+    boolean exists = database.listCollectionNames().into(new HashSet<>()).contains(viewName);
+    views.computeIfAbsent(
+        viewName,
+        name ->
+            new MongoMaterializedView(
+                database.getCollection(collectionName, BasicDBObject.class),
+                database.getCollection(viewName, BasicDBObject.class),
+                query,
+                serverVersion));
+    return exists || refreshMaterializedView(viewName);
+  }
+
+  @Override
+  public boolean refreshMaterializedView(String viewName) {
+    MongoMaterializedView view = views.get(viewName);
+    if (view == null) {
+      LOGGER.error("Materialized view not registered: {}", viewName);
+      return false;
+    }
+
+    try {
+      view.refresh();
+    } catch (MongoException e) {
+      LOGGER.error("Could not refresh materialized view: {}", viewName, e);
+      return false;
+    }
+    return true;
   }
 
   @Override
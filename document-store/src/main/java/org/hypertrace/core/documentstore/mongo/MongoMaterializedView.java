@@ -0,0 +1,43 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import static org.hypertrace.core.documentstore.mongo.MongoCollection.LAST_UPDATE_TIME;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.client.MongoCollection;
+import java.util.Date;
+import java.util.concurrent.locks.ReentrantLock;
+import org.hypertrace.core.documentstore.query.Query;
+
+/**
+ * A materialized view, stored as a collection filled by a <code>$merge</code> pipeline over its
+ * source collection. The pipeline stamps the documents with the time of the refresh, so that the
+ * documents not written by the refresh (e.g. the groups gone from the source) are deleted after it.
+ */
+final class MongoMaterializedView {
+  private final MongoQueryExecutor executor;
+  private final MongoCollection<BasicDBObject> target;
+  private final Query query;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  MongoMaterializedView(
+      final MongoCollection<BasicDBObject> source,
+      final MongoCollection<BasicDBObject> target,
+      final Query query,
+      final MongoServerVersion serverVersion) {
+    this.executor = new MongoQueryExecutor(source, serverVersion);
+    this.target = target;
+    this.query = query;
+  }
+
+  void refresh() {
+    // A lock rather than a monitor, not to pin the carrier of a virtual thread during the refresh
+    lock.lock();
+    try {
+      final Date updateTime = new Date();
+      executor.merge(query, target.getNamespace().getCollectionName(), updateTime);
+      target.deleteMany(new BasicDBObject(LAST_UPDATE_TIME, new BasicDBObject("$ne", updateTime)));
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -3,6 +3,7 @@ package org.hypertrace.core.documentstore.mongo;
 import static java.lang.Long.parseLong;
 import static java.util.Collections.singleton;
 import static java.util.function.Predicate.not;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.PERCENTILE;
 import static org.hypertrace.core.documentstore.mongo.MongoPaginationHelper.applyPagination;
 import static org.hypertrace.core.documentstore.mongo.MongoPaginationHelper.getLimitClause;
 import static org.hypertrace.core.documentstore.mongo.MongoPaginationHelper.getSkipClause;
@@ -11,30 +12,35 @@ import static org.hypertrace.core.documentstore.mongo.clause.MongoCountClauseSup
 import static org.hypertrace.core.documentstore.mongo.parser.MongoFilterTypeExpressionParser.getFilter;
 import static org.hypertrace.core.documentstore.mongo.parser.MongoFilterTypeExpressionParser.getFilterClause;
 import static org.hypertrace.core.documentstore.mongo.parser.MongoGroupTypeExpressionParser.getGroupClause;
+import static org.hypertrace.core.documentstore.mongo.parser.MongoGroupTypeExpressionParser.getPercentileClause;
 import static org.hypertrace.core.documentstore.mongo.parser.MongoSelectTypeExpressionParser.getProjectClause;
 import static org.hypertrace.core.documentstore.mongo.parser.MongoSelectTypeExpressionParser.getSelections;
 import static org.hypertrace.core.documentstore.mongo.parser.MongoSortTypeExpressionParser.getOrders;
 import static org.hypertrace.core.documentstore.mongo.parser.MongoSortTypeExpressionParser.getSortClause;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.mongodb.BasicDBObject;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.conversions.Bson;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.metrics.OperationTrace;
 import org.hypertrace.core.documentstore.mongo.parser.MongoFromTypeExpressionParser;
 import org.hypertrace.core.documentstore.mongo.query.transformer.MongoQueryTransformer;
 import org.hypertrace.core.documentstore.query.Pagination;
 import org.hypertrace.core.documentstore.query.Query;
 
 @Slf4j
-@AllArgsConstructor
 public class MongoQueryExecutor {
   private static final List<Function<Query, Collection<BasicDBObject>>>
       AGGREGATE_PIPELINE_FUNCTIONS =
@@ -42,15 +48,58 @@ public class MongoQueryExecutor {
               query -> singleton(getFilterClause(query, Query::getFilter)),
               MongoFromTypeExpressionParser::getFromClauses,
               query -> singleton(getGroupClause(query)),
+              query -> singleton(getPercentileClause(query)),
               query -> singleton(getProjectClause(query)),
               query -> singleton(getFilterClause(query, Query::getAggregationFilter)),
               query -> singleton(getSortClause(query)),
               query -> singleton(getSkipClause(query)),
               query -> singleton(getLimitClause(query)));
 
+  private static final String SAMPLE_CLAUSE = "$sample";
+  private static final String ADD_FIELDS_CLAUSE = "$addFields";
+  private static final String MERGE_CLAUSE = "$merge";
+  private static final String FACET_CLAUSE = "$facet";
+  private static final String MATCH_CLAUSE = "$match";
+  private static final String FACET_PREFIX = "q";
+  private static final String SAMPLE_SIZE = "size";
+  private static final int PERCENTILE_MAJOR_VERSION = 7;
+
   final com.mongodb.client.MongoCollection<BasicDBObject> collection;
+  private final MongoServerVersion serverVersion;
+
+  public MongoQueryExecutor(final com.mongodb.client.MongoCollection<BasicDBObject> collection) {
+    this(collection, MongoServerVersion.LATEST);
+  }
+
+  /**
+   * @param serverVersion The version of the server, checked against the operators of the queries
+   */
+  MongoQueryExecutor(
+      final com.mongodb.client.MongoCollection<BasicDBObject> collection,
+      final MongoServerVersion serverVersion) {
+    this.collection = collection;
+    this.serverVersion = serverVersion;
+  }
 
   public MongoCursor<BasicDBObject> find(final Query query) {
+    return find(query, OperationTrace.disabled());
+  }
+
+  public MongoCursor<BasicDBObject> find(final Query query, final OperationTrace trace) {
+    return find(query, trace, 0);
+  }
+
+  /**
+   * @param batchSize The number of documents fetched per round trip, or 0 for the default of the
+   *     server
+   */
+  public MongoCursor<BasicDBObject> find(
+      final Query query, final OperationTrace trace, final int batchSize) {
+    if (query.getSampling().isPresent()) {
+      // Only the aggregation pipelines can sample the documents
+      return aggregate(query, trace, batchSize);
+    }
+
     BasicDBObject filterClause = getFilter(query, Query::getFilter);
     BasicDBObject projection = getSelections(query);
 
@@ -62,35 +111,142 @@ public class MongoQueryExecutor {
     }
 
     applyPagination(iterable, query);
+    if (batchSize > 0) {
+      iterable.batchSize(batchSize);
+    }
 
     logClauses(query, projection, filterClause, sortOrders, query.getPagination().orElse(null));
 
-    return iterable.cursor();
+    trace.parsed(query);
+    MongoCursor<BasicDBObject> cursor = iterable.cursor();
+    trace.executed();
+    return cursor;
   }
 
   public MongoCursor<BasicDBObject> aggregate(final Query originalQuery) {
+    return aggregate(originalQuery, OperationTrace.disabled());
+  }
+
+  public MongoCursor<BasicDBObject> aggregate(
+      final Query originalQuery, final OperationTrace trace) {
+    return aggregate(originalQuery, trace, 0);
+  }
+
+  /**
+   * @param batchSize The number of documents fetched per round trip, or 0 for the default of the
+   *     server
+   */
+  public MongoCursor<BasicDBObject> aggregate(
+      final Query originalQuery, final OperationTrace trace, final int batchSize) {
     Query query = transformAndLog(originalQuery);
 
-    List<BasicDBObject> pipeline =
-        AGGREGATE_PIPELINE_FUNCTIONS.stream()
-            .flatMap(function -> function.apply(query).stream())
+    List<BasicDBObject> pipeline = getAggregatePipeline(query);
+
+    logPipeline(pipeline);
+    AggregateIterable<BasicDBObject> iterable = collection.aggregate(pipeline);
+    if (batchSize > 0) {
+      iterable.batchSize(batchSize);
+    }
+
+    trace.parsed(originalQuery);
+    MongoCursor<BasicDBObject> cursor = iterable.cursor();
+    trace.executed();
+    return cursor;
+  }
+
+  /**
+   * Writes the results of the query into another collection, stamped with the given update time:
+   * the documents are matched by their _id (the grouping values of an aggregation), the new ones
+   * being inserted and the existing ones replaced.
+   */
+  public void merge(final Query originalQuery, final String target, final Date updateTime) {
+    final Query query = transformAndLog(originalQuery);
+
+    final List<BasicDBObject> pipeline = new ArrayList<>(getAggregatePipeline(query));
+    pipeline.add(
+        new BasicDBObject(
+            ADD_FIELDS_CLAUSE, new BasicDBObject(MongoCollection.LAST_UPDATE_TIME, updateTime)));
+    pipeline.add(
+        new BasicDBObject(
+            MERGE_CLAUSE,
+            new BasicDBObject("into", target)
+                .append("whenMatched", "replace")
+                .append("whenNotMatched", "insert")));
+
+    logPipeline(pipeline);
+    collection.aggregate(pipeline).toCollection();
+  }
+
+  /**
+   * Runs queries sharing the same filter as a single aggregation: the documents are matched once,
+   * and then go through the rest of the pipeline of each query in a sub-pipeline of a $facet stage.
+   * The results of all the queries are returned in a single document, so they must fit in 16MB:
+   * only the queries whose results are bounded (aggregations, or paginated queries) should be run
+   * this way.
+   *
+   * @return The results of each query, in the order of the queries
+   */
+  public List<List<BasicDBObject>> facet(
+      final List<Query> originalQueries, final OperationTrace trace) {
+    Preconditions.checkArgument(!originalQueries.isEmpty(), "No query to run");
+    final List<Query> queries =
+        originalQueries.stream().map(this::transformAndLog).collect(Collectors.toList());
+
+    final BasicDBObject filterClause = getFilterClause(queries.get(0), Query::getFilter);
+    final BasicDBObject facets = new BasicDBObject();
+    for (int i = 0; i < queries.size(); i++) {
+      final Query query = queries.get(i);
+      Preconditions.checkArgument(
+          query.getSampling().isEmpty(), "Sampled queries cannot share a pipeline");
+      Preconditions.checkArgument(
+          filterClause.equals(getFilterClause(query, Query::getFilter)),
+          "The queries must share the same filter");
+
+      final List<BasicDBObject> pipeline = new ArrayList<>(getAggregatePipeline(query));
+      if (!filterClause.isEmpty()) {
+        pipeline.remove(0);
+      }
+      // A sub-pipeline cannot be empty
+      facets.append(
+          FACET_PREFIX + i,
+          pipeline.isEmpty()
+              ? List.of(new BasicDBObject(MATCH_CLAUSE, new BasicDBObject()))
+              : pipeline);
+    }
+
+    final List<BasicDBObject> pipeline =
+        Stream.of(filterClause, new BasicDBObject(FACET_CLAUSE, facets))
             .filter(not(BasicDBObject::isEmpty))
             .collect(Collectors.toList());
 
     logPipeline(pipeline);
-    AggregateIterable<BasicDBObject> iterable = collection.aggregate(pipeline);
+    trace.parsed();
+    final BasicDBObject result = collection.aggregate(pipeline).first();
+    trace.executed();
 
-    return iterable.cursor();
+    final List<List<BasicDBObject>> results = new ArrayList<>();
+    for (int i = 0; i < queries.size(); i++) {
+      final List<BasicDBObject> documents = new ArrayList<>();
+      if (result != null) {
+        for (final Object document : (List<?>) result.get(FACET_PREFIX + i)) {
+          documents.add((BasicDBObject) document);
+        }
+      }
+      results.add(documents);
+    }
+    return results;
   }
 
   public long count(final Query originalQuery) {
     final Query query = transformAndLog(originalQuery);
 
     final List<BasicDBObject> pipeline =
-        Stream.concat(
+        Stream.of(
+                Stream.of(getSampleClause(query)),
                 AGGREGATE_PIPELINE_FUNCTIONS.stream()
                     .flatMap(function -> function.apply(query).stream()),
                 Stream.of(getCountClause()))
+            .flatMap(Function.identity())
             .filter(not(BasicDBObject::isEmpty))
             .collect(Collectors.toList());
 
@@ -106,6 +262,34 @@ public class MongoQueryExecutor {
     return 0;
   }
 
+  @VisibleForTesting
+  List<BasicDBObject> getAggregatePipeline(final Query query) {
+    return Stream.concat(
+            Stream.of(getSampleClause(query)),
+            AGGREGATE_PIPELINE_FUNCTIONS.stream()
+                .flatMap(function -> function.apply(query).stream()))
+        .filter(not(BasicDBObject::isEmpty))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Samples the given fraction of the documents (as estimated from the metadata of the collection)
+   * before any other stage. MongoDB picks the documents with a random cursor, rather than reading
+   * the whole collection, when they are fewer than 5% of the collection.
+   */
+  private BasicDBObject getSampleClause(final Query query) {
+    if (query.getSampling().isEmpty()) {
+      return new BasicDBObject();
+    }
+
+    final long size =
+        Math.max(
+            1,
+            Math.round(
+                query.getSampling().get().getFraction() * collection.estimatedDocumentCount()));
+    return new BasicDBObject(SAMPLE_CLAUSE, new BasicDBObject(SAMPLE_SIZE, size));
+  }
+
   private void logClauses(
       final Query query,
       final Bson projection,
@@ -130,6 +314,17 @@ public class MongoQueryExecutor {
   }
 
   private Query transformAndLog(Query query) {
+    if (query.getSelections().stream()
+        .anyMatch(
+            spec ->
+                spec.getExpression() instanceof AggregateExpression
+                    && ((AggregateExpression) spec.getExpression()).getAggregator()
+                        == PERCENTILE)) {
+      // $percentile, without a fallback: computing the percentiles on the client would read every
+      // value of every group
+      serverVersion.require(PERCENTILE_MAJOR_VERSION, "PERCENTILE");
+    }
+
     log.debug("MongoDB query before transformation: {}", query);
     query = MongoQueryTransformer.transform(query);
     log.debug("MongoDB query after transformation: {}", query);
@@ -0,0 +1,54 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import com.google.common.base.Suppliers;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+
+/**
+ * The version of the MongoDB server, read once on first use, so that the queries using operators
+ * the server lacks are rejected up front rather than failing on the server.
+ */
+@Slf4j
+final class MongoServerVersion {
+  /** A server assumed to support every operator, when its version is not known */
+  static final MongoServerVersion LATEST = new MongoServerVersion(() -> null);
+
+  private final Supplier<String> version;
+
+  private MongoServerVersion(final Supplier<String> version) {
+    this.version = Suppliers.memoize(version::get);
+  }
+
+  static MongoServerVersion of(final MongoDatabase database) {
+    return new MongoServerVersion(
+        () -> {
+          try {
+            return database.runCommand(new Document("buildInfo", 1)).getString("version");
+          } catch (final MongoException e) {
+            log.warn("Unable to read the version of the server, assuming the latest", e);
+            return null;
+          }
+        });
+  }
+
+  static MongoServerVersion of(final String version) {
+    return new MongoServerVersion(() -> version);
+  }
+
+  /**
+   * @param feature The feature requiring the version, named in the error
+   * @throws UnsupportedOperationException if the server is older than the given major version
+   */
+  void require(final int majorVersion, final String feature) {
+    final String serverVersion = version.get();
+    if (serverVersion != null && Integer.parseInt(serverVersion.split("\\.")[0]) < majorVersion) {
+      throw new UnsupportedOperationException(
+          String.format(
+              "%s requires MongoDB %d.0 or later, but the server runs %s",
+              feature, majorVersion, serverVersion));
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds a driver collection to a client session: each operation called on the bound collection
+ * calls its overload taking the session, so that the operations of a {@link
+ * org.hypertrace.core.documentstore.mongo.MongoCollection} run in the transaction of the session
+ * without passing it around. The operations without such an overload (e.g. the estimated counts,
+ * not allowed in transactions) run outside of the session.
+ */
+final class MongoSessionBinding implements InvocationHandler {
+  /** The overload taking a session of each method, if any */
+  private static final Map<Method, Optional<Method>> SESSION_METHODS = new ConcurrentHashMap<>();
+
+  private final MongoCollection<?> collection;
+  private final ClientSession session;
+
+  private MongoSessionBinding(final MongoCollection<?> collection, final ClientSession session) {
+    this.collection = collection;
+    this.session = session;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> MongoCollection<T> bind(
+      final MongoCollection<T> collection, final ClientSession session) {
+    return (MongoCollection<T>)
+        Proxy.newProxyInstance(
+            MongoCollection.class.getClassLoader(),
+            new Class<?>[] {MongoCollection.class},
+            new MongoSessionBinding(collection, session));
+  }
+
+  @Override
+  public Object invoke(final Object proxy, final Method method, final Object[] args)
+      throws Throwable {
+    final Optional<Method> sessionMethod =
+        SESSION_METHODS.computeIfAbsent(method, MongoSessionBinding::findSessionMethod);
+    try {
+      if (sessionMethod.isPresent()) {
+        final Object[] sessionArgs = new Object[args == null ? 1 : args.length + 1];
+        sessionArgs[0] = session;
+        if (args != null) {
+          System.arraycopy(args, 0, sessionArgs, 1, args.length);
+        }
+        return sessionMethod.get().invoke(collection, sessionArgs);
+      }
+
+      final Object result = method.invoke(collection, args);
+      // The collections derived with other options remain bound
+      return result instanceof MongoCollection
+          ? bind((MongoCollection<?>) result, session)
+          : result;
+    } catch (final InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static Optional<Method> findSessionMethod(final Method method) {
+    final Class<?>[] parameterTypes = method.getParameterTypes();
+    final Class<?>[] sessionParameterTypes = new Class<?>[parameterTypes.length + 1];
+    sessionParameterTypes[0] = ClientSession.class;
+    System.arraycopy(parameterTypes, 0, sessionParameterTypes, 1, parameterTypes.length);
+    try {
+      return Optional.of(MongoCollection.class.getMethod(method.getName(), sessionParameterTypes));
+    } catch (final NoSuchMethodException e) {
+      return Optional.empty();
+    }
+  }
+}
@@ -6,10 +6,12 @@ import static org.hypertrace.core.documentstore.expression.operators.Aggregation
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.MAX;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.MIN;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.PERCENTILE;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.SUM;
 import static org.hypertrace.core.documentstore.mongo.MongoUtils.getUnsupportedOperationException;
 
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import lombok.NoArgsConstructor;
 import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
@@ -18,6 +20,8 @@ import org.hypertrace.core.documentstore.parser.SelectTypeExpressionVisitor;
 
 @NoArgsConstructor
 final class MongoAggregateExpressionParser extends MongoSelectTypeExpressionParser {
+  static final String PERCENTILE_KEY = "$percentile";
+
   private static final Map<AggregationOperator, String> KEY_MAP =
       unmodifiableMap(
           new EnumMap<>(AggregationOperator.class) {
@@ -28,6 +32,7 @@ final class MongoAggregateExpressionParser extends MongoSelectTypeExpressionPars
               put(MIN, "$min");
               put(MAX, "$max");
               put(COUNT, "$push");
+              put(PERCENTILE, PERCENTILE_KEY);
             }
           });
 
@@ -56,6 +61,13 @@ final class MongoAggregateExpressionParser extends MongoSelectTypeExpressionPars
                     new MongoFunctionExpressionParser(new MongoConstantExpressionParser()))));
 
     Object value = expression.getExpression().accept(parser);
+    if (operator == PERCENTILE) {
+      // The t-digest estimate of MongoDB 7.0+, returned as a single-element array
+      return Map.of(
+          key,
+          Map.of(
+              "input", value, "p", List.of(expression.getPercentile()), "method", "approximate"));
+    }
     return Map.of(key, value);
   }
 }
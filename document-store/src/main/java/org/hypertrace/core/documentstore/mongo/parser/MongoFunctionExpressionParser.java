@@ -7,6 +7,7 @@ import static org.hypertrace.core.documentstore.expression.operators.FunctionOpe
 import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.FLOOR;
 import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.LENGTH;
 import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.MULTIPLY;
+import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.ROUND;
 import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.SUBTRACT;
 import static org.hypertrace.core.documentstore.mongo.MongoUtils.getUnsupportedOperationException;
 
@@ -28,6 +29,7 @@ final class MongoFunctionExpressionParser extends MongoSelectTypeExpressionParse
               put(ABS, "$abs");
               put(FLOOR, "$floor");
               put(LENGTH, "$size");
+              put(ROUND, "$round");
               put(ADD, "$add");
               put(DIVIDE, "$divide");
               put(MULTIPLY, "$multiply");
@@ -60,9 +62,11 @@ final class MongoFunctionExpressionParser extends MongoSelectTypeExpressionParse
       throw getUnsupportedOperationException(operator);
     }
 
+    // The operands may be functions themselves
     SelectTypeExpressionVisitor parser =
         new MongoIdentifierPrefixingParser(
-            new MongoIdentifierExpressionParser(new MongoConstantExpressionParser()));
+            new MongoIdentifierExpressionParser(
+                new MongoConstantExpressionParser(new MongoFunctionExpressionParser())));
 
     if (numArgs == 1) {
       Object value = expression.getOperands().get(0).accept(parser);
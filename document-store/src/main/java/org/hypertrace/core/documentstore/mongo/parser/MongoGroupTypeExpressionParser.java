@@ -1,5 +1,6 @@
 package org.hypertrace.core.documentstore.mongo.parser;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.PERCENTILE;
 import static org.hypertrace.core.documentstore.mongo.MongoCollection.ID_KEY;
 import static org.hypertrace.core.documentstore.mongo.MongoUtils.PREFIX;
 import static org.hypertrace.core.documentstore.mongo.MongoUtils.encodeKey;
@@ -11,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.MapUtils;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
 import org.hypertrace.core.documentstore.expression.impl.FunctionExpression;
 import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
 import org.hypertrace.core.documentstore.expression.type.GroupTypeExpression;
@@ -22,6 +24,8 @@ import org.hypertrace.core.documentstore.query.SelectionSpec;
 public final class MongoGroupTypeExpressionParser implements GroupTypeExpressionVisitor {
 
   private static final String GROUP_CLAUSE = "$group";
+  private static final String ADD_FIELDS_CLAUSE = "$addFields";
+  private static final String ARRAY_ELEMENT_AT = "$arrayElemAt";
 
   @SuppressWarnings("unchecked")
   @Override
@@ -89,6 +93,25 @@ public final class MongoGroupTypeExpressionParser implements GroupTypeExpression
     return new BasicDBObject(GROUP_CLAUSE, definition);
   }
 
+  /**
+   * Unwraps the percentiles computed by the group stage, which come as single-element arrays, so
+   * that the next stages see the values themselves
+   */
+  public static BasicDBObject getPercentileClause(final Query query) {
+    final Map<String, Object> fields = new LinkedHashMap<>();
+    for (final SelectionSpec spec : query.getSelections()) {
+      if (spec.getExpression() instanceof AggregateExpression
+          && ((AggregateExpression) spec.getExpression()).getAggregator() == PERCENTILE) {
+        final String key = encodeKey(spec.getAlias());
+        fields.put(key, new BasicDBObject(ARRAY_ELEMENT_AT, List.of(PREFIX + key, 0)));
+      }
+    }
+
+    return fields.isEmpty()
+        ? new BasicDBObject()
+        : new BasicDBObject(ADD_FIELDS_CLAUSE, new BasicDBObject(fields));
+  }
+
   private static Map<String, Object> parse(
       final MongoSelectTypeExpressionParser baseParser, final SelectionSpec spec) {
     SelectTypeExpressionVisitor parser = new MongoProjectingParser(spec.getAlias(), baseParser);
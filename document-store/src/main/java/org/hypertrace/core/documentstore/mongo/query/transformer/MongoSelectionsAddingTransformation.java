@@ -1,9 +1,13 @@
 package org.hypertrace.core.documentstore.mongo.query.transformer;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.APPROX_DISTINCT_COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT_COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.DIVIDE;
 import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.LENGTH;
+import static org.hypertrace.core.documentstore.expression.operators.FunctionOperator.ROUND;
 import static org.hypertrace.core.documentstore.mongo.MongoUtils.encodeKey;
+import static org.hypertrace.core.documentstore.query.Sampling.SAMPLE_SIZE_ALIAS;
 
 import java.util.Optional;
 import lombok.AllArgsConstructor;
@@ -13,6 +17,7 @@ import org.hypertrace.core.documentstore.expression.impl.FunctionExpression;
 import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
 import org.hypertrace.core.documentstore.expression.type.SelectTypeExpression;
 import org.hypertrace.core.documentstore.parser.SelectTypeExpressionVisitor;
+import org.hypertrace.core.documentstore.query.Sampling;
 import org.hypertrace.core.documentstore.query.SelectionSpec;
 
 /**
@@ -71,6 +76,7 @@ import org.hypertrace.core.documentstore.query.SelectionSpec;
 @AllArgsConstructor
 final class MongoSelectionsAddingTransformation implements SelectTypeExpressionVisitor {
   private final String alias;
+  private final Sampling sampling;
 
   @SuppressWarnings("unchecked")
   @Override
@@ -83,7 +89,9 @@ final class MongoSelectionsAddingTransformation implements SelectTypeExpressionV
     final String encodedAlias = encodeKey(alias);
     final SelectTypeExpression pairingExpression;
 
-    if (expression.getAggregator() == DISTINCT_COUNT || expression.getAggregator() == COUNT) {
+    if (expression.getAggregator() == DISTINCT_COUNT
+        || expression.getAggregator() == APPROX_DISTINCT_COUNT
+        || expression.getAggregator() == COUNT) {
       // Since MongoDB doesn't support $distinctCount and $count(optional_field) in aggregations,
       // we convert them to $addToSet and $push functions respectively.
       // So, we need to project $size(set) or $size(list) instead of just the alias in these cases.
@@ -96,6 +104,25 @@ final class MongoSelectionsAddingTransformation implements SelectTypeExpressionV
       pairingExpression = IdentifierExpression.of(encodedAlias);
     }
 
+    if (sampling != null
+        && Sampling.isScaled(expression.getAggregator())
+        && !SAMPLE_SIZE_ALIAS.equals(alias)) {
+      // The additive aggregations of the sample are scaled up to the whole collection, the counts
+      // remaining integral
+      final FunctionExpression scaled =
+          FunctionExpression.builder()
+              .operator(DIVIDE)
+              .operand(pairingExpression)
+              .operand(ConstantExpression.of(sampling.getFraction()))
+              .build();
+      return Optional.of(
+          SelectionSpec.of(
+              expression.getAggregator() == COUNT
+                  ? FunctionExpression.builder().operator(ROUND).operand(scaled).build()
+                  : scaled,
+              alias));
+    }
+
     return Optional.of(SelectionSpec.of(pairingExpression, alias));
   }
 
@@ -1,10 +1,15 @@
 package org.hypertrace.core.documentstore.mongo.query.transformer;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.SUM;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
 import org.hypertrace.core.documentstore.expression.type.SelectTypeExpression;
 import org.hypertrace.core.documentstore.query.Query;
+import org.hypertrace.core.documentstore.query.Sampling;
 import org.hypertrace.core.documentstore.query.SelectionSpec;
 import org.hypertrace.core.documentstore.query.transform.QueryTransformer;
 import org.hypertrace.core.documentstore.query.transform.TransformedQueryBuilder;
@@ -12,14 +17,25 @@ import org.hypertrace.core.documentstore.query.transform.TransformedQueryBuilder
 final class MongoSelectionsAddingTransformer implements QueryTransformer {
   @Override
   public Query transform(final Query query) {
+    List<SelectionSpec> specs = new ArrayList<>(query.getSelections());
     List<SelectionSpec> newSpecs = new ArrayList<>();
+    Sampling sampling = query.getSampling().orElse(null);
+
+    if (sampling != null && isAggregated(query)) {
+      // The aggregated results of a sampled query carry the number of documents sampled for them
+      SelectionSpec sampleSize =
+          SelectionSpec.of(
+              AggregateExpression.of(SUM, ConstantExpression.of(1)), Sampling.SAMPLE_SIZE_ALIAS);
+      specs.add(sampleSize);
+      newSpecs.add(sampleSize);
+    }
 
-    for (SelectionSpec spec : query.getSelections()) {
+    for (SelectionSpec spec : specs) {
       String alias = spec.getAlias();
       SelectTypeExpression expression = spec.getExpression();
 
       MongoSelectionsAddingTransformation transformer =
-          new MongoSelectionsAddingTransformation(alias);
+          new MongoSelectionsAddingTransformation(alias, sampling);
 
       Optional<SelectionSpec> newSpec = expression.accept(transformer);
       newSpec.ifPresent(newSpecs::add);
@@ -27,4 +43,10 @@ final class MongoSelectionsAddingTransformer implements QueryTransformer {
 
     return new TransformedQueryBuilder(query).addSelections(newSpecs).build();
   }
+
+  private static boolean isAggregated(final Query query) {
+    return !query.getAggregations().isEmpty()
+        || query.getSelections().stream()
+            .anyMatch(spec -> spec.getExpression() instanceof AggregateExpression);
+  }
 }
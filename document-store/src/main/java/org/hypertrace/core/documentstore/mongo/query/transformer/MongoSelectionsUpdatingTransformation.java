@@ -1,6 +1,7 @@
 package org.hypertrace.core.documentstore.mongo.query.transformer;
 
 import static java.util.Collections.unmodifiableMap;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.APPROX_DISTINCT_COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT_COUNT;
 import static org.hypertrace.core.documentstore.mongo.MongoCollection.ID_KEY;
@@ -81,6 +82,8 @@ final class MongoSelectionsUpdatingTransformation implements SelectTypeExpressio
               new EnumMap<>(AggregationOperator.class) {
                 {
                   put(DISTINCT_COUNT, DISTINCT_COUNT_HANDLER);
+                  // MongoDB has no sketch of the distinct values: they are counted exactly
+                  put(APPROX_DISTINCT_COUNT, DISTINCT_COUNT_HANDLER);
                 }
               });
 
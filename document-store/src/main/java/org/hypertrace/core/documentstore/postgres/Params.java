@@ -1,7 +1,10 @@
 package org.hypertrace.core.documentstore.postgres;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Holds the params that need to be set in the PreparedStatement for constructing the final SQL
@@ -44,8 +47,64 @@ public class Params {
       return this;
     }
 
+    /**
+     * Adds a list of values bound as a single array, so that the statement does not depend on the
+     * number of values
+     */
+    public Builder addArrayParam(List<?> values) {
+      objectParams.put(nextIndex++, ArrayParam.of(values));
+      return this;
+    }
+
+    /**
+     * Appends the params of another statement, shifting their indexes after those of this builder,
+     * e.g. to run several statements as a single one
+     */
+    public Builder addParams(Params params) {
+      new TreeMap<>(params.getObjectParams())
+          .values()
+          .forEach(value -> objectParams.put(nextIndex++, value));
+      return this;
+    }
+
     public Params build() {
       return new Params(objectParams);
     }
   }
+
+  /** A list of values bound as a single SQL array */
+  public static class ArrayParam {
+    private final String elementType;
+    private final Object[] elements;
+
+    private ArrayParam(String elementType, Object[] elements) {
+      this.elementType = elementType;
+      this.elements = elements;
+    }
+
+    /** The element type follows the first value, the values of a list being of the same type */
+    static ArrayParam of(List<?> values) {
+      Object first = values.isEmpty() ? null : values.get(0);
+      String elementType = "text";
+      if (first instanceof Number) {
+        elementType = "numeric";
+      } else if (first instanceof Boolean) {
+        elementType = "boolean";
+      }
+      return new ArrayParam(elementType, values.toArray());
+    }
+
+    public String getElementType() {
+      return elementType;
+    }
+
+    public Object[] getElements() {
+      return elements;
+    }
+
+    @Override
+    public String toString() {
+      return elementType + Arrays.toString(elements);
+    }
+  }
 }
@@ -0,0 +1,295 @@
+package org.hypertrace.core.documentstore.postgres;
+
+import static org.hypertrace.core.documentstore.postgres.PostgresCollection.CREATED_AT;
+import static org.hypertrace.core.documentstore.postgres.PostgresCollection.DOCUMENT;
+import static org.hypertrace.core.documentstore.postgres.PostgresCollection.DOCUMENT_ID;
+import static org.hypertrace.core.documentstore.postgres.PostgresCollection.ID;
+import static org.hypertrace.core.documentstore.postgres.PostgresCollection.UPDATED_AT;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches a collection through a change log table, filled by a trigger on the collection table
+ * which also signals the changes with a NOTIFY. The notifications only wake the watchers up: the
+ * changes are read from the change log, which makes them resumable.
+ *
+ * <p>The changes are read in the order of the ids of their transactions, and only once all the
+ * transactions which started before have ended, so that a change committed late is never skipped. A
+ * long-running transaction thus delays the changes made after it started. The resume tokens are the
+ * (transaction id, sequence number) pairs of the changes in the change log, which retains the
+ * changes for {@value #RETENTION}.
+ */
+final class PostgresChangeStream implements CloseableIterator<ChangeEvent> {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PostgresChangeStream.class);
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  static final String CHANGES_SUFFIX = "_changes";
+  private static final String RETENTION = "1 day";
+  private static final int BATCH_SIZE = 500;
+
+  private static final String RECORD_CHANGE_FUNCTION =
+      "CREATE OR REPLACE FUNCTION documentstore_record_change() RETURNS trigger AS $$\n"
+          + "DECLARE\n"
+          + "  change_id TEXT;\n"
+          + "BEGIN\n"
+          + "  IF TG_OP = 'DELETE' THEN\n"
+          + "    change_id := OLD.id;\n"
+          + "  ELSE\n"
+          + "    change_id := NEW.id;\n"
+          + "  END IF;\n"
+          + "  EXECUTE format('INSERT INTO %I.%I (operation, id) VALUES ($1, $2)',\n"
+          + "    TG_TABLE_SCHEMA, TG_TABLE_NAME || '"
+          + CHANGES_SUFFIX
+          + "') USING TG_OP, change_id;\n"
+          + "  PERFORM pg_notify(TG_TABLE_NAME || '"
+          + CHANGES_SUFFIX
+          + "', TG_OP);\n"
+          + "  RETURN NULL;\n"
+          + "END;\n"
+          + "$$ LANGUAGE plpgsql";
+
+  private final Connection client;
+  private final Connection listener;
+  private final String collectionName;
+  private final Predicate<JsonNode> filter;
+  private final boolean fullDocument;
+  private final int maxAwaitMillis;
+  private final Deque<ChangeEvent> buffer = new ArrayDeque<>();
+  private volatile boolean closed;
+  private long lastTxid;
+  private long lastSeq;
+
+  PostgresChangeStream(
+      final Connection client,
+      final Connection listener,
+      final String collectionName,
+      final Predicate<JsonNode> filter,
+      final WatchOptions options)
+      throws SQLException {
+    this.client = client;
+    this.listener = listener;
+    this.collectionName = collectionName;
+    this.filter = filter;
+    this.fullDocument = options.isFullDocument();
+    this.maxAwaitMillis = (int) Math.max(1, options.getMaxAwaitTime().toMillis());
+
+    if (options.getResumeAfter() == null) {
+      // The transactions still running may commit changes after this point
+      lastTxid = getOldestRunningTxid();
+      lastSeq = 0;
+    } else {
+      final String[] position = options.getResumeAfter().split(":");
+      try {
+        lastTxid = Long.parseLong(position[0]);
+        lastSeq = Long.parseLong(position[1]);
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid resume token: " + options.getResumeAfter(), e);
+      }
+    }
+
+    if (listener != null) {
+      try (Statement statement = listener.createStatement()) {
+        statement.execute(String.format("LISTEN \"%s\"", getChannel(collectionName)));
+      }
+    }
+  }
+
+  /** Creates the change log table and the trigger filling it, if they do not exist already */
+  static void install(final Connection client, final String collectionName) throws SQLException {
+    final String changesTable = collectionName + CHANGES_SUFFIX;
+    final String tableName = getTableName(collectionName);
+
+    try (Statement statement = client.createStatement()) {
+      statement.execute(
+          String.format(
+              "CREATE TABLE IF NOT EXISTS %s ("
+                  + "seq BIGSERIAL PRIMARY KEY,"
+                  + "txid BIGINT NOT NULL DEFAULT txid_current(),"
+                  + "operation TEXT NOT NULL,"
+                  + "%s TEXT NOT NULL,"
+                  + "changed_at TIMESTAMPTZ NOT NULL DEFAULT NOW()"
+                  + ")",
+              changesTable, ID));
+      statement.execute(
+          String.format(
+              "CREATE INDEX IF NOT EXISTS %s%s_txid ON %s (txid, seq)",
+              tableName, CHANGES_SUFFIX, changesTable));
+      statement.execute(RECORD_CHANGE_FUNCTION);
+      statement.execute(
+          String.format(
+              "DO $$ BEGIN "
+                  + "IF NOT EXISTS (SELECT 1 FROM pg_trigger "
+                  + "WHERE tgname = '%1$s' AND tgrelid = '%2$s'::regclass) THEN "
+                  + "CREATE TRIGGER %1$s AFTER INSERT OR UPDATE OR DELETE ON %2$s "
+                  + "FOR EACH ROW EXECUTE PROCEDURE documentstore_record_change(); "
+                  + "END IF; "
+                  + "END $$",
+              tableName.toLowerCase() + CHANGES_SUFFIX + "_trigger", collectionName));
+      statement.execute(
+          String.format(
+              "DELETE FROM %s WHERE changed_at < NOW() - INTERVAL '%s'", changesTable, RETENTION));
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    try {
+      while (buffer.isEmpty() && !closed) {
+        if (!poll()) {
+          await();
+        }
+      }
+    } catch (SQLException e) {
+      if (closed) {
+        return false;
+      }
+      LOGGER.error("SQLException reading the changes of {}", collectionName, e);
+      throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+    }
+    return !buffer.isEmpty();
+  }
+
+  @Override
+  public ChangeEvent next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return buffer.removeFirst();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (listener != null) {
+      try {
+        listener.close();
+      } catch (SQLException e) {
+        LOGGER.warn("Unable to close the listener connection of {}", collectionName, e);
+      }
+    }
+  }
+
+  /** @return true if a batch of changes was read (possibly none matching the filter) */
+  private boolean poll() throws SQLException {
+    final long oldestRunningTxid = getOldestRunningTxid();
+    final boolean lookup = fullDocument || filter != null;
+    final String sql =
+        String.format(
+            "SELECT c.txid, c.seq, c.operation, c.%1$s%2$s FROM %3$s%4$s c%5$s "
+                + "WHERE (c.txid, c.seq) > (?, ?) AND c.txid < ? "
+                + "ORDER BY c.txid, c.seq LIMIT ?",
+            ID,
+            lookup ? String.format(", t.%s, t.%s, t.%s", DOCUMENT, CREATED_AT, UPDATED_AT) : "",
+            collectionName,
+            CHANGES_SUFFIX,
+            lookup
+                ? String.format(
+                    " LEFT JOIN %s t ON c.operation <> 'DELETE' AND t.%s = c.%s",
+                    collectionName, ID, ID)
+                : "");
+
+    boolean read = false;
+    try (PreparedStatement statement = client.prepareStatement(sql)) {
+      statement.setLong(1, lastTxid);
+      statement.setLong(2, lastSeq);
+      statement.setLong(3, oldestRunningTxid);
+      statement.setInt(4, BATCH_SIZE);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          read = true;
+          lastTxid = resultSet.getLong(1);
+          lastSeq = resultSet.getLong(2);
+          toEvent(resultSet, lookup);
+        }
+      }
+    }
+    return read;
+  }
+
+  private void toEvent(final ResultSet resultSet, final boolean lookup) throws SQLException {
+    final ChangeEvent.Type type = ChangeEvent.Type.valueOf(resultSet.getString(3));
+    final String documentString = lookup ? resultSet.getString(5) : null;
+
+    ObjectNode document = null;
+    if (documentString != null) {
+      try {
+        document = (ObjectNode) MAPPER.readTree(documentString);
+      } catch (IOException e) {
+        LOGGER.warn(
+            "Unable to parse the document {} of {}", resultSet.getString(4), collectionName);
+      }
+    }
+
+    if (filter != null && type != ChangeEvent.Type.DELETE) {
+      // Like a lookup of the full document in MongoDB, a document deleted since cannot match
+      if (document == null || !filter.test(document)) {
+        return;
+      }
+    }
+
+    buffer.addLast(
+        ChangeEvent.builder()
+            .type(type)
+            .key(resultSet.getString(4))
+            .document(fullDocument && document != null ? toDocument(document, resultSet) : null)
+            .resumeToken(lastTxid + ":" + lastSeq)
+            .build());
+  }
+
+  private Document toDocument(final ObjectNode document, final ResultSet resultSet)
+      throws SQLException {
+    document.remove(DOCUMENT_ID);
+    document.put(CREATED_AT, String.valueOf(resultSet.getTimestamp(6)));
+    document.put(UPDATED_AT, String.valueOf(resultSet.getTimestamp(7)));
+    return new JSONDocument(document);
+  }
+
+  private void await() throws SQLException, InterruptedException {
+    if (listener == null) {
+      Thread.sleep(maxAwaitMillis);
+    } else {
+      // The notifications only signal that there is something to read
+      listener.unwrap(PGConnection.class).getNotifications(maxAwaitMillis);
+    }
+  }
+
+  private long getOldestRunningTxid() throws SQLException {
+    try (Statement statement = client.createStatement();
+        ResultSet resultSet =
+            statement.executeQuery("SELECT txid_snapshot_xmin(txid_current_snapshot())")) {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+
+  private static String getChannel(final String collectionName) {
+    return getTableName(collectionName).toLowerCase() + CHANGES_SUFFIX;
+  }
+
+  static String getTableName(final String collectionName) {
+    return collectionName.substring(collectionName.lastIndexOf('.') + 1);
+  }
+}
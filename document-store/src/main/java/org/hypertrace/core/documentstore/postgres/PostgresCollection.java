@@ -1,12 +1,18 @@
 package org.hypertrace.core.documentstore.postgres;
 
+import static org.hypertrace.core.documentstore.postgres.PostgresChangeStream.CHANGES_SUFFIX;
+
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -15,14 +21,27 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import lombok.SneakyThrows;
 import org.apache.commons.lang3.StringUtils;
@@ -30,17 +49,34 @@ import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
 import org.hypertrace.core.documentstore.BulkDeleteResult;
 import org.hypertrace.core.documentstore.BulkUpdateRequest;
 import org.hypertrace.core.documentstore.BulkUpdateResult;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
 import org.hypertrace.core.documentstore.CloseableIterator;
 import org.hypertrace.core.documentstore.Collection;
 import org.hypertrace.core.documentstore.CreateResult;
 import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.DocumentPublisher;
 import org.hypertrace.core.documentstore.Filter;
 import org.hypertrace.core.documentstore.JSONDocument;
 import org.hypertrace.core.documentstore.Key;
 import org.hypertrace.core.documentstore.Query;
 import org.hypertrace.core.documentstore.SingleValueKey;
 import org.hypertrace.core.documentstore.UpdateResult;
+import org.hypertrace.core.documentstore.VersionedDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.memory.FilterPredicateCompiler;
+import org.hypertrace.core.documentstore.metrics.CollectionOperation;
+import org.hypertrace.core.documentstore.metrics.OperationTrace;
 import org.hypertrace.core.documentstore.postgres.utils.PostgresUtils;
+import org.hypertrace.core.documentstore.query.transform.KeyRangePartitioner;
+import org.hypertrace.core.documentstore.transfer.NdJsonReader;
+import org.hypertrace.core.documentstore.transfer.NdJsonWriter;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.copy.CopyOut;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,27 +92,73 @@ public class PostgresCollection implements Collection {
   public static final String DOC_PATH_SEPARATOR = "\\.";
   private static final ObjectMapper MAPPER = new ObjectMapper();
   private static final CloseableIterator<Document> EMPTY_ITERATOR = createEmptyIterator();
+  private static final int SCAN_FETCH_SIZE = 1000;
+  private static final Duration CURSOR_CONNECTION_TIMEOUT = Duration.ofSeconds(30);
+  private static final int IMPORT_BATCH_SIZE = 10_000;
+  /**
+   * The start of the oldest transaction of the other sessions on the database, or now if none is
+   * running. The activity of the sessions spans the whole cluster, but those on the other databases
+   * cannot write the collection, and the aborted transactions no longer can.
+   */
+  private static final String CHANGES_HORIZON_SQL =
+      "SELECT COALESCE(MIN(xact_start), clock_timestamp()) FROM pg_stat_activity"
+          + " WHERE backend_type = 'client backend' AND pid <> pg_backend_pid()"
+          + " AND datname = current_database()"
+          + " AND state IS DISTINCT FROM 'idle in transaction (aborted)'";
+
+  // The temporary tables of the imports are named apart, as the imports may share a session
+  private static final String IMPORT_TABLE_PREFIX = "documentstore_import_";
+  private static final AtomicLong IMPORT_TABLES = new AtomicLong();
+  // The rows of the copies are the JSON documents as is, in the CSV format with quote and delimiter
+  // characters which cannot appear in the JSON text
+  private static final String COPY_QUOTE = "\u0001";
+  private static final String COPY_DELIMITER = "\u0002";
+  private static final String COPY_OPTIONS = "(FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
 
   private final Connection client;
   private final String collectionName;
+  private final Callable<Connection> connectionFactory;
+  private final PostgresConnectionPool cursorPool;
+  private volatile boolean changeLogInstalled;
+  private volatile boolean changeIndexCreated;
 
   public PostgresCollection(Connection client, String collectionName) {
+    this(client, collectionName, null, null);
+  }
+
+  /**
+   * @param connectionFactory Opens the dedicated connections the watchers listen for the change
+   *     notifications on. Without it, the watchers poll the change log.
+   * @param cursorPool Lends the connections the partitions of the parallel scans and the publishers
+   *     stream on with a cursor. Without it, the cursors are read through the shared connection.
+   */
+  PostgresCollection(
+      Connection client,
+      String collectionName,
+      Callable<Connection> connectionFactory,
+      PostgresConnectionPool cursorPool) {
     this.client = client;
     this.collectionName = collectionName;
+    this.connectionFactory = connectionFactory;
+    this.cursorPool = cursorPool;
   }
 
   @Override
   public boolean upsert(Key key, Document document) throws IOException {
-    try (PreparedStatement preparedStatement =
-        client.prepareStatement(getUpsertSQL(), Statement.RETURN_GENERATED_KEYS)) {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.UPSERT);
+        PreparedStatement preparedStatement =
+            client.prepareStatement(getUpsertSQL(), Statement.RETURN_GENERATED_KEYS)) {
       String jsonString = prepareDocument(key, document);
       preparedStatement.setString(1, key.toString());
       preparedStatement.setString(2, jsonString);
       preparedStatement.setString(3, jsonString);
+      trace.parsed();
       int result = preparedStatement.executeUpdate();
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", result);
       }
+      trace.succeeded(result);
       return result >= 0;
     } catch (SQLException e) {
       LOGGER.error("SQLException inserting document. key: {} content:{}", key, document, e);
@@ -90,6 +172,13 @@ public class PostgresCollection implements Collection {
    */
   @Override
   public UpdateResult update(Key key, Document document, Filter condition) throws IOException {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.UPDATE)) {
+      return update(key, document, condition, trace);
+    }
+  }
+
+  private UpdateResult update(Key key, Document document, Filter condition, OperationTrace trace)
+      throws IOException {
     StringBuilder upsertQueryBuilder = new StringBuilder(getUpdateSQL());
 
     String jsonString = prepareDocument(key, document);
@@ -106,10 +195,13 @@ public class PostgresCollection implements Collection {
 
     try (PreparedStatement preparedStatement =
         buildPreparedStatement(upsertQueryBuilder.toString(), paramsBuilder.build())) {
+      trace.parsed(condition);
       int result = preparedStatement.executeUpdate();
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", result);
       }
+      trace.succeeded(result);
       return new UpdateResult(result);
     } catch (SQLException e) {
       LOGGER.error("SQLException inserting document. key: {} content: {}", key, document, e);
@@ -120,15 +212,19 @@ public class PostgresCollection implements Collection {
   /** create a new document if one doesn't exists with key */
   @Override
   public CreateResult create(Key key, Document document) throws IOException {
-    try (PreparedStatement preparedStatement =
-        client.prepareStatement(getInsertSQL(), Statement.RETURN_GENERATED_KEYS)) {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.CREATE);
+        PreparedStatement preparedStatement =
+            client.prepareStatement(getInsertSQL(), Statement.RETURN_GENERATED_KEYS)) {
       String jsonString = prepareDocument(key, document);
       preparedStatement.setString(1, key.toString());
       preparedStatement.setString(2, jsonString);
+      trace.parsed();
       int result = preparedStatement.executeUpdate();
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Create result: {}", result);
       }
+      trace.succeeded(result);
       return new CreateResult(result > 0);
     } catch (SQLException e) {
       LOGGER.error("SQLException creating document. key: {} content:{}", key, document, e);
@@ -149,16 +245,18 @@ public class PostgresCollection implements Collection {
             .filter(req -> req.getFilter() == null)
             .collect(Collectors.toList());
 
-    try {
-      long totalUpdateCountA = bulkUpdateRequestsWithFilter(requestsWithFilter);
+    try (OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.BULK_UPDATE)) {
+      long totalUpdateCountA = bulkUpdateRequestsWithFilter(requestsWithFilter, trace);
 
-      long totalUpdateCountB = bulkUpdateRequestsWithoutFilter(requestsWithoutFilter);
+      long totalUpdateCountB = bulkUpdateRequestsWithoutFilter(requestsWithoutFilter, trace);
 
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug(
             "Write results for whole bulkUpdate {}", totalUpdateCountA + totalUpdateCountB);
       }
 
+      trace.succeeded(totalUpdateCountA + totalUpdateCountB);
       return new BulkUpdateResult(totalUpdateCountA + totalUpdateCountB);
 
     } catch (IOException e) {
@@ -202,22 +300,27 @@ public class PostgresCollection implements Collection {
   public boolean updateSubDoc(Key key, String subDocPath, Document subDocument) {
     String updateSubDocSQL =
         String.format(
-            "UPDATE %s SET %s=jsonb_set(%s, ?::text[], ?::jsonb) WHERE %s=?",
-            collectionName, DOCUMENT, DOCUMENT, ID);
+            "UPDATE %s SET %s=jsonb_set(%s, ?::text[], ?::jsonb), %s=NOW() WHERE %s=?",
+            collectionName, DOCUMENT, DOCUMENT, UPDATED_AT, ID);
     String jsonSubDocPath = getJsonSubDocPath(subDocPath);
     String jsonString = subDocument.toJson();
 
-    try (PreparedStatement preparedStatement =
-        client.prepareStatement(updateSubDocSQL, Statement.RETURN_GENERATED_KEYS)) {
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.UPDATE_SUB_DOC);
+        PreparedStatement preparedStatement =
+            client.prepareStatement(updateSubDocSQL, Statement.RETURN_GENERATED_KEYS)) {
       preparedStatement.setString(1, jsonSubDocPath);
       preparedStatement.setString(2, jsonString);
       preparedStatement.setString(3, key.toString());
+      trace.parsed();
       int resultSet = preparedStatement.executeUpdate();
+      trace.executed();
 
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", resultSet);
       }
 
+      trace.succeeded(resultSet);
       return true;
     } catch (SQLException e) {
       LOGGER.error(
@@ -235,9 +338,10 @@ public class PostgresCollection implements Collection {
       throws Exception {
     String updateSubDocSQL =
         String.format(
-            "UPDATE %s SET %s=jsonb_set(%s, ?::text[], ?::jsonb) WHERE %s = ?",
-            collectionName, DOCUMENT, DOCUMENT, ID);
-    try {
+            "UPDATE %s SET %s=jsonb_set(%s, ?::text[], ?::jsonb), %s=NOW() WHERE %s = ?",
+            collectionName, DOCUMENT, DOCUMENT, UPDATED_AT, ID);
+    try (OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.BULK_UPDATE_SUB_DOCS)) {
       PreparedStatement preparedStatement = client.prepareStatement(updateSubDocSQL);
       for (Key key : documents.keySet()) {
         Map<String, Document> subDocuments = documents.get(key);
@@ -251,7 +355,9 @@ public class PostgresCollection implements Collection {
           preparedStatement.addBatch();
         }
       }
+      trace.parsed();
       int[] updateCounts = preparedStatement.executeBatch();
+      trace.executed();
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", updateCounts);
       }
@@ -259,6 +365,7 @@ public class PostgresCollection implements Collection {
       for (int update : updateCounts) {
         totalUpdateCount += update;
       }
+      trace.succeeded(totalUpdateCount);
       return new BulkUpdateResult(totalUpdateCount);
     } catch (SQLException e) {
       LOGGER.error("SQLException updating sub document.", e);
@@ -269,26 +376,100 @@ public class PostgresCollection implements Collection {
   @Override
   public BulkUpdateResult bulkOperationOnArrayValue(BulkArrayValueUpdateRequest request)
       throws Exception {
-    Set<JsonNode> subDocs = new HashSet<>();
-    for (Document subDoc : request.getSubDocuments()) {
-      subDocs.add(getDocAsJSON(subDoc));
+    try (OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.BULK_OPERATION_ON_ARRAY_VALUE)) {
+      Set<JsonNode> subDocs = new HashSet<>();
+      for (Document subDoc : request.getSubDocuments()) {
+        subDocs.add(getDocAsJSON(subDoc));
+      }
+      Map<String, String> idToTenantIdMap = getDocIdToTenantIdMap(request);
+      trace.parsed();
+      CloseableIterator<Document> docs = searchDocsForKeys(request.getKeys());
+      BulkUpdateResult result;
+      switch (request.getOperation()) {
+        case ADD:
+          result = bulkAddOnArrayValue(request.getSubDocPath(), idToTenantIdMap, subDocs, docs);
+          break;
+        case SET:
+          result = bulkSetOnArrayValue(request.getSubDocPath(), idToTenantIdMap, subDocs, docs);
+          break;
+        case REMOVE:
+          result = bulkRemoveOnArrayValue(request.getSubDocPath(), idToTenantIdMap, subDocs, docs);
+          break;
+        default:
+          throw new UnsupportedOperationException(
+              "Unsupported operation: " + request.getOperation());
+      }
+      trace.executed();
+      trace.succeeded(result.getUpdatedCount());
+      return result;
     }
-    Map<String, String> idToTenantIdMap = getDocIdToTenantIdMap(request);
-    CloseableIterator<Document> docs = searchDocsForKeys(request.getKeys());
-    switch (request.getOperation()) {
-      case ADD:
-        return bulkAddOnArrayValue(request.getSubDocPath(), idToTenantIdMap, subDocs, docs);
-      case SET:
-        return bulkSetOnArrayValue(request.getSubDocPath(), idToTenantIdMap, subDocs, docs);
-      case REMOVE:
-        return bulkRemoveOnArrayValue(request.getSubDocPath(), idToTenantIdMap, subDocs, docs);
-      default:
-        throw new UnsupportedOperationException("Unsupported operation: " + request.getOperation());
+  }
+
+  @Override
+  public Optional<Document> get(Key key) {
+    String getSQL = String.format("SELECT * FROM %s WHERE %s = ?", collectionName, ID);
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.GET);
+        PreparedStatement preparedStatement = client.prepareStatement(getSQL)) {
+      preparedStatement.setString(1, key.toString());
+      trace.parsed();
+
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        trace.executed();
+        Optional<Document> document =
+            resultSet.next()
+                ? Optional.of(new PostgresResultIterator(resultSet).prepareDocument())
+                : Optional.empty();
+        trace.succeeded(document.isPresent() ? 1 : 0);
+        return document;
+      }
+    } catch (SQLException | IOException e) {
+      LOGGER.error("Exception reading the document {} of {}", key, collectionName, e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public Map<Key, Document> getAll(java.util.Collection<Key> keys) {
+    String getAllSQL = String.format("SELECT * FROM %s WHERE %s = ANY(?)", collectionName, ID);
+    Map<String, Key> ids = new LinkedHashMap<>();
+    keys.forEach(key -> ids.put(key.toString(), key));
+
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.GET_ALL);
+        PreparedStatement preparedStatement = client.prepareStatement(getAllSQL)) {
+      trace.parsed();
+
+      Map<String, Document> found = new HashMap<>();
+      for (List<String> batch : Lists.partition(new ArrayList<>(ids.keySet()), MAX_KEYS_PER_READ)) {
+        preparedStatement.setArray(1, client.createArrayOf("text", batch.toArray()));
+        try (ResultSet resultSet = preparedStatement.executeQuery()) {
+          PostgresResultIterator documents = new PostgresResultIterator(resultSet);
+          while (resultSet.next()) {
+            found.put(resultSet.getString(ID), documents.prepareDocument());
+          }
+        }
+      }
+      trace.executed();
+
+      Map<Key, Document> result = new LinkedHashMap<>();
+      ids.forEach(
+          (id, key) -> {
+            Document document = found.get(id);
+            if (document != null) {
+              result.put(key, document);
+            }
+          });
+      trace.succeeded(result.size());
+      return result;
+    } catch (SQLException | IOException e) {
+      LOGGER.error("Exception reading the documents {} of {}", ids.keySet(), collectionName, e);
+      throw new RuntimeException(e);
     }
   }
 
   @Override
   public CloseableIterator<Document> search(Query query) {
+    OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.SEARCH);
     String filters = null;
     StringBuilder sqlBuilder = new StringBuilder("SELECT * FROM ").append(collectionName);
     Params.Builder paramsBuilder = Params.newBuilder();
@@ -322,25 +503,163 @@ public class PostgresCollection implements Collection {
     try {
       PreparedStatement preparedStatement =
           buildPreparedStatement(sqlBuilder.toString(), paramsBuilder.build());
+      trace.parsed(query);
       ResultSet resultSet = preparedStatement.executeQuery();
-      return new PostgresResultIterator(resultSet);
+      trace.executed();
+      return new PostgresResultIterator(resultSet, trace);
     } catch (SQLException e) {
       LOGGER.error("SQLException querying documents. query: {}", query, e);
     }
 
+    trace.failed();
     return EMPTY_ITERATOR;
   }
 
   @Override
   public CloseableIterator<Document> find(
       final org.hypertrace.core.documentstore.query.Query query) {
-    return executeQueryV1(query);
+    return executeQueryV1(query, OperationTrace.begin(collectionName, CollectionOperation.FIND));
+  }
+
+  /**
+   * The results are streamed with a cursor, whose fetch size is set by the demand of the
+   * subscriber, on a connection borrowed from the pool of the cursors until the subscription ends
+   */
+  @Override
+  public Flow.Publisher<Document> findPublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return new DocumentPublisher(
+        fetchSize -> new CursorIterator(query, CollectionOperation.FIND, fetchSize));
+  }
+
+  /**
+   * The partitions are ranges of ids holding even numbers of documents, each one streamed on its
+   * own connection (borrowed on its first read, until it is closed) with a cursor. There are at
+   * most as many partitions as connections in the pool lending them, so that the partitions of a
+   * scan can all be read at once.
+   */
+  @Override
+  public List<CloseableIterator<Document>> parallelScan(
+      final org.hypertrace.core.documentstore.query.Query query, final int requestedPartitions) {
+    KeyRangePartitioner.validate(query, requestedPartitions);
+    int partitions =
+        cursorPool == null ? requestedPartitions : Math.min(requestedPartitions, cursorPool.size());
+    List<String> boundaries = new ArrayList<>();
+    // The partitions hold even numbers of the documents matching the filter
+    org.hypertrace.core.documentstore.query.Query.QueryBuilder filterQuery =
+        org.hypertrace.core.documentstore.query.Query.builder();
+    query.getFilter().ifPresent(filterQuery::setFilter);
+    org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser queryParser =
+        new org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser(
+            collectionName, filterQuery.build());
+    String boundariesSQL =
+        String.format(
+            "SELECT max(%1$s) FROM "
+                + "(SELECT %1$s, ntile(%2$d) OVER (ORDER BY %1$s) AS bucket FROM (%3$s) AS f) AS t "
+                + "GROUP BY bucket ORDER BY bucket",
+            ID, partitions, queryParser.parse());
+    try (OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.PARALLEL_SCAN)) {
+      trace.parsed(query);
+      if (partitions > 1) {
+        try (PreparedStatement preparedStatement =
+                buildPreparedStatement(boundariesSQL, queryParser.getParamsBuilder().build());
+            ResultSet resultSet = preparedStatement.executeQuery()) {
+          while (resultSet.next()) {
+            boundaries.add(resultSet.getString(1));
+          }
+        }
+        // The last partition is unbounded, covering the documents written since
+        if (!boundaries.isEmpty()) {
+          boundaries.remove(boundaries.size() - 1);
+        }
+      }
+      trace.executed();
+      trace.succeeded(0);
+    } catch (SQLException e) {
+      LOGGER.error("SQLException splitting the scan of {}", collectionName, e);
+      throw new RuntimeException(e);
+    }
+
+    return KeyRangePartitioner.partition(query, ID, boundaries).stream()
+        .map(partition -> new CursorIterator(partition, CollectionOperation.FIND, SCAN_FETCH_SIZE))
+        .collect(Collectors.toList());
   }
 
   @Override
   public CloseableIterator<Document> aggregate(
       final org.hypertrace.core.documentstore.query.Query query) {
-    return executeQueryV1(query);
+    return executeQueryV1(
+        query, OperationTrace.begin(collectionName, CollectionOperation.AGGREGATE));
+  }
+
+  /**
+   * The results are streamed with a cursor, whose fetch size is set by the demand of the
+   * subscriber, on a connection borrowed from the pool of the cursors until the subscription ends
+   */
+  @Override
+  public Flow.Publisher<Document> aggregatePublisher(
+      final org.hypertrace.core.documentstore.query.Query query) {
+    return new DocumentPublisher(
+        fetchSize -> new CursorIterator(query, CollectionOperation.AGGREGATE, fetchSize));
+  }
+
+  /**
+   * The statements are sent as a single multi-statement query, which the driver pipelines in one
+   * round trip on the connection, and their results are read one after the other.
+   */
+  @Override
+  public List<CloseableIterator<Document>> executeBatch(
+      final List<org.hypertrace.core.documentstore.query.Query> queries) {
+    if (queries.isEmpty()) {
+      return List.of();
+    }
+
+    OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.EXECUTE_BATCH);
+    List<String> statements = new ArrayList<>();
+    Params.Builder paramsBuilder = Params.newBuilder();
+    for (org.hypertrace.core.documentstore.query.Query query : queries) {
+      org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser queryParser =
+          new org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser(
+              collectionName, query);
+      statements.add(queryParser.parse());
+      paramsBuilder.addParams(queryParser.getParamsBuilder().build());
+    }
+    String sqlQuery = String.join("; ", statements);
+
+    PreparedStatement preparedStatement = null;
+    try (trace) {
+      preparedStatement = buildPreparedStatement(sqlQuery, paramsBuilder.build());
+      // The statement goes along with the last of its results to be closed
+      preparedStatement.closeOnCompletion();
+      trace.parsed();
+      preparedStatement.execute();
+      trace.executed();
+
+      List<CloseableIterator<Document>> results = new ArrayList<>();
+      for (org.hypertrace.core.documentstore.query.Query query : queries) {
+        ResultSet resultSet = preparedStatement.getResultSet();
+        results.add(
+            query.getSelections().size() > 0
+                ? new PostgresResultIteratorWithMetaData(resultSet)
+                : new PostgresResultIterator(resultSet));
+        preparedStatement.getMoreResults(Statement.KEEP_CURRENT_RESULT);
+      }
+      trace.succeeded(0);
+      return results;
+    } catch (SQLException e) {
+      // No result was handed out to close the statement along with it
+      if (preparedStatement != null) {
+        try {
+          preparedStatement.close();
+        } catch (SQLException closeFailure) {
+          e.addSuppressed(closeFailure);
+        }
+      }
+      LOGGER.error(
+          "SQLException querying documents. queries: {}, sql query: {}", queries, sqlQuery, e);
+      throw new RuntimeException(e);
+    }
   }
 
   @Override
@@ -351,9 +670,13 @@ public class PostgresCollection implements Collection {
   @Override
   public boolean delete(Key key) {
     String deleteSQL = String.format("DELETE FROM %s WHERE %s = ?", collectionName, ID);
-    try (PreparedStatement preparedStatement = client.prepareStatement(deleteSQL)) {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.DELETE);
+        PreparedStatement preparedStatement = client.prepareStatement(deleteSQL)) {
       preparedStatement.setString(1, key.toString());
-      preparedStatement.executeUpdate();
+      trace.parsed();
+      int deletedCount = preparedStatement.executeUpdate();
+      trace.executed();
+      trace.succeeded(deletedCount);
       return true;
     } catch (SQLException e) {
       LOGGER.error("SQLException deleting document. key: {}", key, e);
@@ -366,18 +689,24 @@ public class PostgresCollection implements Collection {
     if (filter == null) {
       throw new UnsupportedOperationException("Filter must be provided");
     }
+    OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.DELETE_BY_FILTER);
     StringBuilder sqlBuilder = new StringBuilder("DELETE FROM ").append(collectionName);
     Params.Builder paramsBuilder = Params.newBuilder();
     String filters = PostgresQueryParser.parseFilter(filter, paramsBuilder);
     LOGGER.debug("Sending query to PostgresSQL: {} : {}", collectionName, filters);
     if (filters == null) {
+      trace.failed();
       throw new UnsupportedOperationException("Parsed filter is invalid");
     }
     sqlBuilder.append(" WHERE ").append(filters);
-    try {
+    try (trace) {
       PreparedStatement preparedStatement =
           buildPreparedStatement(sqlBuilder.toString(), paramsBuilder.build());
+      trace.parsed(filter);
       int deletedCount = preparedStatement.executeUpdate();
+      trace.executed();
+      trace.succeeded(deletedCount);
       return deletedCount > 0;
     } catch (SQLException e) {
       LOGGER.error("SQLException deleting documents. filter: {}", filter, e);
@@ -387,22 +716,20 @@ public class PostgresCollection implements Collection {
 
   @Override
   public BulkDeleteResult delete(Set<Key> keys) {
-    String ids =
-        keys.stream().map(key -> "'" + key.toString() + "'").collect(Collectors.joining(", "));
-    String space = " ";
-    String deleteSQL =
-        new StringBuilder("DELETE FROM")
-            .append(space)
-            .append(collectionName)
-            .append(" WHERE ")
-            .append(ID)
-            .append(" IN ")
-            .append("(")
-            .append(ids)
-            .append(")")
-            .toString();
-    try (PreparedStatement preparedStatement = client.prepareStatement(deleteSQL)) {
-      int deletedCount = preparedStatement.executeUpdate();
+    String deleteSQL = String.format("DELETE FROM %s WHERE %s = ANY(?)", collectionName, ID);
+    List<String> ids = keys.stream().map(Key::toString).collect(Collectors.toList());
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.BULK_DELETE);
+        PreparedStatement preparedStatement = client.prepareStatement(deleteSQL)) {
+      trace.parsed();
+      int deletedCount = 0;
+      // The huge key sets are deleted by chunks, each one in its own statement
+      for (List<String> batch : Lists.partition(ids, MAX_KEYS_PER_READ)) {
+        preparedStatement.setArray(1, client.createArrayOf("text", batch.toArray()));
+        deletedCount += preparedStatement.executeUpdate();
+      }
+      trace.executed();
+      trace.succeeded(deletedCount);
       return new BulkDeleteResult(deletedCount);
     } catch (SQLException e) {
       LOGGER.error("SQLException deleting documents. keys: {}", keys, e);
@@ -414,19 +741,25 @@ public class PostgresCollection implements Collection {
   public boolean deleteSubDoc(Key key, String subDocPath) {
     String deleteSubDocSQL =
         String.format(
-            "UPDATE %s SET %s=%s #- ?::text[] WHERE %s=?", collectionName, DOCUMENT, DOCUMENT, ID);
+            "UPDATE %s SET %s=%s #- ?::text[], %s=NOW() WHERE %s=?",
+            collectionName, DOCUMENT, DOCUMENT, UPDATED_AT, ID);
     String jsonSubDocPath = getJsonSubDocPath(subDocPath);
 
-    try (PreparedStatement preparedStatement =
-        client.prepareStatement(deleteSubDocSQL, Statement.RETURN_GENERATED_KEYS)) {
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.DELETE_SUB_DOC);
+        PreparedStatement preparedStatement =
+            client.prepareStatement(deleteSubDocSQL, Statement.RETURN_GENERATED_KEYS)) {
       preparedStatement.setString(1, jsonSubDocPath);
       preparedStatement.setString(2, key.toString());
+      trace.parsed();
       int resultSet = preparedStatement.executeUpdate();
+      trace.executed();
 
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", resultSet);
       }
 
+      trace.succeeded(resultSet);
       return true;
     } catch (SQLException e) {
       LOGGER.error(
@@ -438,8 +771,13 @@ public class PostgresCollection implements Collection {
   @Override
   public boolean deleteAll() {
     String deleteSQL = String.format("DELETE FROM %s", collectionName);
-    try (PreparedStatement preparedStatement = client.prepareStatement(deleteSQL)) {
-      preparedStatement.executeUpdate();
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.DELETE_ALL);
+        PreparedStatement preparedStatement = client.prepareStatement(deleteSQL)) {
+      trace.parsed();
+      int deletedCount = preparedStatement.executeUpdate();
+      trace.executed();
+      trace.succeeded(deletedCount);
       return true;
     } catch (SQLException e) {
       LOGGER.error("SQLException deleting all documents.", e);
@@ -451,17 +789,101 @@ public class PostgresCollection implements Collection {
   public long count() {
     String countSQL = String.format("SELECT COUNT(*) FROM %s", collectionName);
     long count = -1;
-    try (PreparedStatement preparedStatement = client.prepareStatement(countSQL)) {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.COUNT);
+        PreparedStatement preparedStatement = client.prepareStatement(countSQL)) {
+      trace.parsed();
       ResultSet resultSet = preparedStatement.executeQuery();
+      trace.executed();
       while (resultSet.next()) {
         count = resultSet.getLong(1);
       }
+      trace.succeeded(1);
     } catch (SQLException e) {
       LOGGER.error("SQLException counting all documents.", e);
     }
     return count;
   }
 
+  /**
+   * Scales the number of rows of the last statistics of the table (pg_class.reltuples) to its
+   * current number of pages, like the query planner does. The tables not analyzed yet have no such
+   * statistics, and are estimated by the planner.
+   */
+  @Override
+  public long estimatedCount() {
+    String estimateSQL =
+        "SELECT reltuples, relpages, pg_relation_size(oid) / current_setting('block_size')::int "
+            + "FROM pg_class WHERE oid = to_regclass(?)";
+    long count = -1;
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.ESTIMATED_COUNT);
+        PreparedStatement preparedStatement = client.prepareStatement(estimateSQL)) {
+      preparedStatement.setString(1, collectionName);
+      trace.parsed();
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        trace.executed();
+        if (resultSet.next()) {
+          double analyzedRows = resultSet.getDouble(1);
+          long analyzedPages = resultSet.getLong(2);
+          long pages = resultSet.getLong(3);
+          if (analyzedRows >= 0 && analyzedPages > 0) {
+            count = Math.round(analyzedRows / analyzedPages * pages);
+          } else if (pages == 0) {
+            count = 0;
+          } else {
+            count =
+                explainRows(
+                    String.format("SELECT 1 FROM %s", collectionName), Params.newBuilder().build());
+          }
+        }
+      }
+      trace.succeeded(1);
+    } catch (SQLException | IOException e) {
+      LOGGER.error("SQLException estimating the number of documents.", e);
+    }
+    return count;
+  }
+
+  /**
+   * Reads the number of rows estimated by the planner for the query, from the statistics of the
+   * table and of the columns compared by the filters
+   */
+  @Override
+  public long estimatedCount(org.hypertrace.core.documentstore.query.Query query) {
+    org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser queryParser =
+        new org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser(
+            collectionName, query);
+    String sqlQuery = queryParser.parse();
+    long count = -1;
+    try (OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.ESTIMATED_COUNT)) {
+      trace.parsed(query);
+      count = explainRows(sqlQuery, queryParser.getParamsBuilder().build());
+      trace.executed();
+      trace.succeeded(1);
+    } catch (SQLException | IOException e) {
+      LOGGER.error("SQLException estimating the number of documents. query: {}", query, e);
+    }
+    return count;
+  }
+
+  /** @return The number of rows of the query, as estimated by the planner */
+  private long explainRows(String sqlQuery, Params params) throws SQLException, IOException {
+    try (PreparedStatement preparedStatement =
+            buildPreparedStatement("EXPLAIN (FORMAT JSON) " + sqlQuery, params);
+        ResultSet resultSet = preparedStatement.executeQuery()) {
+      if (!resultSet.next()) {
+        throw new SQLException("No plan for the query: " + sqlQuery);
+      }
+      return MAPPER
+          .readTree(resultSet.getString(1))
+          .path(0)
+          .path("Plan")
+          .path("Plan Rows")
+          .asLong();
+    }
+  }
+
   @Override
   public long total(Query query) {
     StringBuilder totalSQLBuilder =
@@ -477,12 +899,16 @@ public class PostgresCollection implements Collection {
       }
     }
 
-    try (PreparedStatement preparedStatement =
-        buildPreparedStatement(totalSQLBuilder.toString(), paramsBuilder.build())) {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.TOTAL);
+        PreparedStatement preparedStatement =
+            buildPreparedStatement(totalSQLBuilder.toString(), paramsBuilder.build())) {
+      trace.parsed(query);
       ResultSet resultSet = preparedStatement.executeQuery();
+      trace.executed();
       while (resultSet.next()) {
         count = resultSet.getLong(1);
       }
+      trace.succeeded(1);
     } catch (SQLException e) {
       LOGGER.error("SQLException querying documents. query: {}", query, e);
     }
@@ -491,13 +917,15 @@ public class PostgresCollection implements Collection {
 
   @Override
   public boolean bulkUpsert(Map<Key, Document> documents) {
-    try {
-      int[] updateCounts = bulkUpsertImpl(documents);
+    try (OperationTrace trace =
+        OperationTrace.begin(collectionName, CollectionOperation.BULK_UPSERT)) {
+      int[] updateCounts = bulkUpsertImpl(documents, trace);
 
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", Arrays.toString(updateCounts));
       }
 
+      trace.succeeded(documents.size());
       return true;
     } catch (BatchUpdateException e) {
       LOGGER.error("BatchUpdateException bulk inserting documents.", e);
@@ -517,42 +945,32 @@ public class PostgresCollection implements Collection {
   @Override
   public CloseableIterator<Document> bulkUpsertAndReturnOlderDocuments(Map<Key, Document> documents)
       throws IOException {
+    OperationTrace trace =
+        OperationTrace.begin(
+            collectionName, CollectionOperation.BULK_UPSERT_AND_RETURN_OLDER_DOCUMENTS);
     String query = null;
     try {
-      String collect =
-          documents.keySet().stream()
-              .map(val -> "'" + val.toString() + "'")
-              .collect(Collectors.joining(", "));
-
-      String space = " ";
-      query =
-          new StringBuilder("SELECT * FROM")
-              .append(space)
-              .append(collectionName)
-              .append(" WHERE ")
-              .append(ID)
-              .append(" IN ")
-              .append("(")
-              .append(collect)
-              .append(")")
-              .toString();
-
+      query = String.format("SELECT * FROM %s WHERE %s = ANY(?)", collectionName, ID);
       PreparedStatement preparedStatement = client.prepareStatement(query);
+      preparedStatement.setArray(
+          1,
+          client.createArrayOf("text", documents.keySet().stream().map(Key::toString).toArray()));
       ResultSet resultSet = preparedStatement.executeQuery();
 
       // Now go ahead and bulk upsert the documents.
-      int[] updateCounts = bulkUpsertImpl(documents);
+      int[] updateCounts = bulkUpsertImpl(documents, trace);
       if (LOGGER.isDebugEnabled()) {
         LOGGER.debug("Write result: {}", Arrays.toString(updateCounts));
       }
 
-      return new PostgresResultIterator(resultSet);
+      return new PostgresResultIterator(resultSet, trace);
     } catch (IOException e) {
       LOGGER.error("SQLException bulk inserting documents. documents: {}", documents, e);
     } catch (SQLException e) {
       LOGGER.error("SQLException querying documents. query: {}", query, e);
     }
 
+    trace.failed();
     throw new IOException("Could not bulk upsert the documents.");
   }
 
@@ -572,7 +990,14 @@ public class PostgresCollection implements Collection {
         .forEach(
             (k, v) -> {
               try {
-                if (isValidType(v)) {
+                if (v instanceof Params.ArrayParam) {
+                  Params.ArrayParam array = (Params.ArrayParam) v;
+                  preparedStatement.setArray(
+                      k,
+                      preparedStatement
+                          .getConnection()
+                          .createArrayOf(array.getElementType(), array.getElements()));
+                } else if (isValidType(v)) {
                   preparedStatement.setObject(k, v);
                 } else {
                   throw new UnsupportedOperationException("Un-supported object types in filter");
@@ -585,14 +1010,294 @@ public class PostgresCollection implements Collection {
 
   @Override
   public void drop() {
-    String dropTableSQL = String.format("DROP TABLE IF EXISTS %s", collectionName);
+    // The change log of the watchers goes along, if any
+    String dropTableSQL =
+        String.format(
+            "DROP TABLE IF EXISTS %s, %s%s", collectionName, collectionName, CHANGES_SUFFIX);
     try (PreparedStatement preparedStatement = client.prepareStatement(dropTableSQL)) {
       preparedStatement.executeUpdate();
+      changeLogInstalled = false;
+      changeIndexCreated = false;
     } catch (SQLException e) {
       LOGGER.error("Exception deleting table name: {}", collectionName);
     }
   }
 
+  /**
+   * The changes are recorded by a trigger into a change log table, both created on the first watch.
+   * See {@link PostgresChangeStream}.
+   */
+  @Override
+  public CloseableIterator<ChangeEvent> watch(
+      final FilterTypeExpression filter, final WatchOptions options) {
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.WATCH)) {
+      if (!changeLogInstalled) {
+        PostgresChangeStream.install(client, collectionName);
+        changeLogInstalled = true;
+      }
+      trace.parsed();
+
+      Connection listener = connectionFactory == null ? null : connectionFactory.call();
+      try {
+        PostgresChangeStream changeStream =
+            new PostgresChangeStream(
+                client,
+                listener,
+                collectionName,
+                filter == null ? null : FilterPredicateCompiler.compile(filter),
+                options);
+        trace.executed();
+        trace.succeeded(0);
+        return changeStream;
+      } catch (SQLException | RuntimeException e) {
+        if (listener != null) {
+          listener.close();
+        }
+        throw e;
+      }
+    } catch (SQLException e) {
+      LOGGER.error("SQLException watching the changes of {}", collectionName, e);
+      throw new RuntimeException(e);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      LOGGER.error("Unable to open a listener connection for {}", collectionName, e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  public CloseableIterator<ChangedDocument> changesSince(Watermark watermark, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("The batch size must be positive: " + batchSize);
+    }
+    if (!changeIndexCreated) {
+      String createIndexSQL =
+          String.format(
+              "CREATE INDEX IF NOT EXISTS %s_%s ON %s (%s, %s)",
+              PostgresChangeStream.getTableName(collectionName),
+              UPDATED_AT,
+              collectionName,
+              UPDATED_AT,
+              ID);
+      try (PreparedStatement preparedStatement = client.prepareStatement(createIndexSQL)) {
+        preparedStatement.executeUpdate();
+        changeIndexCreated = true;
+      } catch (SQLException e) {
+        LOGGER.error("SQLException creating the {} index of {}", UPDATED_AT, collectionName, e);
+        throw new RuntimeException(e);
+      }
+    }
+    return new ChangesIterator(watermark, batchSize);
+  }
+
+  @Override
+  public Map<Key, VersionedDocument> getIfModified(Map<Key, Instant> updateTimes) {
+    // The documents still updated at the given times are not read
+    String getIfModifiedSQL =
+        String.format(
+            "SELECT t.%1$s, t.%2$s, t.%3$s, "
+                + "CASE WHEN t.%3$s IS DISTINCT FROM v.known::timestamptz THEN t.%4$s END AS %4$s "
+                + "FROM %5$s t JOIN unnest(?::text[], ?::text[]) AS v(%1$s, known) "
+                + "ON t.%1$s = v.%1$s",
+            ID, CREATED_AT, UPDATED_AT, DOCUMENT, collectionName);
+    Map<String, Key> keys = new HashMap<>();
+    String[] ids = new String[updateTimes.size()];
+    String[] knownUpdateTimes = new String[updateTimes.size()];
+    int i = 0;
+    for (Map.Entry<Key, Instant> entry : updateTimes.entrySet()) {
+      keys.put(entry.getKey().toString(), entry.getKey());
+      ids[i] = entry.getKey().toString();
+      knownUpdateTimes[i++] = entry.getValue().toString();
+    }
+
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.GET_IF_MODIFIED);
+        PreparedStatement preparedStatement = client.prepareStatement(getIfModifiedSQL)) {
+      preparedStatement.setArray(1, client.createArrayOf("text", ids));
+      preparedStatement.setArray(2, client.createArrayOf("text", knownUpdateTimes));
+      trace.parsed();
+
+      Map<Key, VersionedDocument> result = new HashMap<>();
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        trace.executed();
+        PostgresResultIterator documents = new PostgresResultIterator(resultSet);
+        while (resultSet.next()) {
+          Key key = keys.get(resultSet.getString(ID));
+          Instant updateTime = resultSet.getObject(UPDATED_AT, OffsetDateTime.class).toInstant();
+          result.put(
+              key,
+              resultSet.getString(DOCUMENT) == null
+                  ? VersionedDocument.unmodified(updateTime)
+                  : VersionedDocument.of(documents.prepareDocument(), updateTime));
+        }
+      }
+      trace.succeeded(result.size());
+      return result;
+    } catch (SQLException | IOException e) {
+      LOGGER.error("Exception reading the documents {} of {}", keys.keySet(), collectionName, e);
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Copies the documents out with {@code COPY ... TO STDOUT}, each row being streamed to the output
+   * as it is received.
+   */
+  @Override
+  public long exportTo(OutputStream output, LongConsumer progress) throws IOException {
+    String copySQL =
+        String.format(
+            "COPY (SELECT %s || jsonb_build_object('%s', %s) FROM %s) TO STDOUT WITH %s",
+            DOCUMENT, DOCUMENT_ID, ID, collectionName, COPY_OPTIONS);
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.EXPORT)) {
+      CopyManager copyManager = client.unwrap(PGConnection.class).getCopyAPI();
+      trace.parsed();
+
+      CopyOut copyOut = copyManager.copyOut(copySQL);
+      trace.executed();
+      NdJsonWriter writer = new NdJsonWriter(output, progress);
+      try {
+        byte[] row;
+        while ((row = copyOut.readFromCopy()) != null) {
+          writer.writeLine(row, true);
+        }
+      } finally {
+        if (copyOut.isActive()) {
+          copyOut.cancelCopy();
+        }
+      }
+      long count = writer.finish();
+      trace.succeeded(count);
+      return count;
+    } catch (SQLException e) {
+      LOGGER.error("Exception exporting the documents of {}", collectionName, e);
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Copies each batch of documents with {@code COPY ... FROM STDIN} into a temporary table, from
+   * which the documents whose keys do not exist yet are inserted.
+   */
+  @Override
+  public long importFrom(InputStream input, LongConsumer progress) throws IOException {
+    String importTable = IMPORT_TABLE_PREFIX + IMPORT_TABLES.incrementAndGet();
+    String copySQL =
+        String.format(
+            "COPY %s (%s, %s) FROM STDIN WITH %s", importTable, ID, DOCUMENT, COPY_OPTIONS);
+    String insertSQL =
+        String.format(
+            "INSERT INTO %1$s (%2$s, %3$s) SELECT %2$s, %3$s FROM %4$s ON CONFLICT (%2$s) DO NOTHING",
+            collectionName, ID, DOCUMENT, importTable);
+    try (OperationTrace trace = OperationTrace.begin(collectionName, CollectionOperation.IMPORT);
+        Statement statement = client.createStatement()) {
+      CopyManager copyManager = client.unwrap(PGConnection.class).getCopyAPI();
+      statement.execute(
+          String.format(
+              "CREATE TEMP TABLE IF NOT EXISTS %s (%s TEXT, %s JSONB)", importTable, ID, DOCUMENT));
+      trace.parsed();
+
+      Exception failure = null;
+      try {
+        NdJsonReader reader = new NdJsonReader(input, progress);
+        long inserted = 0;
+        List<ObjectNode> batch;
+        while (!(batch = reader.readBatch(IMPORT_BATCH_SIZE)).isEmpty()) {
+          statement.execute("TRUNCATE " + importTable);
+          CopyIn copyIn = copyManager.copyIn(copySQL);
+          try {
+            for (ObjectNode node : batch) {
+              byte[] row = toCopyRow(node);
+              copyIn.writeToCopy(row, 0, row.length);
+            }
+            copyIn.endCopy();
+          } finally {
+            if (copyIn.isActive()) {
+              copyIn.cancelCopy();
+            }
+          }
+          inserted += statement.executeUpdate(insertSQL);
+        }
+        trace.executed();
+        trace.succeeded(inserted);
+        return inserted;
+      } catch (SQLException | IOException | RuntimeException e) {
+        failure = e;
+        throw e;
+      } finally {
+        try {
+          statement.execute("DROP TABLE IF EXISTS " + importTable);
+        } catch (SQLException e) {
+          // Fails too once a statement of the transaction failed, hiding the original failure
+          if (failure == null) {
+            throw e;
+          }
+          failure.addSuppressed(e);
+        }
+      }
+    } catch (SQLException e) {
+      LOGGER.error("Exception importing the documents of {}", collectionName, e);
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * The key is quoted, while the JSON text never needs to be: the control characters used as quote
+   * and delimiter are escaped in JSON strings.
+   */
+  private static byte[] toCopyRow(ObjectNode node) throws IOException {
+    String id = node.get(DOCUMENT_ID).textValue();
+    return (COPY_QUOTE
+            + id.replace(COPY_QUOTE, COPY_QUOTE + COPY_QUOTE)
+            + COPY_QUOTE
+            + COPY_DELIMITER
+            + MAPPER.writeValueAsString(node)
+            + "\n")
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the next batch of the documents updated after the watermark, in keyset order. The
+   * documents are timestamped with the start of the transaction writing them, so only the documents
+   * updated before the start of the oldest transaction still running are read: the documents it
+   * writes are timestamped before those committed meanwhile, and would be skipped by the readers
+   * having moved past them.
+   */
+  private List<ChangedDocument> readChanges(Watermark watermark, int batchSize) {
+    String changesSQL =
+        String.format(
+            "SELECT * FROM %s WHERE (%s, %s) > (?, ?) AND %s < (%s) ORDER BY %s, %s LIMIT ?",
+            collectionName, UPDATED_AT, ID, UPDATED_AT, CHANGES_HORIZON_SQL, UPDATED_AT, ID);
+    try (OperationTrace trace =
+            OperationTrace.begin(collectionName, CollectionOperation.CHANGES_SINCE);
+        PreparedStatement preparedStatement = client.prepareStatement(changesSQL)) {
+      preparedStatement.setObject(
+          1, OffsetDateTime.ofInstant(watermark.getTimestamp(), ZoneOffset.UTC));
+      preparedStatement.setString(2, watermark.getKey());
+      preparedStatement.setInt(3, batchSize);
+      trace.parsed();
+
+      List<ChangedDocument> batch = new ArrayList<>();
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        trace.executed();
+        PostgresResultIterator documents = new PostgresResultIterator(resultSet);
+        while (resultSet.next()) {
+          Watermark documentWatermark =
+              Watermark.of(
+                  resultSet.getObject(UPDATED_AT, OffsetDateTime.class).toInstant(),
+                  resultSet.getString(ID));
+          batch.add(ChangedDocument.of(documents.prepareDocument(), documentWatermark));
+        }
+      }
+      trace.succeeded(batch.size());
+      return batch;
+    } catch (SQLException | IOException e) {
+      LOGGER.error("Exception reading the changes of {} since {}", collectionName, watermark, e);
+      throw new RuntimeException(e);
+    }
+  }
+
   private BulkUpdateResult bulkRemoveOnArrayValue(
       String subDocPath,
       Map<String, String> idToTenantIdMap,
@@ -671,7 +1376,7 @@ public class PostgresCollection implements Collection {
 
   private BulkUpdateResult upsertDocs(Map<Key, Document> docs) throws IOException {
     try {
-      int[] res = bulkUpsertImpl(docs);
+      int[] res = bulkUpsertImpl(docs, OperationTrace.disabled());
       return new BulkUpdateResult(Arrays.stream(res).sum());
     } catch (SQLException e) {
       LOGGER.error(
@@ -703,21 +1408,47 @@ public class PostgresCollection implements Collection {
   }
 
   private CloseableIterator<Document> executeQueryV1(
-      final org.hypertrace.core.documentstore.query.Query query) {
+      final org.hypertrace.core.documentstore.query.Query query, final OperationTrace trace) {
+    return executeQueryV1(client, query, trace, SCAN_FETCH_SIZE);
+  }
+
+  /**
+   * @param fetchSize The number of rows fetched per round trip on the borrowed connections, the
+   *     results on the shared connection being read at once
+   */
+  private CloseableIterator<Document> executeQueryV1(
+      final Connection connection,
+      final org.hypertrace.core.documentstore.query.Query query,
+      final OperationTrace trace,
+      final int fetchSize) {
     org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser queryParser =
         new org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser(
             collectionName, query);
     String sqlQuery = queryParser.parse();
     try {
-      PreparedStatement preparedStatement =
-          buildPreparedStatement(sqlQuery, queryParser.getParamsBuilder().build());
+      PreparedStatement preparedStatement;
+      if (connection == client) {
+        preparedStatement =
+            buildPreparedStatement(sqlQuery, queryParser.getParamsBuilder().build());
+      } else {
+        // The borrowed connections stream the results with a cursor, in a transaction
+        preparedStatement = connection.prepareStatement(sqlQuery);
+        enrichPreparedStatementWithParams(
+            preparedStatement, queryParser.getParamsBuilder().build());
+        preparedStatement.setFetchSize(fetchSize);
+        // Closed along with the results, as the connection is reused
+        preparedStatement.closeOnCompletion();
+      }
+      trace.parsed(query);
       ResultSet resultSet = preparedStatement.executeQuery();
+      trace.executed();
       CloseableIterator closeableIterator =
           query.getSelections().size() > 0
-              ? new PostgresResultIteratorWithMetaData(resultSet)
-              : new PostgresResultIterator(resultSet);
+              ? new PostgresResultIteratorWithMetaData(resultSet, trace)
+              : new PostgresResultIterator(resultSet, trace);
       return closeableIterator;
     } catch (SQLException e) {
+      trace.failed();
       LOGGER.error(
           "SQLException querying documents. original query: {}, sql query:", query, sqlQuery, e);
       throw new RuntimeException(e);
@@ -745,7 +1476,8 @@ public class PostgresCollection implements Collection {
     return "{" + subDocPath.replaceAll(DOC_PATH_SEPARATOR, ",") + "}";
   }
 
-  private int[] bulkUpsertImpl(Map<Key, Document> documents) throws SQLException, IOException {
+  private int[] bulkUpsertImpl(Map<Key, Document> documents, OperationTrace trace)
+      throws SQLException, IOException {
     try (PreparedStatement preparedStatement =
         client.prepareStatement(getUpsertSQL(), Statement.RETURN_GENERATED_KEYS)) {
       for (Map.Entry<Key, Document> entry : documents.entrySet()) {
@@ -760,7 +1492,10 @@ public class PostgresCollection implements Collection {
         preparedStatement.addBatch();
       }
 
-      return preparedStatement.executeBatch();
+      trace.parsed();
+      int[] updateCounts = preparedStatement.executeBatch();
+      trace.executed();
+      return updateCounts;
     }
   }
 
@@ -788,7 +1523,8 @@ public class PostgresCollection implements Collection {
     return currNode;
   }
 
-  private long bulkUpdateRequestsWithFilter(List<BulkUpdateRequest> requests) throws IOException {
+  private long bulkUpdateRequestsWithFilter(List<BulkUpdateRequest> requests, OperationTrace trace)
+      throws IOException {
     // Note: We cannot batch statements as the filter clause can be difference for each request. So
     // we need one PreparedStatement for each request. We try to update the batch on a best-effort
     // basis. That is, if any update fails, then we still try the other ones.
@@ -801,7 +1537,7 @@ public class PostgresCollection implements Collection {
       Filter filter = request.getFilter();
 
       try {
-        totalRowsUpdated += update(key, document, filter).getUpdatedCount();
+        totalRowsUpdated += update(key, document, filter, trace).getUpdatedCount();
       } catch (IOException e) {
         sampleException = e;
         LOGGER.error("SQLException updating document. key: {} content: {}", key, document, e);
@@ -816,8 +1552,8 @@ public class PostgresCollection implements Collection {
     return totalRowsUpdated;
   }
 
-  private long bulkUpdateRequestsWithoutFilter(List<BulkUpdateRequest> requestsWithoutFilter)
-      throws IOException {
+  private long bulkUpdateRequestsWithoutFilter(
+      List<BulkUpdateRequest> requestsWithoutFilter, OperationTrace trace) throws IOException {
     // We can batch all requests here since the query is the same.
     long totalRowsUpdated = 0;
     try {
@@ -838,7 +1574,9 @@ public class PostgresCollection implements Collection {
         ps.addBatch();
       }
 
+      trace.parsed();
       int[] updateCounts = ps.executeBatch();
+      trace.executed();
 
       totalRowsUpdated = Arrays.stream(updateCounts).filter(updateCount -> updateCount >= 0).sum();
 
@@ -871,7 +1609,8 @@ public class PostgresCollection implements Collection {
     }
   }
 
-  private String prepareDocument(Key key, Document document) throws IOException {
+  @VisibleForTesting
+  String prepareDocument(Key key, Document document) throws IOException {
     String jsonString = document.toJson();
 
     ObjectNode jsonNode = (ObjectNode) MAPPER.readTree(jsonString);
@@ -888,14 +1627,142 @@ public class PostgresCollection implements Collection {
 
   private String getUpdateSQL() {
     return String.format(
-        "UPDATE %s SET (%s, %s) = ( ?, ? :: jsonb) ", collectionName, ID, DOCUMENT, ID, DOCUMENT);
+        "UPDATE %s SET (%s, %s, %s) = ( ?, ? :: jsonb, NOW()) ",
+        collectionName, ID, DOCUMENT, UPDATED_AT);
   }
 
   private String getUpsertSQL() {
     return String.format(
         "INSERT INTO %s (%s,%s) VALUES( ?, ? :: jsonb) ON CONFLICT(%s) DO UPDATE SET %s = "
-            + "?::jsonb ",
-        collectionName, ID, DOCUMENT, ID, DOCUMENT);
+            + "?::jsonb, %s = NOW() ",
+        collectionName, ID, DOCUMENT, ID, DOCUMENT, UPDATED_AT);
+  }
+
+  /** Reads the changes one batch at a time, each resuming after the last document read */
+  private class ChangesIterator implements CloseableIterator<ChangedDocument> {
+    private final int batchSize;
+    private final Deque<ChangedDocument> batch = new ArrayDeque<>();
+    private Watermark watermark;
+    private boolean exhausted;
+
+    private ChangesIterator(Watermark watermark, int batchSize) {
+      this.watermark = watermark;
+      this.batchSize = batchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (batch.isEmpty() && !exhausted) {
+        List<ChangedDocument> read = readChanges(watermark, batchSize);
+        exhausted = read.size() < batchSize;
+        batch.addAll(read);
+      }
+      return !batch.isEmpty();
+    }
+
+    @Override
+    public ChangedDocument next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      ChangedDocument change = batch.removeFirst();
+      watermark = change.getWatermark();
+      return change;
+    }
+
+    @Override
+    public void close() {
+      exhausted = true;
+      batch.clear();
+    }
+  }
+
+  /**
+   * Streams the results of a query with a cursor, on a connection borrowed from the pool on its
+   * first read (e.g. for a partition of a parallel scan) and given back once closed. The wait for a
+   * connection is bounded, as the connections may be held by cursors which are only read once the
+   * caller goes on (e.g. the other subscriptions of a publisher waiting for the executor).
+   */
+  private class CursorIterator implements CloseableIterator<Document> {
+    private final org.hypertrace.core.documentstore.query.Query query;
+    private final CollectionOperation operation;
+    private final int fetchSize;
+    private Connection connection;
+    private CloseableIterator<Document> iterator;
+    private boolean closed;
+
+    private CursorIterator(
+        final org.hypertrace.core.documentstore.query.Query query,
+        final CollectionOperation operation,
+        final int fetchSize) {
+      this.query = query;
+      this.operation = operation;
+      this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (closed) {
+        return false;
+      }
+      if (iterator == null) {
+        open();
+      }
+      return iterator.hasNext();
+    }
+
+    @Override
+    public Document next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return iterator.next();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      try {
+        if (iterator != null) {
+          iterator.close();
+        }
+      } catch (Exception e) {
+        LOGGER.warn("Unable to close a cursor on {}", collectionName, e);
+      }
+      if (connection != null && connection != client) {
+        try {
+          // Ends the transaction of the cursor, for the connection to be reused
+          connection.rollback();
+          connection.setAutoCommit(true);
+        } catch (SQLException e) {
+          LOGGER.warn("Unable to close a cursor on {}", collectionName, e);
+        }
+        // Closed rather than reused if still in the transaction
+        cursorPool.release(connection);
+        connection = null;
+      }
+    }
+
+    private void open() {
+      try {
+        connection = cursorPool == null ? client : cursorPool.acquire(CURSOR_CONNECTION_TIMEOUT);
+        if (connection != client) {
+          connection.setAutoCommit(false);
+        }
+      } catch (Exception e) {
+        LOGGER.error("Unable to open a cursor connection for {}", collectionName, e);
+        throw new RuntimeException(e);
+      }
+      try {
+        iterator =
+            executeQueryV1(
+                connection, query, OperationTrace.begin(collectionName, operation), fetchSize);
+      } catch (RuntimeException e) {
+        close();
+        throw e;
+      }
+    }
   }
 
   static class PostgresResultIterator implements CloseableIterator {
@@ -904,9 +1771,16 @@ public class PostgresCollection implements Collection {
     protected ResultSet resultSet;
     protected boolean cursorMovedForward = false;
     protected boolean hasNext = false;
+    private final OperationTrace trace;
+    private long rowCount = 0;
 
     public PostgresResultIterator(ResultSet resultSet) {
+      this(resultSet, OperationTrace.disabled());
+    }
+
+    PostgresResultIterator(ResultSet resultSet, OperationTrace trace) {
       this.resultSet = resultSet;
+      this.trace = trace;
     }
 
     @Override
@@ -915,9 +1789,15 @@ public class PostgresCollection implements Collection {
         if (!cursorMovedForward) {
           hasNext = resultSet.next();
           cursorMovedForward = true;
+          if (hasNext) {
+            trace.rowAvailable();
+          } else {
+            trace.succeeded(rowCount);
+          }
         }
         return hasNext;
       } catch (SQLException e) {
+        trace.failed();
         LOGGER.error("SQLException iterating documents.", e);
       }
       return false;
@@ -928,10 +1808,15 @@ public class PostgresCollection implements Collection {
       try {
         if (!cursorMovedForward) {
           resultSet.next();
+          trace.rowAvailable();
         }
         // reset the cursorMovedForward state, if it was forwarded in hasNext.
         cursorMovedForward = false;
-        return prepareDocument();
+        long decodingStart = trace.decoding();
+        Document document = prepareDocument();
+        trace.decoded(decodingStart);
+        rowCount++;
+        return document;
       } catch (IOException | SQLException e) {
         return JSONDocument.errorDocument(e.getMessage());
       }
@@ -953,6 +1838,7 @@ public class PostgresCollection implements Collection {
     @SneakyThrows
     @Override
     public void close() {
+      trace.succeeded(rowCount);
       resultSet.close();
     }
   }
@@ -963,6 +1849,10 @@ public class PostgresCollection implements Collection {
       super(resultSet);
     }
 
+    PostgresResultIteratorWithMetaData(ResultSet resultSet, OperationTrace trace) {
+      super(resultSet, trace);
+    }
+
     @Override
     protected Document prepareDocument() throws SQLException, IOException {
       ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
@@ -0,0 +1,90 @@
+package org.hypertrace.core.documentstore.postgres;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of connections, lent to one operation at a time. The connections are opened on
+ * demand, up to the size of the pool, and the operations beyond it wait for a connection to be
+ * returned: the pool bounds the load put on the database by the operations running concurrently.
+ * The waits use locks rather than monitors, so that the virtual threads waiting release their
+ * carrier threads.
+ */
+final class PostgresConnectionPool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PostgresConnectionPool.class);
+
+  private final Callable<Connection> connectionFactory;
+  private final int size;
+  private final Semaphore permits;
+  private final BlockingQueue<Connection> idleConnections;
+
+  PostgresConnectionPool(final Callable<Connection> connectionFactory, final int size) {
+    this.connectionFactory = connectionFactory;
+    this.size = size;
+    this.permits = new Semaphore(size, true);
+    this.idleConnections = new ArrayBlockingQueue<>(size);
+  }
+
+  /** @return The maximum number of connections lent at once */
+  int size() {
+    return size;
+  }
+
+  /** Waits for a connection, to be given back with {@link #release(Connection)} */
+  Connection acquire() throws Exception {
+    permits.acquire();
+    return lend();
+  }
+
+  /**
+   * Waits for a connection up to the timeout, e.g. when the connections are held by work which
+   * cannot go on until the caller does
+   *
+   * @throws SQLException if no connection was returned in time
+   */
+  Connection acquire(final Duration timeout) throws Exception {
+    if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+      throw new SQLException(
+          String.format("No connection of the pool of %d was available within %s", size, timeout));
+    }
+    return lend();
+  }
+
+  private Connection lend() throws Exception {
+    try {
+      Connection connection;
+      while ((connection = idleConnections.poll()) != null) {
+        if (!connection.isClosed()) {
+          return connection;
+        }
+      }
+      return connectionFactory.call();
+    } catch (Exception e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /** Gives a connection back, closing it if it was left in a transaction */
+  void release(final Connection connection) {
+    try {
+      if (!connection.isClosed() && connection.getAutoCommit()) {
+        idleConnections.offer(connection);
+      } else {
+        connection.close();
+      }
+    } catch (SQLException e) {
+      LOGGER.warn("Unable to return a connection to the pool", e);
+    } finally {
+      permits.release();
+    }
+  }
+}
@@ -1,10 +1,12 @@
 package org.hypertrace.core.documentstore.postgres;
 
+import static org.hypertrace.core.documentstore.postgres.PostgresChangeStream.CHANGES_SUFFIX;
 import static org.hypertrace.core.documentstore.postgres.PostgresCollection.CREATED_AT;
 import static org.hypertrace.core.documentstore.postgres.PostgresCollection.DOCUMENT;
 import static org.hypertrace.core.documentstore.postgres.PostgresCollection.ID;
 import static org.hypertrace.core.documentstore.postgres.PostgresCollection.UPDATED_AT;
 
+import com.google.common.base.Preconditions;
 import com.typesafe.config.Config;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -12,11 +14,26 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import org.hypertrace.core.documentstore.AsyncCollection;
 import org.hypertrace.core.documentstore.Collection;
 import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.Transaction;
+import org.hypertrace.core.documentstore.WriteOptions;
+import org.hypertrace.core.documentstore.WriteOptions.Durability;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListener;
+import org.hypertrace.core.documentstore.metrics.DocStoreMetricsListenerProvider;
+import org.hypertrace.core.documentstore.metrics.InstrumentedCollection;
+import org.hypertrace.core.documentstore.postgres.query.v1.PostgresQueryParser;
+import org.hypertrace.core.documentstore.postgres.utils.PostgresUtils;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.TransactionState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,9 +45,22 @@ public class PostgresDatastore implements Datastore {
   private static final String DEFAULT_USER = "postgres";
   private static final String DEFAULT_PASSWORD = "postgres";
   private static final String DEFAULT_DB_NAME = "postgres";
+  private static final int DEFAULT_CURSOR_CONNECTIONS = 16;
+
+  /**
+   * The config bounding the number of connections the cursors of the parallel scans and of the
+   * publishers stream on at once (16 by default)
+   */
+  public static final String CURSOR_CONNECTIONS_CONFIG = "cursorConnections";
 
   private Connection client;
   private String database;
+  private Callable<Connection> connectionFactory;
+  private DocStoreMetricsListener metricsListener;
+  private ExecutorService asyncExecutor;
+  private PostgresConnectionPool connectionPool;
+  private PostgresConnectionPool cursorPool;
+  private final Map<Durability, Connection> durableClients = new ConcurrentHashMap<>();
 
   @Override
   public boolean init(Config config) {
@@ -54,6 +84,18 @@ public class PostgresDatastore implements Datastore {
 
       String finalUrl = url + this.database;
       client = DriverManager.getConnection(finalUrl, user, password);
+      connectionFactory = () -> DriverManager.getConnection(finalUrl, user, password);
+      metricsListener = DocStoreMetricsListenerProvider.getListener(config).orElse(null);
+      asyncExecutor = AsyncCollection.newExecutor(config, "postgres-datastore");
+      connectionPool =
+          new PostgresConnectionPool(connectionFactory, AsyncCollection.getConcurrency(config));
+      int cursorConnections =
+          config.hasPath(CURSOR_CONNECTIONS_CONFIG)
+              ? config.getInt(CURSOR_CONNECTIONS_CONFIG)
+              : DEFAULT_CURSOR_CONNECTIONS;
+      Preconditions.checkArgument(
+          cursorConnections > 0, "%s must be positive", CURSOR_CONNECTIONS_CONFIG);
+      cursorPool = new PostgresConnectionPool(connectionFactory, cursorConnections);
 
     } catch (IllegalArgumentException e) {
       throw new IllegalArgumentException(
@@ -70,13 +112,20 @@ public class PostgresDatastore implements Datastore {
     Set<String> collections = new HashSet<>();
     try {
       DatabaseMetaData metaData = client.getMetaData();
-      ResultSet tables = metaData.getTables(null, null, "%", new String[] {"TABLE"});
+      ResultSet tables =
+          metaData.getTables(null, null, "%", new String[] {"TABLE", "MATERIALIZED VIEW"});
       while (tables.next()) {
         collections.add(database + "." + tables.getString("TABLE_NAME"));
       }
     } catch (SQLException e) {
       LOGGER.error("Exception getting postgres metadata");
     }
+    // The change logs of the watched collections are not collections themselves
+    collections.removeIf(
+        table ->
+            table.endsWith(CHANGES_SUFFIX)
+                && collections.contains(
+                    table.substring(0, table.length() - CHANGES_SUFFIX.length())));
     return collections;
   }
 
@@ -102,7 +151,11 @@ public class PostgresDatastore implements Datastore {
 
   @Override
   public boolean deleteCollection(String collectionName) {
-    String dropTableSQL = String.format("DROP TABLE IF EXISTS %s", collectionName);
+    String dropTableSQL =
+        isMaterializedView(collectionName)
+            ? String.format("DROP MATERIALIZED VIEW IF EXISTS %s", collectionName)
+            : String.format(
+                "DROP TABLE IF EXISTS %s, %s%s", collectionName, collectionName, CHANGES_SUFFIX);
     try (PreparedStatement preparedStatement = client.prepareStatement(dropTableSQL)) {
       int result = preparedStatement.executeUpdate();
       return result >= 0;
@@ -114,11 +167,202 @@ public class PostgresDatastore implements Datastore {
 
   @Override
   public Collection getCollection(String collectionName) {
+    return getCollection(collectionName, WriteOptions.DEFAULT);
+  }
+
+  /**
+   * The writes run in autocommit, each one in a transaction of its own, so the durability is set
+   * once for the session of a connection dedicated to it, shared by the handles with the same
+   * durability: the writes pay no extra round trip for it.
+   */
+  @Override
+  public Collection getCollection(String collectionName, WriteOptions writeOptions) {
+    createCollectionIfMissing(collectionName);
+    Connection connection =
+        writeOptions.getDurability() == Durability.DEFAULT
+            ? client
+            : durableClients.computeIfAbsent(writeOptions.getDurability(), this::connect);
+    return instrument(
+        new PostgresCollection(connection, collectionName, connectionFactory, cursorPool),
+        collectionName);
+  }
+
+  @Override
+  public <T> T inTransaction(Transaction.Work<T> work) throws Exception {
+    return inTransaction(WriteOptions.DEFAULT, work);
+  }
+
+  /**
+   * The transaction runs on a connection borrowed from the pool, with autocommit off, the
+   * durability being set for the transaction only. The collection operations failing on a statement
+   * catch their exceptions, while Postgres aborts the transaction: the commit of such a transaction
+   * fails rather than rolling it back silently. The reads streaming on connections of their own
+   * (the parallel scans, the publishers and the watches) run outside of the transaction.
+   */
+  @Override
+  public <T> T inTransaction(WriteOptions writeOptions, Transaction.Work<T> work) throws Exception {
+    Connection connection = connectionPool.acquire();
+    try {
+      connection.setAutoCommit(false);
+      if (writeOptions.getDurability() != Durability.DEFAULT) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute(
+              "SET LOCAL synchronous_commit = "
+                  + getSynchronousCommit(writeOptions.getDurability()));
+        }
+      }
+
+      T result =
+          work.apply(
+              collectionName -> {
+                createCollectionIfMissing(collectionName);
+                return instrument(
+                    new PostgresCollection(
+                        connection, collectionName, connectionFactory, cursorPool),
+                    collectionName);
+              });
+      if (connection.unwrap(BaseConnection.class).getTransactionState()
+          == TransactionState.FAILED) {
+        throw new SQLException("The transaction was aborted by a failed statement");
+      }
+      connection.commit();
+      connection.setAutoCommit(true);
+      return result;
+    } catch (Exception | Error e) {
+      try {
+        connection.rollback();
+        connection.setAutoCommit(true);
+      } catch (SQLException rollbackException) {
+        e.addSuppressed(rollbackException);
+      }
+      throw e;
+    } finally {
+      // Discarded if still in the transaction
+      connectionPool.release(connection);
+    }
+  }
+
+  private void createCollectionIfMissing(String collectionName) {
     Set<String> tables = listCollections();
     if (!tables.contains(collectionName)) {
       createCollection(collectionName, null);
     }
-    return new PostgresCollection(client, collectionName);
+  }
+
+  private Connection connect(Durability durability) {
+    try {
+      Connection connection = connectionFactory.call();
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("SET synchronous_commit = " + getSynchronousCommit(durability));
+      }
+      return connection;
+    } catch (Exception e) {
+      throw new RuntimeException("PostgresClient SQLException", e);
+    }
+  }
+
+  /** @return The value of synchronous_commit giving the durability */
+  static String getSynchronousCommit(Durability durability) {
+    switch (durability) {
+      case UNACKNOWLEDGED:
+      case ACKNOWLEDGED:
+        return "off";
+      case JOURNALED:
+        return "local";
+      case MAJORITY:
+        return "on";
+      default:
+        return "DEFAULT";
+    }
+  }
+
+  /**
+   * Each operation runs on a connection of its own, borrowed from a pool sized with the number of
+   * operations running at once, so that the operations run concurrently rather than one after the
+   * other on the shared connection
+   */
+  @Override
+  public AsyncCollection getAsyncCollection(String collectionName) {
+    createCollectionIfMissing(collectionName);
+    return new AsyncCollection(
+        new AsyncCollection.CollectionRunner() {
+          @Override
+          public <T> T run(AsyncCollection.Operation<T> operation) throws Exception {
+            Connection connection = connectionPool.acquire();
+            try {
+              return operation.apply(
+                  instrument(
+                      new PostgresCollection(
+                          connection, collectionName, connectionFactory, cursorPool),
+                      collectionName));
+            } finally {
+              connectionPool.release(connection);
+            }
+          }
+        },
+        asyncExecutor);
+  }
+
+  private Collection instrument(Collection collection, String collectionName) {
+    return metricsListener == null
+        ? collection
+        : new InstrumentedCollection(collection, collectionName, metricsListener);
+  }
+
+  /**
+   * Creates a materialized view with the columns of the collections, so that it is read as one. The
+   * documents are the rows of the query, keyed by their hashes (numbered if several rows are
+   * identical): the unique index on the keys lets the view be refreshed concurrently with the
+   * reads, the refresh then writing the rows changed only.
+   */
+  @Override
+  public boolean createMaterializedView(
+      String viewName, String collectionName, org.hypertrace.core.documentstore.query.Query query) {
+    PostgresQueryParser queryParser = new PostgresQueryParser(collectionName, query);
+    String querySQL =
+        PostgresUtils.inlineParams(queryParser.parse(), queryParser.getParamsBuilder().build());
+    String createViewSQL =
+        String.format(
+            "CREATE MATERIALIZED VIEW IF NOT EXISTS %1$s AS "
+                + "SELECT md5(%3$s::text) || '-' || ROW_NUMBER() OVER (PARTITION BY %3$s) AS %2$s, "
+                + "%3$s, NOW() AS %4$s, NOW() AS %5$s "
+                + "FROM (SELECT to_jsonb(view_row) AS %3$s FROM (%6$s) view_row) view_rows",
+            viewName, ID, DOCUMENT, CREATED_AT, UPDATED_AT, querySQL);
+    String createIndexSQL =
+        String.format("CREATE UNIQUE INDEX IF NOT EXISTS %1$s_%2$s ON %1$s (%2$s)", viewName, ID);
+    try (Statement statement = client.createStatement()) {
+      statement.executeUpdate(createViewSQL);
+      statement.executeUpdate(createIndexSQL);
+    } catch (SQLException e) {
+      LOGGER.error("Exception creating materialized view: {}", viewName, e);
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean refreshMaterializedView(String viewName) {
+    String refreshViewSQL = String.format("REFRESH MATERIALIZED VIEW CONCURRENTLY %s", viewName);
+    try (Statement statement = client.createStatement()) {
+      statement.executeUpdate(refreshViewSQL);
+    } catch (SQLException e) {
+      LOGGER.error("Exception refreshing materialized view: {}", viewName, e);
+      return false;
+    }
+    return true;
+  }
+
+  private boolean isMaterializedView(String name) {
+    try (PreparedStatement preparedStatement =
+        client.prepareStatement("SELECT 1 FROM pg_matviews WHERE matviewname = ?")) {
+      preparedStatement.setString(1, name);
+      try (ResultSet resultSet = preparedStatement.executeQuery()) {
+        return resultSet.next();
+      }
+    } catch (SQLException e) {
+      LOGGER.error("Exception looking up materialized view: {}", name);
+      return false;
+    }
   }
 
   @Override
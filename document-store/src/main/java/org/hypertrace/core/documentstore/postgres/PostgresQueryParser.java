@@ -78,21 +78,21 @@ class PostgresQueryParser {
         // 2. To make semantically opposite filter of IN, we need to check for if key is not present
         //    Ref in context of NEQ -
         // https://github.com/hypertrace/document-store/pull/20#discussion_r547101520Other
-        //    so, we need - "document->key IS NULL OR document->key->> NOT IN (v1, v2)"
+        //    so, we need - "document->key IS NULL OR document->key->> <> ALL(?)"
         StringBuilder notInFilterString = prepareFieldAccessorExpr(fieldName);
         if (notInFilterString != null) {
           filterString = notInFilterString.append(" IS NULL OR ").append(fullFieldName);
         }
-        sqlOperator = " NOT IN ";
+        sqlOperator = " <> ALL";
         isMultiValued = true;
-        value = prepareParameterizedStringForList((List<Object>) value, paramsBuilder);
+        value = prepareParameterizedArray((List<Object>) value, paramsBuilder);
         break;
       case IN:
         // NOTE: both NOT_IN and IN filter currently limited to non-array field
         //  - https://github.com/hypertrace/document-store/issues/32#issuecomment-781411676
-        sqlOperator = " IN ";
+        sqlOperator = " = ANY";
         isMultiValued = true;
-        value = prepareParameterizedStringForList((List<Object>) value, paramsBuilder);
+        value = prepareParameterizedArray((List<Object>) value, paramsBuilder);
         break;
       case NOT_EXISTS:
         sqlOperator = " IS NULL ";
@@ -186,17 +186,14 @@ class PostgresQueryParser {
         .collect(Collectors.joining(" , "));
   }
 
-  private static String prepareParameterizedStringForList(
+  /**
+   * Binds the values as a single array, so that the statement is the same whatever the number of
+   * values (and can be cached by the server), and is not limited by the number of params
+   */
+  private static String prepareParameterizedArray(
       List<Object> values, Params.Builder paramsBuilder) {
-    String collect =
-        values.stream()
-            .map(
-                val -> {
-                  paramsBuilder.addObjectParam(val);
-                  return QUESTION_MARK;
-                })
-            .collect(Collectors.joining(", "));
-    return "(" + collect + ")";
+    paramsBuilder.addArrayParam(values);
+    return "(" + QUESTION_MARK + ")";
   }
 
   private static StringBuilder prepareFieldAccessorExpr(String fieldName) {
@@ -1,10 +1,13 @@
 package org.hypertrace.core.documentstore.postgres.query.v1;
 
+import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.Getter;
 import lombok.Setter;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
 import org.hypertrace.core.documentstore.postgres.Params;
 import org.hypertrace.core.documentstore.postgres.Params.Builder;
 import org.hypertrace.core.documentstore.postgres.query.v1.transformer.FieldToPgColumnTransformer;
@@ -17,6 +20,7 @@ import org.hypertrace.core.documentstore.postgres.query.v1.vistors.PostgresSortT
 import org.hypertrace.core.documentstore.postgres.query.v1.vistors.PostgresUnnestFilterTypeExpressionVisitor;
 import org.hypertrace.core.documentstore.query.Pagination;
 import org.hypertrace.core.documentstore.query.Query;
+import org.hypertrace.core.documentstore.query.Sampling;
 
 public class PostgresQueryParser {
   @Getter private final String collection;
@@ -36,14 +40,55 @@ public class PostgresQueryParser {
   // The below map will maintain that mapping.
   @Getter private final Map<String, String> pgColumnNames = new HashMap<>();
   @Getter private final FieldToPgColumnTransformer toPgColumnTransformer;
+  private Integer sampleSeed;
 
   public PostgresQueryParser(String collection, Query query) {
     this.collection = collection;
     this.query = query;
-    this.finalTableName = collection;
+    this.finalTableName = collection + getTableSample(false);
     toPgColumnTransformer = new FieldToPgColumnTransformer(this);
   }
 
+  /**
+   * @param repeatable Whether the sample must be the same for all the references to the collection
+   *     within the query
+   * @return The TABLESAMPLE clause sampling the collection, if the query is sampled, to follow the
+   *     collection (and its alias) in the FROM clause
+   */
+  public String getTableSample(boolean repeatable) {
+    Optional<Sampling> sampling = query.getSampling();
+    if (sampling.isEmpty()) {
+      return "";
+    }
+
+    String tableSample =
+        String.format(
+            " TABLESAMPLE %s (%s)",
+            sampling.get().getMethod(),
+            BigDecimal.valueOf(sampling.get().getFraction())
+                .movePointRight(2)
+                .stripTrailingZeros()
+                .toPlainString());
+    if (repeatable) {
+      if (sampleSeed == null) {
+        sampleSeed = ThreadLocalRandom.current().nextInt();
+      }
+      tableSample += String.format(" REPEATABLE (%d)", sampleSeed);
+    }
+    return tableSample;
+  }
+
+  /**
+   * @return Whether the query is sampled and aggregated, the aggregated results carrying the number
+   *     of documents sampled for them
+   */
+  public boolean isSampledAggregation() {
+    return query.getSampling().isPresent()
+        && (!query.getAggregations().isEmpty()
+            || query.getSelections().stream()
+                .anyMatch(spec -> spec.getExpression() instanceof AggregateExpression));
+  }
+
   public String parse() {
     StringBuilder sqlBuilder = new StringBuilder();
     int startIndexOfSelection = 0;
@@ -99,7 +144,13 @@ public class PostgresQueryParser {
   }
 
   private Optional<String> parseSelection() {
-    return Optional.ofNullable(PostgresSelectTypeExpressionVisitor.getSelections(this));
+    Optional<String> selections =
+        Optional.ofNullable(PostgresSelectTypeExpressionVisitor.getSelections(this));
+    if (isSampledAggregation()) {
+      String sampleSize = String.format("COUNT(*) AS %s", Sampling.SAMPLE_SIZE_ALIAS);
+      return Optional.of(selections.map(s -> s + ", " + sampleSize).orElse(sampleSize));
+    }
+    return selections;
   }
 
   private Optional<String> parseFilter() {
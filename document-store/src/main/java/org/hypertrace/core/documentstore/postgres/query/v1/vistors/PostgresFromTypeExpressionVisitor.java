@@ -16,11 +16,11 @@ public class PostgresFromTypeExpressionVisitor implements FromTypeExpressionVisi
   private static final String WITHOUT_PRESERVE_NULL_AND_EMPTY_QUERY_FMT = "With \n%s, \n%s \n";
   private static final String JSONB_ARRAY_UNWIND_FMT = "jsonb_array_elements(%s) p%s(%s)";
 
-  private static final String TABLE1_QUERY_FMT = "table1 as (SELECT * from %s)";
-  private static final String TABLE1_QUERY_FMT_WHERE = "table1 as (SELECT * from %s WHERE %s)";
+  private static final String TABLE1_QUERY_FMT = "table1 as (SELECT * from %s%s)";
+  private static final String TABLE1_QUERY_FMT_WHERE = "table1 as (SELECT * from %s%s WHERE %s)";
   private static final String TABLE2_QUERY_FMT = "table2 as (SELECT * FROM table1, %s)";
   private static final String TABLE3_QUERY_FMT =
-      "table3 as (SELECT %s, %s from %s m LEFT JOIN table2 d on(m.id = d.id))";
+      "table3 as (SELECT %s, %s from %s m%s LEFT JOIN table2 d on(m.id = d.id))";
   private static final String MAIN_TABLE_PREFIX = "m.";
   private static final String DERIVED_TABLE_PREFIX = "d.";
 
@@ -75,28 +75,34 @@ public class PostgresFromTypeExpressionVisitor implements FromTypeExpressionVisi
 
     if (!postgresFromTypeExpressionVisitor.getPreserveNullAndEmptyArrays()) {
       postgresQueryParser.setFinalTableName("table2");
-      String table1Query = prepareTable1Query(postgresQueryParser);
+      String table1Query = prepareTable1Query(postgresQueryParser, false);
       String table2Query = prepareTable2Query(childList);
       return Optional.of(
           String.format(WITHOUT_PRESERVE_NULL_AND_EMPTY_QUERY_FMT, table1Query, table2Query));
     }
 
+    // The documents sampled are joined back with the same sample of the collection
     postgresQueryParser.setFinalTableName("table3");
-    String table1Query = prepareTable1Query(postgresQueryParser);
+    String table1Query = prepareTable1Query(postgresQueryParser, true);
     String table2Query = prepareTable2Query(childList);
     String table3Query = prepareTable3Query(postgresQueryParser);
     return Optional.of(
         String.format(PRESERVE_NULL_AND_EMPTY_QUERY_FMT, table1Query, table2Query, table3Query));
   }
 
-  private static String prepareTable1Query(PostgresQueryParser postgresQueryParser) {
+  private static String prepareTable1Query(
+      PostgresQueryParser postgresQueryParser, boolean repeatableSample) {
     Optional<String> whereFilter =
         PostgresFilterTypeExpressionVisitor.getFilterClause(postgresQueryParser);
+    String tableSample = postgresQueryParser.getTableSample(repeatableSample);
 
     return whereFilter.isPresent()
         ? String.format(
-            TABLE1_QUERY_FMT_WHERE, postgresQueryParser.getCollection(), whereFilter.get())
-        : String.format(TABLE1_QUERY_FMT, postgresQueryParser.getCollection());
+            TABLE1_QUERY_FMT_WHERE,
+            postgresQueryParser.getCollection(),
+            tableSample,
+            whereFilter.get())
+        : String.format(TABLE1_QUERY_FMT, postgresQueryParser.getCollection(), tableSample);
   }
 
   private static String prepareTable2Query(String unwindJsonArrayElementsStr) {
@@ -124,6 +130,7 @@ public class PostgresFromTypeExpressionVisitor implements FromTypeExpressionVisi
         TABLE3_QUERY_FMT,
         mainTableColumnsStr,
         unwindArrayColumnsStr,
-        postgresQueryParser.getCollection());
+        postgresQueryParser.getCollection(),
+        postgresQueryParser.getTableSample(true));
   }
 }
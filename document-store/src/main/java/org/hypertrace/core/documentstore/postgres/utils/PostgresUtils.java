@@ -102,17 +102,59 @@ public class PostgresUtils {
     }
   }
 
-  private static String prepareParameterizedStringForList(
+  /**
+   * Writes the params into the statement as literals, for the statements which cannot take params
+   * (e.g. the definitions of the views). The placeholders are the question marks outside of the
+   * quoted literals and identifiers.
+   */
+  public static String inlineParams(String sql, Params params) {
+    StringBuilder inlined = new StringBuilder(sql.length());
+    int index = 1;
+    char quote = 0;
+    for (int i = 0; i < sql.length(); i++) {
+      char c = sql.charAt(i);
+      if (quote != 0) {
+        // A doubled quote inside a literal is the escaped quote, toggling twice
+        quote = c == quote ? 0 : quote;
+      } else if (c == '\'' || c == '"') {
+        quote = c;
+      } else if (c == '?') {
+        if (!params.getObjectParams().containsKey(index)) {
+          throw new IllegalArgumentException("No param " + index + " for the statement: " + sql);
+        }
+        inlined.append(toLiteral(params.getObjectParams().get(index++)));
+        continue;
+      }
+      inlined.append(c);
+    }
+    return inlined.toString();
+  }
+
+  private static String toLiteral(Object value) {
+    if (value == null) {
+      return "NULL";
+    } else if (value instanceof Number || value instanceof Boolean) {
+      return value.toString();
+    } else if (value instanceof String) {
+      return "'" + ((String) value).replace("'", "''") + "'";
+    } else if (value instanceof Params.ArrayParam) {
+      Params.ArrayParam array = (Params.ArrayParam) value;
+      return Arrays.stream(array.getElements())
+          .map(PostgresUtils::toLiteral)
+          .collect(
+              Collectors.joining(", ", "CAST (ARRAY[", "] AS " + array.getElementType() + "[])"));
+    }
+    throw new UnsupportedOperationException("Un-supported object types in filter: " + value);
+  }
+
+  /**
+   * Binds the values as a single array, so that the statement is the same whatever the number of
+   * values (and can be cached by the server), and is not limited by the number of params
+   */
+  private static String prepareParameterizedArray(
       List<Object> values, Params.Builder paramsBuilder) {
-    String collect =
-        values.stream()
-            .map(
-                val -> {
-                  paramsBuilder.addObjectParam(val);
-                  return QUESTION_MARK;
-                })
-            .collect(Collectors.joining(", "));
-    return "(" + collect + ")";
+    paramsBuilder.addArrayParam(values);
+    return "(" + QUESTION_MARK + ")";
   }
 
   public static String parseNonCompositeFilter(
@@ -150,21 +192,21 @@ public class PostgresUtils {
         // 2. To make semantically opposite filter of IN, we need to check for if key is not present
         //    Ref in context of NEQ -
         // https://github.com/hypertrace/document-store/pull/20#discussion_r547101520Other
-        //    so, we need - "document->key IS NULL OR document->key->> NOT IN (v1, v2)"
+        //    so, we need - "document->key IS NULL OR document->key->> <> ALL(?)"
         StringBuilder notInFilterString = prepareFieldAccessorExpr(fieldName, columnName);
         if (notInFilterString != null) {
           filterString = notInFilterString.append(" IS NULL OR ").append(fullFieldName);
         }
-        sqlOperator = " NOT IN ";
+        sqlOperator = " <> ALL";
         isMultiValued = true;
-        value = prepareParameterizedStringForList((List<Object>) value, paramsBuilder);
+        value = prepareParameterizedArray((List<Object>) value, paramsBuilder);
         break;
       case "IN":
         // NOTE: both NOT_IN and IN filter currently limited to non-array field
         //  - https://github.com/hypertrace/document-store/issues/32#issuecomment-781411676
-        sqlOperator = " IN ";
+        sqlOperator = " = ANY";
         isMultiValued = true;
-        value = prepareParameterizedStringForList((List<Object>) value, paramsBuilder);
+        value = prepareParameterizedArray((List<Object>) value, paramsBuilder);
         break;
       case "NOT_EXISTS":
         sqlOperator = " IS NULL ";
@@ -257,15 +299,15 @@ public class PostgresUtils {
         break;
       case "NOT_IN":
         // NOTE: Pl. refer this in non-parsed expression for limitation of this filter
-        sqlOperator = " NOT IN ";
+        sqlOperator = " <> ALL";
         isMultiValued = true;
-        value = prepareParameterizedStringForList((List<Object>) value, paramsBuilder);
+        value = prepareParameterizedArray((List<Object>) value, paramsBuilder);
         break;
       case "IN":
         // NOTE: Pl. refer this in non-parsed expression for limitation of this filter
-        sqlOperator = " IN ";
+        sqlOperator = " = ANY";
         isMultiValued = true;
-        value = prepareParameterizedStringForList((List<Object>) value, paramsBuilder);
+        value = prepareParameterizedArray((List<Object>) value, paramsBuilder);
         break;
       case "NOT_EXISTS":
         sqlOperator = " IS NULL ";
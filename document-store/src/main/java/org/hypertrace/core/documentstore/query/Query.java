@@ -76,6 +76,7 @@ public class Query {
   Sort sort;
   Pagination pagination; // Missing pagination represents fetching all the records
   FromClause fromClause;
+  Sampling sampling; // Missing sampling represents reading all the records
 
   public List<SelectionSpec> getSelections() {
     return selection == null ? emptyList() : unmodifiableList(selection.getSelectionSpecs());
@@ -105,6 +106,10 @@ public class Query {
     return fromClause == null ? emptyList() : unmodifiableList(fromClause.getFromTypeExpressions());
   }
 
+  public Optional<Sampling> getSampling() {
+    return Optional.ofNullable(sampling);
+  }
+
   public static QueryBuilder builder() {
     return new QueryBuilder();
   }
@@ -118,6 +123,7 @@ public class Query {
     private Sort.SortBuilder sortBuilder;
     private Pagination pagination;
     private FromClause.FromClauseBuilder fromClauseBuilder;
+    private Sampling sampling;
 
     public QueryBuilder setSelection(final Selection selection) {
       this.selectionBuilder = selection.toBuilder();
@@ -262,6 +268,11 @@ public class Query {
       return this;
     }
 
+    public QueryBuilder setSampling(final Sampling sampling) {
+      this.sampling = sampling;
+      return this;
+    }
+
     public Query build() {
       return new Query(
           getSelection(),
@@ -270,7 +281,8 @@ public class Query {
           getAggregationFilter(),
           getSort(),
           pagination,
-          getFrom());
+          getFrom(),
+          sampling);
     }
 
     protected Selection.SelectionBuilder getSelectionBuilder() {
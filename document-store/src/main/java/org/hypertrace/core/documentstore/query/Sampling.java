@@ -0,0 +1,71 @@
+package org.hypertrace.core.documentstore.query;
+
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.SUM;
+
+import com.google.common.base.Preconditions;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Value;
+import org.hypertrace.core.documentstore.expression.operators.AggregationOperator;
+
+/**
+ * Runs a query approximately, over a random sample of the documents, e.g. for the dashboards
+ * aggregating whole collections when an estimate would do. The additive aggregations (SUM and
+ * COUNT) are scaled up to estimate the values over all the documents, while the others (AVG, MIN,
+ * MAX, DISTINCT_COUNT...) are those of the sample.
+ *
+ * <p>The aggregated results carry the number of documents they were computed from in the {@value
+ * #SAMPLE_SIZE_ALIAS} field, from which {@link #getRelativeError(long)} estimates the error.
+ *
+ * <p>On MongoDB, the documents are sampled by a {@code $sample} stage drawing a fixed number of
+ * documents: the fraction of the count of the collection, which costs an extra {@code
+ * estimatedDocumentCount()} round trip per query, and is only as accurate as the metadata of the
+ * collection. The stage comes first in the pipeline, so it is sized from the whole collection
+ * rather than from the documents matching the filter, which are then matched within the sample.
+ */
+@Value
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class Sampling {
+  public static final String SAMPLE_SIZE_ALIAS = "__sample_size";
+
+  Double fraction;
+  Method method;
+
+  public enum Method {
+    /** Samples whole blocks of documents where the backend allows it: cheapest, but clustered */
+    SYSTEM,
+    /** Samples each document independently: reads the whole collection, but is more accurate */
+    BERNOULLI,
+  }
+
+  /** @param fraction The fraction of the documents to sample, in (0, 1] */
+  public static Sampling of(final double fraction) {
+    return Sampling.builder().fraction(fraction).build();
+  }
+
+  /** @return Whether the aggregation is scaled up to the whole collection */
+  public static boolean isScaled(final AggregationOperator operator) {
+    return operator == SUM || operator == COUNT;
+  }
+
+  /**
+   * @param sampleSize The number of documents sampled for a result
+   * @return The relative standard error of the scaled counts of the result, and roughly of its
+   *     scaled sums (which also vary with the values summed)
+   */
+  public double getRelativeError(final long sampleSize) {
+    return sampleSize == 0 ? Double.POSITIVE_INFINITY : Math.sqrt((1 - fraction) / sampleSize);
+  }
+
+  public static class SamplingBuilder {
+    public Sampling build() {
+      Preconditions.checkArgument(fraction != null, "fraction is null");
+      Preconditions.checkArgument(
+          fraction > 0 && fraction <= 1, "fraction must be in (0, 1]: %s", fraction);
+      return new Sampling(fraction, method == null ? Method.SYSTEM : method);
+    }
+  }
+}
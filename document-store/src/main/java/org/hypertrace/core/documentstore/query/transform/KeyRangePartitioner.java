@@ -0,0 +1,94 @@
+package org.hypertrace.core.documentstore.query.transform;
+
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.AND;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LTE;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.query.Query;
+
+/**
+ * Splits a query into the queries of disjoint ranges of the document keys, for the partitions of a
+ * parallel scan. The ranges are bounded by keys picked by the backends (e.g. the quantiles of the
+ * keys), and cover all the keys whatever the keys written since.
+ */
+public final class KeyRangePartitioner {
+  private KeyRangePartitioner() {}
+
+  /**
+   * Checks that the query can be split, the results of the partitions being consumed separately:
+   * the aggregations and the pagination would apply to each partition alone.
+   */
+  public static void validate(final Query query, final int partitions) {
+    Preconditions.checkArgument(partitions > 0, "The number of partitions must be positive");
+    Preconditions.checkArgument(
+        query.getAggregations().isEmpty() && query.getAggregationFilter().isEmpty(),
+        "Aggregations cannot be scanned in parallel");
+    Preconditions.checkArgument(
+        query.getPagination().isEmpty(), "Paginated queries cannot be scanned in parallel");
+  }
+
+  /**
+   * @param query The query to split
+   * @param keyField The field holding the document keys
+   * @param boundaries The sorted, distinct upper bounds (inclusive) of all the partitions but the
+   *     last one
+   * @return The queries of the partitions, one more than the boundaries
+   */
+  public static List<Query> partition(
+      final Query query, final String keyField, final List<String> boundaries) {
+    final IdentifierExpression key = IdentifierExpression.of(keyField);
+    final List<Query> partitions = new ArrayList<>();
+    for (int i = 0; i <= boundaries.size(); i++) {
+      final List<FilterTypeExpression> conditions = new ArrayList<>();
+      query.getFilter().ifPresent(conditions::add);
+      if (i > 0) {
+        conditions.add(
+            RelationalExpression.of(key, GT, ConstantExpression.of(boundaries.get(i - 1))));
+      }
+      if (i < boundaries.size()) {
+        conditions.add(RelationalExpression.of(key, LTE, ConstantExpression.of(boundaries.get(i))));
+      }
+
+      final TransformedQueryBuilder builder = new TransformedQueryBuilder(query);
+      and(conditions).ifPresent(builder::setFilter);
+      partitions.add(builder.build());
+    }
+    return partitions;
+  }
+
+  /**
+   * @param sortedKeys All the keys, sorted
+   * @param partitions The number of partitions
+   * @return The boundaries splitting the keys into partitions of even sizes
+   */
+  public static List<String> quantiles(final List<String> sortedKeys, final int partitions) {
+    final List<String> boundaries = new ArrayList<>();
+    for (int i = 1; i < partitions; i++) {
+      final int index = (int) ((long) sortedKeys.size() * i / partitions) - 1;
+      if (index >= 0 && (boundaries.isEmpty() || !last(boundaries).equals(sortedKeys.get(index)))) {
+        boundaries.add(sortedKeys.get(index));
+      }
+    }
+    return boundaries;
+  }
+
+  private static String last(final List<String> values) {
+    return values.get(values.size() - 1);
+  }
+
+  private static Optional<FilterTypeExpression> and(final List<FilterTypeExpression> conditions) {
+    if (conditions.size() < 2) {
+      return conditions.stream().findFirst();
+    }
+    return Optional.of(LogicalExpression.builder().operator(AND).operands(conditions).build());
+  }
+}
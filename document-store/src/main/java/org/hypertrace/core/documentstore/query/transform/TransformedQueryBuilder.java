@@ -15,6 +15,7 @@ public final class TransformedQueryBuilder extends Query.QueryBuilder {
     copyPagination(query);
 
     copyFromClauses(query);
+    copySampling(query);
   }
 
   private void copySelections(final Query query) {
@@ -47,4 +48,8 @@ public final class TransformedQueryBuilder extends Query.QueryBuilder {
   private void copyFromClauses(final Query query) {
     query.getFromTypeExpressions().forEach(this::addFromClause);
   }
+
+  private void copySampling(final Query query) {
+    query.getSampling().ifPresent(this::setSampling);
+  }
 }
@@ -0,0 +1,84 @@
+package org.hypertrace.core.documentstore.transfer;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Reads the documents of a newline-delimited JSON stream (one document per line, with its key in
+ * the {@value #ID_KEY} field) in batches, so that imports hold a single batch in memory whatever
+ * the size of the stream. The blank lines are skipped.
+ */
+public final class NdJsonReader {
+  public static final String ID_KEY = "_id";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final BufferedReader reader;
+  private final LongConsumer progress;
+  private long lineNumber;
+  private long count;
+
+  /**
+   * @param input The stream to read from, left open
+   * @param progress Called with the number of documents read so far, after each batch
+   */
+  public NdJsonReader(final InputStream input, final LongConsumer progress) {
+    this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    this.progress = progress;
+  }
+
+  /**
+   * @param size The maximum number of documents to read
+   * @return The next documents, with their keys, or an empty list once the stream is exhausted
+   * @throws IOException if a line is not a JSON object with a non-empty textual key
+   */
+  public List<ObjectNode> readBatch(final int size) throws IOException {
+    final List<ObjectNode> batch = new ArrayList<>(size);
+    String line;
+    while (batch.size() < size && (line = reader.readLine()) != null) {
+      lineNumber++;
+      if (!line.isBlank()) {
+        batch.add(parse(line));
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      count += batch.size();
+      progress.accept(count);
+    }
+    return batch;
+  }
+
+  /** @return The number of documents read so far */
+  public long getCount() {
+    return count;
+  }
+
+  private ObjectNode parse(final String line) throws IOException {
+    final JsonNode node;
+    try {
+      node = MAPPER.readTree(line);
+    } catch (JsonProcessingException e) {
+      throw new IOException("Invalid JSON at line " + lineNumber, e);
+    }
+
+    if (!node.isObject()) {
+      throw new IOException("Line " + lineNumber + " is not a JSON object");
+    }
+    final JsonNode id = node.get(ID_KEY);
+    if (id == null || !id.isTextual() || id.textValue().isEmpty()) {
+      throw new IOException("Line " + lineNumber + " has no " + ID_KEY + " key");
+    }
+    return (ObjectNode) node;
+  }
+}
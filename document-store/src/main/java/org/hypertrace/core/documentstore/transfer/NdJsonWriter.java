@@ -0,0 +1,67 @@
+package org.hypertrace.core.documentstore.transfer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * Writes documents to a newline-delimited JSON stream, one document per line, through a buffer so
+ * that the documents can be written one at a time as they are read.
+ */
+public final class NdJsonWriter {
+  /** The number of documents written between two reports of the progress */
+  public static final int PROGRESS_INTERVAL = 1000;
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final int NEWLINE = '\n';
+
+  private final OutputStream output;
+  private final LongConsumer progress;
+  private long count;
+
+  /**
+   * @param output The stream to write to, left open
+   * @param progress Called with the number of documents written so far, every {@link
+   *     #PROGRESS_INTERVAL} documents and once done
+   */
+  public NdJsonWriter(final OutputStream output, final LongConsumer progress) {
+    this.output = new BufferedOutputStream(output);
+    this.progress = progress;
+  }
+
+  public void write(final JsonNode document) throws IOException {
+    writeLine(MAPPER.writeValueAsBytes(document), false);
+  }
+
+  /**
+   * Writes a document already serialized
+   *
+   * @param line The document, in compact JSON
+   * @param terminated Whether the line ends with a newline already
+   */
+  public void writeLine(final byte[] line, final boolean terminated) throws IOException {
+    output.write(line);
+    if (!terminated) {
+      output.write(NEWLINE);
+    }
+    if (++count % PROGRESS_INTERVAL == 0) {
+      progress.accept(count);
+    }
+  }
+
+  /**
+   * Flushes the documents buffered
+   *
+   * @return The number of documents written
+   */
+  public long finish() throws IOException {
+    output.flush();
+    if (count % PROGRESS_INTERVAL != 0) {
+      progress.accept(count);
+    }
+    return count;
+  }
+}
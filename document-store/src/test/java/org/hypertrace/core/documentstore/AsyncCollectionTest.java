@@ -0,0 +1,152 @@
+package org.hypertrace.core.documentstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncCollectionTest {
+  private final Collection collection = mock(Collection.class);
+  private ExecutorService executor;
+  private AsyncCollection asyncCollection;
+
+  @BeforeEach
+  void setUp() {
+    executor =
+        AsyncCollection.newExecutor(
+            ConfigFactory.parseMap(Map.of(AsyncCollection.ASYNC_THREADS_CONFIG, 2)), "test");
+    asyncCollection = new AsyncCollection(collection, executor);
+  }
+
+  @AfterEach
+  void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  void testResultsAndFailures() throws Exception {
+    Key key = new SingleValueKey("default", "1");
+    Document document = new JSONDocument("{\"item\":\"soap\"}");
+    when(collection.upsert(key, document)).thenReturn(true);
+    when(collection.create(key, document)).thenThrow(new IOException("duplicate"));
+
+    assertTrue(asyncCollection.upsert(key, document).join());
+    CompletionException exception =
+        assertThrows(CompletionException.class, () -> asyncCollection.create(key, document).join());
+    assertEquals(IOException.class, exception.getCause().getClass());
+  }
+
+  @Test
+  void testQueryResultsAreReadAndClosed() throws IOException {
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder().build();
+    Document document = new JSONDocument("{\"item\":\"soap\"}");
+    CloseableIterator<Document> results = iteratorOf(List.of(document));
+    when(collection.find(query)).thenReturn(results);
+
+    List<Document> documents = asyncCollection.find(query).join();
+    assertEquals(1, documents.size());
+    assertSame(document, documents.get(0));
+    verify(results).close();
+  }
+
+  @Test
+  void testOperationsAreBoundedByTheThreads() throws Exception {
+    assertOperationsAreBounded(asyncCollection);
+  }
+
+  @Test
+  void testOperationsAreBoundedOnVirtualThreads() throws Exception {
+    // Falls back to platform threads on the runtimes without virtual threads
+    ExecutorService virtualThreads =
+        AsyncCollection.newExecutor(
+            ConfigFactory.parseMap(
+                Map.of(
+                    AsyncCollection.ASYNC_THREADS_CONFIG,
+                    2,
+                    AsyncCollection.VIRTUAL_THREADS_CONFIG,
+                    true)),
+            "test");
+    try {
+      assertOperationsAreBounded(new AsyncCollection(collection, virtualThreads));
+    } finally {
+      virtualThreads.shutdownNow();
+    }
+  }
+
+  @Test
+  void testRunner() {
+    AtomicInteger leases = new AtomicInteger();
+    AsyncCollection leased =
+        new AsyncCollection(
+            new AsyncCollection.CollectionRunner() {
+              @Override
+              public <T> T run(AsyncCollection.Operation<T> operation) throws Exception {
+                leases.incrementAndGet();
+                return operation.apply(collection);
+              }
+            },
+            executor);
+    when(collection.count()).thenReturn(3L);
+
+    assertEquals(3L, leased.count().join());
+    assertEquals(3L, leased.count().join());
+    assertEquals(2, leases.get());
+  }
+
+  private void assertOperationsAreBounded(AsyncCollection asyncCollection) throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    when(collection.count())
+        .thenAnswer(
+            invocation -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              release.await(5, TimeUnit.SECONDS);
+              running.decrementAndGet();
+              return 1L;
+            });
+
+    List<CompletableFuture<Long>> counts =
+        List.of(
+            asyncCollection.count(),
+            asyncCollection.count(),
+            asyncCollection.count(),
+            asyncCollection.count());
+    // The operations beyond the limit are queued
+    Thread.sleep(100);
+    counts.forEach(count -> assertFalse(count.isDone()));
+    release.countDown();
+
+    counts.forEach(count -> assertEquals(1L, count.join()));
+    assertEquals(2, maxRunning.get());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static CloseableIterator<Document> iteratorOf(List<Document> documents) {
+    Iterator<Document> iterator = documents.iterator();
+    CloseableIterator<Document> results = mock(CloseableIterator.class);
+    when(results.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+    when(results.next()).thenAnswer(invocation -> iterator.next());
+    return results;
+  }
+}
@@ -0,0 +1,165 @@
+package org.hypertrace.core.documentstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class DocumentPublisherTest {
+  private final List<Integer> batchSizes = new ArrayList<>();
+  private final List<TestCursor> cursors = new ArrayList<>();
+
+  @Test
+  void testDemandIsHonoured() throws IOException {
+    DocumentPublisher publisher = new DocumentPublisher(this::open, Runnable::run);
+    TestSubscriber subscriber = new TestSubscriber();
+    publisher.subscribe(subscriber);
+    assertTrue(subscriber.documents.isEmpty());
+    assertTrue(cursors.isEmpty());
+
+    subscriber.subscription.request(2);
+    assertEquals(List.of("0", "1"), subscriber.values());
+    assertEquals(List.of(2), batchSizes);
+    assertEquals(2, cursors.get(0).read);
+    assertFalse(subscriber.completed);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(5, subscriber.documents.size());
+    assertTrue(subscriber.completed);
+    assertTrue(cursors.get(0).closed);
+    assertNull(subscriber.error);
+  }
+
+  @Test
+  void testCancelClosesTheCursor() {
+    DocumentPublisher publisher = new DocumentPublisher(this::open, Runnable::run);
+    TestSubscriber subscriber = new TestSubscriber();
+    publisher.subscribe(subscriber);
+
+    subscriber.subscription.request(1);
+    subscriber.subscription.cancel();
+    subscriber.subscription.request(1);
+    assertEquals(List.of("0"), subscriber.values());
+    assertTrue(cursors.get(0).closed);
+    assertFalse(subscriber.completed);
+  }
+
+  @Test
+  void testInvalidRequestAndFailure() {
+    TestSubscriber invalid = new TestSubscriber();
+    new DocumentPublisher(this::open, Runnable::run).subscribe(invalid);
+    invalid.subscription.request(0);
+    assertEquals(IllegalArgumentException.class, invalid.error.getClass());
+
+    TestSubscriber failed = new TestSubscriber();
+    new DocumentPublisher(
+            batchSize -> {
+              throw new IllegalStateException("unavailable");
+            },
+            Runnable::run)
+        .subscribe(failed);
+    failed.subscription.request(1);
+    assertEquals(IllegalStateException.class, failed.error.getClass());
+  }
+
+  @Test
+  void testEachSubscriberRunsTheQuery() throws InterruptedException {
+    DocumentPublisher publisher = new DocumentPublisher(this::open);
+    TestSubscriber first = new TestSubscriber();
+    TestSubscriber second = new TestSubscriber();
+    publisher.subscribe(first);
+    publisher.subscribe(second);
+    first.subscription.request(10);
+    second.subscription.request(10);
+
+    assertTrue(first.done.await(5, TimeUnit.SECONDS));
+    assertTrue(second.done.await(5, TimeUnit.SECONDS));
+    assertEquals(first.values(), second.values());
+    assertEquals(2, cursors.size());
+  }
+
+  private synchronized CloseableIterator<Document> open(int batchSize) {
+    batchSizes.add(batchSize);
+    TestCursor cursor = new TestCursor(5);
+    cursors.add(cursor);
+    return cursor;
+  }
+
+  private static class TestCursor implements CloseableIterator<Document> {
+    private final Iterator<Integer> values;
+    private int read;
+    private boolean closed;
+
+    private TestCursor(int size) {
+      this.values = IntStream.range(0, size).boxed().collect(Collectors.toList()).iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return values.hasNext();
+    }
+
+    @Override
+    public Document next() {
+      read++;
+      try {
+        return new JSONDocument("{\"n\":\"" + values.next() + "\"}");
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static class TestSubscriber implements Flow.Subscriber<Document> {
+    private final List<Document> documents = new ArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private Flow.Subscription subscription;
+    private boolean completed;
+    private Throwable error;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Document document) {
+      documents.add(document);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+      done.countDown();
+    }
+
+    private List<String> values() {
+      return documents.stream()
+          .map(document -> document.toJson().replaceAll("\\D", ""))
+          .collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,32 @@
+package org.hypertrace.core.documentstore;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class MaterializedViewRefresherTest {
+
+  @Test
+  void testScheduledRefreshes() {
+    Datastore datastore = mock(Datastore.class);
+    when(datastore.refreshMaterializedView("totals")).thenReturn(true);
+    when(datastore.refreshMaterializedView("failing")).thenThrow(new IllegalStateException());
+
+    try (MaterializedViewRefresher refresher = new MaterializedViewRefresher(datastore)) {
+      refresher.schedule("totals", Duration.ofMillis(10));
+      refresher.schedule("failing", Duration.ofMillis(10));
+      refresher.schedule("cancelled", Duration.ofHours(1));
+      refresher.cancel("cancelled");
+
+      // The failures do not stop the schedules
+      verify(datastore, timeout(5000).atLeast(3)).refreshMaterializedView("totals");
+      verify(datastore, timeout(5000).atLeast(3)).refreshMaterializedView("failing");
+      verify(datastore, never()).refreshMaterializedView("cancelled");
+    }
+  }
+}
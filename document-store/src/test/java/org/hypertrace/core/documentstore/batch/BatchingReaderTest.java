@@ -0,0 +1,152 @@
+package org.hypertrace.core.documentstore.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.DatastoreProvider;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BatchingReaderTest {
+  private static final Key KEY_1 = new SingleValueKey("tenant", "1");
+  private static final Key KEY_2 = new SingleValueKey("tenant", "2");
+  private static final Key MISSING_KEY = new SingleValueKey("tenant", "3");
+
+  private Collection collection;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    collection =
+        spy(
+            DatastoreProvider.getDatastore("InMemory", ConfigFactory.empty())
+                .getCollection("items"));
+    collection.upsert(KEY_1, new JSONDocument("{\"item\":\"soap\"}"));
+    collection.upsert(KEY_2, new JSONDocument("{\"item\":\"comb\"}"));
+  }
+
+  @Test
+  void testReadsWithinTheDelayAreCoalesced() throws Exception {
+    try (BatchingReader reader = new BatchingReader(collection, 100, Duration.ofMillis(200))) {
+      List<CompletableFuture<Optional<Document>>> futures =
+          List.of(reader.get(KEY_1), reader.get(MISSING_KEY), reader.get(KEY_2), reader.get(KEY_1));
+
+      assertTrue(get(futures.get(0)).orElseThrow().toJson().contains("soap"));
+      assertTrue(get(futures.get(1)).isEmpty());
+      assertTrue(get(futures.get(2)).orElseThrow().toJson().contains("comb"));
+      assertSame(get(futures.get(0)).orElseThrow(), get(futures.get(3)).orElseThrow());
+      verify(collection, times(1)).getAll(Set.of(KEY_1, MISSING_KEY, KEY_2));
+    }
+  }
+
+  @Test
+  void testFullBatchesAreReadRightAway() throws Exception {
+    try (BatchingReader reader = new BatchingReader(collection, 2, Duration.ofHours(1))) {
+      CompletableFuture<Optional<Document>> first = reader.get(KEY_1);
+      CompletableFuture<Optional<Document>> second = reader.get(KEY_2);
+      CompletableFuture<Optional<Document>> third = reader.get(MISSING_KEY);
+
+      assertTrue(get(first).isPresent());
+      assertTrue(get(second).isPresent());
+      assertFalse(third.isDone());
+      reader.flush();
+      assertTrue(get(third).isEmpty());
+      verify(collection, times(2)).getAll(any());
+    }
+  }
+
+  @Test
+  void testFailuresAreReportedToAllTheCallers() {
+    Collection failing = mock(Collection.class);
+    IllegalStateException error = new IllegalStateException("unavailable");
+    when(failing.getAll(any())).thenThrow(error);
+
+    try (BatchingReader reader = new BatchingReader(failing, 100, Duration.ofMillis(10))) {
+      List<CompletableFuture<Optional<Document>>> futures =
+          List.of(reader.get(KEY_1), reader.get(KEY_2));
+      for (CompletableFuture<Optional<Document>> future : futures) {
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> get(future));
+        assertSame(error, thrown.getCause());
+      }
+    }
+  }
+
+  @Test
+  void testErrorsAreReportedToTheCallers() {
+    Collection failing = mock(Collection.class);
+    NoClassDefFoundError error = new NoClassDefFoundError("missing");
+    when(failing.getAll(any())).thenThrow(error);
+
+    try (BatchingReader reader = new BatchingReader(failing, 100, Duration.ofMillis(10))) {
+      CompletableFuture<Optional<Document>> future = reader.get(KEY_1);
+      ExecutionException thrown = assertThrows(ExecutionException.class, () -> get(future));
+      assertSame(error, thrown.getCause());
+    }
+  }
+
+  @Test
+  void testConcurrentReadsAreBounded() throws Exception {
+    Collection slow = mock(Collection.class);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    when(slow.getAll(any()))
+        .thenAnswer(
+            invocation -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              Thread.sleep(20);
+              running.decrementAndGet();
+              return Map.of();
+            });
+
+    try (BatchingReader reader = new BatchingReader(slow, 1, Duration.ofHours(1), 2)) {
+      List<CompletableFuture<Optional<Document>>> futures = new ArrayList<>();
+      for (int i = 0; i < 6; i++) {
+        futures.add(reader.get(new SingleValueKey("tenant", String.valueOf(i))));
+      }
+      for (CompletableFuture<Optional<Document>> future : futures) {
+        assertTrue(get(future).isEmpty());
+      }
+    }
+    assertEquals(2, maxRunning.get());
+  }
+
+  @Test
+  void testPendingReadsCompleteOnClose() throws Exception {
+    BatchingReader reader = new BatchingReader(collection, 100, Duration.ofHours(1));
+    CompletableFuture<Optional<Document>> future = reader.get(KEY_1);
+    reader.close();
+
+    assertTrue(get(future).isPresent());
+    assertThrows(IllegalStateException.class, () -> reader.get(KEY_2));
+  }
+
+  private static Optional<Document> get(CompletableFuture<Optional<Document>> future)
+      throws Exception {
+    return future.get(5, TimeUnit.SECONDS);
+  }
+}
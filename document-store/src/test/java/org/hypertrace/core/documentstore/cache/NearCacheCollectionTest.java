@@ -0,0 +1,118 @@
+package org.hypertrace.core.documentstore.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Ticker;
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.DatastoreProvider;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NearCacheCollectionTest {
+  private static final Duration TIME_TO_LIVE = Duration.ofSeconds(10);
+  private static final Key KEY_1 = new SingleValueKey("tenant", "1");
+  private static final Key KEY_2 = new SingleValueKey("tenant", "2");
+
+  private final AtomicLong nanos = new AtomicLong();
+  private Collection delegate;
+  private NearCacheCollection collection;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    delegate =
+        spy(
+            DatastoreProvider.getDatastore("InMemory", ConfigFactory.empty())
+                .getCollection("items"));
+    collection =
+        new NearCacheCollection(
+            delegate,
+            100,
+            TIME_TO_LIVE,
+            new Ticker() {
+              @Override
+              public long read() {
+                return nanos.get();
+              }
+            });
+    delegate.upsert(KEY_1, new JSONDocument("{\"item\":\"soap\"}"));
+    delegate.upsert(KEY_2, new JSONDocument("{\"item\":\"comb\"}"));
+  }
+
+  @Test
+  void testReadsAreCached() throws IOException {
+    assertEquals("soap", getItem(KEY_1));
+    assertEquals("soap", getItem(KEY_1));
+    verify(delegate, times(1)).getIfModified(any());
+
+    // Only the missing documents are read
+    Map<Key, Document> documents =
+        collection.getAll(List.of(KEY_2, new SingleValueKey("tenant", "3"), KEY_1));
+    assertEquals(List.of(KEY_2, KEY_1), List.copyOf(documents.keySet()));
+    verify(delegate, times(1))
+        .getIfModified(
+            Map.of(KEY_2, Instant.EPOCH, new SingleValueKey("tenant", "3"), Instant.EPOCH));
+  }
+
+  @Test
+  void testWritesInvalidateTheCachedDocuments() throws IOException {
+    assertEquals("soap", getItem(KEY_1));
+    collection.upsert(KEY_1, new JSONDocument("{\"item\":\"towel\"}"));
+    assertEquals("towel", getItem(KEY_1));
+
+    collection.delete(KEY_1);
+    assertTrue(collection.get(KEY_1).isEmpty());
+  }
+
+  @Test
+  void testStaleDocumentsAreRevalidated() throws Exception {
+    assertEquals("soap", getItem(KEY_1));
+    assertEquals("comb", getItem(KEY_2));
+
+    // The writes made by other clients are noticed once the documents are revalidated
+    Thread.sleep(2);
+    delegate.upsert(KEY_1, new JSONDocument("{\"item\":\"towel\"}"));
+    delegate.delete(KEY_2);
+    assertEquals("soap", getItem(KEY_1));
+
+    nanos.addAndGet(TIME_TO_LIVE.toNanos());
+    clearInvocations(delegate);
+    Map<Key, Document> documents = collection.getAll(List.of(KEY_1, KEY_2));
+    verify(delegate, times(1)).getIfModified(any());
+    assertEquals(List.of(KEY_1), List.copyOf(documents.keySet()));
+    assertEquals("towel", getItem(KEY_1));
+
+    // The documents not updated since are revalidated without being read again
+    nanos.addAndGet(TIME_TO_LIVE.toNanos());
+    clearInvocations(delegate);
+    Document cached = collection.get(KEY_1).orElseThrow();
+    verify(delegate, times(1)).getIfModified(any());
+    clearInvocations(delegate);
+    assertSame(cached, collection.get(KEY_1).orElseThrow());
+    verify(delegate, never()).getIfModified(any());
+  }
+
+  private String getItem(Key key) throws IOException {
+    Document document = collection.get(key).orElseThrow();
+    return new ObjectMapper().readTree(document.toJson()).get("item").textValue();
+  }
+}
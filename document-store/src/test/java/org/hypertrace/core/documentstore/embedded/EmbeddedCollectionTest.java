@@ -0,0 +1,200 @@
+package org.hypertrace.core.documentstore.embedded;
+
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Datastore;
+import org.hypertrace.core.documentstore.DatastoreProvider;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.query.Query;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EmbeddedCollectionTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String TENANT = "tenant";
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir Path directory;
+
+  @Test
+  void testReopenRecoversDocumentsAndDeletions() throws IOException {
+    try (EmbeddedCollection collection = open()) {
+      collection.createIndex("item");
+      for (int i = 0; i < 100; i++) {
+        upsert(collection, i, "item-" + (i % 10));
+      }
+      upsert(collection, 7, "updated");
+      collection.delete(new SingleValueKey(TENANT, "3"));
+    }
+
+    try (EmbeddedCollection collection = open()) {
+      assertEquals(99, collection.count());
+      assertEquals(Set.of("item"), collection.getIndexedPaths());
+      assertEquals("updated", item(collection, 7));
+      assertFalse(
+          collection.find(query("_id", new SingleValueKey(TENANT, "3").toString())).hasNext());
+      assertEquals(9, count(collection.find(query("item", "item-3"))));
+    }
+  }
+
+  @Test
+  void testCompactionKeepsLiveDocuments() throws IOException {
+    try (EmbeddedCollection collection = open()) {
+      for (int round = 0; round < 5; round++) {
+        for (int i = 0; i < 50; i++) {
+          upsert(collection, i, "round-" + round);
+        }
+      }
+      final int segmentsBefore = collection.getSegmentCount();
+
+      assertTrue(collection.compact(0.5) > 0);
+      assertTrue(collection.getSegmentCount() < segmentsBefore);
+      assertEquals(50, collection.count());
+      assertEquals("round-4", item(collection, 12));
+    }
+
+    try (EmbeddedCollection collection = open()) {
+      assertEquals(50, collection.count());
+      assertEquals("round-4", item(collection, 49));
+    }
+  }
+
+  @Test
+  void testCompactionKeepsDeletions() throws IOException {
+    try (EmbeddedCollection collection = open()) {
+      for (int i = 0; i < 50; i++) {
+        upsert(collection, i, "item");
+      }
+      for (int i = 0; i < 50; i += 2) {
+        collection.delete(new SingleValueKey(TENANT, String.valueOf(i)));
+      }
+      collection.compact(0.9);
+    }
+
+    try (EmbeddedCollection collection = open()) {
+      assertEquals(25, collection.count());
+    }
+  }
+
+  @Test
+  void testPartiallyWrittenRecordIsDiscarded() throws IOException {
+    try (EmbeddedCollection collection = open()) {
+      upsert(collection, 1, "first");
+      upsert(collection, 2, "second");
+    }
+
+    // Corrupt the tail of the last record, as a crash in the middle of a write would
+    final Path segment;
+    try (Stream<Path> files = Files.list(directory)) {
+      segment = files.filter(LogSegment::isSegment).sorted().reduce((a, b) -> b).orElseThrow();
+    }
+    final int end = findEnd(segment);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.seek(end - 1);
+      file.write('x');
+    }
+
+    try (EmbeddedCollection collection = open()) {
+      assertEquals(1, collection.count());
+      assertEquals("first", item(collection, 1));
+
+      upsert(collection, 3, "third");
+    }
+
+    try (EmbeddedCollection collection = open()) {
+      assertEquals(2, collection.count());
+      assertEquals("third", item(collection, 3));
+    }
+  }
+
+  @Test
+  void testDatastore() throws IOException {
+    final Datastore datastore =
+        DatastoreProvider.getDatastore(
+            "Embedded",
+            ConfigFactory.parseMap(
+                Map.of(
+                    EmbeddedDatastore.DATA_DIR_CONFIG,
+                    directory.toString(),
+                    EmbeddedDatastore.SEGMENT_SIZE_CONFIG,
+                    SEGMENT_SIZE)));
+    try {
+      datastore.createCollection("items", Map.of("indexes", "item"));
+      final Collection collection = datastore.getCollection("items");
+      collection.upsert(new SingleValueKey(TENANT, "1"), new JSONDocument("{\"item\":\"soap\"}"));
+
+      assertEquals(Set.of("items"), datastore.listCollections());
+      assertTrue(datastore.healthCheck());
+      assertThrows(IllegalArgumentException.class, () -> datastore.getCollection("../items"));
+
+      assertTrue(datastore.deleteCollection("items"));
+      assertFalse(Files.exists(directory.resolve("items")));
+    } finally {
+      ((EmbeddedDatastore) datastore).close();
+    }
+  }
+
+  private EmbeddedCollection open() throws IOException {
+    return new EmbeddedCollection("items", directory, SEGMENT_SIZE, false);
+  }
+
+  private static int findEnd(final Path segment) throws IOException {
+    final LogSegment opened = LogSegment.open(segment);
+    opened.recover((key, offset, length, tombstone) -> {});
+    return opened.getWriteOffset();
+  }
+
+  private static void upsert(final EmbeddedCollection collection, final int id, final String item)
+      throws IOException {
+    collection.upsert(
+        new SingleValueKey(TENANT, String.valueOf(id)),
+        new JSONDocument(MAPPER.createObjectNode().put("item", item).put("id", id)));
+  }
+
+  private static String item(final EmbeddedCollection collection, final int id) throws IOException {
+    final List<Document> documents = new ArrayList<>();
+    collection.find(query("id", id)).forEachRemaining(documents::add);
+    assertEquals(1, documents.size());
+    return MAPPER.readTree(documents.get(0).toJson()).get("item").asText();
+  }
+
+  private static long count(final CloseableIterator<Document> iterator) {
+    final List<Document> documents = new ArrayList<>();
+    iterator.forEachRemaining(documents::add);
+    return documents.size();
+  }
+
+  private static Query query(final String field, final Object value) {
+    return Query.builder()
+        .setFilter(
+            RelationalExpression.of(
+                IdentifierExpression.of(field),
+                EQ,
+                value instanceof Integer
+                    ? ConstantExpression.of((Integer) value)
+                    : ConstantExpression.of((String) value)))
+        .build();
+  }
+}
@@ -0,0 +1,165 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.AND;
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.OR;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.CONTAINS;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EXISTS;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GTE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.IN;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LIKE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NEQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NOT_IN;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.operators.RelationalOperator;
+import org.junit.jupiter.api.Test;
+
+class FilterPredicateCompilerTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final JsonNode document =
+      parse(
+          "{\"item\":\"Shampoo\",\"price\":10,\"weight\":2.5,\"tags\":[\"hair\",\"care\"],"
+              + "\"sales\":[{\"city\":\"delhi\",\"medium\":[{\"type\":\"retail\",\"volume\":5}]},"
+              + "{\"city\":\"pune\",\"medium\":[{\"type\":\"online\",\"volume\":7}]}],"
+              + "\"props\":{\"brand\":\"Dettol\",\"size\":null}}");
+
+  @Test
+  void testEquality() {
+    assertTrue(test("item", EQ, ConstantExpression.of("Shampoo")));
+    assertFalse(test("item", EQ, ConstantExpression.of("shampoo")));
+    assertTrue(test("price", EQ, ConstantExpression.of(10.0)));
+    assertTrue(test("tags", EQ, ConstantExpression.of("care")));
+    assertTrue(test("sales.medium.type", EQ, ConstantExpression.of("online")));
+    assertFalse(test("item", NEQ, ConstantExpression.of("Shampoo")));
+    assertTrue(test("missing", NEQ, ConstantExpression.of("Shampoo")));
+  }
+
+  @Test
+  void testNullMatchesMissingFields() {
+    assertTrue(FilterPredicateCompiler.compile(Filter.eq("props.size", null)).test(document));
+    assertTrue(FilterPredicateCompiler.compile(Filter.eq("props.color", null)).test(document));
+    assertFalse(FilterPredicateCompiler.compile(Filter.eq("props.brand", null)).test(document));
+  }
+
+  @Test
+  void testInUsesTheValuesOfAllTypes() {
+    assertTrue(test("price", IN, ConstantExpression.ofNumbers(List.of(1, 10L))));
+    assertTrue(test("price", IN, ConstantExpression.ofNumbers(List.of(10.0))));
+    assertTrue(test("weight", IN, ConstantExpression.ofNumbers(List.of(2.50, 3))));
+    assertFalse(test("weight", IN, ConstantExpression.ofNumbers(List.of(2, 3))));
+    assertTrue(test("tags", IN, ConstantExpression.ofStrings(List.of("skin", "hair"))));
+    assertTrue(test("sales.city", IN, ConstantExpression.ofStrings(List.of("pune"))));
+    assertFalse(test("item", IN, ConstantExpression.ofStrings(List.of("soap", "comb"))));
+    assertTrue(test("item", NOT_IN, ConstantExpression.ofStrings(List.of("soap", "comb"))));
+    assertTrue(test("missing", NOT_IN, ConstantExpression.ofStrings(List.of("soap"))));
+  }
+
+  @Test
+  void testComparisons() {
+    assertTrue(test("price", GTE, ConstantExpression.of(10)));
+    assertTrue(test("weight", LT, ConstantExpression.of(3)));
+    assertTrue(test("sales.medium.volume", GTE, ConstantExpression.of(7)));
+    // Values of different types never compare
+    assertFalse(test("item", LT, ConstantExpression.of(10)));
+  }
+
+  @Test
+  void testLike() {
+    assertTrue(test("item", LIKE, ConstantExpression.of("amp")));
+    assertTrue(test("item", LIKE, ConstantExpression.of("SHAM")));
+    assertTrue(test("item", LIKE, ConstantExpression.of("^sh.*oo$")));
+    assertFalse(test("item", LIKE, ConstantExpression.of("^amp")));
+    assertTrue(test("tags", LIKE, ConstantExpression.of("air")));
+  }
+
+  @Test
+  void testContainsAndExists() throws IOException {
+    assertTrue(test("tags", CONTAINS, ConstantExpression.of("hair")));
+    assertFalse(test("tags", CONTAINS, ConstantExpression.of("skin")));
+    assertTrue(
+        FilterPredicateCompiler.compile(
+                new Filter(Filter.Op.CONTAINS, "sales", MAPPER.readTree("{\"city\":\"delhi\"}")))
+            .test(document));
+    assertTrue(test("props.brand", EXISTS, ConstantExpression.of(true)));
+    assertFalse(test("props.color", EXISTS, ConstantExpression.of(true)));
+  }
+
+  @Test
+  void testLogicalExpressions() {
+    final Predicate<JsonNode> predicate =
+        FilterPredicateCompiler.compile(
+            LogicalExpression.builder()
+                .operator(OR)
+                .operand(relational("item", EQ, ConstantExpression.of("soap")))
+                .operand(
+                    LogicalExpression.builder()
+                        .operator(AND)
+                        .operand(relational("price", GTE, ConstantExpression.of(5)))
+                        .operand(relational("tags", EQ, ConstantExpression.of("hair")))
+                        .build())
+                .build());
+    assertTrue(predicate.test(document));
+
+    assertTrue(FilterPredicateCompiler.compile(Optional.empty()).test(document));
+    assertTrue(FilterPredicateCompiler.compile((Filter) null).test(document));
+    assertFalse(
+        FilterPredicateCompiler.compile(Filter.eq("item", "Shampoo").and(Filter.eq("price", 11)))
+            .test(document));
+  }
+
+  @Test
+  void testPredicatesAreReusable() {
+    final Predicate<JsonNode> predicate =
+        FilterPredicateCompiler.compile(relational("item", LIKE, ConstantExpression.of("^s.a")));
+    final List<JsonNode> documents =
+        List.of(parse("{\"item\":\"soap\"}"), parse("{\"item\":\"comb\"}"), document);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(2, documents.stream().filter(predicate).count());
+    }
+  }
+
+  @Test
+  void testUnsupportedExpression() {
+    assertThrows(
+        UnsupportedOperationException.class,
+        () ->
+            FilterPredicateCompiler.compile(
+                RelationalExpression.of(
+                    IdentifierExpression.of("price"), EQ, IdentifierExpression.of("weight"))));
+  }
+
+  private boolean test(
+      final String field, final RelationalOperator operator, final ConstantExpression value) {
+    return FilterPredicateCompiler.compile(relational(field, operator, value)).test(document);
+  }
+
+  private static RelationalExpression relational(
+      final String field, final RelationalOperator operator, final ConstantExpression value) {
+    return RelationalExpression.of(IdentifierExpression.of(field), operator, value);
+  }
+
+  private static JsonNode parse(final String json) {
+    try {
+      return MAPPER.readTree(json);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(e);
+    }
+  }
+}
@@ -0,0 +1,708 @@
+package org.hypertrace.core.documentstore.memory;
+
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.APPROX_DISTINCT_COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT_COUNT;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.PERCENTILE;
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.SUM;
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.AND;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GT;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.IN;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.LIKE;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NEQ;
+import static org.hypertrace.core.documentstore.expression.operators.SortOrder.ASC;
+import static org.hypertrace.core.documentstore.expression.operators.SortOrder.DESC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.typesafe.config.ConfigFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hypertrace.core.documentstore.BulkArrayValueUpdateRequest;
+import org.hypertrace.core.documentstore.ChangeEvent;
+import org.hypertrace.core.documentstore.ChangedDocument;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.DatastoreProvider;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.hypertrace.core.documentstore.VersionedDocument;
+import org.hypertrace.core.documentstore.WatchOptions;
+import org.hypertrace.core.documentstore.Watermark;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
+import org.hypertrace.core.documentstore.expression.type.FilterTypeExpression;
+import org.hypertrace.core.documentstore.query.Pagination;
+import org.hypertrace.core.documentstore.query.Query;
+import org.hypertrace.core.documentstore.query.Sampling;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InMemoryCollectionTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String TENANT = "tenant";
+
+  private InMemoryCollection collection;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    collection = new InMemoryCollection("items");
+    collection.createIndex("item");
+
+    upsert("1", "{\"item\":\"soap\",\"price\":10,\"quantity\":2,\"props\":{\"brand\":\"Dettol\"}}");
+    upsert(
+        "2", "{\"item\":\"mirror\",\"price\":20,\"quantity\":1,\"sales\":[{\"city\":\"delhi\"}]}");
+    upsert("3", "{\"item\":\"shampoo\",\"price\":5,\"quantity\":5}");
+    upsert(
+        "4", "{\"item\":\"shampoo\",\"price\":5,\"quantity\":10,\"props\":{\"brand\":\"Dove\"}}");
+    upsert(
+        "5",
+        "{\"item\":\"comb\",\"price\":7.5,\"quantity\":3,\"sales\":[{\"city\":\"mumbai\"},{\"city\":\"pune\"}]}");
+  }
+
+  @Test
+  void testFindWithFilterSortAndPagination() throws IOException {
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(IdentifierExpression.of("props.brand"))
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("price"), GT, ConstantExpression.of(5)))
+            .addSort(IdentifierExpression.of("price"), DESC)
+            .setPagination(Pagination.builder().offset(1).limit(2).build())
+            .build();
+
+    assertEquals(
+        List.of("{\"item\":\"soap\",\"props\":{\"brand\":\"Dettol\"}}", "{\"item\":\"comb\"}"),
+        toJson(collection.find(query)));
+  }
+
+  @Test
+  void testParallelScan() throws IOException {
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("price"), GT, ConstantExpression.of(5)))
+            .build();
+
+    // The partitions are split among the documents matching the filter
+    List<CloseableIterator<Document>> partitions = collection.parallelScan(query, 2);
+    assertEquals(2, partitions.size());
+    List<String> first = toJson(partitions.get(0));
+    List<String> second = toJson(partitions.get(1));
+    assertEquals(List.of("{\"item\":\"soap\"}"), first);
+    assertEquals(List.of("{\"item\":\"comb\"}", "{\"item\":\"mirror\"}"), second);
+
+    // Fewer partitions than requested for the few documents matching
+    assertEquals(3, collection.parallelScan(query, 10).size());
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            collection.parallelScan(
+                Query.builder().setPagination(Pagination.builder().limit(1).build()).build(), 2));
+  }
+
+  @Test
+  void testExecuteBatch() throws IOException {
+    Query find =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("price"), GT, ConstantExpression.of(5)))
+            .build();
+    Query totals =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("quantity")), "qty")
+            .addAggregation(IdentifierExpression.of("item"))
+            .addSort(IdentifierExpression.of("item"), ASC)
+            .build();
+
+    List<CloseableIterator<Document>> results = collection.executeBatch(List.of(find, totals));
+    assertEquals(2, results.size());
+    assertEquals(toJson(collection.aggregate(find)), toJson(results.get(0)));
+    assertEquals(toJson(collection.aggregate(totals)), toJson(results.get(1)));
+    assertEquals(List.of(), collection.executeBatch(List.of()));
+  }
+
+  @Test
+  void testFilterSemantics() throws IOException {
+    // NEQ matches the documents without the field as well
+    assertEquals(
+        4,
+        count(
+            RelationalExpression.of(
+                IdentifierExpression.of("props.brand"), NEQ, ConstantExpression.of("Dove"))));
+    // Filters on a path within an array match any of the elements
+    assertEquals(
+        1,
+        count(
+            RelationalExpression.of(
+                IdentifierExpression.of("sales.city"), EQ, ConstantExpression.of("pune"))));
+    // LIKE is a case-insensitive regex search
+    assertEquals(
+        2,
+        count(
+            RelationalExpression.of(
+                IdentifierExpression.of("item"), LIKE, ConstantExpression.of("SHAM"))));
+    // Numbers compare by value across types
+    assertEquals(
+        1,
+        count(
+            RelationalExpression.of(
+                IdentifierExpression.of("price"), EQ, ConstantExpression.of(10.0))));
+  }
+
+  @Test
+  void testIndexedFilterMatchesFullScan() throws IOException {
+    LogicalExpression filter =
+        LogicalExpression.builder()
+            .operator(AND)
+            .operand(
+                RelationalExpression.of(
+                    IdentifierExpression.of("item"),
+                    IN,
+                    ConstantExpression.ofStrings(List.of("shampoo", "comb"))))
+            .operand(
+                RelationalExpression.of(
+                    IdentifierExpression.of("quantity"), GT, ConstantExpression.of(4)))
+            .build();
+
+    assertEquals(2, count(filter));
+
+    // The index follows the updates and the deletes
+    upsert("3", "{\"item\":\"soap\",\"price\":5,\"quantity\":5}");
+    assertEquals(1, count(filter));
+    collection.delete(new SingleValueKey(TENANT, "4"));
+    assertEquals(0, count(filter));
+    assertEquals(
+        2,
+        count(
+            RelationalExpression.of(
+                IdentifierExpression.of("item"), EQ, ConstantExpression.of("soap"))));
+  }
+
+  @Test
+  void testAggregateWithGroupHavingAndSort() throws IOException {
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("quantity")), "qty")
+            .addSelection(AggregateExpression.of(COUNT, IdentifierExpression.of("props")), "props")
+            .addAggregation(IdentifierExpression.of("item"))
+            .setAggregationFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("qty"), GT, ConstantExpression.of(1)))
+            .addSort(IdentifierExpression.of("qty"), DESC)
+            .addSort(IdentifierExpression.of("item"), ASC)
+            .build();
+
+    assertEquals(
+        List.of(
+            "{\"item\":\"shampoo\",\"qty\":15,\"props\":1}",
+            "{\"item\":\"comb\",\"qty\":3,\"props\":0}",
+            "{\"item\":\"soap\",\"qty\":2,\"props\":1}"),
+        toJson(collection.aggregate(query)));
+    assertEquals(3, collection.count(query));
+  }
+
+  @Test
+  void testPercentileAndApproxDistinctCount() throws IOException {
+    Query query =
+        Query.builder()
+            .addSelection(
+                AggregateExpression.percentile(IdentifierExpression.of("quantity"), 0.5), "median")
+            .addSelection(
+                AggregateExpression.percentile(IdentifierExpression.of("quantity"), 0.9), "p90")
+            .addSelection(
+                AggregateExpression.of(APPROX_DISTINCT_COUNT, IdentifierExpression.of("item")),
+                "items")
+            .build();
+
+    // The quantities are 1, 2, 3, 5 and 10
+    assertEquals(
+        List.of("{\"median\":3.0,\"p90\":8.0,\"items\":4}"), toJson(collection.aggregate(query)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AggregateExpression.of(PERCENTILE, IdentifierExpression.of("quantity")));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> AggregateExpression.percentile(IdentifierExpression.of("quantity"), 95));
+  }
+
+  @Test
+  void testSampledAggregate() throws IOException {
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("quantity")), "qty")
+            .addSelection(AggregateExpression.of(COUNT, IdentifierExpression.of("props")), "props")
+            .addAggregation(IdentifierExpression.of("item"))
+            .addSort(IdentifierExpression.of("item"), ASC)
+            .setSampling(Sampling.of(1))
+            .build();
+
+    assertEquals(
+        List.of(
+            "{\"item\":\"comb\",\"qty\":3.0,\"props\":0,\"__sample_size\":1}",
+            "{\"item\":\"mirror\",\"qty\":1.0,\"props\":0,\"__sample_size\":1}",
+            "{\"item\":\"shampoo\",\"qty\":15.0,\"props\":1,\"__sample_size\":2}",
+            "{\"item\":\"soap\",\"qty\":2.0,\"props\":1,\"__sample_size\":1}"),
+        toJson(collection.aggregate(query)));
+
+    Query sampled =
+        Query.builder()
+            .addSelection(AggregateExpression.of(COUNT, IdentifierExpression.of("item")), "count")
+            .setSampling(Sampling.of(0.5))
+            .build();
+    for (int i = 0; i < 10; i++) {
+      // An empty sample has no group, hence no result
+      for (String json : toJson(collection.aggregate(sampled))) {
+        JsonNode result = MAPPER.readTree(json);
+        assertEquals(
+            2 * result.get(Sampling.SAMPLE_SIZE_ALIAS).asLong(), result.get("count").asLong());
+      }
+    }
+  }
+
+  @Test
+  void testAggregateWithUnnest() throws IOException {
+    Query query =
+        Query.builder()
+            .addSelection(
+                AggregateExpression.of(DISTINCT_COUNT, IdentifierExpression.of("sales.city")),
+                "cities")
+            .addFromClause(UnnestExpression.of(IdentifierExpression.of("sales"), false))
+            .build();
+
+    assertEquals(List.of("{\"cities\":3}"), toJson(collection.aggregate(query)));
+
+    Query preserving =
+        Query.builder()
+            .addFromClause(
+                UnnestExpression.builder()
+                    .identifierExpression(IdentifierExpression.of("sales"))
+                    .preserveNullAndEmptyArrays(true)
+                    .filterTypeExpression(
+                        RelationalExpression.of(
+                            IdentifierExpression.of("sales.city"),
+                            NEQ,
+                            ConstantExpression.of("pune")))
+                    .build())
+            .build();
+
+    assertEquals(5, collection.count(preserving));
+  }
+
+  @Test
+  void testLegacySearchAndTotal() throws IOException {
+    org.hypertrace.core.documentstore.Query query = new org.hypertrace.core.documentstore.Query();
+    query.setFilter(new Filter(Filter.Op.EQ, "item", "shampoo").and(Filter.eq("quantity", 10)));
+    query.addSelection("props.brand");
+
+    assertEquals(List.of("{\"props\":{\"brand\":\"Dove\"}}"), toJson(collection.search(query)));
+    assertEquals(1, collection.total(query));
+  }
+
+  @Test
+  void testWrites() throws Exception {
+    Key key = new SingleValueKey(TENANT, "1");
+
+    assertThrows(IOException.class, () -> collection.create(key, new JSONDocument("{}")));
+    assertTrue(
+        collection.create(new SingleValueKey(TENANT, "6"), new JSONDocument("{}")).isSucceed());
+
+    // Conditional update
+    assertEquals(
+        0,
+        collection
+            .update(key, new JSONDocument("{\"item\":\"x\"}"), Filter.eq("price", 11))
+            .getUpdatedCount());
+    assertEquals(
+        1,
+        collection
+            .update(
+                key,
+                new JSONDocument("{\"item\":\"soap\",\"tags\":[\"a\"]}"),
+                Filter.eq("price", 10))
+            .getUpdatedCount());
+
+    // Array operations
+    collection.bulkOperationOnArrayValue(
+        new BulkArrayValueUpdateRequest(
+            Set.of(key),
+            "tags",
+            BulkArrayValueUpdateRequest.Operation.ADD,
+            List.of(new JSONDocument("\"a\""), new JSONDocument("\"b\""))));
+    assertEquals(List.of("a", "b"), getStrings(key, "tags"));
+
+    collection.bulkOperationOnArrayValue(
+        new BulkArrayValueUpdateRequest(
+            Set.of(key),
+            "tags",
+            BulkArrayValueUpdateRequest.Operation.REMOVE,
+            List.of(new JSONDocument("\"a\""))));
+    assertEquals(List.of("b"), getStrings(key, "tags"));
+
+    // Sub-documents
+    assertTrue(collection.updateSubDoc(key, "props.brand", new JSONDocument("\"Lux\"")));
+    assertTrue(collection.deleteSubDoc(key, "tags"));
+    JsonNode stored = get(key);
+    assertEquals("Lux", stored.at("/props/brand").textValue());
+    assertFalse(stored.has("tags"));
+    assertFalse(stored.has("_id"));
+    assertTrue(stored.has("createdTime"));
+
+    assertTrue(collection.delete(Filter.eq("item", "shampoo")));
+    assertEquals(4, collection.count());
+  }
+
+  @Test
+  void testWatch() throws IOException {
+    WatchOptions options =
+        WatchOptions.builder().fullDocument(true).maxAwaitTime(Duration.ofMillis(10)).build();
+    FilterTypeExpression filter =
+        RelationalExpression.of(IdentifierExpression.of("price"), GT, ConstantExpression.of(5));
+
+    String resumeToken;
+    try (CloseableIterator<ChangeEvent> changes = collection.watch(filter, options)) {
+      upsert("6", "{\"item\":\"towel\",\"price\":12}");
+      upsert("7", "{\"item\":\"brush\",\"price\":2}");
+      upsert("6", "{\"item\":\"towel\",\"price\":15}");
+      collection.delete(new SingleValueKey(TENANT, "7"));
+
+      ChangeEvent event = changes.next();
+      assertEquals(ChangeEvent.Type.INSERT, event.getType());
+      assertEquals(TENANT + ":6", event.getKey());
+      JsonNode document = MAPPER.readTree(event.getDocument().orElseThrow().toJson());
+      assertEquals("towel", document.get("item").textValue());
+      assertFalse(document.has("_id"));
+
+      event = changes.next();
+      assertEquals(ChangeEvent.Type.UPDATE, event.getType());
+      resumeToken = event.getResumeToken();
+
+      // Deletions are reported whatever the filter
+      event = changes.next();
+      assertEquals(ChangeEvent.Type.DELETE, event.getType());
+      assertEquals(TENANT + ":7", event.getKey());
+      assertTrue(event.getDocument().isEmpty());
+    }
+
+    try (CloseableIterator<ChangeEvent> changes =
+        collection.watch(null, WatchOptions.builder().resumeAfter(resumeToken).build())) {
+      ChangeEvent event = changes.next();
+      assertEquals(ChangeEvent.Type.DELETE, event.getType());
+      assertTrue(event.getDocument().isEmpty());
+    }
+
+    CloseableIterator<ChangeEvent> changes = collection.watch(null, options);
+    changes.close();
+    assertFalse(changes.hasNext());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> collection.watch(null, WatchOptions.builder().resumeAfter("100").build()));
+  }
+
+  @Test
+  void testGetAndGetAll() throws IOException {
+    Document document = collection.get(new SingleValueKey(TENANT, "2")).orElseThrow();
+    assertEquals("mirror", MAPPER.readTree(document.toJson()).get("item").asText());
+    assertTrue(collection.get(new SingleValueKey(TENANT, "missing")).isEmpty());
+
+    Map<Key, Document> documents =
+        collection.getAll(
+            List.of(
+                new SingleValueKey(TENANT, "3"),
+                new SingleValueKey(TENANT, "missing"),
+                new SingleValueKey(TENANT, "1")));
+    assertEquals(
+        List.of(new SingleValueKey(TENANT, "3"), new SingleValueKey(TENANT, "1")),
+        List.copyOf(documents.keySet()));
+    assertFalse(documents.get(new SingleValueKey(TENANT, "1")).toJson().contains("_id"));
+  }
+
+  @Test
+  void testGetIfModified() throws IOException {
+    Key key = new SingleValueKey(TENANT, "1");
+    Instant updateTime =
+        collection.getIfModified(Map.of(key, Instant.EPOCH)).get(key).getUpdateTime();
+
+    assertTrue(collection.getIfModified(Map.of(key, updateTime)).get(key).getDocument().isEmpty());
+    // A copy newer than the stored document, as when the document is overwritten with an older
+    // update time, is read again
+    VersionedDocument overwritten =
+        collection.getIfModified(Map.of(key, updateTime.plusMillis(1))).get(key);
+    assertEquals(
+        "soap",
+        MAPPER.readTree(overwritten.getDocument().orElseThrow().toJson()).get("item").asText());
+    assertEquals(updateTime, overwritten.getUpdateTime());
+  }
+
+  @Test
+  void testExportAndImport() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    List<Long> progress = new ArrayList<>();
+    assertEquals(5, collection.exportTo(output, progress::add));
+    assertEquals(List.of(5L), progress);
+    String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(5, lines.length);
+
+    InMemoryCollection copy = new InMemoryCollection("copy");
+    copy.upsert(new SingleValueKey(TENANT, "1"), new JSONDocument("{\"item\":\"towel\"}"));
+    // The documents whose keys exist already are skipped
+    String input = String.join("\n", lines) + "\n\n";
+    assertEquals(4, copy.importFrom(toStream(input), count -> {}));
+    assertEquals(5, copy.count());
+    assertEquals("towel", get(copy, new SingleValueKey(TENANT, "1")).get("item").asText());
+    assertEquals(
+        get(collection, new SingleValueKey(TENANT, "5")).get("sales"),
+        get(copy, new SingleValueKey(TENANT, "5")).get("sales"));
+
+    assertThrows(
+        IOException.class, () -> copy.importFrom(toStream("{\"item\":\"soap\"}"), count -> {}));
+    assertThrows(IOException.class, () -> copy.importFrom(toStream("[1]"), count -> {}));
+  }
+
+  @Test
+  void testChangesSince() throws Exception {
+    // Documents updated at the same time are told apart by their keys
+    Map<Key, Document> bulk = new LinkedHashMap<>();
+    for (int i = 16; i >= 10; i--) {
+      bulk.put(
+          new SingleValueKey(TENANT, String.valueOf(i)), new JSONDocument("{\"n\":" + i + "}"));
+    }
+    collection.bulkUpsert(bulk);
+
+    List<ChangedDocument> changes = readChanges(Watermark.EARLIEST, 3);
+    assertEquals(12, changes.size());
+    List<String> keys = new ArrayList<>();
+    changes.forEach(change -> keys.add(change.getWatermark().getKey()));
+    assertEquals(12, Set.copyOf(keys).size());
+    assertEquals(
+        List.of(
+            "tenant:10",
+            "tenant:11",
+            "tenant:12",
+            "tenant:13",
+            "tenant:14",
+            "tenant:15",
+            "tenant:16"),
+        keys.stream().filter(key -> key.length() == 9).collect(Collectors.toList()));
+    for (int i = 1; i < changes.size(); i++) {
+      Watermark previous = changes.get(i - 1).getWatermark();
+      Watermark current = changes.get(i).getWatermark();
+      assertTrue(
+          previous.getTimestamp().isBefore(current.getTimestamp())
+              || previous.getKey().compareTo(current.getKey()) < 0);
+    }
+
+    // Resuming from any watermark reads the rest
+    assertEquals(changes.subList(8, 12), readChanges(changes.get(7).getWatermark(), 2));
+
+    Thread.sleep(2);
+    Watermark last = changes.get(11).getWatermark();
+    assertTrue(readChanges(last, 3).isEmpty());
+    collection.updateSubDoc(new SingleValueKey(TENANT, "1"), "price", new JSONDocument("11"));
+    List<ChangedDocument> updated = readChanges(last, 3);
+    assertEquals(1, updated.size());
+    assertEquals("tenant:1", updated.get(0).getWatermark().getKey());
+    assertEquals(11, MAPPER.readTree(updated.get(0).getDocument().toJson()).get("price").asInt());
+  }
+
+  @Test
+  void testDatastoreRegistration() throws IOException {
+    InMemoryDatastore datastore =
+        (InMemoryDatastore) DatastoreProvider.getDatastore("InMemory", ConfigFactory.empty());
+
+    assertTrue(
+        datastore.createCollection("test", Map.of(InMemoryDatastore.INDEXES_OPTION, "a,b.c")));
+    Collection collection = datastore.getCollection("test");
+    collection.upsert(new SingleValueKey(TENANT, "1"), new JSONDocument("{\"a\":1}"));
+
+    assertEquals(Set.of("a", "b.c"), ((InMemoryCollection) collection).getIndexedPaths());
+    assertEquals(Set.of("test"), datastore.listCollections());
+    assertEquals(1, datastore.getCollection("test").count());
+    assertTrue(datastore.deleteCollection("test"));
+    assertEquals(0, datastore.getCollection("test").count());
+  }
+
+  @Test
+  void testMaterializedView() throws IOException {
+    InMemoryDatastore datastore =
+        (InMemoryDatastore) DatastoreProvider.getDatastore("InMemory", ConfigFactory.empty());
+    Collection items = datastore.getCollection("items");
+    items.upsert(
+        new SingleValueKey(TENANT, "1"), new JSONDocument("{\"item\":\"soap\",\"qty\":2}"));
+    items.upsert(
+        new SingleValueKey(TENANT, "2"), new JSONDocument("{\"item\":\"soap\",\"qty\":3}"));
+    items.upsert(
+        new SingleValueKey(TENANT, "3"), new JSONDocument("{\"item\":\"comb\",\"qty\":1}"));
+
+    Query totals =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("qty")), "qty")
+            .addAggregation(IdentifierExpression.of("item"))
+            .build();
+    Query read =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(IdentifierExpression.of("qty"))
+            .addSort(IdentifierExpression.of("item"), ASC)
+            .build();
+    assertTrue(datastore.createMaterializedView("totals", "items", totals));
+    assertEquals(
+        List.of("{\"item\":\"comb\",\"qty\":1}", "{\"item\":\"soap\",\"qty\":5}"),
+        toJson(datastore.getCollection("totals").find(read)));
+
+    // The view is stale until refreshed, and is not refreshed when registered again
+    items.upsert(
+        new SingleValueKey(TENANT, "3"), new JSONDocument("{\"item\":\"brush\",\"qty\":4}"));
+    assertTrue(datastore.createMaterializedView("totals", "items", totals));
+    assertEquals(2, datastore.getCollection("totals").count());
+
+    assertTrue(datastore.refreshMaterializedView("totals"));
+    assertEquals(
+        List.of("{\"item\":\"brush\",\"qty\":4}", "{\"item\":\"soap\",\"qty\":5}"),
+        toJson(datastore.getCollection("totals").find(read)));
+    assertFalse(datastore.refreshMaterializedView("items"));
+  }
+
+  @Test
+  void testTransaction() throws Exception {
+    InMemoryDatastore datastore =
+        (InMemoryDatastore) DatastoreProvider.getDatastore("InMemory", ConfigFactory.empty());
+    datastore.createCollection("stock", Map.of(InMemoryDatastore.INDEXES_OPTION, "item"));
+    Collection stock = datastore.getCollection("stock");
+    stock.upsert(
+        new SingleValueKey(TENANT, "1"), new JSONDocument("{\"item\":\"soap\",\"qty\":2}"));
+
+    long count =
+        datastore.inTransaction(
+            transaction -> {
+              Collection items = transaction.getCollection("stock");
+              items.upsert(
+                  new SingleValueKey(TENANT, "2"),
+                  new JSONDocument("{\"item\":\"comb\",\"qty\":1}"));
+              return items.count();
+            });
+    assertEquals(2, count);
+
+    IllegalStateException failure =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                datastore.inTransaction(
+                    transaction -> {
+                      Collection items = transaction.getCollection("stock");
+                      items.upsert(
+                          new SingleValueKey(TENANT, "1"),
+                          new JSONDocument("{\"item\":\"brush\",\"qty\":4}"));
+                      items.delete(new SingleValueKey(TENANT, "2"));
+                      items.upsert(
+                          new SingleValueKey(TENANT, "3"),
+                          new JSONDocument("{\"item\":\"mirror\",\"qty\":1}"));
+                      throw new IllegalStateException("out of stock");
+                    }));
+    assertEquals("out of stock", failure.getMessage());
+
+    // The rollback restores the documents and their index entries
+    Query read =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(IdentifierExpression.of("qty"))
+            .addSort(IdentifierExpression.of("item"), ASC)
+            .build();
+    assertEquals(
+        List.of("{\"item\":\"comb\",\"qty\":1}", "{\"item\":\"soap\",\"qty\":2}"),
+        toJson(stock.find(read)));
+    Query brushes =
+        Query.builder()
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("item"), EQ, ConstantExpression.of("brush")))
+            .build();
+    assertEquals(0, stock.count(brushes));
+  }
+
+  private void upsert(String id, String json) throws IOException {
+    collection.upsert(new SingleValueKey(TENANT, id), new JSONDocument(json));
+  }
+
+  private long count(FilterTypeExpression filter) throws IOException {
+    return toJson(collection.find(Query.builder().setFilter(filter).build())).size();
+  }
+
+  private JsonNode get(Key key) throws IOException {
+    org.hypertrace.core.documentstore.Query query = new org.hypertrace.core.documentstore.Query();
+    query.setFilter(Filter.eq("_id", key.toString()));
+    try (CloseableIterator<Document> iterator = collection.search(query)) {
+      return MAPPER.readTree(iterator.next().toJson());
+    }
+  }
+
+  private List<String> getStrings(Key key, String path) throws IOException {
+    List<String> values = new ArrayList<>();
+    get(key).get(path).forEach(value -> values.add(value.textValue()));
+    return values;
+  }
+
+  private List<ChangedDocument> readChanges(Watermark watermark, int batchSize) throws IOException {
+    List<ChangedDocument> changes = new ArrayList<>();
+    try (CloseableIterator<ChangedDocument> iterator =
+        collection.changesSince(watermark, batchSize)) {
+      iterator.forEachRemaining(changes::add);
+    }
+    return changes;
+  }
+
+  private static JsonNode get(Collection collection, Key key) throws IOException {
+    return MAPPER.readTree(collection.get(key).orElseThrow().toJson());
+  }
+
+  private static InputStream toStream(String input) {
+    return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> toJson(CloseableIterator<Document> iterator) throws IOException {
+    List<String> documents = new ArrayList<>();
+    try (iterator) {
+      while (iterator.hasNext()) {
+        JsonNode node = MAPPER.readTree(iterator.next().toJson());
+        ((ObjectNode) node).remove("createdTime");
+        ((ObjectNode) node).remove("lastUpdatedTime");
+        documents.add(MAPPER.writeValueAsString(node));
+      }
+    }
+    return documents;
+  }
+}
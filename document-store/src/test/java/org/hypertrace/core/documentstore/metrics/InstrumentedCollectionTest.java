@@ -0,0 +1,169 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.typesafe.config.ConfigFactory;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.hypertrace.core.documentstore.CloseableIterator;
+import org.hypertrace.core.documentstore.Collection;
+import org.hypertrace.core.documentstore.Document;
+import org.hypertrace.core.documentstore.JSONDocument;
+import org.hypertrace.core.documentstore.Key;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.hypertrace.core.documentstore.query.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class InstrumentedCollectionTest {
+  private static final String COLLECTION_NAME = "test_collection";
+
+  private Collection delegate;
+  private DefaultDocStoreMetricsListener listener;
+  private InstrumentedCollection collection;
+
+  @BeforeEach
+  void setUp() {
+    delegate = mock(Collection.class);
+    listener = new DefaultDocStoreMetricsListener();
+    collection = new InstrumentedCollection(delegate, COLLECTION_NAME, listener);
+  }
+
+  @Test
+  void testUpsertRecordsLatencyDocumentsAndPayload() throws IOException {
+    Key key = new SingleValueKey("tenant", "id");
+    Document document = new JSONDocument("{\"name\":\"value\"}");
+    when(delegate.upsert(key, document)).thenReturn(true);
+
+    assertTrue(collection.upsert(key, document));
+
+    OperationMetrics metrics = getMetrics(CollectionOperation.UPSERT);
+    assertEquals(1, metrics.getSuccessCount());
+    assertEquals(0, metrics.getErrorCount());
+    assertEquals(1, metrics.getDocumentCount());
+    assertEquals(document.toJson().length(), metrics.getPayloadBytes());
+    assertEquals(1, metrics.getLatencyNanos().getCount());
+  }
+
+  @Test
+  void testFailureIsRecordedAndRethrown() throws IOException {
+    Key key = new SingleValueKey("tenant", "id");
+    Document document = new JSONDocument("{}");
+    when(delegate.upsert(key, document)).thenThrow(new IOException("boom"));
+
+    assertThrows(IOException.class, () -> collection.upsert(key, document));
+
+    OperationMetrics metrics = getMetrics(CollectionOperation.UPSERT);
+    assertEquals(0, metrics.getSuccessCount());
+    assertEquals(1, metrics.getErrorCount());
+  }
+
+  @Test
+  void testFailedResultIsRecordedAsFailure() throws IOException {
+    when(delegate.bulkUpsert(any())).thenReturn(false);
+    when(delegate.count()).thenReturn(-1L);
+
+    assertFalse(
+        collection.bulkUpsert(Map.of(new SingleValueKey("tenant", "id"), new JSONDocument("{}"))));
+    assertEquals(-1, collection.count());
+
+    OperationMetrics bulkUpsertMetrics = getMetrics(CollectionOperation.BULK_UPSERT);
+    assertEquals(0, bulkUpsertMetrics.getSuccessCount());
+    assertEquals(1, bulkUpsertMetrics.getErrorCount());
+    assertEquals(0, bulkUpsertMetrics.getDocumentCount());
+    OperationMetrics countMetrics = getMetrics(CollectionOperation.COUNT);
+    assertEquals(0, countMetrics.getSuccessCount());
+    assertEquals(1, countMetrics.getErrorCount());
+  }
+
+  @Test
+  void testIteratorIsReportedOnceOnExhaustion() throws IOException {
+    List<Document> documents =
+        List.of(new JSONDocument("{\"a\":1}"), new JSONDocument("{\"a\":2}"));
+    when(delegate.find(any(Query.class))).thenReturn(iteratorOf(documents));
+
+    CloseableIterator<Document> iterator = collection.find(Query.builder().build());
+    assertFalse(listener.getMetrics(COLLECTION_NAME, CollectionOperation.FIND).isPresent());
+
+    int count = 0;
+    while (iterator.hasNext()) {
+      iterator.next();
+      count++;
+    }
+    iterator.close();
+
+    assertEquals(2, count);
+    OperationMetrics metrics = getMetrics(CollectionOperation.FIND);
+    assertEquals(1, metrics.getSuccessCount());
+    assertEquals(2, metrics.getDocumentCount());
+    assertEquals(14, metrics.getPayloadBytes());
+  }
+
+  @Test
+  void testPayloadSizeCanBeDisabled() {
+    DefaultDocStoreMetricsListener disabledListener = new DefaultDocStoreMetricsListener(false);
+    collection = new InstrumentedCollection(delegate, COLLECTION_NAME, disabledListener);
+    Document document = mock(Document.class);
+    when(delegate.bulkUpsert(any())).thenReturn(true);
+
+    collection.bulkUpsert(Map.of(new SingleValueKey("tenant", "id"), document));
+
+    OperationMetrics metrics =
+        disabledListener.getMetrics(COLLECTION_NAME, CollectionOperation.BULK_UPSERT).orElseThrow();
+    assertEquals(1, metrics.getDocumentCount());
+    assertEquals(0, metrics.getPayloadBytes());
+  }
+
+  @Test
+  void testListenerResolutionFromConfig() {
+    assertFalse(DocStoreMetricsListenerProvider.getListener(ConfigFactory.empty()).isPresent());
+    assertTrue(
+        DocStoreMetricsListenerProvider.getListener(
+                    ConfigFactory.parseMap(Map.of("metricsListener", "default")))
+                .orElseThrow()
+            instanceof DefaultDocStoreMetricsListener);
+
+    DocStoreMetricsListenerProvider.register("shared", listener);
+    assertEquals(
+        listener,
+        DocStoreMetricsListenerProvider.getListener(
+                ConfigFactory.parseMap(Map.of("metricsListener", "shared")))
+            .orElseThrow());
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            DocStoreMetricsListenerProvider.getListener(
+                ConfigFactory.parseMap(Map.of("metricsListener", "com.example.Missing"))));
+  }
+
+  private OperationMetrics getMetrics(CollectionOperation operation) {
+    return listener.getMetrics(COLLECTION_NAME, operation).orElseThrow();
+  }
+
+  private static CloseableIterator<Document> iteratorOf(List<Document> documents) {
+    Iterator<Document> iterator = documents.iterator();
+    return new CloseableIterator<>() {
+      @Override
+      public void close() {}
+
+      @Override
+      public boolean hasNext() {
+        return iterator.hasNext();
+      }
+
+      @Override
+      public Document next() {
+        return iterator.next();
+      }
+    };
+  }
+}
@@ -0,0 +1,73 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LogLinearHistogramTest {
+
+  @Test
+  void testEmptyHistogram() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+    assertEquals(0, histogram.getMean());
+  }
+
+  @Test
+  void testSmallValuesAreExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int i = 1; i <= 20; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(20, histogram.getCount());
+    assertEquals(10, histogram.getValueAtPercentile(50));
+    assertEquals(20, histogram.getValueAtPercentile(100));
+    assertEquals(20, histogram.getMax());
+    assertEquals(10.5, histogram.getMean());
+  }
+
+  @Test
+  void testPercentilesWithinRelativeError() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int i = 1; i <= 100_000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertWithinRelativeError(50_000_000L, histogram.getValueAtPercentile(50));
+    assertWithinRelativeError(99_000_000L, histogram.getValueAtPercentile(99));
+    assertEquals(100_000_000L, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void testBucketBoundariesAreContiguous() {
+    for (long value : new long[] {31, 32, 33, 63, 64, 1_000, 123_456_789, Long.MAX_VALUE}) {
+      int index = LogLinearHistogram.bucketIndex(value);
+      assertTrue(value <= LogLinearHistogram.bucketUpperBound(index));
+      assertTrue(index == 0 || value > LogLinearHistogram.bucketUpperBound(index - 1));
+    }
+  }
+
+  @Test
+  void testNegativeValuesAreClamped() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(-5);
+    assertEquals(0, histogram.getMax());
+    assertEquals(1, histogram.getCount());
+  }
+
+  @Test
+  void testInvalidPercentile() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new LogLinearHistogram().getValueAtPercentile(101));
+  }
+
+  private static void assertWithinRelativeError(long expected, long actual) {
+    assertTrue(
+        Math.abs(expected - actual) <= expected * 0.07,
+        String.format("Expected %d to be within 7%% of %d", actual, expected));
+  }
+}
@@ -0,0 +1,69 @@
+package org.hypertrace.core.documentstore.metrics;
+
+import static org.hypertrace.core.documentstore.expression.operators.LogicalOperator.AND;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.EQ;
+import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.GT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.Filter.Op;
+import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
+import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
+import org.hypertrace.core.documentstore.query.Pagination;
+import org.hypertrace.core.documentstore.query.Query;
+import org.junit.jupiter.api.Test;
+
+class QueryFingerprintTest {
+
+  @Test
+  void testConstantsAreMasked() {
+    assertEquals(
+        "SELECT item FROM  WHERE AND(GT(price,?),EQ(item,?)) GROUP BY  HAVING  ORDER BY  PAGINATED",
+        QueryFingerprint.normalize(buildQuery(10, "soap", 5)));
+    assertEquals(
+        QueryFingerprint.of(buildQuery(10, "soap", 5)),
+        QueryFingerprint.of(buildQuery(20, "shampoo", 50)));
+  }
+
+  @Test
+  void testDifferentShapesDiffer() {
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("price"), EQ, ConstantExpression.of(10)))
+            .build();
+    assertNotEquals(QueryFingerprint.of(buildQuery(10, "soap", 5)), QueryFingerprint.of(query));
+  }
+
+  @Test
+  void testLegacyFilterConstantsAreMasked() {
+    Filter filter = new Filter(Op.EQ, "item", "soap").and(new Filter(Op.GT, "price", 10));
+    assertEquals("AND(EQ(item,?),GT(price,?))", QueryFingerprint.normalize(filter));
+    assertEquals(
+        QueryFingerprint.of(filter),
+        QueryFingerprint.of(
+            new Filter(Op.EQ, "item", "shampoo").and(new Filter(Op.GT, "price", 20))));
+  }
+
+  private static Query buildQuery(int price, String item, int limit) {
+    return Query.builder()
+        .addSelection(IdentifierExpression.of("item"))
+        .setFilter(
+            LogicalExpression.builder()
+                .operator(AND)
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("price"), GT, ConstantExpression.of(price)))
+                .operand(
+                    RelationalExpression.of(
+                        IdentifierExpression.of("item"), EQ, ConstantExpression.of(item)))
+                .build())
+        .setPagination(Pagination.builder().limit(limit).offset(0).build())
+        .build();
+  }
+}
@@ -1,8 +1,12 @@
 package org.hypertrace.core.documentstore.mongo;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -10,12 +14,22 @@ import static org.mockito.Mockito.when;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.MongoNamespace;
+import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
 import java.util.List;
+import java.util.Set;
 import org.bson.conversions.Bson;
 import org.hypertrace.core.documentstore.Filter;
+import org.hypertrace.core.documentstore.JSONDocument;
 import org.hypertrace.core.documentstore.Query;
+import org.hypertrace.core.documentstore.SingleValueKey;
+import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
+import org.hypertrace.core.documentstore.expression.impl.IdentifierExpression;
+import org.hypertrace.core.documentstore.query.Pagination;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -153,4 +167,59 @@ public class MongoCollectionTest {
     mongoCollection.search(query);
     assertEquals("{\"proj1\": 1, \"proj2\": 1}", projectionArgumentCaptor.getValue().toString());
   }
+
+  @Test
+  public void testUnacknowledgedWrites() throws Exception {
+    when(collection.updateOne(any(Bson.class), any(Bson.class), any(UpdateOptions.class)))
+        .thenReturn(UpdateResult.unacknowledged());
+    when(collection.deleteOne(any(Bson.class))).thenReturn(DeleteResult.unacknowledged());
+
+    assertTrue(mongoCollection.upsert(new SingleValueKey("default", "1"), new JSONDocument("{}")));
+    assertTrue(mongoCollection.delete(new SingleValueKey("default", "1")));
+    assertEquals(
+        0,
+        mongoCollection
+            .update(new SingleValueKey("default", "1"), new JSONDocument("{}"), null)
+            .getUpdatedCount());
+  }
+
+  @Test
+  public void testEstimatedCount() {
+    when(collection.estimatedDocumentCount()).thenReturn(42L);
+    assertEquals(42, mongoCollection.estimatedCount());
+    verify(collection, times(0)).countDocuments();
+  }
+
+  @Test
+  public void testExecuteBatchRunsUnboundedQueriesSeparately() {
+    AggregateIterable<BasicDBObject> iterable = mock(AggregateIterable.class);
+    when(collection.aggregate(anyList())).thenReturn(iterable);
+    when(iterable.cursor()).thenReturn(mock(MongoCursor.class));
+    when(iterable.first()).thenReturn(BasicDBObject.parse("{q0: [], q1: []}"));
+
+    org.hypertrace.core.documentstore.query.Query totals =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .addSelection(AggregateExpression.of(COUNT, IdentifierExpression.of("qty")), "count")
+            .build();
+    org.hypertrace.core.documentstore.query.Query items =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .build();
+    org.hypertrace.core.documentstore.query.Query firstItems =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .setPagination(Pagination.builder().limit(10).offset(0).build())
+            .build();
+
+    assertEquals(3, mongoCollection.executeBatch(List.of(totals, items, firstItems)).size());
+
+    // The unbounded query runs on its own, the others share a $facet
+    ArgumentCaptor<List<BasicDBObject>> pipelines = ArgumentCaptor.forClass(List.class);
+    verify(collection, times(2)).aggregate(pipelines.capture());
+    assertFalse(
+        pipelines.getAllValues().get(0).stream().anyMatch(stage -> stage.containsKey("$facet")));
+    assertEquals(
+        Set.of("q0", "q1"),
+        ((BasicDBObject) pipelines.getAllValues().get(1).get(0).get("$facet")).keySet());
+  }
 }
@@ -1,10 +1,12 @@
 package org.hypertrace.core.documentstore.mongo;
 
+import com.mongodb.WriteConcern;
 import com.mongodb.connection.ServerDescription;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import java.util.List;
 import java.util.Properties;
+import org.hypertrace.core.documentstore.WriteOptions.Durability;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -40,4 +42,17 @@ public class MongoDatastoreTest {
         datastore.getMongoClient().getClusterDescription().getServerDescriptions();
     Assertions.assertEquals(servers.size(), 2);
   }
+
+  @Test
+  public void testGetWriteConcern() {
+    Assertions.assertEquals(
+        WriteConcern.UNACKNOWLEDGED, MongoDatastore.getWriteConcern(Durability.UNACKNOWLEDGED));
+    Assertions.assertEquals(
+        WriteConcern.W1, MongoDatastore.getWriteConcern(Durability.ACKNOWLEDGED));
+    Assertions.assertEquals(
+        WriteConcern.W1.withJournal(true), MongoDatastore.getWriteConcern(Durability.JOURNALED));
+    Assertions.assertEquals(
+        WriteConcern.MAJORITY.withJournal(true),
+        MongoDatastore.getWriteConcern(Durability.MAJORITY));
+  }
 }
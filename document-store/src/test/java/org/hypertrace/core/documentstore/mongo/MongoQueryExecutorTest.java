@@ -1,5 +1,6 @@
 package org.hypertrace.core.documentstore.mongo;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.APPROX_DISTINCT_COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.AVG;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT_COUNT;
@@ -17,6 +18,7 @@ import static org.hypertrace.core.documentstore.expression.operators.RelationalO
 import static org.hypertrace.core.documentstore.expression.operators.RelationalOperator.NOT_IN;
 import static org.hypertrace.core.documentstore.expression.operators.SortOrder.ASC;
 import static org.hypertrace.core.documentstore.expression.operators.SortOrder.DESC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -30,6 +32,7 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
+import java.util.Date;
 import java.util.List;
 import org.hypertrace.core.documentstore.expression.impl.AggregateExpression;
 import org.hypertrace.core.documentstore.expression.impl.ConstantExpression;
@@ -39,9 +42,11 @@ import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
 import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
 import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
 import org.hypertrace.core.documentstore.expression.operators.SortOrder;
+import org.hypertrace.core.documentstore.metrics.OperationTrace;
 import org.hypertrace.core.documentstore.query.Filter;
 import org.hypertrace.core.documentstore.query.Pagination;
 import org.hypertrace.core.documentstore.query.Query;
+import org.hypertrace.core.documentstore.query.Sampling;
 import org.hypertrace.core.documentstore.query.Selection;
 import org.hypertrace.core.documentstore.query.SelectionSpec;
 import org.hypertrace.core.documentstore.query.SortingSpec;
@@ -621,6 +626,75 @@ class MongoQueryExecutorTest {
     testAggregation(query, pipeline);
   }
 
+  @Test
+  public void testPercentileAndApproxDistinctCount() {
+    Query query =
+        Query.builder()
+            .addAggregation(IdentifierExpression.of("class"))
+            .addSelection(
+                AggregateExpression.percentile(IdentifierExpression.of("marks"), 0.95), "p95")
+            .addSelection(
+                AggregateExpression.of(APPROX_DISTINCT_COUNT, IdentifierExpression.of("section")),
+                "section_count")
+            .addSort(IdentifierExpression.of("p95"), DESC)
+            .build();
+
+    List<BasicDBObject> pipeline =
+        List.of(
+            BasicDBObject.parse(
+                "{"
+                    + "\"$group\": "
+                    + "   { "
+                    + "     _id: {"
+                    + "       class: \"$class\""
+                    + "     },"
+                    + "     p95: {"
+                    + "       \"$percentile\": {input: \"$marks\", p: [0.95], method: \"approximate\"}"
+                    + "     },"
+                    + "     section_count: {"
+                    + "       \"$addToSet\": \"$section\""
+                    + "     } "
+                    + "   }"
+                    + "}"),
+            BasicDBObject.parse("{\"$addFields\": {p95: {\"$arrayElemAt\": [\"$p95\", 0]}}}"),
+            BasicDBObject.parse(
+                "{"
+                    + "\"$project\": {"
+                    + "    p95: \"$p95\","
+                    + "    section_count: {"
+                    + "       \"$size\": \"$section_count\""
+                    + "    }"
+                    + "}"
+                    + "}"),
+            BasicDBObject.parse("{\"$sort\": {p95: -1}}"));
+
+    testAggregation(query, pipeline);
+  }
+
+  @Test
+  public void testPercentileIsRejectedBeforeMongo7() {
+    Query query =
+        Query.builder()
+            .addAggregation(IdentifierExpression.of("class"))
+            .addSelection(
+                AggregateExpression.percentile(IdentifierExpression.of("marks"), 0.95), "p95")
+            .build();
+
+    MongoQueryExecutor oldServerExecutor =
+        new MongoQueryExecutor(collection, MongoServerVersion.of("4.4.0"));
+    UnsupportedOperationException exception =
+        assertThrows(UnsupportedOperationException.class, () -> oldServerExecutor.aggregate(query));
+    assertEquals(
+        "PERCENTILE requires MongoDB 7.0 or later, but the server runs 4.4.0",
+        exception.getMessage());
+    verify(collection, NOT_INVOKED).aggregate(anyList());
+
+    new MongoQueryExecutor(collection, MongoServerVersion.of("7.0.2")).aggregate(query);
+    verify(collection).getNamespace();
+    verify(collection).aggregate(anyList());
+    verify(aggIterable).cursor();
+  }
+
   @Test
   public void testUnwindAndGroup() {
     Query query =
@@ -647,6 +721,139 @@ class MongoQueryExecutorTest {
     testAggregation(query, pipeline);
   }
 
+  @Test
+  public void testSampledAggregate() {
+    when(collection.estimatedDocumentCount()).thenReturn(1000L);
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("price")), "total")
+            .addSelection(AggregateExpression.of(AVG, IdentifierExpression.of("price")), "average")
+            .addSelection(AggregateExpression.of(COUNT, ConstantExpression.of(1)), "count")
+            .addAggregation(IdentifierExpression.of("item"))
+            .setSampling(Sampling.of(0.05))
+            .build();
+
+    List<BasicDBObject> pipeline =
+        List.of(
+            BasicDBObject.parse("{\"$sample\": {\"size\": {\"$numberLong\": \"50\"}}}"),
+            BasicDBObject.parse(
+                "{"
+                    + "\"$group\": "
+                    + "   { "
+                    + "     _id: {item: \"$item\"}, "
+                    + "     total: {\"$sum\": \"$price\"}, "
+                    + "     average: {\"$avg\": \"$price\"}, "
+                    + "     count: {\"$push\": 1}, "
+                    + "     __sample_size: {\"$sum\": 1}"
+                    + "   }"
+                    + "}"),
+            BasicDBObject.parse(
+                "{"
+                    + "\"$project\": "
+                    + "   {"
+                    + "     item: \"$_id.item\","
+                    + "     total: {\"$divide\": [\"$total\", 0.05]},"
+                    + "     average: \"$average\","
+                    + "     count: {\"$round\": {\"$divide\": [{\"$size\": \"$count\"}, 0.05]}},"
+                    + "     __sample_size: \"$__sample_size\""
+                    + "   }"
+                    + "}"));
+
+    testAggregation(query, pipeline);
+    verify(collection).estimatedDocumentCount();
+  }
+
+  @Test
+  public void testMerge() {
+    Query query =
+        Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("price")), "total")
+            .addAggregation(IdentifierExpression.of("item"))
+            .build();
+    Date updateTime = new Date(1000);
+
+    executor.merge(query, "item_totals", updateTime);
+
+    List<BasicDBObject> pipeline =
+        List.of(
+            BasicDBObject.parse(
+                "{\"$group\": {_id: {item: \"$item\"}, total: {\"$sum\": \"$price\"}}}"),
+            BasicDBObject.parse("{\"$project\": {item: \"$_id.item\", total: \"$total\"}}"),
+            new BasicDBObject("$addFields", new BasicDBObject("_lastUpdateTime", updateTime)),
+            BasicDBObject.parse(
+                "{\"$merge\": {into: \"item_totals\", whenMatched: \"replace\", whenNotMatched: \"insert\"}}"));
+    verify(collection).getNamespace();
+    verify(collection).aggregate(pipeline);
+    verify(aggIterable).toCollection();
+  }
+
+  @Test
+  public void testBatchSize() {
+    Query query = Query.builder().build();
+
+    executor.find(query, OperationTrace.disabled(), 50);
+    executor.aggregate(query, OperationTrace.disabled(), 20);
+
+    verify(collection, times(2)).getNamespace();
+    verify(collection).find(new BasicDBObject());
+    verify(iterable).projection(new BasicDBObject());
+    verify(iterable).batchSize(50);
+    verify(iterable).cursor();
+    verify(collection).aggregate(List.of());
+    verify(aggIterable).batchSize(20);
+    verify(aggIterable).cursor();
+  }
+
+  @Test
+  public void testFacet() {
+    RelationalExpression filter =
+        RelationalExpression.of(IdentifierExpression.of("class"), LTE, ConstantExpression.of(10));
+    Query aggregation =
+        Query.builder()
+            .setFilter(filter)
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(AggregateExpression.of(SUM, IdentifierExpression.of("price")), "total")
+            .addAggregation(IdentifierExpression.of("item"))
+            .build();
+    Query find = Query.builder().setFilter(filter).build();
+    when(aggIterable.first())
+        .thenReturn(BasicDBObject.parse("{q0: [{item: \"Soap\", total: 10}], q1: []}"));
+
+    List<List<BasicDBObject>> results =
+        executor.facet(List.of(aggregation, find), OperationTrace.disabled());
+
+    List<BasicDBObject> pipeline =
+        List.of(
+            BasicDBObject.parse("{\"$match\": {\"class\": {\"$lte\": 10}}}"),
+            BasicDBObject.parse(
+                "{\"$facet\": {"
+                    + "q0: ["
+                    + "{\"$group\": {_id: {item: \"$item\"}, total: {\"$sum\": \"$price\"}}}, "
+                    + "{\"$project\": {item: \"$_id.item\", total: \"$total\"}}], "
+                    + "q1: [{\"$match\": {}}]}}"));
+    verify(collection).getNamespace();
+    verify(collection).aggregate(pipeline);
+    verify(aggIterable).first();
+    assertEquals(
+        List.of(List.of(BasicDBObject.parse("{item: \"Soap\", total: 10}")), List.of()), results);
+  }
+
+  @Test
+  public void testFacetRejectsDifferentFilters() {
+    Query query =
+        Query.builder()
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("class"), LTE, ConstantExpression.of(10)))
+            .build();
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> executor.facet(List.of(query, Query.builder().build()), OperationTrace.disabled()));
+  }
+
   private void testAggregation(Query query, List<BasicDBObject> pipeline) {
     executor.aggregate(query);
     verify(collection).getNamespace();
@@ -0,0 +1,63 @@
+package org.hypertrace.core.documentstore.mongo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.MongoNamespace;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.ClientSession;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+
+class MongoSessionBindingTest {
+  @SuppressWarnings("unchecked")
+  private final MongoCollection<BasicDBObject> collection = mock(MongoCollection.class);
+
+  private final ClientSession session = mock(ClientSession.class);
+  private final MongoCollection<BasicDBObject> bound =
+      MongoSessionBinding.bind(collection, session);
+
+  @Test
+  void testOperationsRunInTheSession() {
+    BasicDBObject filter = new BasicDBObject("_id", "1");
+    BasicDBObject update = new BasicDBObject("$set", new BasicDBObject("qty", 2));
+    when(collection.updateOne(session, filter, update)).thenReturn(UpdateResult.unacknowledged());
+
+    assertEquals(UpdateResult.unacknowledged(), bound.updateOne(filter, update));
+    bound.deleteMany(filter);
+    bound.countDocuments();
+    verify(collection).updateOne(session, filter, update);
+    verify(collection).deleteMany(session, filter);
+    verify(collection).countDocuments(session);
+    verifyNoMoreInteractions(collection);
+  }
+
+  @Test
+  void testOperationsWithoutSessionAndDerivedCollections() {
+    when(collection.getNamespace()).thenReturn(new MongoNamespace("db.items"));
+    when(collection.estimatedDocumentCount()).thenReturn(5L);
+    @SuppressWarnings("unchecked")
+    MongoCollection<BasicDBObject> derived = mock(MongoCollection.class);
+    when(collection.withWriteConcern(WriteConcern.MAJORITY)).thenReturn(derived);
+
+    assertEquals("items", bound.getNamespace().getCollectionName());
+    assertEquals(5L, bound.estimatedDocumentCount());
+    bound.withWriteConcern(WriteConcern.MAJORITY).deleteOne(new BasicDBObject());
+    verify(derived).deleteOne(session, new BasicDBObject());
+  }
+
+  @Test
+  void testExceptionsAreUnwrapped() {
+    when(collection.deleteOne(any(ClientSession.class), any(Bson.class)))
+        .thenThrow(new IllegalStateException("closed"));
+    assertThrows(IllegalStateException.class, () -> bound.deleteOne(new BasicDBObject()));
+  }
+}
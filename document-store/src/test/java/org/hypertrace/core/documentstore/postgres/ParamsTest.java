@@ -1,5 +1,6 @@
 package org.hypertrace.core.documentstore.postgres;
 
+import java.util.List;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,4 +30,22 @@ public class ParamsTest {
     Assertions.assertEquals(params.getObjectParams().get(index), 4L);
     Assertions.assertEquals(index, 5);
   }
+
+  @Test
+  public void testArrayParams() {
+    paramBuilder.addArrayParam(List.of("Alice", "Bob"));
+    paramBuilder.addArrayParam(List.of(1, 2.5));
+    paramBuilder.addArrayParam(List.of());
+    paramBuilder.addObjectParam(3L);
+    Params params = paramBuilder.build();
+    Params.ArrayParam strings = (Params.ArrayParam) params.getObjectParams().get(1);
+    Assertions.assertEquals("text", strings.getElementType());
+    Assertions.assertArrayEquals(new Object[] {"Alice", "Bob"}, strings.getElements());
+    Params.ArrayParam numbers = (Params.ArrayParam) params.getObjectParams().get(2);
+    Assertions.assertEquals("numeric", numbers.getElementType());
+    Assertions.assertArrayEquals(new Object[] {1, 2.5}, numbers.getElements());
+    Params.ArrayParam empty = (Params.ArrayParam) params.getObjectParams().get(3);
+    Assertions.assertEquals(0, empty.getElements().length);
+    Assertions.assertEquals(3L, params.getObjectParams().get(4));
+  }
 }
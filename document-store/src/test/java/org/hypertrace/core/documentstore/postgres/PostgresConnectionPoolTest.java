@@ -0,0 +1,89 @@
+package org.hypertrace.core.documentstore.postgres;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class PostgresConnectionPoolTest {
+  private final List<Connection> opened = new ArrayList<>();
+  private final PostgresConnectionPool pool = new PostgresConnectionPool(this::open, 2);
+
+  @Test
+  void testConnectionsAreReused() throws Exception {
+    Connection first = pool.acquire();
+    Connection second = pool.acquire();
+    assertNotSame(first, second);
+    pool.release(first);
+
+    assertSame(first, pool.acquire());
+    assertEquals(2, opened.size());
+  }
+
+  @Test
+  void testAcquireWaitsForARelease() throws Exception {
+    Connection first = pool.acquire();
+    pool.acquire();
+
+    CompletableFuture<Connection> third =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return pool.acquire();
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    Thread.sleep(100);
+    assertFalse(third.isDone());
+
+    pool.release(first);
+    assertSame(first, third.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testAcquireTimesOut() throws Exception {
+    Connection first = pool.acquire();
+    pool.acquire();
+
+    assertThrows(SQLException.class, () -> pool.acquire(Duration.ofMillis(50)));
+    pool.release(first);
+    assertSame(first, pool.acquire(Duration.ofMillis(50)));
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  void testBrokenConnectionsAreDiscarded() throws Exception {
+    Connection closed = pool.acquire();
+    Connection inTransaction = pool.acquire();
+    when(inTransaction.getAutoCommit()).thenReturn(false);
+    pool.release(inTransaction);
+    verify(inTransaction).close();
+    pool.release(closed);
+    when(closed.isClosed()).thenReturn(true);
+
+    Connection connection = pool.acquire();
+    assertNotSame(closed, connection);
+    assertNotSame(inTransaction, connection);
+  }
+
+  private synchronized Connection open() throws SQLException {
+    Connection connection = mock(Connection.class);
+    when(connection.getAutoCommit()).thenReturn(true);
+    opened.add(connection);
+    return connection;
+  }
+}
@@ -62,7 +62,7 @@ class PostgresQueryParserTest {
     {
       Filter filter = new Filter(Filter.Op.IN, ID, List.of("abc", "xyz"));
       String query = PostgresQueryParser.parseNonCompositeFilter(filter, initParams());
-      Assertions.assertEquals(ID + " IN (?, ?)", query);
+      Assertions.assertEquals(ID + " = ANY(?)", query);
     }
   }
 
@@ -113,13 +113,13 @@ class PostgresQueryParserTest {
     {
       Filter filter = new Filter(Filter.Op.IN, "key1", List.of("abc", "xyz"));
       String query = PostgresQueryParser.parseNonCompositeFilter(filter, initParams());
-      Assertions.assertEquals("document->>'key1' IN (?, ?)", query);
+      Assertions.assertEquals("document->>'key1' = ANY(?)", query);
     }
 
     {
       Filter filter = new Filter(Op.NOT_IN, "key1", List.of("abc", "xyz"));
       String query = PostgresQueryParser.parseNonCompositeFilter(filter, initParams());
-      Assertions.assertEquals("document->'key1' IS NULL OR document->>'key1' NOT IN (?, ?)", query);
+      Assertions.assertEquals("document->'key1' IS NULL OR document->>'key1' <> ALL(?)", query);
     }
 
     {
@@ -1,5 +1,6 @@
 package org.hypertrace.core.documentstore.postgres.query.v1;
 
+import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.APPROX_DISTINCT_COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.AVG;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.COUNT;
 import static org.hypertrace.core.documentstore.expression.operators.AggregationOperator.DISTINCT;
@@ -28,9 +29,11 @@ import org.hypertrace.core.documentstore.expression.impl.LogicalExpression;
 import org.hypertrace.core.documentstore.expression.impl.RelationalExpression;
 import org.hypertrace.core.documentstore.expression.impl.UnnestExpression;
 import org.hypertrace.core.documentstore.postgres.Params;
+import org.hypertrace.core.documentstore.postgres.utils.PostgresUtils;
 import org.hypertrace.core.documentstore.query.Filter;
 import org.hypertrace.core.documentstore.query.Pagination;
 import org.hypertrace.core.documentstore.query.Query;
+import org.hypertrace.core.documentstore.query.Sampling;
 import org.hypertrace.core.documentstore.query.Selection;
 import org.hypertrace.core.documentstore.query.SelectionSpec;
 import org.hypertrace.core.documentstore.query.Sort;
@@ -324,6 +327,105 @@ public class PostgresQueryParserTest {
     Assertions.assertEquals(10, params.getObjectParams().get(1));
   }
 
+  @Test
+  void testInlineParams() {
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(
+                LogicalExpression.builder()
+                    .operator(AND)
+                    .operand(
+                        RelationalExpression.of(
+                            IdentifierExpression.of("item"), EQ, ConstantExpression.of("it's")))
+                    .operand(
+                        RelationalExpression.of(
+                            IdentifierExpression.of("price"),
+                            IN,
+                            ConstantExpression.ofNumbers(List.of(5, 10))))
+                    .build())
+            .build();
+
+    PostgresQueryParser postgresQueryParser = new PostgresQueryParser(TEST_COLLECTION, query);
+    String sql =
+        PostgresUtils.inlineParams(
+            postgresQueryParser.parse(), postgresQueryParser.getParamsBuilder().build());
+    Assertions.assertEquals(
+        "SELECT * FROM testCollection "
+            + "WHERE (document->>'item' = 'it''s') "
+            + "AND (CAST (document->>'price' AS NUMERIC) = ANY(CAST (ARRAY[5, 10] AS numeric[])))",
+        sql);
+  }
+
+  @Test
+  void testPercentileAndApproxDistinctCount() {
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(
+                AggregateExpression.percentile(IdentifierExpression.of("quantity"), 0.95),
+                "qty_p95")
+            .addSelection(
+                AggregateExpression.of(
+                    APPROX_DISTINCT_COUNT, IdentifierExpression.of("buyer.name")),
+                "buyers")
+            .addAggregation(IdentifierExpression.of("item"))
+            .build();
+
+    PostgresQueryParser postgresQueryParser = new PostgresQueryParser(TEST_COLLECTION, query);
+    String sql = postgresQueryParser.parse();
+    Assertions.assertEquals(
+        "SELECT document->'item' AS item, "
+            + "PERCENTILE_CONT(0.95) WITHIN GROUP (ORDER BY CAST (document->>'quantity' AS NUMERIC) ) AS qty_p95, "
+            + "(CASE WHEN COUNT(DISTINCT hashtextextended( document->'buyer'->>'name' , 0)) "
+            + "FILTER (WHERE hashtextextended( document->'buyer'->>'name' , 0) & 15 = 0) < 64 "
+            + "THEN CAST(ROUND(-8192 * LN(GREATEST(8192 - COALESCE(length(replace(CAST(bit_or("
+            + "CAST(B'1' AS BIT(8192)) >> CAST(hashtextextended( document->'buyer'->>'name' , 0) "
+            + "& 8191 AS INTEGER)) AS TEXT), '0', '')), 0), 1) / 8192.0)) AS BIGINT) "
+            + "ELSE COUNT(DISTINCT hashtextextended( document->'buyer'->>'name' , 0)) "
+            + "FILTER (WHERE hashtextextended( document->'buyer'->>'name' , 0) & 15 = 0) * 16 END) "
+            + "AS buyers "
+            + "FROM testCollection "
+            + "GROUP BY document->'item'",
+        sql);
+  }
+
+  @Test
+  void testSampledAggregation() {
+    org.hypertrace.core.documentstore.query.Query query =
+        org.hypertrace.core.documentstore.query.Query.builder()
+            .setFilter(
+                RelationalExpression.of(
+                    IdentifierExpression.of("price"), EQ, ConstantExpression.of(10)))
+            .addSelection(IdentifierExpression.of("item"))
+            .addSelection(
+                AggregateExpression.of(SUM, IdentifierExpression.of("quantity")), "qty_sum")
+            .addSelection(
+                AggregateExpression.of(COUNT, IdentifierExpression.of("quantity")), "qty_count")
+            .addSelection(
+                AggregateExpression.of(AVG, IdentifierExpression.of("quantity")), "qty_avg")
+            .addAggregation(IdentifierExpression.of("item"))
+            .setSampling(
+                Sampling.builder().fraction(0.05).method(Sampling.Method.BERNOULLI).build())
+            .build();
+
+    PostgresQueryParser postgresQueryParser = new PostgresQueryParser(TEST_COLLECTION, query);
+    String sql = postgresQueryParser.parse();
+    Assertions.assertEquals(
+        "SELECT document->'item' AS item, "
+            + "(SUM( CAST (document->>'quantity' AS NUMERIC) ) / 0.05) AS qty_sum, "
+            + "ROUND(COUNT( CAST (document->>'quantity' AS NUMERIC) ) / 0.05) AS qty_count, "
+            + "AVG( CAST (document->>'quantity' AS NUMERIC) ) AS qty_avg, "
+            + "COUNT(*) AS __sample_size "
+            + "FROM testCollection TABLESAMPLE BERNOULLI (5) "
+            + "WHERE CAST (document->>'price' AS NUMERIC) = ? "
+            + "GROUP BY document->'item'",
+        sql);
+
+    Params params = postgresQueryParser.getParamsBuilder().build();
+    Assertions.assertEquals(1, params.getObjectParams().size());
+    Assertions.assertEquals(10, params.getObjectParams().get(1));
+  }
+
   @Test
   void testAggregationExpressionDistinctCount() {
     org.hypertrace.core.documentstore.query.Query query =
@@ -529,19 +631,19 @@ public class PostgresQueryParserTest {
             + "document->'quantity' AS quantity, "
             + "document->'date' AS date "
             + "FROM testCollection "
-            + "WHERE document->>'item' IN (?, ?, ?, ?) "
+            + "WHERE document->>'item' = ANY(?) "
             + "ORDER BY document->'quantity' DESC,document->'item' ASC "
             + "OFFSET ? LIMIT ?",
         sql);
 
     Params params = postgresQueryParser.getParamsBuilder().build();
-    Assertions.assertEquals(6, params.getObjectParams().size());
-    Assertions.assertEquals("Mirror", params.getObjectParams().get(1));
-    Assertions.assertEquals("Comb", params.getObjectParams().get(2));
-    Assertions.assertEquals("Shampoo", params.getObjectParams().get(3));
-    Assertions.assertEquals("Bottle", params.getObjectParams().get(4));
-    Assertions.assertEquals(1, params.getObjectParams().get(5));
-    Assertions.assertEquals(3, params.getObjectParams().get(6));
+    Assertions.assertEquals(3, params.getObjectParams().size());
+    Params.ArrayParam items = (Params.ArrayParam) params.getObjectParams().get(1);
+    Assertions.assertEquals("text", items.getElementType());
+    Assertions.assertArrayEquals(
+        new Object[] {"Mirror", "Comb", "Shampoo", "Bottle"}, items.getElements());
+    Assertions.assertEquals(1, params.getObjectParams().get(2));
+    Assertions.assertEquals(3, params.getObjectParams().get(3));
   }
 
   @Test
@@ -13,3 +13,4 @@ plugins {
 }
 
 include(":document-store")
+include(":document-store-benchmarks")